@@ -0,0 +1,218 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+
+/**
+ * Selects a spatially well distributed subset of keypoints.
+ * <p>Implements the adaptive non-maximal suppression of Brown, Szeliski and
+ * Winder. The suppression radius of a keypoint is the distance to the
+ * nearest keypoint with a larger absolute response. The keypoints with the
+ * largest radii are selected, which are the strongest keypoints in their
+ * neighborhood, with the neighborhood shrinking until the target count is
+ * reached.</p>
+ * <p>The keypoints are visited from the strongest to the weakest and each is
+ * inserted into a uniform grid over the image coordinates after its radius
+ * was found. The nearest stronger keypoint is searched in rings of grid
+ * cells around the keypoint, stopping as soon as the remaining rings cannot
+ * contain a closer keypoint. For keypoints that are not extremely clustered
+ * this takes {@code O(n log n)} time, dominated by sorting.</p>
+ * <p>Instances are thread-safe.</p>
+ */
+public final class AdaptiveNonMaximalSuppression {
+
+    /** Average number of keypoints per grid cell. */
+    private static final int KEYPOINTS_PER_CELL = 2;
+    /** Number of bits in an {@code int}. */
+    private static final int INT_BITS = 32;
+    /** Mask for the lower 32 bits of a {@code long}. */
+    private static final long INDEX_MASK = 0xffffffffL;
+    /** Maximal number of keypoints selected. */
+    private final int targetCount;
+
+    /**
+     * Creates an instance.
+     * @param targetCount Maximal number of keypoints to select.
+     * @throws IllegalArgumentException if {@code targetCount} is smaller than
+     * one.
+     */
+    public AdaptiveNonMaximalSuppression(final int targetCount) {
+        if (targetCount < 1) {
+            throw new IllegalArgumentException(
+                    "need to select at least one keypoint");
+        }
+        this.targetCount = targetCount;
+    }
+
+    /**
+     * Gets the target count.
+     * @return Maximal number of keypoints selected.
+     */
+    public int getTargetCount() {
+        return targetCount;
+    }
+
+    /**
+     * Selects the keypoints with the largest suppression radii.
+     * <p>The selected keypoints are passed to the sink in the order of
+     * decreasing radius. Keypoints with the same radius are ordered by
+     * decreasing strength. If there are no more keypoints than the target
+     * count, all of them are selected.</p>
+     * @param keypoints Keypoints to select from, for example as detected by
+     * an {@link ExtremaDetector}. Not modified.
+     * @param sink Sink to pass the selected keypoints to.
+     * @throws NullPointerException if {@code keypoints} or {@code sink} is
+     * {@code null}.
+     */
+    public void suppress(final KeypointBuffer keypoints,
+            final KeypointSink sink) {
+        if (keypoints == null) {
+            throw new NullPointerException("keypoints must not be null");
+        }
+        if (sink == null) {
+            throw new NullPointerException("sink must not be null");
+        }
+        final int n = keypoints.size();
+        if (n == 0) {
+            return;
+        }
+
+        // order by decreasing strength, earlier keypoints first on ties.
+        // Non-negative floats order like their bit patterns, so strength
+        // and index can be packed into one primitive sort key.
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            int bits = Float.floatToIntBits(
+                    Math.abs(keypoints.getResponse(i)));
+            order[i] = ((long) ~bits << INT_BITS) | i;
+        }
+        Arrays.sort(order);
+
+        float[] radii = radii(keypoints, order);
+
+        // order by decreasing radius, stronger keypoints first on ties.
+        // The rank in the strength order is packed as the tie breaker and
+        // mapped back to the keypoint index when emitting.
+        int[] indices = new int[n];
+        for (int rank = 0; rank < n; rank++) {
+            indices[rank] = (int) (order[rank] & INDEX_MASK);
+            int bits = Float.floatToIntBits(radii[rank]);
+            order[rank] = ((long) ~bits << INT_BITS) | rank;
+        }
+        Arrays.sort(order);
+
+        int count = Math.min(n, targetCount);
+        for (int i = 0; i < count; i++) {
+            keypoints.emit(indices[(int) (order[i] & INDEX_MASK)], sink);
+        }
+    }
+
+    /**
+     * Calculates the suppression radii.
+     * @param keypoints Keypoints.
+     * @param order Keypoint indices in the lower bits, ordered by decreasing
+     * strength.
+     * @return Squared suppression radius for each keypoint, in the order of
+     * {@code order}. Infinite for the strongest keypoint.
+     */
+    private static float[] radii(final KeypointBuffer keypoints,
+            final long[] order) {
+        final int n = order.length;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, keypoints.getX(i));
+            minY = Math.min(minY, keypoints.getY(i));
+            maxX = Math.max(maxX, keypoints.getX(i));
+            maxY = Math.max(maxY, keypoints.getY(i));
+        }
+
+        // square cells with about KEYPOINTS_PER_CELL keypoints on average,
+        // but not more cells per row or column than that would need if all
+        // keypoints were on a line.
+        double width = maxX - minX;
+        double height = maxY - minY;
+        double cellSize = Math.max(
+                Math.sqrt(width * height * KEYPOINTS_PER_CELL / n),
+                Math.max(width, height) * KEYPOINTS_PER_CELL / n);
+        if (!(cellSize > 0)) {
+            cellSize = 1.0;
+        }
+        final int columns = (int) (width / cellSize) + 1;
+        final int rows = (int) (height / cellSize) + 1;
+
+        // each cell is a linked list of the keypoints inserted so far.
+        final int[] heads = new int[columns * rows];
+        Arrays.fill(heads, -1);
+        final int[] next = new int[n];
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+
+        float[] radii = new float[n];
+        for (int rank = 0; rank < n; rank++) {
+            int index = (int) (order[rank] & INDEX_MASK);
+            double x = keypoints.getX(index);
+            double y = keypoints.getY(index);
+            int column = (int) ((x - minX) / cellSize);
+            int row = (int) ((y - minY) / cellSize);
+
+            double best = Double.POSITIVE_INFINITY;
+            int maxRing = Math.max(Math.max(column, columns - 1 - column),
+                    Math.max(row, rows - 1 - row));
+            for (int ring = 0; ring <= maxRing; ring++) {
+                for (int r = row - ring; r <= row + ring; r++) {
+                    if (r < 0 || r >= rows) {
+                        continue;
+                    }
+                    // inner rows of the ring only have the two end cells.
+                    int step = 1;
+                    if (r != row - ring && r != row + ring) {
+                        step = Math.max(2 * ring, 1);
+                    }
+                    for (int c = column - ring; c <= column + ring;
+                            c += step) {
+                        if (c < 0 || c >= columns) {
+                            continue;
+                        }
+                        for (int k = heads[r * columns + c]; k >= 0;
+                                k = next[k]) {
+                            double dx = xs[k] - x;
+                            double dy = ys[k] - y;
+                            best = Math.min(best, dx * dx + dy * dy);
+                        }
+                    }
+                }
+                // keypoints in the following rings are at least ring
+                // cells away.
+                double bound = ring * cellSize;
+                if (best <= bound * bound) {
+                    break;
+                }
+            }
+            radii[rank] = (float) best;
+
+            xs[rank] = x;
+            ys[rank] = y;
+            int cell = row * columns + column;
+            next[rank] = heads[cell];
+            heads[cell] = rank;
+        }
+        return radii;
+    }
+}
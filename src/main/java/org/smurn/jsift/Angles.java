@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Fast approximations of trigonometric functions.
+ * <p>The approximations are accurate enough for orientation histograms and
+ * descriptors, where the angles are quantized into bins of several
+ * degrees anyway, and several times faster than their counterparts in
+ * {@link Math}.</p>
+ */
+final class Angles {
+
+    /** Coefficients of the minimax polynomial of atan on [0, 1]. */
+    private static final float A1 = 0.99997726f;
+    /** Coefficient of the third power. */
+    private static final float A3 = -0.33262347f;
+    /** Coefficient of the fifth power. */
+    private static final float A5 = 0.19354346f;
+    /** Coefficient of the seventh power. */
+    private static final float A7 = -0.11643287f;
+    /** Coefficient of the ninth power. */
+    private static final float A9 = 0.05265332f;
+    /** Coefficient of the eleventh power. */
+    private static final float A11 = -0.01172120f;
+    private static final float PI = (float) Math.PI;
+    private static final float HALF_PI = (float) (Math.PI / 2);
+
+    /**
+     * No instances.
+     */
+    private Angles() {
+        // empty
+    }
+
+    /**
+     * Approximates {@link Math#atan2(double, double)}.
+     * <p>The ratio of the smaller to the larger absolute coordinate is fed
+     * into a polynomial for atan on [0, 1], and the result is mirrored into
+     * the right octant. The absolute error is below {@code 1E-5}
+     * radians.</p>
+     * @param y Ordinate.
+     * @param x Abscissa.
+     * @return Angle in radians between {@code -pi} and {@code pi}. Zero if
+     * both coordinates are zero, NaN if either is NaN or both are
+     * infinite.
+     */
+    static float atan2(final float y, final float x) {
+        final float absX = Math.abs(x);
+        final float absY = Math.abs(y);
+        if (absX == 0 && absY == 0) {
+            return 0;
+        }
+        final boolean steep = absY > absX;
+        float a;
+        if (steep) {
+            a = absX / absY;
+        } else {
+            a = absY / absX;
+        }
+        final float s = a * a;
+        float angle = a * (A1 + s * (A3 + s * (A5 + s * (A7 + s * (A9
+                + s * A11)))));
+        if (steep) {
+            angle = HALF_PI - angle;
+        }
+        if (x < 0) {
+            angle = PI - angle;
+        }
+        if (y < 0) {
+            angle = -angle;
+        }
+        return angle;
+    }
+}
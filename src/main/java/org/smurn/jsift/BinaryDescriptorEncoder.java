@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+
+/**
+ * Converts descriptors to binary descriptors of 128 bits.
+ * <p>Each element of a descriptor is compared with the median of the
+ * descriptor's elements. Bit {@code i} of the binary descriptor is set if
+ * element {@code i} is larger than the median. The bits are packed into
+ * {@link #WORDS} longs, element {@code i} into bit {@code i % 64} of long
+ * {@code i / 64}.</p>
+ * <p>Binary descriptors are compared by their Hamming distance (see
+ * {@link HammingMatcher}), which is much cheaper to compute than the
+ * euclidean distance of the original descriptors and approximates it well
+ * enough to select candidates.</p>
+ * <p>Instances are thread-safe.</p>
+ */
+public final class BinaryDescriptorEncoder {
+
+    /** Number of longs of a binary descriptor. */
+    public static final int WORDS = DescriptorExtractor.LENGTH / Long.SIZE;
+    /** Number of distinct element values. */
+    private static final int VALUES = 256;
+
+    /**
+     * Creates an instance.
+     */
+    public BinaryDescriptorEncoder() {
+        // empty
+    }
+
+    /**
+     * Converts descriptors.
+     * @param descriptors Descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors to convert.
+     * @param result Array to write the binary descriptors to, {@link #WORDS}
+     * longs each.
+     * @param resultOffset Index of the first long of the first binary
+     * descriptor.
+     * @throws NullPointerException if {@code descriptors} or {@code result}
+     * is {@code null}.
+     * @throws IndexOutOfBoundsException if the descriptors or the binary
+     * descriptors exceed their arrays.
+     */
+    public void encode(final byte[] descriptors, final int offset,
+            final int count, final long[] result, final int resultOffset) {
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        if (result == null) {
+            throw new NullPointerException("result must not be null");
+        }
+        final int length = DescriptorExtractor.LENGTH;
+        if (offset < 0 || count < 0 || resultOffset < 0
+                || offset + (long) count * length > descriptors.length
+                || resultOffset + (long) count * WORDS > result.length) {
+            throw new IndexOutOfBoundsException("range of " + count
+                    + " descriptors exceeds the arrays");
+        }
+
+        int[] histogram = new int[VALUES];
+        for (int k = 0; k < count; k++) {
+            final int base = offset + k * length;
+            final int median = median(descriptors, base, histogram);
+            for (int w = 0; w < WORDS; w++) {
+                long word = 0;
+                final int from = base + w * Long.SIZE;
+                for (int bit = 0; bit < Long.SIZE; bit++) {
+                    if ((descriptors[from + bit] & 0xFF) > median) {
+                        word |= 1L << bit;
+                    }
+                }
+                result[resultOffset + k * WORDS + w] = word;
+            }
+        }
+    }
+
+    /**
+     * Finds the lower median of a descriptor by counting its values.
+     * @param descriptors Array containing the descriptor.
+     * @param base Index of the descriptor's first element.
+     * @param histogram Scratch array of {@link #VALUES} elements.
+     * @return Value of the element with rank {@code LENGTH / 2 - 1}.
+     */
+    private static int median(final byte[] descriptors, final int base,
+            final int[] histogram) {
+        Arrays.fill(histogram, 0);
+        for (int i = 0; i < DescriptorExtractor.LENGTH; i++) {
+            histogram[descriptors[base + i] & 0xFF]++;
+        }
+        int remaining = DescriptorExtractor.LENGTH / 2;
+        int value = 0;
+        while (true) {
+            remaining -= histogram[value];
+            if (remaining <= 0) {
+                return value;
+            }
+            value++;
+        }
+    }
+}
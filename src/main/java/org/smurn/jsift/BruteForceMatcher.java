@@ -0,0 +1,426 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Matches descriptors by exhaustively searching their nearest neighbors.
+ * <p>For each query the nearest and second nearest reference are found by
+ * their euclidean distance. As proposed by Lowe, the nearest reference is
+ * only accepted as a match if it is clearly closer than the second, that
+ * is if the ratio of their distances is below a threshold.</p>
+ * <p>The references are processed in blocks that fit into the cache, and
+ * each block is compared with a block of queries before moving on. The
+ * distance to a reference is summed in chunks, and the reference is
+ * abandoned as soon as the partial sum exceeds the distance of the current
+ * second nearest reference, since it can no longer change the result.</p>
+ * <p>If an executor is given, the queries are split into batches that are
+ * matched in parallel. The executor is not shut down by this class.
+ * Instances are thread-safe.</p>
+ */
+public final class BruteForceMatcher {
+
+    /** Ratio proposed by Lowe. */
+    private static final double LOWE_RATIO = 0.8;
+    /** Number of queries of a block. */
+    private static final int QUERY_BLOCK = 16;
+    /** Number of bytes of references in a block. */
+    private static final int REFERENCE_BLOCK_BYTES = 32 * 1024;
+    /** Number of elements summed before checking for abandoning. */
+    private static final int CHUNK = 16;
+    /** Number of queries of a task. */
+    private static final int QUERIES_PER_TASK = 64;
+    /** Square of the maximal ratio of the two nearest distances. */
+    private final double squaredRatio;
+    /** Executor to run the tasks on, {@code null} to match sequentially. */
+    private final ExecutorService executor;
+
+    /**
+     * Creates a sequential instance with the ratio proposed by Lowe.
+     */
+    public BruteForceMatcher() {
+        this(LOWE_RATIO);
+    }
+
+    /**
+     * Creates a sequential instance.
+     * @param ratio Maximal ratio between the distances of the nearest and
+     * the second nearest reference for the nearest to be accepted. One
+     * accepts every nearest reference that is closer than the second.
+     * @throws IllegalArgumentException if {@code ratio} is not within
+     * (0, 1].
+     */
+    public BruteForceMatcher(final double ratio) {
+        this(ratio, null);
+    }
+
+    /**
+     * Creates a parallel instance.
+     * @param ratio Maximal ratio between the distances of the nearest and
+     * the second nearest reference for the nearest to be accepted.
+     * @param executor Executor to run the tasks on, or {@code null} to
+     * match in the calling thread.
+     * @throws IllegalArgumentException if {@code ratio} is not within
+     * (0, 1].
+     */
+    public BruteForceMatcher(final double ratio,
+            final ExecutorService executor) {
+        if (!(ratio > 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("ratio must be within (0, 1]");
+        }
+        this.squaredRatio = ratio * ratio;
+        this.executor = executor;
+    }
+
+    /**
+     * Matches descriptors as written by {@link DescriptorExtractor}.
+     * @param queries Descriptors to find matches for.
+     * @param queryCount Number of queries.
+     * @param references Descriptors to search.
+     * @param referenceCount Number of references.
+     * @param matches Array to write the index of the matched reference of
+     * each query to, or -1 if the query has no match.
+     * @throws NullPointerException if an array is {@code null}.
+     * @throws IndexOutOfBoundsException if the descriptors exceed their
+     * arrays or the matches do not fit.
+     */
+    public void match(final byte[] queries, final int queryCount,
+            final byte[] references, final int referenceCount,
+            final int[] matches) {
+        if (queries == null) {
+            throw new NullPointerException("queries must not be null");
+        }
+        if (references == null) {
+            throw new NullPointerException("references must not be null");
+        }
+        checkCounts(queries.length, queryCount, references.length,
+                referenceCount, DescriptorExtractor.LENGTH, matches);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int from = 0; from < queryCount; from += QUERIES_PER_TASK) {
+            tasks.add(new ByteTask(queries, from,
+                    Math.min(from + QUERIES_PER_TASK, queryCount),
+                    references, referenceCount, matches));
+        }
+        run(tasks);
+    }
+
+    /**
+     * Matches descriptors stored as floats, such as the projections of
+     * {@link PcaProjection}.
+     * @param queries Descriptors to find matches for.
+     * @param queryCount Number of queries.
+     * @param references Descriptors to search.
+     * @param referenceCount Number of references.
+     * @param dimension Number of elements of a descriptor.
+     * @param matches Array to write the index of the matched reference of
+     * each query to, or -1 if the query has no match.
+     * @throws NullPointerException if an array is {@code null}.
+     * @throws IllegalArgumentException if {@code dimension} is smaller than
+     * one.
+     * @throws IndexOutOfBoundsException if the descriptors exceed their
+     * arrays or the matches do not fit.
+     */
+    public void match(final float[] queries, final int queryCount,
+            final float[] references, final int referenceCount,
+            final int dimension, final int[] matches) {
+        if (queries == null) {
+            throw new NullPointerException("queries must not be null");
+        }
+        if (references == null) {
+            throw new NullPointerException("references must not be null");
+        }
+        if (dimension < 1) {
+            throw new IllegalArgumentException(
+                    "dimension must be at least one");
+        }
+        checkCounts(queries.length, queryCount, references.length,
+                referenceCount, dimension, matches);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int from = 0; from < queryCount; from += QUERIES_PER_TASK) {
+            tasks.add(new FloatTask(queries, from,
+                    Math.min(from + QUERIES_PER_TASK, queryCount),
+                    references, referenceCount, dimension, matches));
+        }
+        run(tasks);
+    }
+
+    /**
+     * Checks that the descriptors and matches fit into their arrays.
+     * @param queryLength Length of the query array.
+     * @param queryCount Number of queries.
+     * @param referenceLength Length of the reference array.
+     * @param referenceCount Number of references.
+     * @param dimension Number of elements of a descriptor.
+     * @param matches Array for the matches.
+     */
+    private static void checkCounts(final int queryLength,
+            final int queryCount, final int referenceLength,
+            final int referenceCount, final int dimension,
+            final int[] matches) {
+        if (matches == null) {
+            throw new NullPointerException("matches must not be null");
+        }
+        if (queryCount < 0 || referenceCount < 0
+                || (long) queryCount * dimension > queryLength
+                || (long) referenceCount * dimension > referenceLength
+                || queryCount > matches.length) {
+            throw new IndexOutOfBoundsException(
+                    "descriptor counts exceed the arrays");
+        }
+    }
+
+    /**
+     * Runs tasks in the calling thread or on the executor.
+     * @param tasks Tasks to run.
+     */
+    private void run(final List<Callable<Void>> tasks) {
+        if (executor == null) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            return;
+        }
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                Futures.get(future);
+            }
+        } finally {
+            // only has an effect if a task failed.
+            Futures.cancelAll(futures);
+        }
+    }
+
+    /**
+     * Applies the ratio test.
+     * @param best Index of the nearest reference, -1 if there is none.
+     * @param bestDistance Squared distance of the nearest reference.
+     * @param secondDistance Squared distance of the second nearest
+     * reference, infinite if there is none.
+     * @return {@code best} if it passes, otherwise -1.
+     */
+    private int accept(final int best, final double bestDistance,
+            final double secondDistance) {
+        if (best >= 0 && bestDistance < squaredRatio * secondDistance) {
+            return best;
+        }
+        return -1;
+    }
+
+    /**
+     * Matches a range of byte descriptors.
+     */
+    private final class ByteTask implements Callable<Void> {
+
+        /** Descriptors to find matches for. */
+        private final byte[] queries;
+        /** Index of the first query of this task. */
+        private final int from;
+        /** Index after the last query of this task. */
+        private final int to;
+        /** Descriptors to search. */
+        private final byte[] references;
+        /** Number of references. */
+        private final int referenceCount;
+        /** Array to write the matches to. */
+        private final int[] matches;
+
+        /**
+         * Creates an instance.
+         * @param queries Descriptors to find matches for.
+         * @param from Index of the first query of this task.
+         * @param to Index after the last query of this task.
+         * @param references Descriptors to search.
+         * @param referenceCount Number of references.
+         * @param matches Array to write the matches to.
+         */
+        ByteTask(final byte[] queries, final int from, final int to,
+                final byte[] references, final int referenceCount,
+                final int[] matches) {
+            this.queries = queries;
+            this.from = from;
+            this.to = to;
+            this.references = references;
+            this.referenceCount = referenceCount;
+            this.matches = matches;
+        }
+
+        @Override
+        public Void call() {
+            final int length = DescriptorExtractor.LENGTH;
+            final int referenceBlock = REFERENCE_BLOCK_BYTES / length;
+            final int[] best = new int[QUERY_BLOCK];
+            final int[] bestDistance = new int[QUERY_BLOCK];
+            final int[] secondDistance = new int[QUERY_BLOCK];
+
+            for (int qFrom = from; qFrom < to; qFrom += QUERY_BLOCK) {
+                final int qTo = Math.min(qFrom + QUERY_BLOCK, to);
+                for (int q = 0; q < qTo - qFrom; q++) {
+                    best[q] = -1;
+                    bestDistance[q] = Integer.MAX_VALUE;
+                    secondDistance[q] = Integer.MAX_VALUE;
+                }
+                for (int rFrom = 0; rFrom < referenceCount;
+                        rFrom += referenceBlock) {
+                    final int rTo = Math.min(rFrom + referenceBlock,
+                            referenceCount);
+                    for (int q = 0; q < qTo - qFrom; q++) {
+                        final int qBase = (qFrom + q) * length;
+                        for (int r = rFrom; r < rTo; r++) {
+                            final int limit = secondDistance[q];
+                            final int rBase = r * length;
+                            int distance = 0;
+                            for (int c = 0; c < length && distance < limit;
+                                    c += CHUNK) {
+                                for (int i = c; i < c + CHUNK; i++) {
+                                    final int d = (queries[qBase + i] & 0xFF)
+                                            - (references[rBase + i] & 0xFF);
+                                    distance += d * d;
+                                }
+                            }
+                            if (distance < bestDistance[q]) {
+                                secondDistance[q] = bestDistance[q];
+                                bestDistance[q] = distance;
+                                best[q] = r;
+                            } else if (distance < limit) {
+                                secondDistance[q] = distance;
+                            }
+                        }
+                    }
+                }
+                for (int q = 0; q < qTo - qFrom; q++) {
+                    double second = secondDistance[q];
+                    if (secondDistance[q] == Integer.MAX_VALUE) {
+                        second = Double.POSITIVE_INFINITY;
+                    }
+                    matches[qFrom + q] = accept(best[q], bestDistance[q],
+                            second);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Matches a range of float descriptors.
+     */
+    private final class FloatTask implements Callable<Void> {
+
+        /** Descriptors to find matches for. */
+        private final float[] queries;
+        /** Index of the first query of this task. */
+        private final int from;
+        /** Index after the last query of this task. */
+        private final int to;
+        /** Descriptors to search. */
+        private final float[] references;
+        /** Number of references. */
+        private final int referenceCount;
+        /** Number of elements of a descriptor. */
+        private final int dimension;
+        /** Array to write the matches to. */
+        private final int[] matches;
+
+        /**
+         * Creates an instance.
+         * @param queries Descriptors to find matches for.
+         * @param from Index of the first query of this task.
+         * @param to Index after the last query of this task.
+         * @param references Descriptors to search.
+         * @param referenceCount Number of references.
+         * @param dimension Number of elements of a descriptor.
+         * @param matches Array to write the matches to.
+         */
+        FloatTask(final float[] queries, final int from, final int to,
+                final float[] references, final int referenceCount,
+                final int dimension, final int[] matches) {
+            this.queries = queries;
+            this.from = from;
+            this.to = to;
+            this.references = references;
+            this.referenceCount = referenceCount;
+            this.dimension = dimension;
+            this.matches = matches;
+        }
+
+        @Override
+        public Void call() {
+            final int referenceBlock = Math.max(1,
+                    REFERENCE_BLOCK_BYTES / (4 * dimension));
+            final int[] best = new int[QUERY_BLOCK];
+            final float[] bestDistance = new float[QUERY_BLOCK];
+            final float[] secondDistance = new float[QUERY_BLOCK];
+
+            for (int qFrom = from; qFrom < to; qFrom += QUERY_BLOCK) {
+                final int qTo = Math.min(qFrom + QUERY_BLOCK, to);
+                for (int q = 0; q < qTo - qFrom; q++) {
+                    best[q] = -1;
+                    bestDistance[q] = Float.POSITIVE_INFINITY;
+                    secondDistance[q] = Float.POSITIVE_INFINITY;
+                }
+                for (int rFrom = 0; rFrom < referenceCount;
+                        rFrom += referenceBlock) {
+                    final int rTo = Math.min(rFrom + referenceBlock,
+                            referenceCount);
+                    for (int q = 0; q < qTo - qFrom; q++) {
+                        final int qBase = (qFrom + q) * dimension;
+                        for (int r = rFrom; r < rTo; r++) {
+                            final float limit = secondDistance[q];
+                            final int rBase = r * dimension;
+                            float distance = 0;
+                            for (int c = 0; c < dimension && distance < limit;
+                                    c += CHUNK) {
+                                final int end = Math.min(c + CHUNK,
+                                        dimension);
+                                for (int i = c; i < end; i++) {
+                                    final float d = queries[qBase + i]
+                                            - references[rBase + i];
+                                    distance += d * d;
+                                }
+                            }
+                            if (distance < bestDistance[q]) {
+                                secondDistance[q] = bestDistance[q];
+                                bestDistance[q] = distance;
+                                best[q] = r;
+                            } else if (distance < limit) {
+                                secondDistance[q] = distance;
+                            }
+                        }
+                    }
+                }
+                for (int q = 0; q < qTo - qFrom; q++) {
+                    matches[qFrom + q] = accept(best[q], bestDistance[q],
+                            secondDistance[q]);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+
+/**
+ * Computes descriptors on a regular grid instead of at detected keypoints
+ * (dense SIFT).
+ * <p>The descriptors have the layout of {@link DescriptorExtractor}'s:
+ * 4x4 cells with 8 orientation bins each, normalized, clipped and quantized
+ * to 128 bytes. They are not rotated (the orientation is zero), and each
+ * cell sums its gradients with equal weights instead of interpolating
+ * them between neighboring cells. The gaussian window is approximated by
+ * weighting each cell with the gaussian at its center.</p>
+ * <p>Since the cells are not rotated, every cell of the grid is shared by
+ * all descriptors that overlap it, so the orientation histogram of each
+ * cell is computed only once. The image rows are visited once each: the
+ * gradients of a row are binned into prefix sums along the row, which give
+ * the row's part of each cell column, and these parts are summed down the
+ * columns. A cell is the difference of the column sums after its last and
+ * before its first row. So a pixel costs the same regardless of the cell
+ * size and the grid spacing, even if the cells overlap.</p>
+ * <p>Instances are not thread-safe, use one instance per thread.</p>
+ */
+public final class DenseDescriptorExtractor {
+
+    /** Number of cells along each side of a descriptor. */
+    private static final int CELLS = 4;
+    /** Number of orientation bins per cell. */
+    private static final int BINS = 8;
+    /** Width of a cell relative to the sigma of the descriptor. */
+    private static final double CELL_WIDTH_FACTOR = 3.0;
+    private static final double TWO_PI = 2 * Math.PI;
+    /** Weights of the cells, row by row. */
+    private static final float[] CELL_WEIGHTS = cellWeights();
+    /** Width and height of a cell in pixels. */
+    private final int cellSize;
+    /** Distance between the grid points in pixels. */
+    private final int step;
+    /** Prefix sums of the current row, indexed by bin and column. */
+    private double[] prefix = new double[0];
+    /** Orientation histograms of the cells, grown as needed. */
+    private float[] cellHistograms = new float[0];
+    /**
+     * Sums of the rows so far within each cell column, indexed by cell
+     * column and bin.
+     */
+    private double[] columnSums = new double[0];
+    /**
+     * Copies of {@link #columnSums} taken at the first row of the pending
+     * cell rows, one slot per cell row modulo the cell size.
+     */
+    private double[] columnSnapshots = new double[0];
+    /** Unquantized descriptor. */
+    private final float[] descriptor = new float[DescriptorExtractor.LENGTH];
+
+    /**
+     * Creates an instance.
+     * @param cellSize Width and height of a cell in pixels of the octave.
+     * A descriptor covers four times this size.
+     * @param step Distance between the grid points in pixels of the octave.
+     * @throws IllegalArgumentException if {@code cellSize} or {@code step}
+     * is smaller than one.
+     */
+    public DenseDescriptorExtractor(final int cellSize, final int step) {
+        if (cellSize < 1) {
+            throw new IllegalArgumentException(
+                    "cells must be at least one pixel wide");
+        }
+        if (step < 1) {
+            throw new IllegalArgumentException("step must be at least one");
+        }
+        this.cellSize = cellSize;
+        this.step = step;
+    }
+
+    /**
+     * Computes the descriptors on a grid over one scale-image.
+     * <p>The grid starts at the top left corner and contains each point
+     * whose descriptor lies within the image. For each grid point, row by
+     * row, a keypoint is appended to {@code keypoints}. Its sigma is a
+     * third of the cell size and its orientation zero. Its DoG index is
+     * {@code scaleImage}, as for detected keypoints, which are sampled from
+     * the scale-image of their DoG index. It has no response (NaN).</p>
+     * <p>The last scale-image of an octave has no DoG image of its index,
+     * so it cannot be sampled.</p>
+     * @param scaleSpace Scale-space to compute the descriptors in.
+     * @param octaveIndex Index of the octave.
+     * @param scaleImage Index of the scale-image within the octave, which
+     * has to be smaller than the number of DoG images.
+     * @param keypoints Buffer to append the grid points to.
+     * @return Descriptors of the appended keypoints, in the same order,
+     * {@link DescriptorExtractor#LENGTH} bytes each.
+     * @throws NullPointerException if {@code scaleSpace} or
+     * {@code keypoints} is {@code null}.
+     * @throws IndexOutOfBoundsException if there is no such octave or DoG
+     * image.
+     */
+    public byte[] extract(final ScaleSpace scaleSpace,
+            final int octaveIndex, final int scaleImage,
+            final KeypointBuffer keypoints) {
+        if (scaleSpace == null) {
+            throw new NullPointerException("scale space must not be null");
+        }
+        if (keypoints == null) {
+            throw new NullPointerException("keypoints must not be null");
+        }
+        Octave octave = scaleSpace.getOctaves().get(octaveIndex);
+        if (scaleImage < 0
+                || scaleImage >= octave.getDifferenceOfGaussians().size()) {
+            throw new IndexOutOfBoundsException("no DoG image "
+                    + scaleImage);
+        }
+        Image image = octave.getScaleImages().get(scaleImage);
+        GradientMap gradients = octave.getGradients(scaleImage);
+
+        final int window = CELLS * cellSize;
+        final int rows = gridSize(gradients.getHeight(), window);
+        final int cols = gridSize(gradients.getWidth(), window);
+        byte[] descriptors = new byte[rows * cols
+                * DescriptorExtractor.LENGTH];
+        if (rows == 0 || cols == 0) {
+            return descriptors;
+        }
+
+        // cells start at multiples of the step plus multiples of the
+        // cell size. If the cell size is a multiple of the step, the
+        // cells of different grid points coincide.
+        int[] rowOrigins = new int[gradients.getHeight()];
+        int[] cellRows = origins(rows, rowOrigins);
+        int[] colOrigins = new int[gradients.getWidth()];
+        int[] cellCols = origins(cols, colOrigins);
+        accumulate(gradients, cellRows, cellCols);
+
+        final double scale = image.getScale();
+        final double sigma = cellSize / CELL_WIDTH_FACTOR / scale;
+        int offset = 0;
+        for (int r = 0; r < rows; r++) {
+            int top = r * step;
+            for (int c = 0; c < cols; c++) {
+                int left = c * step;
+                int d = 0;
+                for (int cellRow = 0; cellRow < CELLS; cellRow++) {
+                    int cellRowIndex = rowOrigins[top + cellRow * cellSize];
+                    for (int cellCol = 0; cellCol < CELLS; cellCol++) {
+                        int i = (cellRowIndex * cellCols.length
+                                + colOrigins[left + cellCol * cellSize])
+                                * BINS;
+                        float weight = CELL_WEIGHTS[cellRow * CELLS + cellCol];
+                        for (int b = 0; b < BINS; b++) {
+                            descriptor[d++] = weight * cellHistograms[i + b];
+                        }
+                    }
+                }
+                DescriptorExtractor.quantize(descriptor, descriptors, offset);
+                offset += DescriptorExtractor.LENGTH;
+
+                // the window's center lies between two pixels.
+                int centerRow = top + window / 2;
+                int centerCol = left + window / 2;
+                double center = (window - 1) / 2.0;
+                keypoints.keypoint((left + center - image.getOffsetX())
+                        / scale, (top + center - image.getOffsetY()) / scale,
+                        sigma, octaveIndex, scaleImage, centerRow, centerCol,
+                        Float.NaN);
+                keypoints.setOrientation(keypoints.size() - 1, 0f);
+            }
+        }
+        return descriptors;
+    }
+
+    /**
+     * Calculates the number of grid points along one axis.
+     * @param size Size of the image along the axis.
+     * @param window Size of a descriptor along the axis.
+     * @return Number of descriptors that fit.
+     */
+    private int gridSize(final int size, final int window) {
+        if (size < window) {
+            return 0;
+        }
+        return (size - window) / step + 1;
+    }
+
+    /**
+     * Collects the start of each cell along one axis.
+     * @param points Number of grid points along the axis.
+     * @param indices Array mapping each pixel to the index of the cell
+     * starting there, filled by this method.
+     * @return Ascending start pixels of the cells.
+     */
+    private int[] origins(final int points, final int[] indices) {
+        Arrays.fill(indices, -1);
+        int count = 0;
+        for (int p = 0; p < points; p++) {
+            for (int cell = 0; cell < CELLS; cell++) {
+                int origin = p * step + cell * cellSize;
+                if (indices[origin] < 0) {
+                    indices[origin] = 0;
+                    count++;
+                }
+            }
+        }
+        int[] result = new int[count];
+        int i = 0;
+        for (int pixel = 0; pixel < indices.length; pixel++) {
+            if (indices[pixel] == 0) {
+                indices[pixel] = i;
+                result[i++] = pixel;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the orientation histograms of all cells.
+     * @param gradients Gradients to sum.
+     * @param cellRows Ascending first rows of the cells.
+     * @param cellCols Ascending first columns of the cells.
+     */
+    private void accumulate(final GradientMap gradients,
+            final int[] cellRows, final int[] cellCols) {
+        final int width = gradients.getWidth();
+        final int stride = width + 1;
+        if (prefix.length < BINS * stride) {
+            prefix = new double[BINS * stride];
+        }
+        final int cellCount = cellRows.length * cellCols.length * BINS;
+        if (cellHistograms.length < cellCount) {
+            cellHistograms = new float[cellCount];
+        }
+
+        final int columnCount = cellCols.length * BINS;
+        if (columnSums.length < columnCount) {
+            columnSums = new double[columnCount];
+        }
+        Arrays.fill(columnSums, 0, columnCount, 0.0);
+        // at most cellSize cell rows with distinct origins cover a row.
+        final int slots = Math.min(cellRows.length, cellSize);
+        if (columnSnapshots.length < slots * columnCount) {
+            columnSnapshots = new double[slots * columnCount];
+        }
+
+        // the cell rows that started but did not end yet are [first, end).
+        int first = 0;
+        int end = 0;
+        final int endRow = cellRows[cellRows.length - 1] + cellSize;
+        for (int row = cellRows[0]; row < endRow; row++) {
+            if (end < cellRows.length && cellRows[end] == row) {
+                System.arraycopy(columnSums, 0, columnSnapshots,
+                        end % slots * columnCount, columnCount);
+                end++;
+            }
+            if (first == end) {
+                continue;
+            }
+
+            prefixSums(gradients, row);
+            int i = 0;
+            for (int cc = 0; cc < cellCols.length; cc++) {
+                int from = cellCols[cc];
+                int to = from + cellSize;
+                for (int b = 0; b < BINS; b++) {
+                    int base = b * stride;
+                    columnSums[i++] += prefix[base + to] - prefix[base + from];
+                }
+            }
+
+            while (first < end && cellRows[first] + cellSize - 1 == row) {
+                int snapshot = first % slots * columnCount;
+                int cell = first * columnCount;
+                for (int k = 0; k < columnCount; k++) {
+                    cellHistograms[cell + k] = (float) (columnSums[k]
+                            - columnSnapshots[snapshot + k]);
+                }
+                first++;
+            }
+        }
+    }
+
+    /**
+     * Computes the prefix sums of the orientation bins along a row.
+     * <p>Each gradient's magnitude is distributed linearly to the two
+     * closest orientation bins.</p>
+     * @param gradients Gradients to sum.
+     * @param row Row to sum.
+     */
+    private void prefixSums(final GradientMap gradients, final int row) {
+        final int width = gradients.getWidth();
+        final int stride = width + 1;
+        final float[] magnitudes = gradients.getMagnitudes();
+        final float[] orientations = gradients.getOrientations();
+        final float binsPerRadian = (float) (BINS / TWO_PI);
+        final int offset = row * width;
+        for (int b = 0; b < BINS; b++) {
+            prefix[b * stride] = 0;
+        }
+        for (int col = 0; col < width; col++) {
+            for (int b = 0; b < BINS; b++) {
+                prefix[b * stride + col + 1] = prefix[b * stride + col];
+            }
+            float magnitude = magnitudes[offset + col];
+            if (!(magnitude > 0)) {
+                continue;
+            }
+            float bin = orientations[offset + col] * binsPerRadian;
+            if (bin < 0) {
+                bin += BINS;
+            }
+            int b0 = (int) bin;
+            float fraction = bin - b0;
+            if (b0 >= BINS) {
+                b0 -= BINS;
+            }
+            int b1 = b0 + 1;
+            if (b1 == BINS) {
+                b1 = 0;
+            }
+            float upper = magnitude * fraction;
+            prefix[b0 * stride + col + 1] += magnitude - upper;
+            prefix[b1 * stride + col + 1] += upper;
+        }
+    }
+
+    /**
+     * Calculates the gaussian weight of each cell.
+     * <p>The gaussian has half the width of the descriptor as sigma, as in
+     * {@link DescriptorExtractor}, and is evaluated at the cell centers.
+     * In units of cells its sigma is two, independent of the cell size.</p>
+     * @return Weights of the cells, row by row.
+     */
+    private static float[] cellWeights() {
+        float[] weights = new float[CELLS * CELLS];
+        double center = (CELLS - 1) / 2.0;
+        double sigma = CELLS / 2.0;
+        for (int row = 0; row < CELLS; row++) {
+            for (int col = 0; col < CELLS; col++) {
+                double dr = row - center;
+                double dc = col - center;
+                weights[row * CELLS + col] = (float) Math.exp(
+                        -(dr * dr + dc * dc) / (2 * sigma * sigma));
+            }
+        }
+        return weights;
+    }
+}
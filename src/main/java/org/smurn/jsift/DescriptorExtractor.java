@@ -0,0 +1,311 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+
+/**
+ * Computes Lowe's 128 element descriptors of keypoints.
+ * <p>The window around the keypoint is rotated to the keypoint's
+ * orientation and divided into 4x4 cells, each three times the keypoint's
+ * scale wide. The gradients in the window are weighted by a gaussian with
+ * half the window's width and distributed into an 8 bin orientation
+ * histogram per cell by trilinear interpolation. The resulting vector is
+ * normalized, clipped at 0.2 and normalized again, as proposed by Lowe.</p>
+ * <p>The descriptor is quantized to one unsigned byte per element by
+ * scaling with 512 and saturating at 255, so a descriptor takes 128 bytes.
+ * The bytes are written into an array provided by the caller, which lets
+ * many descriptors share one flat array. Read the elements with
+ * {@code descriptors[i] & 0xFF}.</p>
+ * <p>The gradients are taken from the cached maps of
+ * {@link Octave#getGradients(int)}. The gaussian is separable and
+ * evaluated once per row and column of the window. The histogram and the
+ * weight tables are allocated once, so computing a descriptor does not
+ * allocate memory.</p>
+ * <p>Instances are not thread-safe, use one instance per thread.</p>
+ */
+public final class DescriptorExtractor {
+
+    /** Number of elements (bytes) of a descriptor. */
+    public static final int LENGTH = 128;
+    /** Number of cells along each side of the window. */
+    private static final int CELLS = 4;
+    /** Number of orientation bins per cell. */
+    private static final int BINS = 8;
+    /** Width of a cell relative to the keypoint's scale. */
+    private static final double CELL_WIDTH_FACTOR = 3.0;
+    /** Value at which the normalized elements are clipped. */
+    private static final float CLIP = 0.2f;
+    /** Factor from normalized elements to bytes. */
+    private static final float QUANTIZATION = 512f;
+    /** Largest unsigned byte. */
+    private static final int MAX_BYTE = 255;
+    /** Cells per side with one cell of padding on both sides. */
+    private static final int PADDED_CELLS = CELLS + 2;
+    /** Orientation bins with two bins of padding for wrapping. */
+    private static final int PADDED_BINS = BINS + 2;
+    private static final double TWO_PI = 2 * Math.PI;
+    /** Padded histogram, indexed by row, column and orientation. */
+    private final float[] histogram =
+            new float[PADDED_CELLS * PADDED_CELLS * PADDED_BINS];
+    /** Unquantized descriptor. */
+    private final float[] descriptor = new float[LENGTH];
+    /** Gaussian weights of the rows of the window, grown as needed. */
+    private float[] rowWeights = new float[0];
+    /** Gaussian weights of the columns of the window, grown as needed. */
+    private float[] colWeights = new float[0];
+
+    /**
+     * Creates an instance.
+     */
+    public DescriptorExtractor() {
+        // empty
+    }
+
+    /**
+     * Computes the descriptor of a keypoint.
+     * @param octave Octave the keypoint was found in.
+     * @param keypoints Buffer containing the keypoint, which must have an
+     * orientation (see {@link OrientationAssigner}).
+     * @param index Index of the keypoint.
+     * @param descriptors Array to write the descriptor to.
+     * @param offset Index of the first of the {@link #LENGTH} elements to
+     * write.
+     * @throws NullPointerException if {@code octave}, {@code keypoints} or
+     * {@code descriptors} is {@code null}.
+     * @throws IndexOutOfBoundsException if there is no such keypoint or if
+     * the descriptor does not fit into {@code descriptors} at
+     * {@code offset}.
+     * @throws IllegalArgumentException if the keypoint has no orientation.
+     */
+    public void extract(final Octave octave, final KeypointBuffer keypoints,
+            final int index, final byte[] descriptors, final int offset) {
+        if (octave == null) {
+            throw new NullPointerException("octave must not be null");
+        }
+        if (keypoints == null) {
+            throw new NullPointerException("keypoints must not be null");
+        }
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        if (offset < 0 || offset > descriptors.length - LENGTH) {
+            throw new IndexOutOfBoundsException("no room for a descriptor at "
+                    + offset);
+        }
+        float orientation = keypoints.getOrientation(index);
+        if (Float.isNaN(orientation)) {
+            throw new IllegalArgumentException("keypoint " + index
+                    + " has no orientation");
+        }
+
+        double sigma = keypoints.getSigma(index);
+        int imageIndex = octave.getClosestScaleImage(sigma);
+        Image image = octave.getScaleImages().get(imageIndex);
+        double scale = image.getScale();
+        accumulate(octave.getGradients(imageIndex),
+                keypoints.getY(index) * scale + image.getOffsetY(),
+                keypoints.getX(index) * scale + image.getOffsetX(),
+                CELL_WIDTH_FACTOR * sigma * scale, orientation);
+        unpad();
+        quantize(descriptor, descriptors, offset);
+    }
+
+    /**
+     * Fills the padded histogram from the gradients around a point.
+     * @param gradients Gradients to sample.
+     * @param row Sub-pixel row of the center of the window.
+     * @param col Sub-pixel column of the center of the window.
+     * @param cellWidth Width of a cell in pixels.
+     * @param orientation Orientation of the window in radians.
+     */
+    private void accumulate(final GradientMap gradients, final double row,
+            final double col, final double cellWidth,
+            final float orientation) {
+
+        final int width = gradients.getWidth();
+        final int height = gradients.getHeight();
+        // half the diagonal of the window, including the interpolation
+        // margin of half a cell on each side.
+        final int radius = (int) Math.min(
+                Math.round(cellWidth * Math.sqrt(2) * (CELLS + 1) / 2),
+                (long) width + height);
+        final int fromRow = Math.max((int) Math.round(row) - radius, 0);
+        final int toRow = Math.min((int) Math.round(row) + radius,
+                height - 1);
+        final int fromCol = Math.max((int) Math.round(col) - radius, 0);
+        final int toCol = Math.min((int) Math.round(col) + radius, width - 1);
+        Arrays.fill(histogram, 0f);
+        if (fromRow > toRow || fromCol > toCol) {
+            return;
+        }
+
+        final double windowSigma = cellWidth * CELLS / 2;
+        rowWeights = fillWeights(rowWeights, fromRow, toRow, row,
+                windowSigma);
+        colWeights = fillWeights(colWeights, fromCol, toCol, col,
+                windowSigma);
+
+        final float cos = (float) (Math.cos(orientation) / cellWidth);
+        final float sin = (float) (Math.sin(orientation) / cellWidth);
+        final float binsPerRadian = (float) (BINS / TWO_PI);
+        // moves the window's center to the center of the cell grid.
+        final float center = CELLS / 2f - 0.5f;
+        final float[] magnitudes = gradients.getMagnitudes();
+        final float[] orientations = gradients.getOrientations();
+
+        for (int r = fromRow; r <= toRow; r++) {
+            final float dy = (float) (r - row);
+            final float rowWeight = rowWeights[r - fromRow];
+            final int offset = r * width;
+            for (int c = fromCol; c <= toCol; c++) {
+                final float dx = (float) (c - col);
+                final float rowBin = dy * cos - dx * sin + center;
+                final float colBin = dx * cos + dy * sin + center;
+                if (!(rowBin > -1 && rowBin < CELLS
+                        && colBin > -1 && colBin < CELLS)) {
+                    continue;
+                }
+                final float w = rowWeight * colWeights[c - fromCol]
+                        * magnitudes[offset + c];
+                if (!(w > 0)) {
+                    continue;
+                }
+                float bin = (orientations[offset + c] - orientation)
+                        * binsPerRadian;
+                while (bin < 0) {
+                    bin += BINS;
+                }
+                while (bin >= BINS) {
+                    bin -= BINS;
+                }
+                distribute(rowBin, colBin, bin, w);
+            }
+        }
+    }
+
+    /**
+     * Distributes a sample to the eight surrounding histogram bins.
+     * @param rowBin Row of the sample in cells, within (-1, 4).
+     * @param colBin Column of the sample in cells, within (-1, 4).
+     * @param bin Orientation of the sample in bins, within [0, 8].
+     * @param value Weighted magnitude of the sample.
+     */
+    private void distribute(final float rowBin, final float colBin,
+            final float bin, final float value) {
+        // shifting by one before truncating rounds towards negative
+        // infinity, and also moves the cell into the padded histogram.
+        final int r0 = (int) (rowBin + 1);
+        final int c0 = (int) (colBin + 1);
+        final int o0 = (int) bin;
+        final float fr = rowBin + 1 - r0;
+        final float fc = colBin + 1 - c0;
+        final float fo = bin - o0;
+
+        final float v1 = value * fr;
+        final float v0 = value - v1;
+        final float v11 = v1 * fc;
+        final float v10 = v1 - v11;
+        final float v01 = v0 * fc;
+        final float v00 = v0 - v01;
+
+        int i = (r0 * PADDED_CELLS + c0) * PADDED_BINS + o0;
+        float v = v00 * fo;
+        histogram[i] += v00 - v;
+        histogram[i + 1] += v;
+        i += PADDED_BINS;
+        v = v01 * fo;
+        histogram[i] += v01 - v;
+        histogram[i + 1] += v;
+        i += (PADDED_CELLS - 1) * PADDED_BINS;
+        v = v10 * fo;
+        histogram[i] += v10 - v;
+        histogram[i + 1] += v;
+        i += PADDED_BINS;
+        v = v11 * fo;
+        histogram[i] += v11 - v;
+        histogram[i + 1] += v;
+    }
+
+    /**
+     * Copies the inner cells of the padded histogram into the descriptor,
+     * wrapping the orientation padding around.
+     */
+    private void unpad() {
+        int d = 0;
+        for (int r = 1; r <= CELLS; r++) {
+            for (int c = 1; c <= CELLS; c++) {
+                int i = (r * PADDED_CELLS + c) * PADDED_BINS;
+                histogram[i] += histogram[i + BINS];
+                histogram[i + 1] += histogram[i + BINS + 1];
+                System.arraycopy(histogram, i, descriptor, d, BINS);
+                d += BINS;
+            }
+        }
+    }
+
+    /**
+     * Calculates the gaussian weights along one axis of the window.
+     * @param weights Array to reuse if it is large enough.
+     * @param from First pixel of the window.
+     * @param to Last pixel of the window.
+     * @param center Sub-pixel center of the window.
+     * @param sigma Sigma of the gaussian.
+     * @return Array with the weight of pixel {@code from+i} at {@code i}.
+     */
+    private static float[] fillWeights(final float[] weights, final int from,
+            final int to, final double center, final double sigma) {
+        float[] result = weights;
+        if (result.length < to - from + 1) {
+            result = new float[to - from + 1];
+        }
+        final double factor = -1.0 / (2.0 * sigma * sigma);
+        for (int i = from; i <= to; i++) {
+            double d = i - center;
+            result[i - from] = (float) Math.exp(factor * d * d);
+        }
+        return result;
+    }
+
+    /**
+     * Normalizes, clips, normalizes again and quantizes a descriptor.
+     * @param descriptor Unnormalized descriptor, modified by this method.
+     * @param descriptors Array to write the quantized descriptor to.
+     * @param offset Index of the first element to write.
+     */
+    static void quantize(final float[] descriptor, final byte[] descriptors,
+            final int offset) {
+        double sum = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            sum += descriptor[i] * descriptor[i];
+        }
+        final float clip = (float) (CLIP * Math.sqrt(sum));
+        sum = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            float value = Math.min(descriptor[i], clip);
+            descriptor[i] = value;
+            sum += value * value;
+        }
+        float factor = 0;
+        if (sum > 0) {
+            factor = (float) (QUANTIZATION / Math.sqrt(sum));
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            int value = (int) (descriptor[i] * factor + 0.5f);
+            descriptors[offset + i] = (byte) Math.min(value, MAX_BYTE);
+        }
+    }
+}
@@ -15,10 +15,7 @@
  */
 package org.smurn.jsift;
 
-import java.awt.geom.Point2D;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -26,97 +23,347 @@ import java.util.List;
  * The strategy searches all pixels in the difference-of-gaussian images
  * and returns the positions of those who's value is either smaller or larger
  * than all 26 neighboring pixels.
+ * <p>Optionally, pixels with a low absolute value are rejected before they
+ * are compared with their neighbors. Lowe discards extrema whose
+ * interpolated contrast is below a threshold {@code t} and uses the
+ * pre-threshold {@code 0.5*t/s} (where {@code s} is the number of scales
+ * per octave) to skip most of the pixels early. Since nearly all DoG pixels
+ * are close to zero, this avoids the neighbor comparisons for the majority
+ * of the image.</p>
+ * <p>Extrema on edges are poorly localized along the edge. With an edge
+ * ratio {@code r}, extrema whose principal curvatures differ by a factor
+ * of {@code r} or more are rejected, using the 2x2 hessian of the DoG as
+ * proposed by Lowe. The hessian is computed from the neighbors that were
+ * already loaded for the extremum check.</p>
+ * <p>If a {@link KeypointRefiner} is given, the extrema are located with
+ * sub-pixel and sub-scale accuracy. Unstable extrema and, if the threshold
+ * is enabled, extrema whose interpolated value is below {@code t/s} are
+ * rejected.</p>
+ * <p>Instances are thread-safe.</p>
  */
-public class ExtremaDetector implements KeypointDetector {
+public class ExtremaDetector implements SinkKeypointDetector {
+
+    private static final double PRE_THRESHOLD_FACTOR = 0.5;
+    /** Contrast threshold, zero if disabled. */
+    private final double contrastThreshold;
+    /** Edge ratio, zero if disabled. */
+    private final double edgeRatio;
+    /** Bound for {@code trace^2/det} of the hessian, derived from the ratio. */
+    private final float edgeLimit;
+    /** Refiner for the extrema, {@code null} if disabled. */
+    private final KeypointRefiner refiner;
+
+    /**
+     * Creates an instance that reports all extrema.
+     */
+    public ExtremaDetector() {
+        this(0.0);
+    }
+
+    /**
+     * Creates an instance that rejects low-contrast pixels.
+     * @param contrastThreshold Contrast threshold {@code t}. Pixels with an
+     * absolute value smaller than {@code 0.5*t/s} are not considered
+     * extrema. Lowe suggests 0.03 for pixel values in the range 0 to 1.
+     * Zero disables the threshold.
+     * @throws IllegalArgumentException if {@code contrastThreshold} is
+     * negative.
+     */
+    public ExtremaDetector(final double contrastThreshold) {
+        this(contrastThreshold, null);
+    }
+
+    /**
+     * Creates an instance that refines the extrema.
+     * @param contrastThreshold Contrast threshold {@code t}. Pixels with an
+     * absolute value smaller than {@code 0.5*t/s} are not considered
+     * extrema and refined extrema with an absolute interpolated value smaller
+     * than {@code t/s} are rejected. Zero disables the threshold.
+     * @param refiner Refiner to locate the extrema with sub-pixel accuracy,
+     * or {@code null} to report the pixel positions.
+     * @throws IllegalArgumentException if {@code contrastThreshold} is
+     * negative.
+     */
+    public ExtremaDetector(final double contrastThreshold,
+            final KeypointRefiner refiner) {
+        this(contrastThreshold, 0.0, refiner);
+    }
+
+    /**
+     * Creates an instance that rejects extrema on edges.
+     * @param contrastThreshold Contrast threshold {@code t}, see
+     * {@link #ExtremaDetector(double, KeypointRefiner)}. Zero disables the
+     * threshold.
+     * @param edgeRatio Maximal ratio {@code r} between the larger and the
+     * smaller principal curvature. Lowe suggests 10. Zero disables the
+     * edge test.
+     * @param refiner Refiner to locate the extrema with sub-pixel accuracy,
+     * or {@code null} to report the pixel positions.
+     * @throws IllegalArgumentException if {@code contrastThreshold} is
+     * negative or if {@code edgeRatio} is neither zero nor at least one.
+     */
+    public ExtremaDetector(final double contrastThreshold,
+            final double edgeRatio, final KeypointRefiner refiner) {
+        if (!(contrastThreshold >= 0)) {
+            throw new IllegalArgumentException(
+                    "contrast threshold must not be negative");
+        }
+        if (!(edgeRatio == 0 || edgeRatio >= 1)) {
+            throw new IllegalArgumentException(
+                    "edge ratio must be zero or at least one");
+        }
+        this.contrastThreshold = contrastThreshold;
+        this.edgeRatio = edgeRatio;
+        if (edgeRatio == 0) {
+            this.edgeLimit = Float.POSITIVE_INFINITY;
+        } else {
+            this.edgeLimit = (float) ((edgeRatio + 1) * (edgeRatio + 1)
+                    / edgeRatio);
+        }
+        this.refiner = refiner;
+    }
+
+    /**
+     * Gets the contrast threshold.
+     * @return Contrast threshold {@code t}, zero if disabled.
+     */
+    public double getContrastThreshold() {
+        return contrastThreshold;
+    }
+
+    /**
+     * Gets the edge ratio.
+     * @return Edge ratio {@code r}, zero if disabled.
+     */
+    public double getEdgeRatio() {
+        return edgeRatio;
+    }
 
     @Override
     public Collection<ScaleSpacePoint> detectKeypoints(
             final ScaleSpace scaleSpace) {
 
+        PointListSink sink = new PointListSink();
+        detectKeypoints(scaleSpace, sink);
+        return sink.getPoints();
+    }
+
+    @Override
+    public void detectKeypoints(final ScaleSpace scaleSpace,
+            final KeypointSink sink) {
+
         if (scaleSpace == null) {
             throw new NullPointerException("scale space must not be null");
         }
+        if (sink == null) {
+            throw new NullPointerException("sink must not be null");
+        }
 
-        List<ScaleSpacePoint> points = new ArrayList<ScaleSpacePoint>();
-        for (Octave octave : scaleSpace.getOctaves()) {
-
-            int dogCount = octave.getDifferenceOfGaussians().size();
-            for (int i = 1; i < dogCount - 1; i++) {
-                Collection<ScaleSpacePoint> pointsOnThisScale = detectKeypoints(
-                        octave.getDifferenceOfGaussians().get(i - 1),
-                        octave.getDifferenceOfGaussians().get(i),
-                        octave.getDifferenceOfGaussians().get(i + 1));
-                points.addAll(pointsOnThisScale);
+        IntList hits = new IntList();
+        double[] refined = new double[KeypointRefiner.RESULT_LENGTH];
+        List<Octave> octaves = scaleSpace.getOctaves();
+        for (int o = 0; o < octaves.size(); o++) {
+            Octave octave = octaves.get(o);
+            List<Image> doGs = octave.getDifferenceOfGaussians();
+            float threshold = preThreshold(octave);
+            for (int i = 1; i < doGs.size() - 1; i++) {
+                Image center = doGs.get(i);
+                hits.clear();
+                detectKeypoints(doGs.get(i - 1), center, doGs.get(i + 1),
+                        1, center.getHeight() - 1, threshold, hits);
+                emit(o, octave, i, hits, refined, sink);
             }
         }
-
-        return points;
     }
 
     /**
      * Detects extrema on one scale.
-     * @param low   The DoG at one scale lower.
+     * <p>Appends the row and the column of each extremum to {@code hits}.
+     * The extrema are appended row by row, from left to right.</p>
+     * @param low The DoG at one scale lower.
      * @param center The DoG on which to detect the extrema.
      * @param high The DoG at one scale higher.
-     * @return The extremas.
+     * @param fromRow First row to search, at least one.
+     * @param toRow Row after the last row to search, at most
+     * {@code center.getHeight() - 1}.
+     * @param threshold Pixels with an absolute value smaller than this
+     * are skipped (see {@link #preThreshold(Octave)}).
+     * @param hits List to append the extrema to.
      */
-    private Collection<ScaleSpacePoint> detectKeypoints(
-            Image low, Image center, Image high) {
+    void detectKeypoints(final Image low, final Image center,
+            final Image high, final int fromRow, final int toRow,
+            final float threshold, final IntList hits) {
 
-        List<ScaleSpacePoint> points = new LinkedList<ScaleSpacePoint>();
-        for (int row = 1; row < center.getHeight() - 1; row++) {
-            for (int col = 1; col < center.getWidth() - 1; col++) {
+        final Image l = contiguous(low);
+        final Image c = contiguous(center);
+        final Image h = contiguous(high);
+        final int lastCol = center.getWidth() - 1;
+        final boolean edgeTest = edgeRatio != 0;
 
-                float value = center.getPixel(row, col);
+        for (int row = fromRow; row < toRow; row++) {
+            final float[] l0 = l.getRowArray(row - 1);
+            final float[] l1 = l.getRowArray(row);
+            final float[] l2 = l.getRowArray(row + 1);
+            final float[] c0 = c.getRowArray(row - 1);
+            final float[] c1 = c.getRowArray(row);
+            final float[] c2 = c.getRowArray(row + 1);
+            final float[] h0 = h.getRowArray(row - 1);
+            final float[] h1 = h.getRowArray(row);
+            final float[] h2 = h.getRowArray(row + 1);
+
+            for (int col = 1; col < lastCol; col++) {
+                final float v = c1[col];
+                if (Math.abs(v) < threshold) {
+                    continue;
+                }
+                final int w = col - 1;
+                final int e = col + 1;
+
+                // Since all neighbors need to be on the same 'side' for an
+                // extremum, the left neighbor decides whether we might face a
+                // minimum or a maximum. The in-scale neighbors are compared
+                // first since they are most likely to reject the pixel.
+                boolean isExtremum;
+                if (v > c1[w]) {
+                    isExtremum = v > c1[e]
+                            && v > c0[w] && v > c0[col] && v > c0[e]
+                            && v > c2[w] && v > c2[col] && v > c2[e]
+                            && v > l1[col] && v > h1[col]
+                            && v > l0[w] && v > l0[col] && v > l0[e]
+                            && v > l1[w] && v > l1[e]
+                            && v > l2[w] && v > l2[col] && v > l2[e]
+                            && v > h0[w] && v > h0[col] && v > h0[e]
+                            && v > h1[w] && v > h1[e]
+                            && v > h2[w] && v > h2[col] && v > h2[e];
+                } else if (v < c1[w]) {
+                    isExtremum = v < c1[e]
+                            && v < c0[w] && v < c0[col] && v < c0[e]
+                            && v < c2[w] && v < c2[col] && v < c2[e]
+                            && v < l1[col] && v < h1[col]
+                            && v < l0[w] && v < l0[col] && v < l0[e]
+                            && v < l1[w] && v < l1[e]
+                            && v < l2[w] && v < l2[col] && v < l2[e]
+                            && v < h0[w] && v < h0[col] && v < h0[e]
+                            && v < h1[w] && v < h1[e]
+                            && v < h2[w] && v < h2[col] && v < h2[e];
+                } else {
+                    isExtremum = false;
+                }
 
-                // Since all neighbors all need to be on the same 'side' for an
-                // extremum we can just take an arbitrary neighbor to determine
-                // if we might face a minimum or a maximum.                
-                float sign = Math.signum(value - center.getPixel(row, col - 1));
-                if (sign == 0.0f) {
-                    break;
+                if (isExtremum && edgeTest) {
+                    isExtremum = !isEdge(c0, c1, c2, col);
                 }
-                value *= sign;
-                boolean isExtremum = true;
-                isExtremum &= low.getPixel(row - 1, col - 1) * sign < value;
-                isExtremum &= low.getPixel(row - 1, col) * sign < value;
-                isExtremum &= low.getPixel(row - 1, col + 1) * sign < value;
-                isExtremum &= low.getPixel(row, col - 1) * sign < value;
-                isExtremum &= low.getPixel(row, col) * sign < value;
-                isExtremum &= low.getPixel(row, col + 1) * sign < value;
-                isExtremum &= low.getPixel(row + 1, col - 1) * sign < value;
-                isExtremum &= low.getPixel(row + 1, col) * sign < value;
-                isExtremum &= low.getPixel(row + 1, col + 1) * sign < value;
-
-                isExtremum &= center.getPixel(row - 1, col - 1) * sign < value;
-                isExtremum &= center.getPixel(row - 1, col) * sign < value;
-                isExtremum &= center.getPixel(row - 1, col + 1) * sign < value;
-                isExtremum &= center.getPixel(row, col - 1) * sign < value;
-                isExtremum &= center.getPixel(row, col + 1) * sign < value;
-                isExtremum &= center.getPixel(row + 1, col - 1) * sign < value;
-                isExtremum &= center.getPixel(row + 1, col) * sign < value;
-                isExtremum &= center.getPixel(row + 1, col + 1) * sign < value;
-
-                isExtremum &= high.getPixel(row - 1, col - 1) * sign < value;
-                isExtremum &= high.getPixel(row - 1, col) * sign < value;
-                isExtremum &= high.getPixel(row - 1, col + 1) * sign < value;
-                isExtremum &= high.getPixel(row, col - 1) * sign < value;
-                isExtremum &= high.getPixel(row, col) * sign < value;
-                isExtremum &= high.getPixel(row, col + 1) * sign < value;
-                isExtremum &= high.getPixel(row + 1, col - 1) * sign < value;
-                isExtremum &= high.getPixel(row + 1, col) * sign < value;
-                isExtremum &= high.getPixel(row + 1, col + 1) * sign < value;
 
                 if (isExtremum) {
-                    Point2D coords = center.toOriginal(
-                            new Point2D.Double(row, col));
-                    ScaleSpacePoint point = new ScaleSpacePoint(
-                            coords.getX(), coords.getY(), center.getSigma());
-                    points.add(point);
+                    hits.add(row);
+                    hits.add(col);
                 }
             }
         }
+    }
+
+    /**
+     * Checks if an extremum lies on an edge.
+     * <p>An edge has a large principal curvature across it and a small one
+     * along it. The ratio of the eigenvalues of the hessian is bounded using
+     * its trace and determinant, which also rejects saddle points.</p>
+     * @param c0 Row above the extremum.
+     * @param c1 Row of the extremum.
+     * @param c2 Row below the extremum.
+     * @param col Column of the extremum.
+     * @return {@code true} if the extremum is to be rejected. Only valid if
+     * the edge ratio is not zero.
+     */
+    final boolean isEdge(final float[] c0, final float[] c1,
+            final float[] c2, final int col) {
+        final float v = c1[col];
+        final int w = col - 1;
+        final int e = col + 1;
+        final float dxx = c1[e] + c1[w] - 2 * v;
+        final float dyy = c2[col] + c0[col] - 2 * v;
+        final float dxy = (c2[e] - c2[w] - c0[e] + c0[w]) / 4;
+        final float trace = dxx + dyy;
+        final float det = dxx * dyy - dxy * dxy;
+        return !(det > 0 && trace * trace < edgeLimit * det);
+    }
 
-        return points;
+    /**
+     * Gets the absolute value a pixel needs to have to be considered.
+     * @param octave Octave to search.
+     * @return Pre-threshold {@code 0.5*t/s}.
+     */
+    float preThreshold(final Octave octave) {
+        return (float) (PRE_THRESHOLD_FACTOR * contrastThreshold
+                / octave.getScalesPerOctave());
+    }
+
+    /**
+     * Passes the extrema found on one scale to a sink, refining them if
+     * a refiner is set.
+     * @param octaveIndex Index of the octave the extrema were found in.
+     * @param octave Octave the extrema were found in.
+     * @param scale Index of the DoG image the extrema were found in.
+     * @param hits Rows and columns of the extrema.
+     * @param refined Buffer for the refiner with at least
+     * {@link KeypointRefiner#RESULT_LENGTH} elements.
+     * @param sink Sink to pass the keypoints to.
+     */
+    void emit(final int octaveIndex, final Octave octave, final int scale,
+            final IntList hits, final double[] refined,
+            final KeypointSink sink) {
+
+        List<Image> doGs = octave.getDifferenceOfGaussians();
+        if (refiner == null) {
+            Image center = doGs.get(scale);
+            double offsetX = center.getOffsetX();
+            double offsetY = center.getOffsetY();
+            double imageScale = center.getScale();
+            double sigma = center.getSigma();
+            for (int hit = 0; hit < hits.size(); hit += 2) {
+                int row = hits.get(hit);
+                int col = hits.get(hit + 1);
+                sink.keypoint((col - offsetX) / imageScale,
+                        (row - offsetY) / imageScale, sigma, octaveIndex,
+                        scale, row, col, center.getPixel(row, col));
+            }
+            return;
+        }
+
+        int scalesPerOctave = octave.getScalesPerOctave();
+        double minContrast = contrastThreshold / scalesPerOctave;
+        for (int hit = 0; hit < hits.size(); hit += 2) {
+            if (!refiner.refine(doGs, scale, hits.get(hit),
+                    hits.get(hit + 1), refined)) {
+                continue;
+            }
+            if (Math.abs(refined[KeypointRefiner.VALUE]) < minContrast) {
+                continue;
+            }
+            int refinedScale = (int) refined[KeypointRefiner.SCALE];
+            Image image = doGs.get(refinedScale);
+            double sigma = image.getSigma() * Math.pow(2.0,
+                    refined[KeypointRefiner.SCALE_OFFSET] / scalesPerOctave);
+            sink.keypoint(
+                    (refined[KeypointRefiner.COLUMN] - image.getOffsetX())
+                    / image.getScale(),
+                    (refined[KeypointRefiner.ROW] - image.getOffsetY())
+                    / image.getScale(),
+                    sigma, octaveIndex, refinedScale,
+                    (int) refined[KeypointRefiner.SAMPLE_ROW],
+                    (int) refined[KeypointRefiner.SAMPLE_COLUMN],
+                    (float) refined[KeypointRefiner.VALUE]);
+        }
+    }
+
+    /**
+     * Makes sure the image's row arrays have a column stride of one.
+     * @param image Image to check.
+     * @return {@code image} or a copy of it.
+     */
+    static Image contiguous(final Image image) {
+        if (image.getColumnStride() == 1) {
+            return image;
+        }
+        return new Image(image);
     }
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds the scale-spaces of a sequence of equally sized frames, such as
+ * the frames of a video stream.
+ * <p>All images of the scale-space, the filter kernels and the scratch
+ * buffers are allocated once when the pipeline is created. Each call to
+ * {@link #process(Image)} overwrites the images of the previous frame, so
+ * that processing a frame does not allocate memory. Gradients that were
+ * requested from the octaves are recomputed into their arrays when
+ * requested again.</p>
+ * <p>The scale-space is the same as the one {@link ScaleSpaceFactoryImpl}
+ * creates from {@link LinearUpScalingGaussianFilter} (or
+ * {@link IdentityUpScaler}), {@link StridedSubsampler},
+ * {@link GaussianFilter} and {@link OctaveFactoryImpl}.</p>
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class FramePipeline {
+
+    /** Blur of the first scale-level as proposed by Lowe. */
+    private static final double LOWE_INITIAL_SIGMA = 0.8;
+    private static final int ADDITIONAL_SCALES = 2;
+    /** Height of the frames. */
+    private final int height;
+    /** Width of the frames. */
+    private final int width;
+    /** Sigma of the first scale-image of the first octave. */
+    private final double initialSigma;
+    /** Whether the first octave is up-scaled. */
+    private final boolean upScale;
+    /** Scale-images indexed by octave and scale. */
+    private final Image[][] scaleImages;
+    /** Difference-of-gaussian images indexed by octave and scale. */
+    private final Image[][] doGs;
+    /** Kernels to create scale-image i from i-1, indexed by octave and i. */
+    private final GaussianKernel[][] kernels;
+    /** Scale-space that is updated with each frame. */
+    private final ScaleSpace scaleSpace;
+    /** Scratch buffer shared by all filter operations. */
+    private final double[] scratch;
+    /** Kernel for the first scale-image, depends on the frame's sigma. */
+    private GaussianKernel firstKernel;
+    /** Sigma of the frame {@code firstKernel} was built for. */
+    private double firstKernelFrameSigma;
+
+    /**
+     * Creates a pipeline that up-scales the frames and uses Lowe's
+     * initial sigma.
+     * @param height Height of the frames.
+     * @param width Width of the frames.
+     * @param scalesPerOctave Number of scales per octave. Lowe suggests
+     * to use three.
+     * @throws IllegalArgumentException if {@code height}, {@code width} or
+     * {@code scalesPerOctave} is smaller than one.
+     */
+    public FramePipeline(final int height, final int width,
+            final int scalesPerOctave) {
+        this(height, width, scalesPerOctave, LOWE_INITIAL_SIGMA, true);
+    }
+
+    /**
+     * Creates a pipeline.
+     * @param height Height of the frames.
+     * @param width Width of the frames.
+     * @param scalesPerOctave Number of scales per octave. Lowe suggests
+     * to use three.
+     * @param initialSigma Sigma of the first scale in the first octave in
+     * reference to the original image (see {@link ScaleSpaceFactoryImpl}).
+     * @param upScale If {@code true} the first octave is built from the
+     * up-scaled frame, otherwise the frame is used at its native resolution.
+     * @throws IllegalArgumentException if {@code height}, {@code width} or
+     * {@code scalesPerOctave} is smaller than one or if {@code initialSigma}
+     * is not strictly positive.
+     */
+    public FramePipeline(final int height, final int width,
+            final int scalesPerOctave, final double initialSigma,
+            final boolean upScale) {
+        if (height < 1 || width < 1) {
+            throw new IllegalArgumentException(
+                    "frames must be at least one pixel in width and height");
+        }
+        if (scalesPerOctave < 1) {
+            throw new IllegalArgumentException(
+                    "Need at least one scale per octave");
+        }
+        if (initialSigma <= 0) {
+            throw new IllegalArgumentException(
+                    "initial sigma must be larger than zero");
+        }
+        this.height = height;
+        this.width = width;
+        this.initialSigma = initialSigma;
+        this.upScale = upScale;
+
+        int octaveHeight = height;
+        int octaveWidth = width;
+        double scale = 1.0;
+        if (upScale) {
+            octaveHeight = 2 * height - 1;
+            octaveWidth = 2 * width - 1;
+            scale = 2.0;
+        }
+
+        int scratchSize;
+        if (upScale) {
+            scratchSize = LinearUpScalingGaussianFilter.scratchSize(
+                    height, octaveWidth);
+        } else {
+            scratchSize = GaussianFilter.scratchSize(height, width);
+        }
+
+        List<Image[]> scaleImageList = new ArrayList<Image[]>();
+        List<Image[]> doGList = new ArrayList<Image[]>();
+        List<GaussianKernel[]> kernelList = new ArrayList<GaussianKernel[]>();
+        List<Octave> octaves = new ArrayList<Octave>();
+        int scaleCount = scalesPerOctave + ADDITIONAL_SCALES + 1;
+        Image startImage = new Image(octaveHeight, octaveWidth, initialSigma,
+                scale, 0.0, 0.0);
+        while (true) {
+            Image[] scales = new Image[scaleCount];
+            Image[] differences = new Image[scaleCount - 1];
+            GaussianKernel[] octaveKernels = new GaussianKernel[scaleCount];
+            double baseSigma = startImage.getSigma();
+            scales[0] = startImage;
+            for (int i = 1; i < scaleCount; i++) {
+                double sigma = baseSigma
+                        * Math.pow(2.0, (double) i / scalesPerOctave);
+                scales[i] = new Image(octaveHeight, octaveWidth, sigma,
+                        scale, 0.0, 0.0);
+                octaveKernels[i] = new GaussianKernel(
+                        GaussianKernel.filterSigma(scales[i - 1].getSigma(),
+                        sigma, scale));
+            }
+            for (int i = 0; i < scaleCount - 1; i++) {
+                double meanSigma = Math.exp((Math.log(scales[i + 1].getSigma())
+                        + Math.log(scales[i].getSigma())) / 2.0);
+                differences[i] = new Image(octaveHeight, octaveWidth,
+                        meanSigma, scale, 0.0, 0.0);
+            }
+            scaleImageList.add(scales);
+            doGList.add(differences);
+            kernelList.add(octaveKernels);
+            octaves.add(new Octave(Arrays.asList(scales),
+                    Arrays.asList(differences)));
+            scratchSize = Math.max(scratchSize,
+                    GaussianFilter.scratchSize(octaveHeight, octaveWidth));
+
+            // the next octave starts with a view of the scale-image which
+            // has twice the sigma, so it is updated with each frame.
+            Image next = new StridedSubsampler().downScale(
+                    scales[scalesPerOctave]);
+            if (next.getWidth() >= octaveWidth
+                    && next.getHeight() >= octaveHeight) {
+                break;
+            }
+            startImage = next;
+            octaveHeight = next.getHeight();
+            octaveWidth = next.getWidth();
+            scale = next.getScale();
+        }
+
+        this.scaleImages = scaleImageList.toArray(
+                new Image[scaleImageList.size()][]);
+        this.doGs = doGList.toArray(new Image[doGList.size()][]);
+        this.kernels = kernelList.toArray(
+                new GaussianKernel[kernelList.size()][]);
+        this.scaleSpace = new ScaleSpace(octaves);
+        this.scratch = new double[scratchSize];
+    }
+
+    /**
+     * Builds the scale-space of a frame.
+     * <p>The returned scale-space is the same instance for every frame. Its
+     * images are overwritten by the next call to this method.</p>
+     * @param frame Frame with the size given when creating this pipeline
+     * and without a coordinate transformation (scale one, no offset).
+     * @return Scale-space of the frame.
+     * @throws NullPointerException if {@code frame} is {@code null}.
+     * @throws IllegalArgumentException if the frame's size does not match
+     * the pipeline, if it has a coordinate transformation or if its sigma is
+     * larger than the initial sigma.
+     */
+    public ScaleSpace process(final Image frame) {
+        if (frame == null) {
+            throw new NullPointerException("frame must not be null");
+        }
+        if (frame.getHeight() != height || frame.getWidth() != width) {
+            throw new IllegalArgumentException("frame must be " + width
+                    + "x" + height + " pixels");
+        }
+        if (frame.getScale() != 1.0 || frame.getOffsetX() != 0.0
+                || frame.getOffsetY() != 0.0) {
+            throw new IllegalArgumentException(
+                    "frame must not have a coordinate transformation");
+        }
+        if (frame.getSigma() > initialSigma) {
+            throw new IllegalArgumentException("initial sigma must be greater"
+                    + " or equal the frame's sigma.");
+        }
+
+        if (firstKernel == null || firstKernelFrameSigma != frame.getSigma()) {
+            Image first = scaleImages[0][0];
+            double filterSigma = GaussianKernel.filterSigma(frame.getSigma(),
+                    initialSigma, first.getScale());
+            if (filterSigma == 0.0) {
+                // Dirac delta function, the frame is only copied or
+                // up-scaled.
+                firstKernel = GaussianKernel.identity();
+            } else {
+                firstKernel = new GaussianKernel(filterSigma);
+            }
+            firstKernelFrameSigma = frame.getSigma();
+        }
+
+        if (upScale) {
+            LinearUpScalingGaussianFilter.apply(frame, scaleImages[0][0],
+                    firstKernel, scratch);
+        } else {
+            GaussianFilter.apply(frame, scaleImages[0][0], firstKernel,
+                    scratch);
+        }
+
+        // the first scale-image of the following octaves are views of the
+        // previous octave, so processing the octaves in order is enough.
+        for (int octave = 0; octave < scaleImages.length; octave++) {
+            Image[] scales = scaleImages[octave];
+            Image[] differences = doGs[octave];
+            GaussianKernel[] octaveKernels = kernels[octave];
+            for (int i = 1; i < scales.length; i++) {
+                GaussianFilter.apply(scales[i - 1], scales[i],
+                        octaveKernels[i], scratch);
+            }
+            for (int i = 0; i < differences.length; i++) {
+                scales[i + 1].subtract(scales[i], differences[i]);
+            }
+            scaleSpace.getOctaves().get(octave).invalidateGradients();
+        }
+
+        return scaleSpace;
+    }
+
+    /**
+     * Gets the scale-space of the last processed frame.
+     * @return Scale-space that is updated by {@link #process(Image)}.
+     */
+    public ScaleSpace getScaleSpace() {
+        return scaleSpace;
+    }
+}
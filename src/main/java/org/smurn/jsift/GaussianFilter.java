@@ -15,8 +15,7 @@
  */
 package org.smurn.jsift;
 
-import org.apache.commons.math.MathException;
-import org.apache.commons.math.distribution.NormalDistributionImpl;
+import java.util.Arrays;
 
 /**
  * Two dimensional gaussian filter.
@@ -26,9 +25,6 @@ import org.apache.commons.math.distribution.NormalDistributionImpl;
  */
 public final class GaussianFilter implements LowPassFilter {
 
-    private static final int WINDOW_SIZE_FACTOR = 4;
-    private static final double PRECISION = Double.MIN_NORMAL;
-
     /**
      * Creates an instance.
      */
@@ -56,118 +52,93 @@ public final class GaussianFilter implements LowPassFilter {
             throw new IllegalArgumentException("cannot reduce sigma");
         }
 
-        // The sigma parameter and the image's sigma value are relative to the
-        // original image, so we need to transform this into
-        // the coordinate space of this image.
-        final double scale = image.getScale();
-        final double imageSigma = image.getSigma() * scale;
-        final double targetSigma = sigma * scale;
-        double filterSigma = Math.sqrt(targetSigma * targetSigma
-                - imageSigma * imageSigma);
+        double filterSigma = GaussianKernel.filterSigma(image.getSigma(),
+                sigma, image.getScale());
 
         if (filterSigma == 0.0) {
             // Dirac delta function, output is input
             return new Image(image);
         }
 
-        double[] kernel = buildKernel(filterSigma);
-        double[] cumulativeKernel = cumulativeSum(kernel);
-        int window = (kernel.length - 1) / 2;
+        Image result = new Image(image.getHeight(), image.getWidth(), sigma,
+                image.getScale(), image.getOffsetX(), image.getOffsetY());
+        apply(image, result, new GaussianKernel(filterSigma),
+                new double[scratchSize(image.getHeight(), image.getWidth())]);
+        return result;
+    }
 
-        // horizontal pass
-        double[][] horizontal = new double[image.getHeight()][image.getWidth()];
-        for (int row = 0; row < image.getHeight(); row++) {
-            for (int col = 0; col < image.getWidth(); col++) {
+    /**
+     * Gets the number of elements {@link #apply} needs for its scratch
+     * buffer.
+     * @param height Height of the image to filter.
+     * @param width Width of the image to filter.
+     * @return Minimal length of the scratch buffer.
+     */
+    static int scratchSize(final int height, final int width) {
+        return (height + 1) * width;
+    }
 
-                int kernelFrom = Math.max(window - col, 0);
-                int kernelTo = window
-                        + Math.min(image.getWidth() - 1 - col, window);
+    /**
+     * Filters an image into an existing image.
+     * @param image Image to filter.
+     * @param result Image of the same size to write the result to. Its sigma
+     * is not checked.
+     * @param kernel Kernel to filter with.
+     * @param scratch Buffer with at least {@link #scratchSize} elements.
+     */
+    static void apply(final Image image, final Image result,
+            final GaussianKernel kernel, final double[] scratch) {
+
+        final int height = image.getHeight();
+        final int width = image.getWidth();
+        final double[] weights = kernel.getWeights();
+        final int window = kernel.getWindow();
+
+        // horizontal pass into the scratch buffer. Reads the row arrays
+        // directly, so that strided views (see StridedSubsampler) are
+        // filtered without copying them first.
+        final int stride = image.getColumnStride();
+        for (int row = 0; row < height; row++) {
+            float[] source = image.getRowArray(row);
+            int offset = row * width;
+            for (int col = 0; col < width; col++) {
+
+                int kernelFrom = kernel.from(col);
+                int kernelTo = kernel.to(col, width);
 
                 double value = 0;
+                int index = (col - window + kernelFrom) * stride;
                 for (int i = kernelFrom; i <= kernelTo; i++) {
-                    value += kernel[i] * image.getPixel(row, col - window + i);
+                    value += weights[i] * source[index];
+                    index += stride;
                 }
-                double weight = cumulativeKernel[kernelTo + 1]
-                        - cumulativeKernel[kernelFrom];
-                value /= weight;
-                horizontal[row][col] = value;
+                scratch[offset + col] = value
+                        / kernel.weight(kernelFrom, kernelTo);
             }
         }
 
-        Image result = new Image(image.getHeight(), image.getWidth());
+        // vertical pass, row by row to access memory sequentially.
+        final int sumOffset = height * width;
+        final int resultStride = result.getColumnStride();
+        for (int row = 0; row < height; row++) {
 
-        // vertical pass (in-place)
-        double[][] vertical = new double[image.getHeight()][image.getWidth()];
-        for (int col = 0; col < image.getWidth(); col++) {
-            for (int row = 0; row < image.getHeight(); row++) {
+            int kernelFrom = kernel.from(row);
+            int kernelTo = kernel.to(row, height);
 
-                int kernelFrom = Math.max(window - row, 0);
-                int kernelTo = window
-                        + Math.min(image.getHeight() - 1 - row, window);
-
-                double value = 0;
-                for (int i = kernelFrom; i <= kernelTo; i++) {
-                    value += kernel[i] * horizontal[row - window + i][col];
+            Arrays.fill(scratch, sumOffset, sumOffset + width, 0.0);
+            for (int i = kernelFrom; i <= kernelTo; i++) {
+                double w = weights[i];
+                int offset = (row - window + i) * width;
+                for (int col = 0; col < width; col++) {
+                    scratch[sumOffset + col] += w * scratch[offset + col];
                 }
-                double weight = cumulativeKernel[kernelTo + 1]
-                        - cumulativeKernel[kernelFrom];
-                value /= weight;
-                vertical[row][col] = value;
-
             }
-        }
-
-        for (int row = 0; row < image.getHeight(); row++) {
-            for (int col = 0; col < image.getWidth(); col++) {
-                result.setPixel(row, col, (float) vertical[row][col]);
+            double weight = kernel.weight(kernelFrom, kernelTo);
+            float[] target = result.getRowArray(row);
+            for (int col = 0; col < width; col++) {
+                target[col * resultStride] =
+                        (float) (scratch[sumOffset + col] / weight);
             }
         }
-
-        return result;
-    }
-
-    /**
-     * Builds a one dimensional gaussian kernel.
-     * @param sigma Standard deviation of the kernel.
-     * @return Discretized kernel. Array length is odd, kernel is centered.
-     */
-    private static double[] buildKernel(final double sigma) {
-
-        int windowSize = (int) Math.ceil(WINDOW_SIZE_FACTOR * sigma);
-
-        NormalDistributionImpl ndist = new NormalDistributionImpl(0.0, sigma,
-                PRECISION);
-
-        double[] kernel = new double[2 * windowSize + 1];
-        double sum = 0;
-        try {
-            for (int i = 0; i < kernel.length; i++) {
-                double x = i - windowSize;
-                kernel[i] = ndist.cumulativeProbability(x - 0.5, x + 0.5);
-                sum += kernel[i];
-            }
-        } catch (MathException ex) {
-            throw new RuntimeException(ex);
-        }
-        for (int i = 0; i < kernel.length; i++) {
-            kernel[i] /= sum;
-        }
-
-        return kernel;
-    }
-
-    /**
-     * Builds the cumulative sum of the kernel.
-     * @param kernel Discretized kernel.
-     * @return Cumulative sum. The element i is the sum of the kernel
-     * elements 0 to i-1 (inclusive).
-     */
-    private static double[] cumulativeSum(final double[] kernel) {
-        double[] csum = new double[kernel.length + 1];
-        csum[0] = 0.0;
-        for (int i = 0; i < kernel.length; i++) {
-            csum[i + 1] = csum[i] + kernel[i];
-        }
-        return csum;
     }
 }
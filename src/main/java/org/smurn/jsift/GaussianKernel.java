@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.distribution.NormalDistributionImpl;
+
+/**
+ * Discretized one dimensional gaussian kernel.
+ * <p>Pixels outside the image are interpreted as transparent, the kernel
+ * is renormalized with the cumulative sum near the borders.</p>
+ */
+final class GaussianKernel {
+
+    private static final int WINDOW_SIZE_FACTOR = 4;
+    private static final double PRECISION = Double.MIN_NORMAL;
+    /** Kernel weights, the array length is odd and the kernel centered. */
+    private final double[] weights;
+    /** Element i is the sum of the weights 0 to i-1 (inclusive). */
+    private final double[] cumulative;
+    /** Number of weights on each side of the center. */
+    private final int window;
+
+    /**
+     * Builds a kernel.
+     * @param sigma Standard deviation of the kernel in pixels.
+     * @throws IllegalArgumentException if {@code sigma} is not strictly
+     * positive.
+     */
+    GaussianKernel(final double sigma) {
+        if (sigma <= 0) {
+            throw new IllegalArgumentException("sigma must be positive");
+        }
+        this.window = (int) Math.ceil(WINDOW_SIZE_FACTOR * sigma);
+
+        NormalDistributionImpl ndist = new NormalDistributionImpl(0.0, sigma,
+                PRECISION);
+
+        this.weights = new double[2 * window + 1];
+        double sum = 0;
+        try {
+            for (int i = 0; i < weights.length; i++) {
+                double x = i - window;
+                weights[i] = ndist.cumulativeProbability(x - 0.5, x + 0.5);
+                sum += weights[i];
+            }
+        } catch (MathException ex) {
+            throw new RuntimeException(ex);
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= sum;
+        }
+        this.cumulative = cumulate(weights);
+    }
+
+    /**
+     * Builds a kernel from its weights.
+     * @param weights Weights, an odd number of them. Not copied.
+     */
+    private GaussianKernel(final double[] weights) {
+        this.window = weights.length / 2;
+        this.weights = weights;
+        this.cumulative = cumulate(weights);
+    }
+
+    /**
+     * Builds the kernel of a zero standard deviation, which leaves the
+     * signal unchanged.
+     * @return Kernel with the single weight one.
+     */
+    static GaussianKernel identity() {
+        return new GaussianKernel(new double[]{1.0});
+    }
+
+    /**
+     * Calculates the cumulative sums of weights.
+     * @param weights Weights to sum.
+     * @return Array whose element i is the sum of the weights 0 to i-1.
+     */
+    private static double[] cumulate(final double[] weights) {
+        double[] result = new double[weights.length + 1];
+        for (int i = 0; i < weights.length; i++) {
+            result[i + 1] = result[i] + weights[i];
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the standard deviation of the kernel that is needed to
+     * blur an image to a given sigma.
+     * @param imageSigma Sigma of the image relative to the original image.
+     * @param sigma Sigma of the blurred image relative to the original image.
+     * @param scale Scale of the image's coordinate transformation.
+     * @return Standard deviation in pixels of the image. Zero if no blur
+     * is required.
+     */
+    static double filterSigma(final double imageSigma, final double sigma,
+            final double scale) {
+        // The sigma values are relative to the original image, so we need to
+        // transform them into the coordinate space of the image.
+        final double from = imageSigma * scale;
+        final double to = sigma * scale;
+        return Math.sqrt(to * to - from * from);
+    }
+
+    /**
+     * Gets the weights.
+     * @return Kernel weights, not copied.
+     */
+    double[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Gets the number of weights on each side of the center.
+     * @return Half the kernel length rounded down.
+     */
+    int getWindow() {
+        return window;
+    }
+
+    /**
+     * Gets the first weight that overlaps the signal when the kernel is
+     * centered at {@code position}.
+     * @param position Position of the kernel center in the signal.
+     * @return Index of the first weight.
+     */
+    int from(final int position) {
+        return Math.max(window - position, 0);
+    }
+
+    /**
+     * Gets the last weight that overlaps the signal when the kernel is
+     * centered at {@code position}.
+     * @param position Position of the kernel center in the signal.
+     * @param length Length of the signal.
+     * @return Index of the last weight (inclusive).
+     */
+    int to(final int position, final int length) {
+        return window + Math.min(length - 1 - position, window);
+    }
+
+    /**
+     * Gets the sum of the weights in a range.
+     * @param from Index of the first weight.
+     * @param to Index of the last weight (inclusive).
+     * @return Sum of the weights.
+     */
+    double weight(final int from, final int to) {
+        return cumulative[to + 1] - cumulative[from];
+    }
+}
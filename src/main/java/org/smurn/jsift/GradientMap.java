@@ -0,0 +1,169 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Gradient magnitude and orientation of every pixel of an image.
+ * <p>The gradient is approximated by the differences of the neighboring
+ * pixels, {@code dx = I(r,c+1) - I(r,c-1)} and
+ * {@code dy = I(r+1,c) - I(r-1,c)}, as proposed by Lowe. Pixels beyond the
+ * border are replaced by the closest pixel on the border. The orientation
+ * is computed with a polynomial approximation of atan2 that is accurate to
+ * {@code 1E-5} radians.</p>
+ * <p>The maps are stored row by row in flat arrays. Instances are obtained
+ * from {@link Octave#getGradients(int)}, which computes them once per
+ * scale-image.</p>
+ */
+public final class GradientMap {
+
+    /** Width of the image. */
+    private final int width;
+    /** Height of the image. */
+    private final int height;
+    /** Gradient magnitudes, row by row. */
+    private final float[] magnitudes;
+    /** Gradient orientations in radians, row by row. */
+    private final float[] orientations;
+
+    /**
+     * Computes the gradients of an image.
+     * @param image Image to compute the gradients of.
+     * @throws NullPointerException if {@code image} is {@code null}.
+     */
+    GradientMap(final Image image) {
+        if (image == null) {
+            throw new NullPointerException("image must not be null");
+        }
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.magnitudes = new float[width * height];
+        this.orientations = new float[width * height];
+        update(image);
+    }
+
+    /**
+     * Recomputes the gradients, reusing the arrays.
+     * @param image Image with the same size as the one this map was created
+     * for.
+     */
+    void update(final Image image) {
+        if (width == 0) {
+            return;
+        }
+        final int stride = image.getColumnStride();
+        final int lastCol = width - 1;
+        for (int row = 0; row < height; row++) {
+            final float[] above = image.getRowArray(Math.max(row - 1, 0));
+            final float[] current = image.getRowArray(row);
+            final float[] below = image.getRowArray(
+                    Math.min(row + 1, height - 1));
+            final int offset = row * width;
+
+            set(offset, current[Math.min(1, lastCol) * stride] - current[0],
+                    below[0] - above[0]);
+            for (int col = 1; col < lastCol; col++) {
+                final int i = col * stride;
+                set(offset + col, current[i + stride] - current[i - stride],
+                        below[i] - above[i]);
+            }
+            if (lastCol > 0) {
+                final int i = lastCol * stride;
+                set(offset + lastCol, current[i] - current[i - stride],
+                        below[i] - above[i]);
+            }
+        }
+    }
+
+    /**
+     * Stores the gradient of a pixel.
+     * @param index Index of the pixel in the flat arrays.
+     * @param dx Horizontal difference.
+     * @param dy Vertical difference.
+     */
+    private void set(final int index, final float dx, final float dy) {
+        magnitudes[index] = (float) Math.sqrt(dx * dx + dy * dy);
+        orientations[index] = Angles.atan2(dy, dx);
+    }
+
+    /**
+     * Gets the width of the image.
+     * @return Number of columns.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the image.
+     * @return Number of rows.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the gradient magnitude of a pixel.
+     * @param row Row of the pixel.
+     * @param col Column of the pixel.
+     * @return Length of the gradient.
+     * @throws IndexOutOfBoundsException if the pixel is outside the image.
+     */
+    public float getMagnitude(final int row, final int col) {
+        return magnitudes[index(row, col)];
+    }
+
+    /**
+     * Gets the gradient orientation of a pixel.
+     * @param row Row of the pixel.
+     * @param col Column of the pixel.
+     * @return Angle of the gradient in radians, between {@code -pi} and
+     * {@code pi}, measured from the x axis towards the y axis (downwards).
+     * @throws IndexOutOfBoundsException if the pixel is outside the image.
+     */
+    public float getOrientation(final int row, final int col) {
+        return orientations[index(row, col)];
+    }
+
+    /**
+     * Gets the array backing the magnitudes.
+     * @return Magnitudes row by row, not copied.
+     */
+    float[] getMagnitudes() {
+        return magnitudes;
+    }
+
+    /**
+     * Gets the array backing the orientations.
+     * @return Orientations row by row, not copied.
+     */
+    float[] getOrientations() {
+        return orientations;
+    }
+
+    /**
+     * Calculates the index of a pixel in the flat arrays.
+     * @param row Row of the pixel.
+     * @param col Column of the pixel.
+     * @return Index into the arrays.
+     */
+    private int index(final int row, final int col) {
+        if (row < 0 || row >= height || col < 0 || col >= width) {
+            throw new IndexOutOfBoundsException("pixel (" + row + ", " + col
+                    + ") is outside of the image");
+        }
+        return row * width + col;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Finds the nearest neighbors of binary descriptors by their Hamming
+ * distance.
+ * <p>The distance of two binary descriptors of
+ * {@link BinaryDescriptorEncoder#WORDS} longs is the number of differing
+ * bits, counted with {@link Long#bitCount(long)}, which the JIT compiles to
+ * a single instruction on current processors. The references are scanned
+ * exhaustively; the result is meant as a cheap first pass that selects
+ * candidates for a more exact comparison.</p>
+ * <p>Instances are immutable and thread-safe.</p>
+ */
+public final class HammingMatcher {
+
+    /** Number of longs of a binary descriptor. */
+    private static final int WORDS = BinaryDescriptorEncoder.WORDS;
+    /** Largest distance of a match. */
+    private final int maxDistance;
+
+    /**
+     * Creates an instance that accepts matches at any distance.
+     */
+    public HammingMatcher() {
+        this(DescriptorExtractor.LENGTH);
+    }
+
+    /**
+     * Creates an instance.
+     * @param maxDistance Largest distance at which a reference is accepted
+     * as a match.
+     * @throws IllegalArgumentException if {@code maxDistance} is negative.
+     */
+    public HammingMatcher(final int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException(
+                    "maximal distance must not be negative");
+        }
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Calculates the Hamming distance of two binary descriptors.
+     * @param a Array containing the first descriptor.
+     * @param aOffset Index of the first long of the first descriptor.
+     * @param b Array containing the second descriptor.
+     * @param bOffset Index of the first long of the second descriptor.
+     * @return Number of differing bits.
+     * @throws IndexOutOfBoundsException if a descriptor exceeds its array.
+     */
+    public static int distance(final long[] a, final int aOffset,
+            final long[] b, final int bOffset) {
+        int distance = 0;
+        for (int w = 0; w < WORDS; w++) {
+            distance += Long.bitCount(a[aOffset + w] ^ b[bOffset + w]);
+        }
+        return distance;
+    }
+
+    /**
+     * Finds the nearest reference of each query.
+     * <p>Of several references at the same distance the one with the
+     * lowest index is chosen.</p>
+     * @param queries Binary descriptors to find matches for.
+     * @param queryCount Number of queries.
+     * @param references Binary descriptors to search.
+     * @param referenceCount Number of references.
+     * @param matches Array to write the index of each query's nearest
+     * reference to, or -1 if no reference is within the maximal distance.
+     * @param distances Array to write the distance of each match to, or
+     * {@code null}. Undefined where there is no match.
+     * @throws NullPointerException if {@code queries}, {@code references} or
+     * {@code matches} is {@code null}.
+     * @throws IndexOutOfBoundsException if the descriptors exceed their
+     * arrays or the results do not fit.
+     */
+    public void match(final long[] queries, final int queryCount,
+            final long[] references, final int referenceCount,
+            final int[] matches, final int[] distances) {
+        if (queries == null) {
+            throw new NullPointerException("queries must not be null");
+        }
+        if (references == null) {
+            throw new NullPointerException("references must not be null");
+        }
+        if (matches == null) {
+            throw new NullPointerException("matches must not be null");
+        }
+        if (queryCount < 0 || (long) queryCount * WORDS > queries.length
+                || referenceCount < 0
+                || (long) referenceCount * WORDS > references.length
+                || queryCount > matches.length
+                || (distances != null && queryCount > distances.length)) {
+            throw new IndexOutOfBoundsException(
+                    "descriptor counts exceed the arrays");
+        }
+
+        // unrolled for the two longs of a binary descriptor.
+        for (int q = 0; q < queryCount; q++) {
+            final long q0 = queries[q * WORDS];
+            final long q1 = queries[q * WORDS + 1];
+            int best = -1;
+            int bestDistance = maxDistance + 1;
+            for (int r = 0; r < referenceCount; r++) {
+                final int distance = Long.bitCount(q0 ^ references[r * WORDS])
+                        + Long.bitCount(q1 ^ references[r * WORDS + 1]);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = r;
+                }
+            }
+            matches[q] = best;
+            if (distances != null) {
+                distances[q] = bestDistance;
+            }
+        }
+    }
+}
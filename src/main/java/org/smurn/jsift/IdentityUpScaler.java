@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Up-scaler that keeps the image at its native resolution.
+ * <p>Passing this to {@link ScaleSpaceFactory} skips the up-scaled first
+ * octave. This makes building the scale-space roughly four times cheaper
+ * at the cost of loosing the keypoints with the smallest scales.</p>
+ */
+public final class IdentityUpScaler implements UpScaler {
+
+    /**
+     * Creates an instance.
+     */
+    public IdentityUpScaler() {
+        // empty
+    }
+
+    /**
+     * Returns the given image unchanged.
+     * @param image Image to up-scale.
+     * @return The same instance that was passed.
+     * @throws NullPointerException if {@code image} is {@code null}.
+     */
+    @Override
+    public Image upScale(final Image image) {
+        if (image == null) {
+            throw new NullPointerException("image must not be null.");
+        }
+        return image;
+    }
+}
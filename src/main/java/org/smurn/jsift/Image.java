@@ -56,6 +56,7 @@ import java.awt.image.WritableRaster;
 public class Image {
 
     private final float[][] pixels;
+    private final int columnStride;
     private final int height;
     private final int width;
     private final double sigma;
@@ -94,6 +95,7 @@ public class Image {
                     "sigma must be larger than zero");
         }
         this.pixels = new float[height][width];
+        this.columnStride = 1;
         this.height = height;
         this.width = width;
         this.sigma = sigma;
@@ -184,6 +186,7 @@ public class Image {
         this.scale = scale;
         this.offsetX = offsetX;
         this.offsetY = offsetY;
+        this.columnStride = 1;
 
         if (firstIndexIsRow) {
             this.height = pixels.length;
@@ -268,6 +271,7 @@ public class Image {
         this.scale = scale;
         this.offsetX = offsetX;
         this.offsetY = offsetY;
+        this.columnStride = 1;
 
         BlockingImageObserver observer = new BlockingImageObserver();
 
@@ -321,8 +325,44 @@ public class Image {
      * @param image Image to copy.
      */
     public Image(final Image image) {
-        this(image.pixels, image.sigma, image.scale, image.offsetX,
-                image.offsetY);
+        this(image.height, image.width, image.sigma, image.scale,
+                image.offsetX, image.offsetY);
+        for (int row = 0; row < height; row++) {
+            image.copyRow(row, pixels[row]);
+        }
+    }
+
+    /**
+     * Creates an image that shares the pixels with another image.
+     * <p>Column {@code c} of row {@code r} of this image is the element
+     * {@code rows[r][c*columnStride]}. Changes to the shared pixels are
+     * visible in both images.</p>
+     * @param rows Rows of pixels, not copied.
+     * @param width Number of columns of this image.
+     * @param columnStride Distance between two columns in the row arrays.
+     * @param sigma Blurriness of this image relative to the original image.
+     * @param scale Scale parameter of the coordinate transformation
+     * (see {@link Image}).
+     * @param offsetX Offset parameter of the coordinate transformation
+     * (see {@link Image}).
+     * @param offsetY Offset parameter of the coordinate transformation
+     * (see {@link Image}).
+     */
+    Image(final float[][] rows, final int width, final int columnStride,
+            final double sigma, final double scale, final double offsetX,
+            final double offsetY) {
+        if (sigma <= 0) {
+            throw new IllegalArgumentException(
+                    "sigma must be larger than zero");
+        }
+        this.pixels = rows;
+        this.height = rows.length;
+        this.width = width;
+        this.columnStride = columnStride;
+        this.sigma = sigma;
+        this.scale = scale;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
     }
 
     /**
@@ -411,7 +451,7 @@ public class Image {
      * are negative or larger-equals the width and height of the image.
      */
     public float getPixel(final int row, final int column) {
-        return pixels[row][column];
+        return pixels[row][column * columnStride];
     }
 
     /**
@@ -423,7 +463,42 @@ public class Image {
      * are negative or larger-equals the width and height of the image.
      */
     public void setPixel(final int row, final int column, final float value) {
-        pixels[row][column] = value;
+        pixels[row][column * columnStride] = value;
+    }
+
+    /**
+     * Gets the array that backs a row of this image.
+     * <p>Column {@code c} is stored at index
+     * {@code c*getColumnStride()}. The array is not copied.</p>
+     * @param row Row of the image.
+     * @return Array backing the row.
+     */
+    float[] getRowArray(final int row) {
+        return pixels[row];
+    }
+
+    /**
+     * Gets the distance between two columns in the row arrays.
+     * @return One, unless this image is a strided view of another image.
+     */
+    int getColumnStride() {
+        return columnStride;
+    }
+
+    /**
+     * Copies a row of this image into an array.
+     * @param row Row to copy.
+     * @param destination Array with at least {@code getWidth()} elements.
+     */
+    void copyRow(final int row, final float[] destination) {
+        float[] source = pixels[row];
+        if (columnStride == 1) {
+            System.arraycopy(source, 0, destination, 0, width);
+        } else {
+            for (int col = 0; col < width; col++) {
+                destination[col] = source[col * columnStride];
+            }
+        }
     }
 
     /**
@@ -458,14 +533,30 @@ public class Image {
                 (Math.log(sigma) + Math.log(subtrahend.sigma)) / 2.0);
         Image difference = new Image(height, width, meanSigma,
                 scale, offsetX, offsetY);
+        subtract(subtrahend, difference);
+        return difference;
+    }
+
+    /**
+     * Pixel-wise subtraction into an existing image.
+     * <p>No checks are performed, all three images must have the same
+     * size.</p>
+     * @param subtrahend Image to subtract from this image.
+     * @param difference Image to write the difference to.
+     */
+    void subtract(final Image subtrahend, final Image difference) {
+        final int stride = columnStride;
+        final int subtrahendStride = subtrahend.columnStride;
+        final int differenceStride = difference.columnStride;
         for (int row = 0; row < height; row++) {
+            float[] a = pixels[row];
+            float[] b = subtrahend.pixels[row];
+            float[] d = difference.pixels[row];
             for (int col = 0; col < width; col++) {
-                float d = getPixel(row, col)
-                        - subtrahend.getPixel(row, col);
-                difference.setPixel(row, col, d);
+                d[col * differenceStride] = a[col * stride]
+                        - b[col * subtrahendStride];
             }
         }
-        return difference;
     }
 
     /**
@@ -491,13 +582,13 @@ public class Image {
         if (firstIndexIsRow) {
             copy = new float[height][width];
             for (int row = 0; row < height; row++) {
-                System.arraycopy(pixels[row], 0, copy[row], 0, width);
+                copyRow(row, copy[row]);
             }
         } else {
             copy = new float[width][height];
             for (int row = 0; row < height; row++) {
                 for (int col = 0; col < width; col++) {
-                    copy[col][row] = pixels[row][col];
+                    copy[col][row] = getPixel(row, col);
                 }
             }
         }
@@ -516,7 +607,7 @@ public class Image {
         WritableRaster raster = bufferedImage.getRaster();
         for (int row = 0; row < height; row++) {
             for (int col = 0; col < width; col++) {
-                raster.setSample(col, row, 0, pixels[row][col] * UFLOAT_MAX);
+                raster.setSample(col, row, 0, getPixel(row, col) * UFLOAT_MAX);
             }
         }
 
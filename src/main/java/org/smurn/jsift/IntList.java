@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of {@code int} values without boxing.
+ * <p>The backing array is kept when the list is cleared, so a list that is
+ * reused does not allocate once it reached its working size.</p>
+ */
+final class IntList {
+
+    private static final int INITIAL_CAPACITY = 64;
+    /** Elements, only the first {@code size} are valid. */
+    private int[] elements = new int[INITIAL_CAPACITY];
+    /** Number of elements in this list. */
+    private int size;
+
+    /**
+     * Appends a value.
+     * @param value Value to append.
+     */
+    void add(final int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, 2 * elements.length);
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Gets a value.
+     * @param index Index of the value.
+     * @return Value at the given index.
+     */
+    int get(final int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index
+                    + " is not smaller than the size " + size);
+        }
+        return elements[index];
+    }
+
+    /**
+     * Gets the number of values in this list.
+     * @return Number of values.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all values, keeping the allocated capacity.
+     */
+    void clear() {
+        size = 0;
+    }
+}
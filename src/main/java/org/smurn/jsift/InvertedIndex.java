@@ -0,0 +1,306 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+
+/**
+ * Ranks database images by their similarity to a query image, both given
+ * as the visual words of their descriptors.
+ * <p>Each image is described by a vector with one element per word, the
+ * word's frequency in the image (tf) weighted by the logarithm of the
+ * number of images divided by the number of images containing the word
+ * (idf), as proposed by Sivic and Zisserman. Images are ranked by the
+ * cosine of the angle between their vectors and the query's vector.</p>
+ * <p>For each word the index stores the images containing it and how
+ * often (an inverted file). A query only visits the lists of its words,
+ * so its cost depends on how many images share words with it, not on the
+ * size of the database. The norms of the image vectors depend on the idf
+ * weights, which change when images are added. They are recomputed by the
+ * first query after an addition.</p>
+ * <p>Words are typically obtained from a {@link VocabularyTree}.
+ * Instances are not thread-safe.</p>
+ */
+public final class InvertedIndex {
+
+    /** Initial capacity of a list. */
+    private static final int INITIAL_CAPACITY = 4;
+    /** Number of words. */
+    private final int wordCount;
+    /** Images containing each word, in increasing order. */
+    private final int[][] postingImages;
+    /** Occurrences of each word in the images of its list. */
+    private final int[][] postingCounts;
+    /** Length of each word's list. */
+    private final int[] postingSizes;
+    /** Number of words of each image. */
+    private int[] imageWordCounts = new int[INITIAL_CAPACITY];
+    /** Number of images. */
+    private int imageCount;
+    /** Norms of the weighted image vectors, {@code null} if outdated. */
+    private float[] norms;
+    /** Dot products of a query with the images, zero between queries. */
+    private float[] dots = new float[0];
+    /** Images with a non-zero dot product in the current query. */
+    private final IntList touched = new IntList();
+
+    /**
+     * Creates an empty index.
+     * @param wordCount Number of visual words. Words are between zero and
+     * this number.
+     * @throws IllegalArgumentException if {@code wordCount} is smaller than
+     * one.
+     */
+    public InvertedIndex(final int wordCount) {
+        if (wordCount < 1) {
+            throw new IllegalArgumentException("need at least one word");
+        }
+        this.wordCount = wordCount;
+        this.postingImages = new int[wordCount][];
+        this.postingCounts = new int[wordCount][];
+        this.postingSizes = new int[wordCount];
+    }
+
+    /**
+     * Gets the number of visual words.
+     * @return Number of words.
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Gets the number of images in the index.
+     * @return Number of images added.
+     */
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    /**
+     * Adds an image.
+     * @param words Array containing the visual words of the image's
+     * descriptors, in any order.
+     * @param offset Index of the first word.
+     * @param count Number of words.
+     * @return Identifier of the image, the number of images added before.
+     * @throws NullPointerException if {@code words} is {@code null}.
+     * @throws IndexOutOfBoundsException if the words exceed the array.
+     * @throws IllegalArgumentException if a word is not between zero and
+     * the word count.
+     */
+    public int addImage(final int[] words, final int offset,
+            final int count) {
+        int[] histogram = histogram(words, offset, count);
+        int image = imageCount;
+        for (int i = 0; i < histogram.length; i += 2) {
+            int word = histogram[i];
+            int size = postingSizes[word];
+            if (postingImages[word] == null) {
+                postingImages[word] = new int[INITIAL_CAPACITY];
+                postingCounts[word] = new int[INITIAL_CAPACITY];
+            } else if (size == postingImages[word].length) {
+                postingImages[word] = Arrays.copyOf(postingImages[word],
+                        2 * size);
+                postingCounts[word] = Arrays.copyOf(postingCounts[word],
+                        2 * size);
+            }
+            postingImages[word][size] = image;
+            postingCounts[word][size] = histogram[i + 1];
+            postingSizes[word] = size + 1;
+        }
+        if (image == imageWordCounts.length) {
+            imageWordCounts = Arrays.copyOf(imageWordCounts, 2 * image);
+        }
+        imageWordCounts[image] = count;
+        imageCount++;
+        norms = null;
+        return image;
+    }
+
+    /**
+     * Finds the database images most similar to a query image.
+     * @param words Array containing the visual words of the query's
+     * descriptors, in any order.
+     * @param offset Index of the first word.
+     * @param count Number of words.
+     * @param maxResults Maximal number of images to return.
+     * @param images Array to write the identifiers of the images to, most
+     * similar first. Images sharing no weighted word with the query are
+     * not returned.
+     * @param scores Array to write the cosine similarities of the images
+     * to, or {@code null}.
+     * @return Number of images returned, at most {@code maxResults}.
+     * @throws NullPointerException if {@code words} or {@code images} is
+     * {@code null}.
+     * @throws IndexOutOfBoundsException if the words exceed their array or
+     * the results do not fit into the arrays.
+     * @throws IllegalArgumentException if {@code maxResults} is smaller than
+     * one or a word is not between zero and the word count.
+     */
+    public int query(final int[] words, final int offset, final int count,
+            final int maxResults, final int[] images, final float[] scores) {
+        if (images == null) {
+            throw new NullPointerException("images must not be null");
+        }
+        if (maxResults < 1) {
+            throw new IllegalArgumentException(
+                    "need to return at least one image");
+        }
+        if (images.length < maxResults
+                || (scores != null && scores.length < maxResults)) {
+            throw new IndexOutOfBoundsException(
+                    "results do not fit into the arrays");
+        }
+        int[] histogram = histogram(words, offset, count);
+        if (norms == null) {
+            updateNorms();
+        }
+
+        if (dots.length < imageCount) {
+            dots = new float[imageWordCounts.length];
+        }
+        double queryNorm = 0.0;
+        for (int i = 0; i < histogram.length; i += 2) {
+            int word = histogram[i];
+            float idf = idf(word);
+            float weight = idf * histogram[i + 1] / count;
+            queryNorm += weight * weight;
+            int[] list = postingImages[word];
+            int[] counts = postingCounts[word];
+            for (int j = 0; j < postingSizes[word]; j++) {
+                int image = list[j];
+                float product = weight * idf * counts[j]
+                        / imageWordCounts[image];
+                if (product > 0f) {
+                    if (dots[image] == 0f) {
+                        touched.add(image);
+                    }
+                    dots[image] += product;
+                }
+            }
+        }
+        float scale = (float) (1.0 / Math.sqrt(queryNorm));
+
+        // the best results by decreasing score, the first image of ties.
+        float[] bestScores = new float[maxResults];
+        int found = 0;
+        for (int t = 0; t < touched.size(); t++) {
+            int image = touched.get(t);
+            float score = dots[image] * scale / norms[image];
+            dots[image] = 0f;
+            if (found == maxResults && (score < bestScores[found - 1]
+                    || (score == bestScores[found - 1]
+                    && image > images[found - 1]))) {
+                continue;
+            }
+            int j = Math.min(found, maxResults - 1);
+            while (j > 0 && (bestScores[j - 1] < score
+                    || (bestScores[j - 1] == score && images[j - 1] > image))) {
+                bestScores[j] = bestScores[j - 1];
+                images[j] = images[j - 1];
+                j--;
+            }
+            bestScores[j] = score;
+            images[j] = image;
+            found = Math.min(found + 1, maxResults);
+        }
+        touched.clear();
+        if (scores != null) {
+            System.arraycopy(bestScores, 0, scores, 0, found);
+        }
+        return found;
+    }
+
+    /**
+     * Calculates the inverse document frequency of a word.
+     * @param word Visual word.
+     * @return Logarithm of the number of images divided by the number of
+     * images containing the word, zero if no image contains it.
+     */
+    private float idf(final int word) {
+        if (postingSizes[word] == 0) {
+            return 0f;
+        }
+        return (float) Math.log((double) imageCount / postingSizes[word]);
+    }
+
+    /**
+     * Recomputes the norms of the weighted image vectors.
+     */
+    private void updateNorms() {
+        double[] sums = new double[imageCount];
+        for (int word = 0; word < wordCount; word++) {
+            float idf = idf(word);
+            if (idf == 0f) {
+                continue;
+            }
+            int[] list = postingImages[word];
+            int[] counts = postingCounts[word];
+            for (int j = 0; j < postingSizes[word]; j++) {
+                int image = list[j];
+                double weight = (double) idf * counts[j]
+                        / imageWordCounts[image];
+                sums[image] += weight * weight;
+            }
+        }
+        norms = new float[imageCount];
+        for (int image = 0; image < imageCount; image++) {
+            norms[image] = (float) Math.sqrt(sums[image]);
+        }
+    }
+
+    /**
+     * Counts the occurrences of words.
+     * @param words Array containing the words.
+     * @param offset Index of the first word.
+     * @param count Number of words.
+     * @return Pairs of a word and its number of occurrences, by increasing
+     * word.
+     */
+    private int[] histogram(final int[] words, final int offset,
+            final int count) {
+        if (words == null) {
+            throw new NullPointerException("words must not be null");
+        }
+        if (offset < 0 || count < 0 || offset > words.length - count) {
+            throw new IndexOutOfBoundsException("range of " + count
+                    + " words exceeds the array");
+        }
+        int[] sorted = Arrays.copyOfRange(words, offset, offset + count);
+        Arrays.sort(sorted);
+        if (count > 0 && (sorted[0] < 0 || sorted[count - 1] >= wordCount)) {
+            throw new IllegalArgumentException(
+                    "words must be between 0 and " + wordCount);
+        }
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                distinct++;
+            }
+        }
+        int[] result = new int[2 * distinct];
+        int j = -2;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                j += 2;
+                result[j] = sorted[i];
+            }
+            result[j + 1]++;
+        }
+        return result;
+    }
+}
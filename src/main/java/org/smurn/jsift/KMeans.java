@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * K-means clustering of float vectors.
+ * <p>Seeded with k-means++ and refined with Lloyd iterations until no
+ * assignment changes. Clusters that become empty keep their center. If
+ * there are fewer distinct vectors than clusters, some centers are
+ * repeated.</p>
+ */
+final class KMeans {
+
+    /**
+     * Prevents instantiation.
+     */
+    private KMeans() {
+    }
+
+    /**
+     * Clusters vectors.
+     * @param vectors Vectors stored one after the other.
+     * @param count Number of vectors, at least one.
+     * @param dimension Number of elements of a vector.
+     * @param k Number of clusters.
+     * @param iterations Maximal number of iterations.
+     * @param random Source of the seeding.
+     * @return Centers stored one after the other.
+     */
+    static float[] cluster(final float[] vectors, final int count,
+            final int dimension, final int k, final int iterations,
+            final Random random) {
+        float[] centers = new float[k * dimension];
+
+        // k-means++ seeding.
+        double[] distances = new double[count];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        int pick = random.nextInt(count);
+        for (int c = 0; c < k; c++) {
+            System.arraycopy(vectors, pick * dimension, centers,
+                    c * dimension, dimension);
+            if (c == k - 1) {
+                break;
+            }
+            double total = 0;
+            for (int i = 0; i < count; i++) {
+                distances[i] = Math.min(distances[i], distance(vectors,
+                        i * dimension, centers, c * dimension, dimension));
+                total += distances[i];
+            }
+            if (total == 0) {
+                // every vector is a center already, repeat one.
+                pick = random.nextInt(count);
+                continue;
+            }
+            double target = random.nextDouble() * total;
+            pick = 0;
+            while (pick < count - 1 && target >= distances[pick]) {
+                target -= distances[pick];
+                pick++;
+            }
+        }
+
+        int[] assignment = new int[count];
+        int[] counts = new int[k];
+        double[] sums = new double[k * dimension];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            boolean changed = iteration == 0;
+            Arrays.fill(counts, 0);
+            Arrays.fill(sums, 0.0);
+            for (int i = 0; i < count; i++) {
+                int a = nearest(vectors, i * dimension, centers, 0, k,
+                        dimension);
+                if (a != assignment[i]) {
+                    changed = true;
+                }
+                assignment[i] = a;
+                counts[a]++;
+                for (int e = 0; e < dimension; e++) {
+                    sums[a * dimension + e] += vectors[i * dimension + e];
+                }
+            }
+            if (!changed) {
+                break;
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    continue;
+                }
+                for (int e = 0; e < dimension; e++) {
+                    centers[c * dimension + e] = (float)
+                            (sums[c * dimension + e] / counts[c]);
+                }
+            }
+        }
+        return centers;
+    }
+
+    /**
+     * Finds the center closest to a vector.
+     * @param vector Array containing the vector.
+     * @param offset Index of the vector's first element.
+     * @param centers Array containing the centers one after the other.
+     * @param centersOffset Index of the first center's first element.
+     * @param k Number of centers.
+     * @param dimension Number of elements of a vector.
+     * @return Index of the closest center, the first one of ties.
+     */
+    static int nearest(final float[] vector, final int offset,
+            final float[] centers, final int centersOffset, final int k,
+            final int dimension) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float distance = distance(vector, offset, centers,
+                    centersOffset + c * dimension, dimension);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Calculates the squared distance between two vectors.
+     * @param a Array containing the first vector.
+     * @param aOffset Index of the first vector's first element.
+     * @param b Array containing the second vector.
+     * @param bOffset Index of the second vector's first element.
+     * @param dimension Number of elements of a vector.
+     * @return Squared euclidean distance.
+     */
+    static float distance(final float[] a, final int aOffset,
+            final float[] b, final int bOffset, final int dimension) {
+        float result = 0f;
+        for (int e = 0; e < dimension; e++) {
+            float d = a[aOffset + e] - b[bOffset + e];
+            result += d * d;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,606 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Index for approximate nearest neighbor searches among descriptors as
+ * written by {@link DescriptorExtractor}.
+ * <p>The index is a forest of randomized k-d trees as proposed by Silpa-Anan
+ * and Hartley and used by Muja and Lowe. Each tree splits the descriptors at
+ * the mean of a dimension that is chosen randomly among the dimensions with
+ * the highest variance, so the trees partition the space differently. A
+ * search descends all trees and then continues with the unexplored
+ * branches closest to the query across all trees (best-bin-first) until a
+ * given number of descriptors has been checked. The number of checks
+ * trades speed for the fraction of exact nearest neighbors found.</p>
+ * <p>The nodes of all trees are stored in flat arrays. The descriptors are
+ * not copied and must not be modified while the index is in use.
+ * Instances are thread-safe, each thread uses its own search buffers,
+ * which are shared by all forests and sized for the largest one searched.</p>
+ */
+public final class KdForest {
+
+    /** Number of trees if not specified otherwise. */
+    private static final int DEFAULT_TREES = 4;
+    /** Number of dimensions with the highest variance to choose from. */
+    private static final int RANDOM_DIMENSIONS = 5;
+    /** Number of descriptors used to estimate the mean and variance. */
+    private static final int SAMPLE_SIZE = 100;
+    /** Maximal number of descriptors in a leaf. */
+    private static final int LEAF_SIZE = 4;
+    /** Number of elements summed before checking for abandoning. */
+    private static final int CHUNK = 16;
+    /** Initial number of nodes allocated. */
+    private static final int INITIAL_NODES = 64;
+    /** Number of elements of a descriptor. */
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+    /** Descriptors of the index. */
+    private final byte[] descriptors;
+    /** Number of descriptors. */
+    private final int count;
+    /** Root node of each tree. */
+    private final int[] roots;
+    /** Descriptor indices, ordered by the leaves of each tree in turn. */
+    private final int[] order;
+    /** Split dimension of each node, -1 for leaves. */
+    private int[] splitDimensions;
+    /** Split value of each node. */
+    private float[] splitValues;
+    /** Left child of inner nodes, start in {@code order} of leaves. */
+    private int[] lows;
+    /** Right child of inner nodes, end in {@code order} of leaves. */
+    private int[] highs;
+    /** Number of allocated nodes. */
+    private int nodeCount;
+    /**
+     * Search buffers of each thread, shared by all instances so that a
+     * thread only references a forest while searching it.
+     */
+    private static final ThreadLocal<Search> SEARCHES =
+            new ThreadLocal<Search>() {
+
+        @Override
+        protected Search initialValue() {
+            return new Search();
+        }
+    };
+
+    /**
+     * Builds an index with four trees.
+     * @param descriptors Descriptors to index, 128 bytes each.
+     * @param count Number of descriptors.
+     * @throws NullPointerException if {@code descriptors} is {@code null}.
+     * @throws IndexOutOfBoundsException if the descriptors exceed the array.
+     */
+    public KdForest(final byte[] descriptors, final int count) {
+        this(descriptors, count, DEFAULT_TREES, 0L);
+    }
+
+    /**
+     * Builds an index.
+     * @param descriptors Descriptors to index, 128 bytes each.
+     * @param count Number of descriptors.
+     * @param trees Number of trees. More trees improve the accuracy for a
+     * given number of checks at the cost of memory.
+     * @param seed Seed of the random choices, so that indices are
+     * reproducible.
+     * @throws NullPointerException if {@code descriptors} is {@code null}.
+     * @throws IndexOutOfBoundsException if the descriptors exceed the array.
+     * @throws IllegalArgumentException if {@code trees} is smaller than one.
+     */
+    public KdForest(final byte[] descriptors, final int count,
+            final int trees, final long seed) {
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        if (count < 0 || (long) count * LENGTH > descriptors.length) {
+            throw new IndexOutOfBoundsException(
+                    "descriptor count exceeds the array");
+        }
+        if (trees < 1) {
+            throw new IllegalArgumentException("need at least one tree");
+        }
+        this.descriptors = descriptors;
+        this.count = count;
+        this.roots = new int[trees];
+        this.order = new int[trees * count];
+        this.splitDimensions = new int[INITIAL_NODES];
+        this.splitValues = new float[INITIAL_NODES];
+        this.lows = new int[INITIAL_NODES];
+        this.highs = new int[INITIAL_NODES];
+
+        Random random = new Random(seed);
+        for (int t = 0; t < trees; t++) {
+            int start = t * count;
+            for (int i = 0; i < count; i++) {
+                order[start + i] = i;
+            }
+            // shuffled, so that the first descriptors of a node are a
+            // random sample.
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[start + i];
+                order[start + i] = order[start + j];
+                order[start + j] = swap;
+            }
+            roots[t] = buildTree(start, start + count, random);
+        }
+        splitDimensions = Arrays.copyOf(splitDimensions, nodeCount);
+        splitValues = Arrays.copyOf(splitValues, nodeCount);
+        lows = Arrays.copyOf(lows, nodeCount);
+        highs = Arrays.copyOf(highs, nodeCount);
+    }
+
+    /**
+     * Gets the number of indexed descriptors.
+     * @return Number of descriptors.
+     */
+    public int getSize() {
+        return count;
+    }
+
+    /**
+     * Gets the number of trees.
+     * @return Number of trees.
+     */
+    public int getTreeCount() {
+        return roots.length;
+    }
+
+    /**
+     * Searches the approximate nearest neighbors of a descriptor.
+     * <p>For Lowe's ratio test, search two neighbors and compare the square
+     * roots of their distances.</p>
+     * @param query Array containing the descriptor to search for.
+     * @param offset Index of the descriptor's first element.
+     * @param k Number of neighbors to search.
+     * @param maxChecks Number of descriptors after which the search stops.
+     * The trees are always descended once, so more descriptors might be
+     * checked.
+     * @param indices Array to write the indices of the neighbors to,
+     * ordered by increasing distance.
+     * @param distances Array to write the squared distances of the
+     * neighbors to, or {@code null}.
+     * @return Number of neighbors found, at most {@code k}.
+     * @throws NullPointerException if {@code query} or {@code indices} is
+     * {@code null}.
+     * @throws IllegalArgumentException if {@code k} or {@code maxChecks} is
+     * smaller than one.
+     * @throws IndexOutOfBoundsException if the query exceeds its array or
+     * if the neighbors do not fit into the arrays.
+     */
+    public int search(final byte[] query, final int offset, final int k,
+            final int maxChecks, final int[] indices, final int[] distances) {
+        if (query == null) {
+            throw new NullPointerException("query must not be null");
+        }
+        if (indices == null) {
+            throw new NullPointerException("indices must not be null");
+        }
+        if (k < 1) {
+            throw new IllegalArgumentException(
+                    "need to search at least one neighbor");
+        }
+        if (maxChecks < 1) {
+            throw new IllegalArgumentException(
+                    "need to check at least one descriptor");
+        }
+        if (offset < 0 || offset > query.length - LENGTH) {
+            throw new IndexOutOfBoundsException(
+                    "query exceeds the array");
+        }
+        if (indices.length < k
+                || (distances != null && distances.length < k)) {
+            throw new IndexOutOfBoundsException(
+                    "neighbors do not fit into the arrays");
+        }
+        Search search = SEARCHES.get();
+        search.begin(this, query, offset, k);
+        try {
+            for (int root : roots) {
+                search.descend(root, 0f);
+            }
+            while (search.checks < maxChecks && search.branchCount > 0) {
+                float bound = search.branchBounds[0];
+                int node = search.popBranch();
+                if (bound >= search.worst()) {
+                    break;
+                }
+                search.descend(node, bound);
+            }
+            System.arraycopy(search.resultIndices, 0, indices, 0,
+                    search.found);
+            if (distances != null) {
+                System.arraycopy(search.resultDistances, 0, distances, 0,
+                        search.found);
+            }
+            return search.found;
+        } finally {
+            search.end();
+        }
+    }
+
+    /**
+     * Builds a tree over a range of {@code order}.
+     * @param from First index of the range.
+     * @param to Index after the last index of the range.
+     * @param random Source of the random choices.
+     * @return Root node of the tree.
+     */
+    private int buildTree(final int from, final int to,
+            final Random random) {
+        // explicit stack of (node, from, to), since splits at the mean can
+        // be unbalanced enough to overflow the call stack.
+        int[] stack = new int[3 * INITIAL_NODES];
+        int size = 0;
+        int root = allocateNode();
+        stack[size++] = root;
+        stack[size++] = from;
+        stack[size++] = to;
+        while (size > 0) {
+            int hi = stack[--size];
+            int lo = stack[--size];
+            int node = stack[--size];
+            if (hi - lo <= LEAF_SIZE) {
+                splitDimensions[node] = -1;
+                lows[node] = lo;
+                highs[node] = hi;
+                continue;
+            }
+            int mid = split(node, lo, hi, random);
+            int left = allocateNode();
+            int right = allocateNode();
+            lows[node] = left;
+            highs[node] = right;
+            if (size + 6 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            }
+            stack[size++] = left;
+            stack[size++] = lo;
+            stack[size++] = mid;
+            stack[size++] = right;
+            stack[size++] = mid;
+            stack[size++] = hi;
+        }
+        return root;
+    }
+
+    /**
+     * Chooses the split of a node and partitions its range accordingly.
+     * @param node Node to split.
+     * @param lo First index of the node's range in {@code order}.
+     * @param hi Index after the last index of the range.
+     * @param random Source of the random choices.
+     * @return First index of the right child's range.
+     */
+    private int split(final int node, final int lo, final int hi,
+            final Random random) {
+        int sampleEnd = Math.min(hi, lo + SAMPLE_SIZE);
+        double[] sum = new double[LENGTH];
+        double[] sumSquares = new double[LENGTH];
+        for (int i = lo; i < sampleEnd; i++) {
+            int base = order[i] * LENGTH;
+            for (int d = 0; d < LENGTH; d++) {
+                int v = descriptors[base + d] & 0xFF;
+                sum[d] += v;
+                sumSquares[d] += v * v;
+            }
+        }
+        int n = sampleEnd - lo;
+
+        // dimensions with the highest variance, in decreasing order.
+        int[] top = new int[RANDOM_DIMENSIONS];
+        double[] topVariance = new double[RANDOM_DIMENSIONS];
+        Arrays.fill(topVariance, -1.0);
+        for (int d = 0; d < LENGTH; d++) {
+            double variance = sumSquares[d] - sum[d] * sum[d] / n;
+            int j = RANDOM_DIMENSIONS;
+            while (j > 0 && variance > topVariance[j - 1]) {
+                if (j < RANDOM_DIMENSIONS) {
+                    top[j] = top[j - 1];
+                    topVariance[j] = topVariance[j - 1];
+                }
+                j--;
+            }
+            if (j < RANDOM_DIMENSIONS) {
+                top[j] = d;
+                topVariance[j] = variance;
+            }
+        }
+        int dimension = top[random.nextInt(RANDOM_DIMENSIONS)];
+        float value = (float) (sum[dimension] / n);
+
+        int mid = partition(lo, hi, dimension, value);
+        if (mid == lo || mid == hi) {
+            // the sample was not representative, split between the
+            // extremes of the whole range instead.
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int i = lo; i < hi; i++) {
+                int v = descriptors[order[i] * LENGTH + dimension] & 0xFF;
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            if (min < max) {
+                value = (min + max) / 2f;
+                mid = partition(lo, hi, dimension, value);
+            } else {
+                // all equal in this dimension, so the value bounds both
+                // halves.
+                value = min;
+                mid = (lo + hi) >>> 1;
+            }
+        }
+        splitDimensions[node] = dimension;
+        splitValues[node] = value;
+        return mid;
+    }
+
+    /**
+     * Moves the descriptors smaller than a value to the front of a range.
+     * @param lo First index of the range in {@code order}.
+     * @param hi Index after the last index of the range.
+     * @param dimension Dimension to compare.
+     * @param value Value to compare with.
+     * @return Index of the first descriptor not smaller than the value.
+     */
+    private int partition(final int lo, final int hi, final int dimension,
+            final float value) {
+        int i = lo;
+        int j = hi - 1;
+        while (i <= j) {
+            if ((descriptors[order[i] * LENGTH + dimension] & 0xFF) < value) {
+                i++;
+            } else {
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+                j--;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Allocates a node, growing the arrays if needed.
+     * @return Index of the node.
+     */
+    private int allocateNode() {
+        if (nodeCount == splitDimensions.length) {
+            int capacity = 2 * nodeCount;
+            splitDimensions = Arrays.copyOf(splitDimensions, capacity);
+            splitValues = Arrays.copyOf(splitValues, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            highs = Arrays.copyOf(highs, capacity);
+        }
+        return nodeCount++;
+    }
+
+    /**
+     * Buffers and state of a search.
+     * <p>Static, so that the buffers kept by a thread do not keep a forest
+     * alive. The forest and the query are only referenced between
+     * {@link #begin(KdForest, byte[], int, int)} and {@link #end()}.</p>
+     */
+    private static final class Search {
+
+        /** Search number at which each descriptor was last checked. */
+        private int[] checked = new int[0];
+        /** Number of the current search, unique across all forests. */
+        private int searchNumber;
+        /** Forest being searched. */
+        private KdForest forest;
+        /** Array containing the query. */
+        private byte[] query;
+        /** Index of the query's first element. */
+        private int queryOffset;
+        /** Number of neighbors to search. */
+        private int k;
+        /** Number of descriptors checked. */
+        private int checks;
+        /** Indices of the neighbors found, by increasing distance. */
+        private int[] resultIndices = new int[1];
+        /** Squared distances of the neighbors found. */
+        private int[] resultDistances = new int[1];
+        /** Number of neighbors found. */
+        private int found;
+        /** Lower bounds of the distance of the unexplored branches. */
+        private float[] branchBounds = new float[INITIAL_NODES];
+        /** Nodes of the unexplored branches, a heap by bound. */
+        private int[] branchNodes = new int[INITIAL_NODES];
+        /** Number of unexplored branches. */
+        private int branchCount;
+
+        /**
+         * Resets the state for a new search.
+         * @param forest Forest to search.
+         * @param query Array containing the query.
+         * @param offset Index of the query's first element.
+         * @param k Number of neighbors to search.
+         */
+        void begin(final KdForest forest, final byte[] query,
+                final int offset, final int k) {
+            searchNumber++;
+            if (searchNumber == 0) {
+                // wrapped around, forget all checks.
+                Arrays.fill(checked, 0);
+                searchNumber = 1;
+            }
+            if (checked.length < forest.count) {
+                checked = new int[forest.count];
+            }
+            this.forest = forest;
+            this.query = query;
+            this.queryOffset = offset;
+            this.k = k;
+            this.checks = 0;
+            this.found = 0;
+            this.branchCount = 0;
+            if (resultIndices.length < k) {
+                resultIndices = new int[k];
+                resultDistances = new int[k];
+            }
+        }
+
+        /**
+         * Releases the references to the forest and the query.
+         */
+        void end() {
+            forest = null;
+            query = null;
+        }
+
+        /**
+         * Gets the distance a descriptor must be below to be a neighbor.
+         * @return Squared distance of the k-th neighbor, or the maximal
+         * integer if fewer were found.
+         */
+        int worst() {
+            if (found < k) {
+                return Integer.MAX_VALUE;
+            }
+            return resultDistances[k - 1];
+        }
+
+        /**
+         * Descends from a node to a leaf, remembering the branches not
+         * taken, and checks the descriptors of the leaf.
+         * @param start Node to start at.
+         * @param startBound Lower bound of the distance of the node.
+         */
+        void descend(final int start, final float startBound) {
+            final int[] splitDimensions = forest.splitDimensions;
+            final float[] splitValues = forest.splitValues;
+            final int[] lows = forest.lows;
+            final int[] highs = forest.highs;
+            final int[] order = forest.order;
+            int node = start;
+            while (splitDimensions[node] >= 0) {
+                float diff = (query[queryOffset + splitDimensions[node]]
+                        & 0xFF) - splitValues[node];
+                float bound = startBound + diff * diff;
+                if (diff < 0) {
+                    pushBranch(highs[node], bound);
+                    node = lows[node];
+                } else {
+                    pushBranch(lows[node], bound);
+                    node = highs[node];
+                }
+            }
+            for (int i = lows[node]; i < highs[node]; i++) {
+                int index = order[i];
+                if (checked[index] == searchNumber) {
+                    continue;
+                }
+                checked[index] = searchNumber;
+                checks++;
+                check(index);
+            }
+        }
+
+        /**
+         * Computes the distance to a descriptor and inserts it into the
+         * neighbors if it is closer than the worst one.
+         * @param index Index of the descriptor.
+         */
+        private void check(final int index) {
+            final byte[] descriptors = forest.descriptors;
+            final int limit = worst();
+            final int base = index * LENGTH;
+            int distance = 0;
+            for (int c = 0; c < LENGTH && distance < limit; c += CHUNK) {
+                for (int i = c; i < c + CHUNK; i++) {
+                    int d = (query[queryOffset + i] & 0xFF)
+                            - (descriptors[base + i] & 0xFF);
+                    distance += d * d;
+                }
+            }
+            if (distance >= limit) {
+                return;
+            }
+            int j = Math.min(found, k - 1);
+            while (j > 0 && resultDistances[j - 1] > distance) {
+                resultDistances[j] = resultDistances[j - 1];
+                resultIndices[j] = resultIndices[j - 1];
+                j--;
+            }
+            resultDistances[j] = distance;
+            resultIndices[j] = index;
+            found = Math.min(found + 1, k);
+        }
+
+        /**
+         * Adds an unexplored branch unless it cannot contain a neighbor.
+         * @param node Node of the branch.
+         * @param bound Lower bound of the distance of the branch.
+         */
+        private void pushBranch(final int node, final float bound) {
+            if (bound >= worst()) {
+                return;
+            }
+            if (branchCount == branchNodes.length) {
+                branchNodes = Arrays.copyOf(branchNodes, 2 * branchCount);
+                branchBounds = Arrays.copyOf(branchBounds, 2 * branchCount);
+            }
+            int i = branchCount++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (branchBounds[parent] <= bound) {
+                    break;
+                }
+                branchNodes[i] = branchNodes[parent];
+                branchBounds[i] = branchBounds[parent];
+                i = parent;
+            }
+            branchNodes[i] = node;
+            branchBounds[i] = bound;
+        }
+
+        /**
+         * Removes the branch with the smallest bound.
+         * @return Node of the branch.
+         */
+        int popBranch() {
+            int result = branchNodes[0];
+            branchCount--;
+            int node = branchNodes[branchCount];
+            float bound = branchBounds[branchCount];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= branchCount) {
+                    break;
+                }
+                if (child + 1 < branchCount
+                        && branchBounds[child + 1] < branchBounds[child]) {
+                    child++;
+                }
+                if (branchBounds[child] >= bound) {
+                    break;
+                }
+                branchNodes[i] = branchNodes[child];
+                branchBounds[i] = branchBounds[child];
+                i = child;
+            }
+            branchNodes[i] = node;
+            branchBounds[i] = bound;
+            return result;
+        }
+    }
+}
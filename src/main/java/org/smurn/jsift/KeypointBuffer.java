@@ -0,0 +1,537 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of keypoints stored in primitive arrays.
+ * <p>Each property of the keypoints is stored in its own array, so storing
+ * a keypoint does not create an object and iterating over the keypoints
+ * does not box. The arrays are kept when the buffer is cleared, so a buffer
+ * that is reused does not allocate once it reached its working size.</p>
+ * <p>Keypoints are added by passing the buffer as the sink to
+ * {@link SinkKeypointDetector#detectKeypoints(ScaleSpace, KeypointSink)}.</p>
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class KeypointBuffer implements KeypointSink {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    /** Size below which ranges are sorted by insertion sort. */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    /** x coordinates. */
+    private double[] x;
+    /** y coordinates. */
+    private double[] y;
+    /** Scale coordinates. */
+    private double[] sigma;
+    /** Octave indices. */
+    private int[] octave;
+    /** DoG indices within the octave. */
+    private int[] scale;
+    /** Rows within the octave. */
+    private int[] row;
+    /** Columns within the octave. */
+    private int[] col;
+    /** DoG values at the keypoints. */
+    private float[] response;
+    /** Orientations in radians, NaN if not assigned. */
+    private float[] orientation;
+    /** Number of keypoints in this buffer. */
+    private int size;
+
+    /**
+     * Creates an empty buffer.
+     */
+    public KeypointBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty buffer.
+     * @param capacity Number of keypoints the buffer can hold before it
+     * needs to grow.
+     * @throws IllegalArgumentException if {@code capacity} is negative.
+     */
+    public KeypointBuffer(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(
+                    "capacity must not be negative");
+        }
+        x = new double[capacity];
+        y = new double[capacity];
+        sigma = new double[capacity];
+        octave = new int[capacity];
+        scale = new int[capacity];
+        row = new int[capacity];
+        col = new int[capacity];
+        response = new float[capacity];
+        orientation = new float[capacity];
+    }
+
+    @Override
+    public void keypoint(final double x, final double y, final double sigma,
+            final int octave, final int scale, final int row, final int col,
+            final float response) {
+        if (size == this.x.length) {
+            grow();
+        }
+        this.x[size] = x;
+        this.y[size] = y;
+        this.sigma[size] = sigma;
+        this.octave[size] = octave;
+        this.scale[size] = scale;
+        this.row[size] = row;
+        this.col[size] = col;
+        this.response[size] = response;
+        this.orientation[size] = Float.NaN;
+        size++;
+    }
+
+    /**
+     * Appends a copy of a keypoint with an orientation.
+     * @param source Buffer containing the keypoint to copy.
+     * @param index Index of the keypoint in {@code source}.
+     * @param orientation Orientation of the copy in radians.
+     */
+    void add(final KeypointBuffer source, final int index,
+            final float orientation) {
+        source.checkIndex(index);
+        if (size == this.x.length) {
+            grow();
+        }
+        this.x[size] = source.x[index];
+        this.y[size] = source.y[index];
+        this.sigma[size] = source.sigma[index];
+        this.octave[size] = source.octave[index];
+        this.scale[size] = source.scale[index];
+        this.row[size] = source.row[index];
+        this.col[size] = source.col[index];
+        this.response[size] = source.response[index];
+        this.orientation[size] = orientation;
+        size++;
+    }
+
+    /**
+     * Sets the orientation of a keypoint.
+     * @param index Index of the keypoint.
+     * @param orientation Orientation in radians.
+     */
+    void setOrientation(final int index, final float orientation) {
+        checkIndex(index);
+        this.orientation[index] = orientation;
+    }
+
+    /**
+     * Overwrites a keypoint, clearing its orientation.
+     * @param index Index of the keypoint to overwrite.
+     * @param x Pixel-centric x coordinate in the original image.
+     * @param y Pixel-centric y coordinate in the original image.
+     * @param sigma Scale coordinate.
+     * @param octave Index of the octave.
+     * @param scale Index of the DoG image within the octave.
+     * @param row Row within the octave.
+     * @param col Column within the octave.
+     * @param response Value of the DoG at the keypoint.
+     */
+    void set(final int index, final double x, final double y,
+            final double sigma, final int octave, final int scale,
+            final int row, final int col, final float response) {
+        checkIndex(index);
+        this.x[index] = x;
+        this.y[index] = y;
+        this.sigma[index] = sigma;
+        this.octave[index] = octave;
+        this.scale[index] = scale;
+        this.row[index] = row;
+        this.col[index] = col;
+        this.response[index] = response;
+        this.orientation[index] = Float.NaN;
+    }
+
+    /**
+     * Passes one keypoint to a sink.
+     * @param index Index of the keypoint.
+     * @param sink Sink to pass the keypoint to.
+     */
+    void emit(final int index, final KeypointSink sink) {
+        sink.keypoint(x[index], y[index], sigma[index], octave[index],
+                scale[index], row[index], col[index], response[index]);
+    }
+
+    /**
+     * Gets the number of keypoints in this buffer.
+     * @return Number of keypoints.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all keypoints, keeping the allocated capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Gets the x coordinate of a keypoint.
+     * @param index Index of the keypoint.
+     * @return Pixel-centric x coordinate in the original image.
+     * @throws IndexOutOfBoundsException if there is no such keypoint.
+     */
+    public double getX(final int index) {
+        checkIndex(index);
+        return x[index];
+    }
+
+    /**
+     * Gets the y coordinate of a keypoint.
+     * @param index Index of the keypoint.
+     * @return Pixel-centric y coordinate in the original image.
+     * @throws IndexOutOfBoundsException if there is no such keypoint.
+     */
+    public double getY(final int index) {
+        checkIndex(index);
+        return y[index];
+    }
+
+    /**
+     * Gets the scale coordinate of a keypoint.
+     * @param index Index of the keypoint.
+     * @return Scale coordinate.
+     * @throws IndexOutOfBoundsException if there is no such keypoint.
+     */
+    public double getSigma(final int index) {
+        checkIndex(index);
+        return sigma[index];
+    }
+
+    /**
+     * Gets the index of the octave a keypoint was found in.
+     * @param index Index of the keypoint.
+     * @return Octave index.
+     * @throws IndexOutOfBoundsException if there is no such keypoint.
+     */
+    public int getOctave(final int index) {
+        checkIndex(index);
+        return octave[index];
+    }
+
+    /**
+     * Gets the index of the DoG image a keypoint was found in.
+     * @param index Index of the keypoint.
+     * @return Index of the DoG image within the octave.
+     * @throws IndexOutOfBoundsException if there is no such keypoint.
+     */
+    public int getScale(final int index) {
+        checkIndex(index);
+        return scale[index];
+    }
+
+    /**
+     * Gets the row of the pixel closest to a keypoint in the images of its
+     * octave.
+     * @param index Index of the keypoint.
+     * @return Row within the octave.
+     * @throws IndexOutOfBoundsException if there is no such keypoint.
+     */
+    public int getRow(final int index) {
+        checkIndex(index);
+        return row[index];
+    }
+
+    /**
+     * Gets the column of the pixel closest to a keypoint in the images of
+     * its octave.
+     * @param index Index of the keypoint.
+     * @return Column within the octave.
+     * @throws IndexOutOfBoundsException if there is no such keypoint.
+     */
+    public int getColumn(final int index) {
+        checkIndex(index);
+        return col[index];
+    }
+
+    /**
+     * Gets the DoG value at a keypoint.
+     * @param index Index of the keypoint.
+     * @return Response of the keypoint.
+     * @throws IndexOutOfBoundsException if there is no such keypoint.
+     */
+    public float getResponse(final int index) {
+        checkIndex(index);
+        return response[index];
+    }
+
+    /**
+     * Gets the orientation of a keypoint.
+     * <p>Keypoints get an orientation from {@link OrientationAssigner}.
+     * Keypoints added through the {@link KeypointSink} interface have
+     * none, and the orientation is not passed on by {@link #emitTo}.</p>
+     * @param index Index of the keypoint.
+     * @return Orientation in radians between zero and {@code 2*pi},
+     * measured from the x axis towards the y axis (downwards), or NaN if
+     * the keypoint has no orientation.
+     * @throws IndexOutOfBoundsException if there is no such keypoint.
+     */
+    public float getOrientation(final int index) {
+        checkIndex(index);
+        return orientation[index];
+    }
+
+    /**
+     * Creates a {@link ScaleSpacePoint} for a keypoint.
+     * @param index Index of the keypoint.
+     * @return Point with the keypoint's coordinates and metadata.
+     * @throws IndexOutOfBoundsException if there is no such keypoint.
+     */
+    public ScaleSpacePoint getPoint(final int index) {
+        checkIndex(index);
+        return new ScaleSpacePoint(x[index], y[index], sigma[index],
+                octave[index], scale[index], row[index], col[index],
+                response[index]);
+    }
+
+    /**
+     * Passes all keypoints to a sink, in the order of this buffer.
+     * @param sink Sink to pass the keypoints to.
+     * @throws NullPointerException if {@code sink} is {@code null}.
+     */
+    public void emitTo(final KeypointSink sink) {
+        if (sink == null) {
+            throw new NullPointerException("sink must not be null");
+        }
+        for (int i = 0; i < size; i++) {
+            emit(i, sink);
+        }
+    }
+
+    /**
+     * Sorts the keypoints in place.
+     * <p>The keypoints are ordered by octave, DoG index, y, x, sigma and
+     * orientation.
+     * This groups the keypoints that are sampled from the same image and
+     * orders them row by row within it.</p>
+     */
+    public void sort() {
+        sort(0, size - 1);
+    }
+
+    /**
+     * Removes duplicate keypoints in place.
+     * <p>Keypoints are duplicates if they have the same coordinates, octave,
+     * DoG index and orientation. Only the first of the duplicates is kept.
+     * Since only adjacent duplicates are detected, the buffer should be
+     * sorted first.</p>
+     * @return Number of removed keypoints.
+     */
+    public int removeDuplicates() {
+        if (size == 0) {
+            return 0;
+        }
+        int kept = 1;
+        for (int i = 1; i < size; i++) {
+            if (compare(kept - 1, i) != 0) {
+                move(i, kept);
+                kept++;
+            }
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    /**
+     * Sorts a range with quicksort, falling back to insertion sort for
+     * small ranges.
+     * @param from Index of the first keypoint of the range.
+     * @param to Index of the last keypoint of the range.
+     */
+    private void sort(final int from, final int to) {
+        int low = from;
+        int high = to;
+        while (high - low >= INSERTION_SORT_THRESHOLD) {
+            // median of three as pivot, moved to the start of the range.
+            int middle = (low + high) >>> 1;
+            if (compare(middle, low) < 0) {
+                swap(middle, low);
+            }
+            if (compare(high, low) < 0) {
+                swap(high, low);
+            }
+            if (compare(high, middle) < 0) {
+                swap(high, middle);
+            }
+            swap(low, middle);
+
+            int i = low;
+            int j = high + 1;
+            while (true) {
+                do {
+                    i++;
+                } while (i < high && compare(i, low) < 0);
+                do {
+                    j--;
+                } while (compare(j, low) > 0);
+                if (i >= j) {
+                    break;
+                }
+                swap(i, j);
+            }
+            swap(low, j);
+
+            // recurse into the smaller part to bound the stack depth.
+            if (j - low < high - j) {
+                sort(low, j - 1);
+                low = j + 1;
+            } else {
+                sort(j + 1, high);
+                high = j - 1;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(j - 1, j) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    /**
+     * Compares two keypoints.
+     * @param i Index of the first keypoint.
+     * @param j Index of the second keypoint.
+     * @return Negative, zero or positive if the first keypoint is ordered
+     * before, equal to or after the second.
+     */
+    private int compare(final int i, final int j) {
+        if (octave[i] != octave[j]) {
+            return compareValues(octave[i], octave[j]);
+        }
+        if (scale[i] != scale[j]) {
+            return compareValues(scale[i], scale[j]);
+        }
+        int result = Double.compare(y[i], y[j]);
+        if (result != 0) {
+            return result;
+        }
+        result = Double.compare(x[i], x[j]);
+        if (result != 0) {
+            return result;
+        }
+        result = Double.compare(sigma[i], sigma[j]);
+        if (result != 0) {
+            return result;
+        }
+        return Float.compare(orientation[i], orientation[j]);
+    }
+
+    /**
+     * Compares two integers.
+     * @param a First value.
+     * @param b Second value.
+     * @return Negative, zero or positive if {@code a} is smaller, equal or
+     * larger than {@code b}.
+     */
+    private static int compareValues(final int a, final int b) {
+        if (a < b) {
+            return -1;
+        }
+        if (a > b) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Swaps two keypoints.
+     * @param i Index of the first keypoint.
+     * @param j Index of the second keypoint.
+     */
+    private void swap(final int i, final int j) {
+        double d = x[i];
+        x[i] = x[j];
+        x[j] = d;
+        d = y[i];
+        y[i] = y[j];
+        y[j] = d;
+        d = sigma[i];
+        sigma[i] = sigma[j];
+        sigma[j] = d;
+        int n = octave[i];
+        octave[i] = octave[j];
+        octave[j] = n;
+        n = scale[i];
+        scale[i] = scale[j];
+        scale[j] = n;
+        n = row[i];
+        row[i] = row[j];
+        row[j] = n;
+        n = col[i];
+        col[i] = col[j];
+        col[j] = n;
+        float f = response[i];
+        response[i] = response[j];
+        response[j] = f;
+        f = orientation[i];
+        orientation[i] = orientation[j];
+        orientation[j] = f;
+    }
+
+    /**
+     * Copies a keypoint over another.
+     * @param from Index of the keypoint to copy.
+     * @param to Index of the keypoint to overwrite.
+     */
+    private void move(final int from, final int to) {
+        x[to] = x[from];
+        y[to] = y[from];
+        sigma[to] = sigma[from];
+        octave[to] = octave[from];
+        scale[to] = scale[from];
+        row[to] = row[from];
+        col[to] = col[from];
+        response[to] = response[from];
+        orientation[to] = orientation[from];
+    }
+
+    /**
+     * Doubles the capacity.
+     */
+    private void grow() {
+        int capacity = Math.max(2 * x.length, DEFAULT_CAPACITY);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        sigma = Arrays.copyOf(sigma, capacity);
+        octave = Arrays.copyOf(octave, capacity);
+        scale = Arrays.copyOf(scale, capacity);
+        row = Arrays.copyOf(row, capacity);
+        col = Arrays.copyOf(col, capacity);
+        response = Arrays.copyOf(response, capacity);
+        orientation = Arrays.copyOf(orientation, capacity);
+    }
+
+    /**
+     * Checks that a keypoint exists.
+     * @param index Index of the keypoint.
+     */
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index
+                    + " is not within the size " + size);
+        }
+    }
+}
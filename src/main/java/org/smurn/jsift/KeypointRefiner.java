@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.List;
+
+/**
+ * Locates extrema of the difference-of-gaussian with sub-pixel and
+ * sub-scale accuracy.
+ * <p>Fits a three dimensional quadratic function (a second order taylor
+ * expansion) to the 3x3x3 neighborhood of an extremum and solves for the
+ * offset of its extremum. If the offset is larger than half a pixel (or
+ * scale) in any dimension, the sample point is moved to the neighbor and
+ * the fit repeated, as proposed by Lowe. Points that do not converge,
+ * that leave the image or that have a singular hessian are rejected as
+ * unstable.</p>
+ * <p>The 3x3 system is solved in closed form on the stack, so refining a
+ * point does not allocate memory. Instances are thread-safe.</p>
+ */
+public final class KeypointRefiner {
+
+    /** Number of iterations proposed by Lowe. */
+    private static final int LOWE_MAX_ITERATIONS = 5;
+    /** Offset up to which a fit is considered to be converged. */
+    private static final double MAX_OFFSET = 0.5;
+    /** Index of the refined row in the result array. */
+    static final int ROW = 0;
+    /** Index of the refined column in the result array. */
+    static final int COLUMN = 1;
+    /** Index of the DoG index in the result array. */
+    static final int SCALE = 2;
+    /** Index of the sub-scale offset in the result array. */
+    static final int SCALE_OFFSET = 3;
+    /** Index of the interpolated DoG value in the result array. */
+    static final int VALUE = 4;
+    /** Index of the row of the final sample point in the result array. */
+    static final int SAMPLE_ROW = 5;
+    /** Index of the column of the final sample point in the result array. */
+    static final int SAMPLE_COLUMN = 6;
+    /** Length of the result array. */
+    static final int RESULT_LENGTH = 7;
+    /** Maximal number of fits per point. */
+    private final int maxIterations;
+
+    /**
+     * Creates an instance with the number of iterations proposed by Lowe.
+     */
+    public KeypointRefiner() {
+        this(LOWE_MAX_ITERATIONS);
+    }
+
+    /**
+     * Creates an instance.
+     * @param maxIterations Maximal number of times the sample point is moved
+     * to a neighbor before the point is rejected.
+     * @throws IllegalArgumentException if {@code maxIterations} is smaller
+     * than one.
+     */
+    public KeypointRefiner(final int maxIterations) {
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException(
+                    "need at least one iteration");
+        }
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Refines the location of an extremum.
+     * <p>The result is written into {@code result}: the sub-pixel row and
+     * column, the index of the DoG image the final fit was made at, the
+     * offset from that DoG's scale in units of DoG indices, the
+     * interpolated value of the DoG at the extremum and the row and column
+     * of the pixel the final fit was made at.</p>
+     * @param doGs Difference-of-gaussian images of the octave.
+     * @param scale Index of the DoG image the extremum was found in.
+     * @param row Row of the extremum.
+     * @param col Column of the extremum.
+     * @param result Array of at least seven elements for the result.
+     * @return {@code true} if the point is stable, {@code false} if it was
+     * rejected. {@code result} is undefined if rejected.
+     */
+    boolean refine(final List<Image> doGs, final int scale, final int row,
+            final int col, final double[] result) {
+
+        int s = scale;
+        int r = row;
+        int c = col;
+        final int height = doGs.get(0).getHeight();
+        final int width = doGs.get(0).getWidth();
+
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            Image low = doGs.get(s - 1);
+            Image center = doGs.get(s);
+            Image high = doGs.get(s + 1);
+
+            float v = center.getPixel(r, c);
+
+            // first derivatives
+            double dx = (center.getPixel(r, c + 1)
+                    - center.getPixel(r, c - 1)) / 2.0;
+            double dy = (center.getPixel(r + 1, c)
+                    - center.getPixel(r - 1, c)) / 2.0;
+            double ds = (high.getPixel(r, c) - low.getPixel(r, c)) / 2.0;
+
+            // second derivatives
+            double dxx = center.getPixel(r, c + 1)
+                    + center.getPixel(r, c - 1) - 2.0 * v;
+            double dyy = center.getPixel(r + 1, c)
+                    + center.getPixel(r - 1, c) - 2.0 * v;
+            double dss = high.getPixel(r, c) + low.getPixel(r, c) - 2.0 * v;
+            double dxy = (center.getPixel(r + 1, c + 1)
+                    - center.getPixel(r + 1, c - 1)
+                    - center.getPixel(r - 1, c + 1)
+                    + center.getPixel(r - 1, c - 1)) / 4.0;
+            double dxs = (high.getPixel(r, c + 1) - high.getPixel(r, c - 1)
+                    - low.getPixel(r, c + 1) + low.getPixel(r, c - 1)) / 4.0;
+            double dys = (high.getPixel(r + 1, c) - high.getPixel(r - 1, c)
+                    - low.getPixel(r + 1, c) + low.getPixel(r - 1, c)) / 4.0;
+
+            // solve H * offset = -gradient using the cofactors of the
+            // symmetric hessian.
+            double cxx = dyy * dss - dys * dys;
+            double cxy = dys * dxs - dxy * dss;
+            double cxs = dxy * dys - dyy * dxs;
+            double cyy = dxx * dss - dxs * dxs;
+            double cys = dxy * dxs - dxx * dys;
+            double css = dxx * dyy - dxy * dxy;
+            double det = dxx * cxx + dxy * cxy + dxs * cxs;
+            if (det == 0.0 || Double.isNaN(det) || Double.isInfinite(det)) {
+                return false;
+            }
+            double offsetX = -(cxx * dx + cxy * dy + cxs * ds) / det;
+            double offsetY = -(cxy * dx + cyy * dy + cys * ds) / det;
+            double offsetS = -(cxs * dx + cys * dy + css * ds) / det;
+
+            if (Math.abs(offsetX) <= MAX_OFFSET
+                    && Math.abs(offsetY) <= MAX_OFFSET
+                    && Math.abs(offsetS) <= MAX_OFFSET) {
+                result[ROW] = r + offsetY;
+                result[COLUMN] = c + offsetX;
+                result[SCALE] = s;
+                result[SCALE_OFFSET] = offsetS;
+                result[VALUE] = v + 0.5 * (dx * offsetX + dy * offsetY
+                        + ds * offsetS);
+                result[SAMPLE_ROW] = r;
+                result[SAMPLE_COLUMN] = c;
+                return true;
+            }
+
+            // move to the neighbor, staying away from the borders.
+            double nextC = c + Math.rint(offsetX);
+            double nextR = r + Math.rint(offsetY);
+            double nextS = s + Math.rint(offsetS);
+            if (!(nextC >= 1 && nextC < width - 1
+                    && nextR >= 1 && nextR < height - 1
+                    && nextS >= 1 && nextS < doGs.size() - 1)) {
+                return false;
+            }
+            c = (int) nextC;
+            r = (int) nextR;
+            s = (int) nextS;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Receives the keypoints found by a {@link SinkKeypointDetector} one at a
+ * time.
+ * <p>Detectors call the sink as soon as a keypoint is found, so the
+ * keypoints can be processed while the detection is still running, without
+ * building a collection first.</p>
+ */
+public interface KeypointSink {
+
+    /**
+     * Called for each keypoint found.
+     * @param x Pixel-centric x coordinate in the original image.
+     * @param y Pixel-centric y coordinate in the original image.
+     * @param sigma Scale coordinate.
+     * @param octave Index of the octave the keypoint was found in.
+     * @param scale Index of the difference-of-gaussian image within the
+     * octave the keypoint was found in.
+     * @param row Row of the pixel closest to the keypoint in the images of
+     * the octave.
+     * @param col Column of the pixel closest to the keypoint in the images
+     * of the octave.
+     * @param response Value of the difference-of-gaussian at the keypoint.
+     */
+    void keypoint(double x, double y, double sigma, int octave, int scale,
+            int row, int col, float response);
+}
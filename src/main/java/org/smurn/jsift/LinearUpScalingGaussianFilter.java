@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+
+/**
+ * Combines {@link LinearUpScaler} and {@link GaussianFilter} into a single
+ * operation.
+ * <p>The result is the same as up-scaling with {@link LinearUpScaler} and
+ * filtering the result with {@link GaussianFilter}, but the unfiltered,
+ * up-scaled image is never created. Both the linear interpolation and the
+ * gaussian filter are separable, so the horizontal pass is only run on the
+ * rows of the source image (interpolated horizontally on the fly). The odd
+ * rows of the up-scaled image are interpolated from the horizontally filtered
+ * rows during the vertical pass.</p>
+ */
+public final class LinearUpScalingGaussianFilter implements UpScalingFilter {
+
+    /**
+     * Creates an instance.
+     */
+    public LinearUpScalingGaussianFilter() {
+        // empty
+    }
+
+    /**
+     * Creates an up-scaled and filtered copy of the given image.
+     * @param image Image to up-scale and filter.
+     * @param sigma Sigma of the resulting image.
+     * @return Image with size {@code 2*width-1} times {@code 2*height-1}
+     * (or zero) and the given sigma.
+     * @throws NullPointerException if {@code image} is {@code null}.
+     * @throws IllegalArgumentException if {@code sigma} is smaller then the
+     * input image's sigma.
+     */
+    @Override
+    public Image upScaleAndFilter(final Image image, final double sigma) {
+        if (image == null) {
+            throw new NullPointerException("image must not be null");
+        }
+        if (sigma < image.getSigma()) {
+            throw new IllegalArgumentException("cannot reduce sigma");
+        }
+
+        int width = Math.max(image.getWidth() * 2 - 1, 0);
+        int height = Math.max(image.getHeight() * 2 - 1, 0);
+        final double scale = 2 * image.getScale();
+
+        Image result = new Image(height, width, sigma, scale,
+                2 * image.getOffsetX(), 2 * image.getOffsetY());
+        if (width == 0 || height == 0) {
+            return result;
+        }
+
+        double filterSigma = GaussianKernel.filterSigma(image.getSigma(),
+                sigma, scale);
+
+        if (filterSigma == 0.0) {
+            // Dirac delta function, output is the up-scaled input
+            return new LinearUpScaler().upScale(image);
+        }
+
+        apply(image, result, new GaussianKernel(filterSigma),
+                new double[scratchSize(image.getHeight(), width)]);
+        return result;
+    }
+
+    /**
+     * Gets the number of elements {@link #apply} needs for its scratch
+     * buffer.
+     * @param sourceHeight Height of the image to up-scale.
+     * @param width Width of the up-scaled image.
+     * @return Minimal length of the scratch buffer.
+     */
+    static int scratchSize(final int sourceHeight, final int width) {
+        return (sourceHeight + 2) * width;
+    }
+
+    /**
+     * Up-scales and filters an image into an existing image.
+     * @param image Image to up-scale, at least one pixel in width and height.
+     * @param result Image with size {@code 2*width-1} times
+     * {@code 2*height-1} to write the result to. Its sigma is not checked.
+     * @param kernel Kernel to filter with, in pixels of the up-scaled image.
+     * @param scratch Buffer with at least {@link #scratchSize} elements.
+     */
+    static void apply(final Image image, final Image result,
+            final GaussianKernel kernel, final double[] scratch) {
+
+        final int sourceHeight = image.getHeight();
+        final int height = result.getHeight();
+        final int width = result.getWidth();
+        final double[] weights = kernel.getWeights();
+        final int window = kernel.getWindow();
+        final int rowOffset = sourceHeight * width;
+        final int sumOffset = rowOffset + width;
+
+        // horizontal pass over the source rows, interpolating the columns.
+        for (int row = 0; row < sourceHeight; row++) {
+            for (int col = 0; col < width; col++) {
+                int sourceCol = col / 2;
+                if (2 * sourceCol == col) {
+                    scratch[rowOffset + col] = image.getPixel(row, sourceCol);
+                } else {
+                    scratch[rowOffset + col] = (image.getPixel(row, sourceCol)
+                            + image.getPixel(row, sourceCol + 1)) / 2.0;
+                }
+            }
+            int offset = row * width;
+            for (int col = 0; col < width; col++) {
+                int kernelFrom = kernel.from(col);
+                int kernelTo = kernel.to(col, width);
+
+                double value = 0;
+                int index = rowOffset + col - window + kernelFrom;
+                for (int i = kernelFrom; i <= kernelTo; i++) {
+                    value += weights[i] * scratch[index++];
+                }
+                scratch[offset + col] = value
+                        / kernel.weight(kernelFrom, kernelTo);
+            }
+        }
+
+        // vertical pass, interpolating the odd rows.
+        for (int row = 0; row < height; row++) {
+            int kernelFrom = kernel.from(row);
+            int kernelTo = kernel.to(row, height);
+
+            Arrays.fill(scratch, sumOffset, sumOffset + width, 0.0);
+            for (int i = kernelFrom; i <= kernelTo; i++) {
+                int upScaledRow = row - window + i;
+                int sourceRow = upScaledRow / 2;
+                int first = sourceRow * width;
+                if (2 * sourceRow == upScaledRow) {
+                    double w = weights[i];
+                    for (int col = 0; col < width; col++) {
+                        scratch[sumOffset + col] += w * scratch[first + col];
+                    }
+                } else {
+                    int second = first + width;
+                    double halfWeight = weights[i] / 2.0;
+                    for (int col = 0; col < width; col++) {
+                        scratch[sumOffset + col] += halfWeight
+                                * (scratch[first + col]
+                                + scratch[second + col]);
+                    }
+                }
+            }
+            double weight = kernel.weight(kernelFrom, kernelTo);
+            for (int col = 0; col < width; col++) {
+                result.setPixel(row, col,
+                        (float) (scratch[sumOffset + col] / weight));
+            }
+        }
+    }
+}
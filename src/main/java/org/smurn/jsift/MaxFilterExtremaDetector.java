@@ -0,0 +1,296 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.List;
+
+/**
+ * Detects the same extrema as {@link ExtremaDetector} using 3x3 maximum and
+ * minimum maps.
+ * <p>For each DoG image of an octave, the maximum and the minimum of every
+ * 3x3 neighborhood are computed with a separable filter. Each map is
+ * shared by the up to three DoG triples the image is part of. A pixel is a
+ * candidate for a maximum if it is not smaller than the maximum of its own
+ * neighborhood and larger than the maxima of the neighborhoods at the same
+ * position one scale lower and one higher, which takes three comparisons
+ * instead of up to 26. The few candidates are verified against all their
+ * neighbors to exclude ties, so the result is identical to
+ * {@link ExtremaDetector}, including the order.</p>
+ * <p>The octave is processed row by row for all scales at once, so only
+ * three rows of the horizontally filtered images and one row of the maps
+ * are kept per DoG, which fit into the cache.</p>
+ * <p>Building the maps costs eight comparisons per pixel and DoG, whereas
+ * {@link ExtremaDetector} rejects most pixels after one or two comparisons.
+ * On the JVM this detector is therefore about three times slower. It is
+ * mainly a reference for the map based formulation, whose cost does not
+ * depend on the image content.</p>
+ * <p>Instances are thread-safe.</p>
+ */
+public final class MaxFilterExtremaDetector extends ExtremaDetector {
+
+    /** Number of rows in a 3x3 neighborhood. */
+    private static final int WINDOW = 3;
+
+    /**
+     * Creates an instance that reports all extrema.
+     */
+    public MaxFilterExtremaDetector() {
+        super();
+    }
+
+    /**
+     * Creates an instance.
+     * @param contrastThreshold Contrast threshold {@code t}, see
+     * {@link ExtremaDetector#ExtremaDetector(double, KeypointRefiner)}.
+     * Zero disables the threshold.
+     * @param edgeRatio Maximal ratio {@code r} between the principal
+     * curvatures, see
+     * {@link ExtremaDetector#ExtremaDetector(double, double, KeypointRefiner)}.
+     * Zero disables the edge test.
+     * @param refiner Refiner to locate the extrema with sub-pixel accuracy,
+     * or {@code null} to report the pixel positions.
+     * @throws IllegalArgumentException if {@code contrastThreshold} is
+     * negative or if {@code edgeRatio} is neither zero nor at least one.
+     */
+    public MaxFilterExtremaDetector(final double contrastThreshold,
+            final double edgeRatio, final KeypointRefiner refiner) {
+        super(contrastThreshold, edgeRatio, refiner);
+    }
+
+    @Override
+    public void detectKeypoints(final ScaleSpace scaleSpace,
+            final KeypointSink sink) {
+
+        if (scaleSpace == null) {
+            throw new NullPointerException("scale space must not be null");
+        }
+        if (sink == null) {
+            throw new NullPointerException("sink must not be null");
+        }
+
+        double[] refined = new double[KeypointRefiner.RESULT_LENGTH];
+        List<Octave> octaves = scaleSpace.getOctaves();
+        for (int o = 0; o < octaves.size(); o++) {
+            Octave octave = octaves.get(o);
+            IntList[] hits = detectKeypoints(octave);
+            for (int i = 1; i < hits.length - 1; i++) {
+                emit(o, octave, i, hits[i], refined, sink);
+            }
+        }
+    }
+
+    /**
+     * Detects the extrema of an octave.
+     * @param octave Octave to search.
+     * @return Rows and columns of the extrema, indexed by the DoG they were
+     * found in. The lists of the first and last DoG are empty.
+     */
+    private IntList[] detectKeypoints(final Octave octave) {
+        List<Image> doGList = octave.getDifferenceOfGaussians();
+        final int count = doGList.size();
+        final int width = octave.getWidth();
+        final int lastRow = octave.getHeight() - 1;
+        final float threshold = preThreshold(octave);
+
+        Image[] doGs = new Image[count];
+        IntList[] hits = new IntList[count];
+        // horizontally filtered rows, indexed by DoG and row modulo three.
+        float[][][] rowMax = new float[count][WINDOW][width];
+        float[][][] rowMin = new float[count][WINDOW][width];
+        // 3x3 filtered current row, indexed by DoG.
+        float[][] max = new float[count][width];
+        float[][] min = new float[count][width];
+        for (int d = 0; d < count; d++) {
+            doGs[d] = contiguous(doGList.get(d));
+            hits[d] = new IntList();
+            if (lastRow > 0) {
+                filterRow(doGs[d].getRowArray(0), rowMax[d][0], rowMin[d][0]);
+                filterRow(doGs[d].getRowArray(1), rowMax[d][1], rowMin[d][1]);
+            }
+        }
+
+        for (int row = 1; row < lastRow; row++) {
+            final int above = (row - 1) % WINDOW;
+            final int current = row % WINDOW;
+            final int below = (row + 1) % WINDOW;
+            for (int d = 0; d < count; d++) {
+                filterRow(doGs[d].getRowArray(row + 1), rowMax[d][below],
+                        rowMin[d][below]);
+                filterColumns(rowMax[d][above], rowMax[d][current],
+                        rowMax[d][below], rowMin[d][above],
+                        rowMin[d][current], rowMin[d][below], max[d],
+                        min[d]);
+            }
+            for (int d = 1; d < count - 1; d++) {
+                detectKeypoints(doGs, d, row, max, min, threshold, hits[d]);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Detects extrema in one row of one scale using the maps.
+     * @param doGs The DoG images of the octave, with column stride one.
+     * @param scale Index of the DoG to search.
+     * @param row Row to search.
+     * @param max The maximum maps of the row, indexed by DoG.
+     * @param min The minimum maps of the row, indexed by DoG.
+     * @param threshold Pixels with an absolute value smaller than this
+     * are skipped.
+     * @param hits List to append the rows and columns of the extrema to.
+     */
+    private void detectKeypoints(final Image[] doGs, final int scale,
+            final int row, final float[][] max, final float[][] min,
+            final float threshold, final IntList hits) {
+
+        final float[] lowMax = max[scale - 1];
+        final float[] centerMax = max[scale];
+        final float[] highMax = max[scale + 1];
+        final float[] lowMin = min[scale - 1];
+        final float[] centerMin = min[scale];
+        final float[] highMin = min[scale + 1];
+        final float[] c1 = doGs[scale].getRowArray(row);
+        final int lastCol = c1.length - 1;
+
+        for (int col = 1; col < lastCol; col++) {
+            final float v = c1[col];
+            if (Math.abs(v) < threshold) {
+                continue;
+            }
+            boolean candidate;
+            if (v >= centerMax[col]) {
+                candidate = v > lowMax[col] && v > highMax[col];
+            } else if (v <= centerMin[col]) {
+                candidate = v < lowMin[col] && v < highMin[col];
+            } else {
+                candidate = false;
+            }
+            if (candidate && isExtremum(doGs, scale, row, col)) {
+                hits.add(row);
+                hits.add(col);
+            }
+        }
+    }
+
+    /**
+     * Verifies a candidate against its 26 neighbors and applies the edge
+     * test.
+     * <p>The maps do not distinguish ties and ignore some NaNs, so this
+     * check is what makes the result exact.</p>
+     * @param doGs The DoG images of the octave.
+     * @param scale Index of the DoG of the candidate.
+     * @param row Row of the candidate.
+     * @param col Column of the candidate.
+     * @return {@code true} if it is reported by {@link ExtremaDetector}.
+     */
+    private boolean isExtremum(final Image[] doGs, final int scale,
+            final int row, final int col) {
+        final float[] c0 = doGs[scale].getRowArray(row - 1);
+        final float[] c1 = doGs[scale].getRowArray(row);
+        final float[] c2 = doGs[scale].getRowArray(row + 1);
+        final float v = c1[col];
+        final int w = col - 1;
+        final int e = col + 1;
+        int sign = 0;
+        for (int d = scale - 1; d <= scale + 1; d++) {
+            for (int r = row - 1; r <= row + 1; r++) {
+                final float[] pixels = doGs[d].getRowArray(r);
+                for (int c = w; c <= e; c++) {
+                    if (d == scale && r == row && c == col) {
+                        continue;
+                    }
+                    if (v > pixels[c] && sign >= 0) {
+                        sign = 1;
+                    } else if (v < pixels[c] && sign <= 0) {
+                        sign = -1;
+                    } else {
+                        return false;
+                    }
+                }
+            }
+        }
+        return getEdgeRatio() == 0 || !isEdge(c0, c1, c2, col);
+    }
+
+    /**
+     * Computes the maximum and minimum of each pixel and its left and right
+     * neighbor.
+     * @param pixels Row to filter.
+     * @param max Array for the maxima. The first and last element are not
+     * written.
+     * @param min Array for the minima.
+     */
+    private static void filterRow(final float[] pixels, final float[] max,
+            final float[] min) {
+        final int lastCol = pixels.length - 1;
+        for (int col = 1; col < lastCol; col++) {
+            final float w = pixels[col - 1];
+            final float c = pixels[col];
+            final float e = pixels[col + 1];
+            max[col] = max(max(w, c), e);
+            min[col] = min(min(w, c), e);
+        }
+    }
+
+    /**
+     * Computes the maximum and minimum of three horizontally filtered rows.
+     * @param max0 Maxima of the row above.
+     * @param max1 Maxima of the row.
+     * @param max2 Maxima of the row below.
+     * @param min0 Minima of the row above.
+     * @param min1 Minima of the row.
+     * @param min2 Minima of the row below.
+     * @param max Array for the maxima of the 3x3 neighborhoods.
+     * @param min Array for the minima of the 3x3 neighborhoods.
+     */
+    private static void filterColumns(final float[] max0, final float[] max1,
+            final float[] max2, final float[] min0, final float[] min1,
+            final float[] min2, final float[] max, final float[] min) {
+        final int lastCol = max.length - 1;
+        for (int col = 1; col < lastCol; col++) {
+            max[col] = max(max(max0[col], max1[col]), max2[col]);
+            min[col] = min(min(min0[col], min1[col]), min2[col]);
+        }
+    }
+
+    /**
+     * Maximum of two values, without the special cases of
+     * {@link Math#max(float, float)}.
+     * @param a First value.
+     * @param b Second value.
+     * @return The larger value.
+     */
+    private static float max(final float a, final float b) {
+        if (a > b) {
+            return a;
+        }
+        return b;
+    }
+
+    /**
+     * Minimum of two values, without the special cases of
+     * {@link Math#min(float, float)}.
+     * @param a First value.
+     * @param b Second value.
+     * @return The smaller value.
+     */
+    private static float min(final float a, final float b) {
+        if (a < b) {
+            return a;
+        }
+        return b;
+    }
+}
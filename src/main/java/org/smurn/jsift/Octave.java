@@ -22,12 +22,21 @@ import java.util.List;
 /**
  * Represents a scale interval in the scale-space where the scale doubles.
  * <p>All images in an octave have the same width and height.</p>
+ * <p>The gradients of the scale-images are computed when first requested
+ * and kept as long as the octave, so that the stages that sample gradients
+ * around many keypoints compute each of them only once.</p>
  */
 public final class Octave {
 
     private final List<Image> scaleImages;
     private final List<Image> doGs;
     private static final int ADDITIONAL_SCALES = 2;
+    /** Gradients of the scale-images, {@code null} until requested. */
+    private final GradientMap[] gradients;
+    /** Whether the gradients are outdated, indexed like the scale-images. */
+    private final boolean[] stale;
+    /** Locks guarding the gradients, one per scale-image. */
+    private final Object[] gradientLocks;
 
     /**
      * Creates an instance.
@@ -78,6 +87,12 @@ public final class Octave {
         this.scaleImages = Collections.unmodifiableList(
                 new ArrayList<Image>(scaleImages));
         this.doGs = Collections.unmodifiableList(new ArrayList<Image>(doGs));
+        this.gradients = new GradientMap[scaleImages.size()];
+        this.stale = new boolean[scaleImages.size()];
+        this.gradientLocks = new Object[scaleImages.size()];
+        for (int i = 0; i < gradientLocks.length; i++) {
+            gradientLocks[i] = new Object();
+        }
     }
    
     /**
@@ -110,6 +125,63 @@ public final class Octave {
         return doGs;
     }
 
+    /**
+     * Finds the scale-image whose sigma is closest to a given sigma.
+     * @param sigma Sigma in reference to the original image.
+     * @return Index of the scale-image with the smallest ratio between its
+     * sigma and {@code sigma}.
+     */
+    int getClosestScaleImage(final double sigma) {
+        int best = 0;
+        double bestRatio = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < scaleImages.size(); i++) {
+            double imageSigma = scaleImages.get(i).getSigma();
+            double ratio = Math.max(imageSigma / sigma, sigma / imageSigma);
+            if (ratio < bestRatio) {
+                bestRatio = ratio;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the gradients of a scale-image.
+     * <p>The gradients are computed on the first call and cached. This
+     * method is thread-safe. Each scale-image has its own lock, so threads
+     * can compute the gradients of different scale-images
+     * concurrently.</p>
+     * @param index Index of the scale-image.
+     * @return Gradients of {@code getScaleImages().get(index)}.
+     * @throws IndexOutOfBoundsException if there is no such scale-image.
+     */
+    public GradientMap getGradients(final int index) {
+        if (index < 0 || index >= gradients.length) {
+            throw new IndexOutOfBoundsException("no scale-image " + index);
+        }
+        synchronized (gradientLocks[index]) {
+            if (gradients[index] == null) {
+                gradients[index] = new GradientMap(scaleImages.get(index));
+            } else if (stale[index]) {
+                gradients[index].update(scaleImages.get(index));
+            }
+            stale[index] = false;
+            return gradients[index];
+        }
+    }
+
+    /**
+     * Marks the cached gradients as outdated after the scale-images were
+     * modified. They are recomputed into the same arrays when requested.
+     */
+    void invalidateGradients() {
+        for (int i = 0; i < stale.length; i++) {
+            synchronized (gradientLocks[i]) {
+                stale[i] = true;
+            }
+        }
+    }
+
     /**
      * Gets the width of all images (both scale and DoG) in this octave.
      * @return Width of all images in this octave.
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns orientations to keypoints from the gradients around them.
+ * <p>As proposed by Lowe, the gradient orientations in a window around the
+ * keypoint are collected in a histogram, weighted by the gradient
+ * magnitude and by a gaussian with 1.5 times the keypoint's scale. The
+ * histogram is smoothed and each peak that reaches 80% of the highest peak
+ * yields a keypoint, with the orientation interpolated by fitting a
+ * parabola to the peak and its neighbors. Keypoints in regions without
+ * gradient get no orientation and are dropped.</p>
+ * <p>The gradients are taken from the scale-image with the sigma closest
+ * to the keypoint's, using the maps cached by
+ * {@link Octave#getGradients(int)}. The gaussian is separable, so only one
+ * exponential per row of the window is evaluated. The histogram and the
+ * weights are allocated once, so assigning orientations does not allocate
+ * memory apart from growing the result buffer.</p>
+ * <p>Instances are not thread-safe, use one instance per thread.</p>
+ */
+public final class OrientationAssigner {
+
+    /** Number of histogram bins proposed by Lowe. */
+    private static final int LOWE_BINS = 36;
+    /** Size of the window relative to the keypoint's scale. */
+    private static final double LOWE_WINDOW_FACTOR = 1.5;
+    /** Relative height from which on a peak yields a keypoint. */
+    private static final double LOWE_PEAK_RATIO = 0.8;
+    /** Radius of the window in sigmas of the weighting gaussian. */
+    private static final double WINDOW_RADIUS = 3.0;
+    /** Number of bins the smoothing kernel reaches to each side. */
+    private static final int SMOOTHING_RADIUS = 2;
+    /** Weight of the center bin of the binomial smoothing kernel. */
+    private static final float SMOOTH_CENTER = 6f / 16f;
+    /** Weight of the adjacent bins of the smoothing kernel. */
+    private static final float SMOOTH_NEAR = 4f / 16f;
+    /** Weight of the outer bins of the smoothing kernel. */
+    private static final float SMOOTH_FAR = 1f / 16f;
+    private static final double TWO_PI = 2 * Math.PI;
+    /** Number of histogram bins. */
+    private final int bins;
+    /** Sigma of the weighting gaussian relative to the keypoint's scale. */
+    private final double windowFactor;
+    /** Relative height from which on a peak yields a keypoint. */
+    private final double peakRatio;
+    /** Raw histogram with the bins wrapped around on both sides. */
+    private final float[] raw;
+    /** Smoothed histogram. */
+    private final float[] histogram;
+    /** Gaussian weights by offset from the keypoint, grown as needed. */
+    private float[] weights = new float[0];
+
+    /**
+     * Creates an instance with the parameters proposed by Lowe.
+     */
+    public OrientationAssigner() {
+        this(LOWE_BINS, LOWE_WINDOW_FACTOR, LOWE_PEAK_RATIO);
+    }
+
+    /**
+     * Creates an instance.
+     * @param bins Number of bins of the orientation histogram.
+     * @param windowFactor Sigma of the gaussian weighting window relative to
+     * the keypoint's scale.
+     * @param peakRatio Height relative to the highest peak from which on a
+     * peak of the histogram yields a keypoint.
+     * @throws IllegalArgumentException if {@code bins} is smaller than
+     * three, if {@code windowFactor} is not strictly positive or if
+     * {@code peakRatio} is not within (0, 1].
+     */
+    public OrientationAssigner(final int bins, final double windowFactor,
+            final double peakRatio) {
+        if (bins < 3) {
+            throw new IllegalArgumentException("need at least three bins");
+        }
+        if (!(windowFactor > 0)) {
+            throw new IllegalArgumentException(
+                    "window factor must be larger than zero");
+        }
+        if (!(peakRatio > 0 && peakRatio <= 1)) {
+            throw new IllegalArgumentException(
+                    "peak ratio must be within (0, 1]");
+        }
+        this.bins = bins;
+        this.windowFactor = windowFactor;
+        this.peakRatio = peakRatio;
+        this.raw = new float[bins + 2 * SMOOTHING_RADIUS];
+        this.histogram = new float[bins];
+    }
+
+    /**
+     * Assigns orientations to keypoints.
+     * <p>For each keypoint one keypoint per dominant orientation is
+     * appended to {@code result}, in the order of {@code keypoints}.</p>
+     * @param scaleSpace Scale-space the keypoints were detected in.
+     * @param keypoints Keypoints with octave, row and column, as passed by
+     * the detectors of this library.
+     * @param result Buffer to append the oriented keypoints to.
+     * @throws NullPointerException if any parameter is {@code null}.
+     * @throws IllegalArgumentException if {@code keypoints} and
+     * {@code result} are the same buffer or if a keypoint's octave is not
+     * within the scale-space.
+     */
+    public void assign(final ScaleSpace scaleSpace,
+            final KeypointBuffer keypoints, final KeypointBuffer result) {
+        if (scaleSpace == null) {
+            throw new NullPointerException("scale space must not be null");
+        }
+        if (keypoints == null) {
+            throw new NullPointerException("keypoints must not be null");
+        }
+        if (result == null) {
+            throw new NullPointerException("result must not be null");
+        }
+        if (keypoints == result) {
+            throw new IllegalArgumentException(
+                    "result must not be the input buffer");
+        }
+        List<Octave> octaves = scaleSpace.getOctaves();
+        for (int i = 0; i < keypoints.size(); i++) {
+            int octave = keypoints.getOctave(i);
+            if (octave < 0 || octave >= octaves.size()) {
+                throw new IllegalArgumentException("keypoint " + i
+                        + " is not in an octave of the scale-space");
+            }
+            assign(octaves.get(octave), keypoints, i, result);
+        }
+    }
+
+    /**
+     * Assigns the orientations of one keypoint.
+     * @param octave Octave the keypoint was found in.
+     * @param keypoints Buffer containing the keypoint.
+     * @param index Index of the keypoint.
+     * @param result Buffer to append the oriented keypoints to.
+     */
+    private void assign(final Octave octave, final KeypointBuffer keypoints,
+            final int index, final KeypointBuffer result) {
+
+        final double sigma = keypoints.getSigma(index);
+        final int imageIndex = octave.getClosestScaleImage(sigma);
+        final Image image = octave.getScaleImages().get(imageIndex);
+        final GradientMap gradients = octave.getGradients(imageIndex);
+
+        final double windowSigma = windowFactor * sigma * image.getScale();
+        final int radius = Math.max(1,
+                (int) Math.round(WINDOW_RADIUS * windowSigma));
+        fillWeights(radius, windowSigma);
+
+        final int row = keypoints.getRow(index);
+        final int col = keypoints.getColumn(index);
+        final int width = gradients.getWidth();
+        final int fromRow = Math.max(row - radius, 0);
+        final int toRow = Math.min(row + radius, gradients.getHeight() - 1);
+        final int fromCol = Math.max(col - radius, 0);
+        final int toCol = Math.min(col + radius, width - 1);
+        final float[] magnitudes = gradients.getMagnitudes();
+        final float[] orientations = gradients.getOrientations();
+        final float binsPerRadian = (float) (bins / TWO_PI);
+        // shifts the orientation to be positive and rounds to the closest
+        // bin center when truncated.
+        final float binShift = bins + 0.5f;
+
+        Arrays.fill(raw, 0f);
+        for (int r = fromRow; r <= toRow; r++) {
+            final float rowWeight = weights[r - row + radius];
+            final int offset = r * width;
+            for (int c = fromCol; c <= toCol; c++) {
+                final float w = rowWeight * weights[c - col + radius]
+                        * magnitudes[offset + c];
+                if (w > 0) {
+                    int bin = (int) (orientations[offset + c] * binsPerRadian
+                            + binShift);
+                    if (bin >= bins) {
+                        bin -= bins;
+                    }
+                    raw[bin + SMOOTHING_RADIUS] += w;
+                }
+            }
+        }
+
+        smooth();
+        emitPeaks(keypoints, index, result);
+    }
+
+    /**
+     * Fills the weight table with a gaussian centered at {@code radius}.
+     * @param radius Radius of the window.
+     * @param windowSigma Sigma of the gaussian in pixels.
+     */
+    private void fillWeights(final int radius, final double windowSigma) {
+        if (weights.length < 2 * radius + 1) {
+            weights = new float[2 * radius + 1];
+        }
+        final double factor = -1.0 / (2.0 * windowSigma * windowSigma);
+        for (int i = 0; i <= radius; i++) {
+            float w = (float) Math.exp(factor * i * i);
+            weights[radius - i] = w;
+            weights[radius + i] = w;
+        }
+    }
+
+    /**
+     * Smoothes the raw histogram circularly with a binomial kernel.
+     */
+    private void smooth() {
+        for (int i = 0; i < SMOOTHING_RADIUS; i++) {
+            raw[i] = raw[bins + i];
+            raw[bins + SMOOTHING_RADIUS + i] = raw[SMOOTHING_RADIUS + i];
+        }
+        for (int i = 0; i < bins; i++) {
+            final int c = i + SMOOTHING_RADIUS;
+            histogram[i] = SMOOTH_FAR * (raw[c - 2] + raw[c + 2])
+                    + SMOOTH_NEAR * (raw[c - 1] + raw[c + 1])
+                    + SMOOTH_CENTER * raw[c];
+        }
+    }
+
+    /**
+     * Appends a keypoint for each dominant peak of the smoothed histogram.
+     * @param keypoints Buffer containing the keypoint.
+     * @param index Index of the keypoint.
+     * @param result Buffer to append the oriented keypoints to.
+     */
+    private void emitPeaks(final KeypointBuffer keypoints, final int index,
+            final KeypointBuffer result) {
+        float max = 0;
+        for (int i = 0; i < bins; i++) {
+            max = Math.max(max, histogram[i]);
+        }
+        final float threshold = (float) (peakRatio * max);
+        for (int i = 0; i < bins; i++) {
+            final float center = histogram[i];
+            final float left = histogram[(i + bins - 1) % bins];
+            final float right = histogram[(i + 1) % bins];
+            if (center > left && center > right && center >= threshold) {
+                double offset = 0.5 * (left - right)
+                        / (left - 2 * center + right);
+                double angle = (i + offset) * TWO_PI / bins;
+                if (angle < 0) {
+                    angle += TWO_PI;
+                }
+                float orientation = (float) angle;
+                if (orientation >= (float) TWO_PI) {
+                    // also catches angles that round up to 2*pi.
+                    orientation -= (float) TWO_PI;
+                }
+                result.add(keypoints, index, orientation);
+            }
+        }
+    }
+}
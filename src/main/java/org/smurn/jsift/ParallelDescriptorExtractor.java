@@ -0,0 +1,242 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the descriptors of many keypoints using several threads.
+ * <p>The keypoints are sorted with {@link KeypointBuffer#sort()}, which
+ * groups them by octave and scale and orders them row by row within each
+ * group, so consecutive keypoints sample overlapping parts of the same
+ * gradient map. The gradient maps the keypoints need are computed first,
+ * one task per map, and the sorted keypoints are then split into batches
+ * of consecutive keypoints, one task per batch.</p>
+ * <p>Each thread computes the descriptors with its own
+ * {@link DescriptorExtractor}, so the scratch buffers are allocated once
+ * per thread and not per batch. The executor is not shut down by this
+ * class.</p>
+ */
+public final class ParallelDescriptorExtractor {
+
+    /** Number of keypoints per task if not specified otherwise. */
+    private static final int DEFAULT_BATCH_SIZE = 128;
+    /** Executor to run the tasks on. */
+    private final ExecutorService executor;
+    /** Number of keypoints per task. */
+    private final int batchSize;
+    /** Extractor of each thread. */
+    private final ThreadLocal<DescriptorExtractor> extractors =
+            new ThreadLocal<DescriptorExtractor>() {
+
+                @Override
+                protected DescriptorExtractor initialValue() {
+                    return new DescriptorExtractor();
+                }
+            };
+
+    /**
+     * Creates an instance with a default batch size.
+     * @param executor Executor to run the tasks on.
+     * @throws NullPointerException if {@code executor} is {@code null}.
+     */
+    public ParallelDescriptorExtractor(final ExecutorService executor) {
+        this(executor, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates an instance.
+     * @param executor Executor to run the tasks on.
+     * @param batchSize Number of keypoints per task.
+     * @throws NullPointerException if {@code executor} is {@code null}.
+     * @throws IllegalArgumentException if {@code batchSize} is smaller than
+     * one.
+     */
+    public ParallelDescriptorExtractor(final ExecutorService executor,
+            final int batchSize) {
+        if (executor == null) {
+            throw new NullPointerException("executor must not be null");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "batches must contain at least one keypoint");
+        }
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Computes the descriptors of all keypoints.
+     * <p>The keypoints are sorted in place first. The descriptor of the
+     * keypoint with index {@code i} after sorting is written to
+     * {@code descriptors} starting at {@code i*DescriptorExtractor.LENGTH}.
+     * </p>
+     * @param scaleSpace Scale-space the keypoints were detected in.
+     * @param keypoints Keypoints with orientations, sorted by this method.
+     * @param descriptors Array with room for the descriptors of all
+     * keypoints.
+     * @throws NullPointerException if any parameter is {@code null}.
+     * @throws IllegalArgumentException if {@code descriptors} is too short,
+     * if a keypoint's octave is not within the scale-space or if a keypoint
+     * has no orientation.
+     */
+    public void extract(final ScaleSpace scaleSpace,
+            final KeypointBuffer keypoints, final byte[] descriptors) {
+        if (scaleSpace == null) {
+            throw new NullPointerException("scale space must not be null");
+        }
+        if (keypoints == null) {
+            throw new NullPointerException("keypoints must not be null");
+        }
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        final int size = keypoints.size();
+        if ((long) size * DescriptorExtractor.LENGTH > descriptors.length) {
+            throw new IllegalArgumentException("need room for " + size
+                    + " descriptors");
+        }
+
+        List<Octave> octaves = scaleSpace.getOctaves();
+        boolean[][] needed = new boolean[octaves.size()][];
+        for (int o = 0; o < needed.length; o++) {
+            needed[o] = new boolean[octaves.get(o).getScaleImages().size()];
+        }
+        for (int i = 0; i < size; i++) {
+            int octave = keypoints.getOctave(i);
+            if (octave < 0 || octave >= octaves.size()) {
+                throw new IllegalArgumentException("keypoint " + i
+                        + " is not in an octave of the scale-space");
+            }
+            if (Float.isNaN(keypoints.getOrientation(i))) {
+                throw new IllegalArgumentException("keypoint " + i
+                        + " has no orientation");
+            }
+            needed[octave][octaves.get(octave).getClosestScaleImage(
+                    keypoints.getSigma(i))] = true;
+        }
+        keypoints.sort();
+
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int o = 0; o < needed.length; o++) {
+                for (int s = 0; s < needed[o].length; s++) {
+                    if (needed[o][s]) {
+                        futures.add(executor.submit(
+                                new GradientTask(octaves.get(o), s)));
+                    }
+                }
+            }
+            awaitAll(futures);
+            futures.clear();
+            for (int from = 0; from < size; from += batchSize) {
+                futures.add(executor.submit(new BatchTask(octaves, keypoints,
+                        from, Math.min(from + batchSize, size),
+                        descriptors)));
+            }
+            awaitAll(futures);
+        } finally {
+            // only has an effect if a task failed.
+            Futures.cancelAll(futures);
+        }
+    }
+
+    /**
+     * Waits for tasks to complete.
+     * @param futures Futures of the tasks.
+     */
+    private static void awaitAll(final List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            Futures.get(future);
+        }
+    }
+
+    /**
+     * Computes the gradients of a scale-image.
+     */
+    private static final class GradientTask implements Callable<Void> {
+
+        /** Octave of the scale-image. */
+        private final Octave octave;
+        /** Index of the scale-image. */
+        private final int index;
+
+        /**
+         * Creates an instance.
+         * @param octave Octave of the scale-image.
+         * @param index Index of the scale-image.
+         */
+        GradientTask(final Octave octave, final int index) {
+            this.octave = octave;
+            this.index = index;
+        }
+
+        @Override
+        public Void call() {
+            octave.getGradients(index);
+            return null;
+        }
+    }
+
+    /**
+     * Computes the descriptors of a range of keypoints.
+     */
+    private final class BatchTask implements Callable<Void> {
+
+        /** Octaves of the scale-space. */
+        private final List<Octave> octaves;
+        /** Keypoints, read concurrently by all tasks. */
+        private final KeypointBuffer keypoints;
+        /** Index of the first keypoint. */
+        private final int from;
+        /** Index after the last keypoint. */
+        private final int to;
+        /** Array to write the descriptors to. */
+        private final byte[] descriptors;
+
+        /**
+         * Creates an instance.
+         * @param octaves Octaves of the scale-space.
+         * @param keypoints Keypoints, not modified.
+         * @param from Index of the first keypoint.
+         * @param to Index after the last keypoint.
+         * @param descriptors Array to write the descriptors to.
+         */
+        BatchTask(final List<Octave> octaves, final KeypointBuffer keypoints,
+                final int from, final int to, final byte[] descriptors) {
+            this.octaves = octaves;
+            this.keypoints = keypoints;
+            this.from = from;
+            this.to = to;
+            this.descriptors = descriptors;
+        }
+
+        @Override
+        public Void call() {
+            DescriptorExtractor extractor = extractors.get();
+            for (int i = from; i < to; i++) {
+                extractor.extract(octaves.get(keypoints.getOctave(i)),
+                        keypoints, i, descriptors,
+                        i * DescriptorExtractor.LENGTH);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Detects the same extrema as an {@link ExtremaDetector} using several
+ * threads.
+ * <p>Each octave, scale and band of rows is searched in a separate task.
+ * The tasks are small, so an executor with work-stealing (such as the
+ * fork-join pool of Java 7) balances the load well, but any executor can be
+ * used. The results are merged in the order of the tasks, which is the
+ * order in which {@link ExtremaDetector} returns them. When a sink is given,
+ * the keypoints of a task are passed to it as soon as the task and all tasks
+ * before it are complete, while later tasks are still running.</p>
+ * <p>The executor is not shut down by this class.</p>
+ */
+public final class ParallelExtremaDetector implements SinkKeypointDetector {
+
+    /** Number of rows per task if not specified otherwise. */
+    private static final int DEFAULT_BAND_HEIGHT = 64;
+    /** Detector that searches the individual bands. */
+    private final ExtremaDetector detector;
+    /** Executor to run the tasks on. */
+    private final ExecutorService executor;
+    /** Number of rows per task. */
+    private final int bandHeight;
+
+    /**
+     * Creates an instance with a default {@link ExtremaDetector}.
+     * @param executor Executor to run the tasks on.
+     * @throws NullPointerException if {@code executor} is {@code null}.
+     */
+    public ParallelExtremaDetector(final ExecutorService executor) {
+        this(new ExtremaDetector(), executor, DEFAULT_BAND_HEIGHT);
+    }
+
+    /**
+     * Creates an instance.
+     * @param detector Detector used to search the bands. Must be
+     * thread-safe, which {@link ExtremaDetector} is.
+     * @param executor Executor to run the tasks on.
+     * @param bandHeight Number of rows searched by one task.
+     * @throws NullPointerException if {@code detector} or {@code executor}
+     * is {@code null}.
+     * @throws IllegalArgumentException if {@code bandHeight} is smaller than
+     * one.
+     */
+    public ParallelExtremaDetector(final ExtremaDetector detector,
+            final ExecutorService executor, final int bandHeight) {
+        if (detector == null) {
+            throw new NullPointerException("detector must not be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor must not be null");
+        }
+        if (bandHeight < 1) {
+            throw new IllegalArgumentException(
+                    "bands must be at least one row high");
+        }
+        this.detector = detector;
+        this.executor = executor;
+        this.bandHeight = bandHeight;
+    }
+
+    @Override
+    public Collection<ScaleSpacePoint> detectKeypoints(
+            final ScaleSpace scaleSpace) {
+
+        PointListSink sink = new PointListSink();
+        detectKeypoints(scaleSpace, sink);
+        return sink.getPoints();
+    }
+
+    @Override
+    public void detectKeypoints(final ScaleSpace scaleSpace,
+            final KeypointSink sink) {
+
+        if (scaleSpace == null) {
+            throw new NullPointerException("scale space must not be null");
+        }
+        if (sink == null) {
+            throw new NullPointerException("sink must not be null");
+        }
+
+        List<BandTask> tasks = new ArrayList<BandTask>();
+        List<Octave> octaves = scaleSpace.getOctaves();
+        for (int o = 0; o < octaves.size(); o++) {
+            Octave octave = octaves.get(o);
+            int doGCount = octave.getDifferenceOfGaussians().size();
+            float threshold = detector.preThreshold(octave);
+            for (int i = 1; i < doGCount - 1; i++) {
+                int lastRow = octave.getHeight() - 1;
+                for (int row = 1; row < lastRow; row += bandHeight) {
+                    tasks.add(new BandTask(o, octave, i, row,
+                            Math.min(row + bandHeight, lastRow), threshold));
+                }
+            }
+        }
+
+        List<Future<KeypointBuffer>> futures =
+                new ArrayList<Future<KeypointBuffer>>(tasks.size());
+        try {
+            for (BandTask task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<KeypointBuffer> future : futures) {
+                Futures.get(future).emitTo(sink);
+            }
+        } finally {
+            // only has an effect if a task or the sink failed.
+            Futures.cancelAll(futures);
+        }
+    }
+
+    /**
+     * Searches a band of rows of one DoG image.
+     */
+    private final class BandTask implements Callable<KeypointBuffer> {
+
+        /** Index of the octave to search. */
+        private final int octaveIndex;
+        /** Octave to search. */
+        private final Octave octave;
+        /** Index of the DoG on which to detect the extrema. */
+        private final int scale;
+        /** First row of the band. */
+        private final int fromRow;
+        /** Row after the last row of the band. */
+        private final int toRow;
+        /** Pre-threshold of the octave. */
+        private final float threshold;
+
+        /**
+         * Creates an instance.
+         * @param octaveIndex Index of the octave to search.
+         * @param octave Octave to search.
+         * @param scale Index of the DoG on which to detect the extrema.
+         * @param fromRow First row of the band.
+         * @param toRow Row after the last row of the band.
+         * @param threshold Pre-threshold of the octave.
+         */
+        BandTask(final int octaveIndex, final Octave octave, final int scale,
+                final int fromRow, final int toRow, final float threshold) {
+            this.octaveIndex = octaveIndex;
+            this.octave = octave;
+            this.scale = scale;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public KeypointBuffer call() {
+            List<Image> doGs = octave.getDifferenceOfGaussians();
+            IntList hits = new IntList();
+            detector.detectKeypoints(doGs.get(scale - 1), doGs.get(scale),
+                    doGs.get(scale + 1), fromRow, toRow, threshold, hits);
+            KeypointBuffer buffer = new KeypointBuffer(hits.size() / 2);
+            detector.emit(octaveIndex, octave, scale, hits,
+                    new double[KeypointRefiner.RESULT_LENGTH], buffer);
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Projects descriptors onto a lower-dimensional linear subspace, usually
+ * the leading principal components found by {@link PcaTrainer}.
+ * <p>A descriptor {@code d} is mapped to {@code B * (d - m)}, where
+ * {@code m} is the mean descriptor and the rows of {@code B} are
+ * orthonormal basis vectors. Distances between projected descriptors
+ * approximate the distances between the original descriptors, so they can
+ * be matched and indexed like the originals at a fraction of the cost.
+ * </p>
+ * <p>The projections can be stored as floats or quantized to one signed
+ * byte per component. The quantization uses the same scale for all
+ * components, so it preserves the distances up to that scale.</p>
+ * <p>Instances are immutable and thread-safe.</p>
+ */
+public final class PcaProjection {
+
+    /** Number of descriptors converted to floats at a time. */
+    private static final int BLOCK_SIZE = 16;
+    /** Smallest signed byte. */
+    private static final int MIN_BYTE = -128;
+    /** Largest signed byte. */
+    private static final int MAX_BYTE = 127;
+    /** Number of components of the projections. */
+    private final int dimension;
+    /** Mean descriptor. */
+    private final float[] mean;
+    /** Basis vectors, one row of {@link DescriptorExtractor#LENGTH} each. */
+    private final float[] basis;
+    /** Factor from components to quantized components. */
+    private final float quantizationScale;
+
+    /**
+     * Creates an instance.
+     * @param mean Mean descriptor with {@link DescriptorExtractor#LENGTH}
+     * elements. Copied.
+     * @param basis Basis vectors, one after the other. The number of
+     * vectors is the dimension of the projections. Copied.
+     * @param quantizationScale Factor with which the components are
+     * multiplied before they are rounded to bytes.
+     * @throws NullPointerException if {@code mean} or {@code basis} is
+     * {@code null}.
+     * @throws IllegalArgumentException if {@code mean} has the wrong
+     * length, if {@code basis} does not contain between 1 and
+     * {@link DescriptorExtractor#LENGTH} complete vectors or if
+     * {@code quantizationScale} is not strictly positive.
+     */
+    public PcaProjection(final float[] mean, final float[] basis,
+            final float quantizationScale) {
+        if (mean == null) {
+            throw new NullPointerException("mean must not be null");
+        }
+        if (basis == null) {
+            throw new NullPointerException("basis must not be null");
+        }
+        final int length = DescriptorExtractor.LENGTH;
+        if (mean.length != length) {
+            throw new IllegalArgumentException("mean must have " + length
+                    + " elements");
+        }
+        if (basis.length == 0 || basis.length % length != 0
+                || basis.length > length * length) {
+            throw new IllegalArgumentException("basis must consist of 1 to "
+                    + length + " vectors with " + length + " elements");
+        }
+        if (!(quantizationScale > 0)) {
+            throw new IllegalArgumentException(
+                    "quantization scale must be larger than zero");
+        }
+        this.dimension = basis.length / length;
+        this.mean = mean.clone();
+        this.basis = basis.clone();
+        this.quantizationScale = quantizationScale;
+    }
+
+    /**
+     * Gets the number of components of the projections.
+     * @return Dimension of the subspace.
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Gets the mean descriptor.
+     * @return Copy of the mean.
+     */
+    public float[] getMean() {
+        return mean.clone();
+    }
+
+    /**
+     * Gets the basis vectors.
+     * @return Copy of the basis vectors, one after the other.
+     */
+    public float[] getBasis() {
+        return basis.clone();
+    }
+
+    /**
+     * Gets the factor applied before the components are rounded to bytes.
+     * @return Quantization scale.
+     */
+    public float getQuantizationScale() {
+        return quantizationScale;
+    }
+
+    /**
+     * Projects descriptors.
+     * @param descriptors Descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors to project.
+     * @param result Array to write the projections to,
+     * {@link #getDimension()} components each.
+     * @param resultOffset Index of the first component of the first
+     * projection.
+     * @throws NullPointerException if {@code descriptors} or {@code result}
+     * is {@code null}.
+     * @throws IndexOutOfBoundsException if the descriptors or the
+     * projections exceed their arrays.
+     */
+    public void project(final byte[] descriptors, final int offset,
+            final int count, final float[] result, final int resultOffset) {
+        if (result == null) {
+            throw new NullPointerException("result must not be null");
+        }
+        checkRanges(descriptors, offset, count, result.length, resultOffset);
+        float[] block = new float[BLOCK_SIZE * DescriptorExtractor.LENGTH];
+        float[] components = new float[dimension];
+        for (int from = 0; from < count; from += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, count - from);
+            center(descriptors, offset + from * DescriptorExtractor.LENGTH,
+                    n, block);
+            for (int i = 0; i < n; i++) {
+                dot(block, i, components);
+                System.arraycopy(components, 0, result,
+                        resultOffset + (from + i) * dimension, dimension);
+            }
+        }
+    }
+
+    /**
+     * Projects descriptors and quantizes the components to signed bytes.
+     * <p>Each component is multiplied by {@link #getQuantizationScale()},
+     * rounded and saturated to the range of a signed byte.</p>
+     * @param descriptors Descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors to project.
+     * @param result Array to write the projections to,
+     * {@link #getDimension()} bytes each.
+     * @param resultOffset Index of the first component of the first
+     * projection.
+     * @throws NullPointerException if {@code descriptors} or {@code result}
+     * is {@code null}.
+     * @throws IndexOutOfBoundsException if the descriptors or the
+     * projections exceed their arrays.
+     */
+    public void project(final byte[] descriptors, final int offset,
+            final int count, final byte[] result, final int resultOffset) {
+        if (result == null) {
+            throw new NullPointerException("result must not be null");
+        }
+        checkRanges(descriptors, offset, count, result.length, resultOffset);
+        float[] block = new float[BLOCK_SIZE * DescriptorExtractor.LENGTH];
+        float[] components = new float[dimension];
+        for (int from = 0; from < count; from += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, count - from);
+            center(descriptors, offset + from * DescriptorExtractor.LENGTH,
+                    n, block);
+            for (int i = 0; i < n; i++) {
+                dot(block, i, components);
+                int out = resultOffset + (from + i) * dimension;
+                for (int d = 0; d < dimension; d++) {
+                    int value = Math.round(components[d]
+                            * quantizationScale);
+                    result[out + d] = (byte) Math.max(MIN_BYTE,
+                            Math.min(MAX_BYTE, value));
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the ranges of a projection.
+     * @param descriptors Descriptors to project.
+     * @param offset Index of the first descriptor element.
+     * @param count Number of descriptors.
+     * @param resultLength Length of the result array.
+     * @param resultOffset Index of the first result component.
+     */
+    private void checkRanges(final byte[] descriptors, final int offset,
+            final int count, final int resultLength, final int resultOffset) {
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        if (offset < 0 || count < 0 || resultOffset < 0
+                || offset + (long) count * DescriptorExtractor.LENGTH
+                > descriptors.length
+                || resultOffset + (long) count * dimension > resultLength) {
+            throw new IndexOutOfBoundsException("range of " + count
+                    + " descriptors exceeds the arrays");
+        }
+    }
+
+    /**
+     * Converts descriptors to floats and subtracts the mean.
+     * @param descriptors Descriptors to convert.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors, at most {@link #BLOCK_SIZE}.
+     * @param block Array to write the centered descriptors to.
+     */
+    private void center(final byte[] descriptors, final int offset,
+            final int count, final float[] block) {
+        final int length = count * DescriptorExtractor.LENGTH;
+        for (int i = 0; i < length; i++) {
+            block[i] = (descriptors[offset + i] & 0xFF)
+                    - mean[i % DescriptorExtractor.LENGTH];
+        }
+    }
+
+    /**
+     * Calculates the dot products of a centered descriptor with all basis
+     * vectors.
+     * <p>Four basis vectors are processed together, so each element of
+     * the descriptor is loaded once per four products and the four sums
+     * do not wait on each other.</p>
+     * @param block Centered descriptors.
+     * @param index Index of the descriptor within the block.
+     * @param components Array to write the components of the projection
+     * to.
+     */
+    private void dot(final float[] block, final int index,
+            final float[] components) {
+        final int length = DescriptorExtractor.LENGTH;
+        final int a = index * length;
+        int d = 0;
+        for (; d + 3 < dimension; d += 4) {
+            final int b0 = d * length;
+            final int b1 = b0 + length;
+            final int b2 = b1 + length;
+            final int b3 = b2 + length;
+            float s0 = 0;
+            float s1 = 0;
+            float s2 = 0;
+            float s3 = 0;
+            for (int i = 0; i < length; i++) {
+                final float v = block[a + i];
+                s0 += v * basis[b0 + i];
+                s1 += v * basis[b1 + i];
+                s2 += v * basis[b2 + i];
+                s3 += v * basis[b3 + i];
+            }
+            components[d] = s0;
+            components[d + 1] = s1;
+            components[d + 2] = s2;
+            components[d + 3] = s3;
+        }
+        for (; d < dimension; d++) {
+            final int b = d * length;
+            float sum = 0;
+            for (int i = 0; i < length; i++) {
+                sum += block[a + i] * basis[b + i];
+            }
+            components[d] = sum;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import org.apache.commons.math.linear.Array2DRowRealMatrix;
+import org.apache.commons.math.linear.EigenDecomposition;
+import org.apache.commons.math.linear.EigenDecompositionImpl;
+import org.apache.commons.math.linear.RealVector;
+import org.apache.commons.math.util.MathUtils;
+
+/**
+ * Learns a {@link PcaProjection} from a sample of descriptors.
+ * <p>The covariance matrix of the sample is accumulated in double
+ * precision and decomposed with the eigen decomposition of Apache Commons.
+ * The eigenvectors of the largest eigenvalues become the basis of the
+ * projection. Each eigenvector's sign is chosen so that its largest
+ * element is positive, which makes the result independent of the
+ * decomposition's sign conventions.</p>
+ * <p>The quantization scale maps four standard deviations of the first
+ * principal component to the largest signed byte.</p>
+ */
+public final class PcaTrainer {
+
+    /** Number of standard deviations that are quantized without clipping. */
+    private static final double QUANTIZATION_RANGE = 4.0;
+    /** Largest signed byte. */
+    private static final double MAX_BYTE = 127.0;
+    /** Number of components of the trained projections. */
+    private final int dimension;
+
+    /**
+     * Creates an instance.
+     * @param dimension Number of components of the trained projections.
+     * @throws IllegalArgumentException if {@code dimension} is not between
+     * 1 and {@link DescriptorExtractor#LENGTH}.
+     */
+    public PcaTrainer(final int dimension) {
+        if (dimension < 1 || dimension > DescriptorExtractor.LENGTH) {
+            throw new IllegalArgumentException("dimension must be between 1 "
+                    + "and " + DescriptorExtractor.LENGTH);
+        }
+        this.dimension = dimension;
+    }
+
+    /**
+     * Learns a projection.
+     * @param descriptors Sample of descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors in the sample.
+     * @return Projection onto the leading principal components.
+     * @throws NullPointerException if {@code descriptors} is {@code null}.
+     * @throws IllegalArgumentException if there are less than two
+     * descriptors.
+     * @throws IndexOutOfBoundsException if the descriptors exceed the
+     * array.
+     */
+    public PcaProjection train(final byte[] descriptors, final int offset,
+            final int count) {
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        if (count < 2) {
+            throw new IllegalArgumentException(
+                    "need at least two descriptors");
+        }
+        final int length = DescriptorExtractor.LENGTH;
+        if (offset < 0
+                || offset + (long) count * length > descriptors.length) {
+            throw new IndexOutOfBoundsException("range of " + count
+                    + " descriptors exceeds the array");
+        }
+
+        double[] mean = new double[length];
+        for (int k = 0; k < count; k++) {
+            int base = offset + k * length;
+            for (int i = 0; i < length; i++) {
+                mean[i] += descriptors[base + i] & 0xFF;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            mean[i] /= count;
+        }
+
+        // upper triangle of the scatter matrix, row by row.
+        double[][] covariance = new double[length][length];
+        double[] centered = new double[length];
+        for (int k = 0; k < count; k++) {
+            int base = offset + k * length;
+            for (int i = 0; i < length; i++) {
+                centered[i] = (descriptors[base + i] & 0xFF) - mean[i];
+            }
+            for (int i = 0; i < length; i++) {
+                double ci = centered[i];
+                if (ci == 0) {
+                    continue;
+                }
+                double[] row = covariance[i];
+                for (int j = i; j < length; j++) {
+                    row[j] += ci * centered[j];
+                }
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            for (int j = i; j < length; j++) {
+                covariance[i][j] /= count - 1;
+                covariance[j][i] = covariance[i][j];
+            }
+        }
+
+        final EigenDecomposition eigen = new EigenDecompositionImpl(
+                new Array2DRowRealMatrix(covariance, false),
+                MathUtils.SAFE_MIN);
+        final double[] eigenvalues = eigen.getRealEigenvalues();
+        Integer[] order = new Integer[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                return Double.compare(eigenvalues[b], eigenvalues[a]);
+            }
+        });
+
+        float[] basis = new float[dimension * length];
+        for (int d = 0; d < dimension; d++) {
+            RealVector vector = eigen.getEigenvector(order[d]);
+            double norm = vector.getNorm();
+            int largest = 0;
+            for (int i = 1; i < length; i++) {
+                if (Math.abs(vector.getEntry(i))
+                        > Math.abs(vector.getEntry(largest))) {
+                    largest = i;
+                }
+            }
+            if (vector.getEntry(largest) < 0) {
+                norm = -norm;
+            }
+            for (int i = 0; i < length; i++) {
+                basis[d * length + i] = (float) (vector.getEntry(i) / norm);
+            }
+        }
+
+        float[] floatMean = new float[length];
+        for (int i = 0; i < length; i++) {
+            floatMean[i] = (float) mean[i];
+        }
+        double deviation = Math.sqrt(Math.max(eigenvalues[order[0]], 0));
+        float scale = 1f;
+        if (deviation > 0) {
+            scale = (float) (MAX_BYTE / (QUANTIZATION_RANGE * deviation));
+        }
+        return new PcaProjection(floatMean, basis, scale);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sink that collects the keypoints into a list of {@link ScaleSpacePoint}s.
+ */
+final class PointListSink implements KeypointSink {
+
+    /** The collected points. */
+    private final List<ScaleSpacePoint> points =
+            new ArrayList<ScaleSpacePoint>();
+
+    @Override
+    public void keypoint(final double x, final double y, final double sigma,
+            final int octave, final int scale, final int row, final int col,
+            final float response) {
+        points.add(new ScaleSpacePoint(x, y, sigma, octave, scale, row, col,
+                response));
+    }
+
+    /**
+     * Gets the collected points.
+     * @return Points in the order they were passed to this sink.
+     */
+    List<ScaleSpacePoint> getPoints() {
+        return points;
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+
+/**
+ * Index for approximate nearest neighbor searches among descriptors that
+ * are stored as product quantization codes.
+ * <p>Each descriptor is stored as the code of a {@link ProductQuantizer}.
+ * With 16 subspaces a million descriptors take 16 MB instead of 128 MB
+ * in a single list, where a descriptor's identifier is its position. An
+ * inverted file also stores an {@code int} identifier per code, 20 MB
+ * in total. A search computes one distance table per scanned list and
+ * estimates the distance to each code with one table lookup per
+ * subspace (asymmetric distance computation).</p>
+ * <p>Optionally the index is an inverted file, as proposed by Jégou, Douze
+ * and Schmid: each descriptor is assigned to its closest coarse centroid,
+ * and the residual to that centroid is encoded into the centroid's list.
+ * A search only scans the lists of the {@code probes} coarse centroids
+ * closest to the query. The product quantizer must then be trained on
+ * residuals, see {@link ProductQuantizerTrainer}.</p>
+ * <p>The codes of a list are stored in one flat array. Searches may run
+ * concurrently, but not while descriptors are added.</p>
+ */
+public final class ProductQuantizedIndex {
+
+    /** Initial capacity of a list, in codes. */
+    private static final int INITIAL_CAPACITY = 16;
+    /** Number of elements of a descriptor. */
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+    /** Quantizer of the descriptors or residuals. */
+    private final ProductQuantizer quantizer;
+    /** Number of bytes of a code. */
+    private final int codeLength;
+    /** Coarse centroids, {@code null} if there is a single list. */
+    private final float[] coarseCentroids;
+    /** Codes of each list, one after the other. */
+    private final byte[][] listCodes;
+    /**
+     * Identifiers of the descriptors of each list, {@code null} if there
+     * is a single list, whose identifiers are the positions.
+     */
+    private final int[][] listIds;
+    /** Number of codes in each list. */
+    private final int[] listSizes;
+    /** Number of descriptors added. */
+    private int size;
+
+    /**
+     * Creates an index that scans all codes.
+     * @param quantizer Quantizer of the descriptors.
+     * @throws NullPointerException if {@code quantizer} is {@code null}.
+     */
+    public ProductQuantizedIndex(final ProductQuantizer quantizer) {
+        if (quantizer == null) {
+            throw new NullPointerException("quantizer must not be null");
+        }
+        this.quantizer = quantizer;
+        this.codeLength = quantizer.getSubspaceCount();
+        this.coarseCentroids = null;
+        this.listCodes = new byte[1][];
+        this.listIds = null;
+        this.listSizes = new int[1];
+    }
+
+    /**
+     * Creates an inverted file index.
+     * @param quantizer Quantizer of the residuals.
+     * @param coarseCentroids Coarse centroids, one after the other, as
+     * learned by
+     * {@link ProductQuantizerTrainer#trainCoarseQuantizer(byte[], int, int,
+     * int)}. Copied.
+     * @throws NullPointerException if an argument is {@code null}.
+     * @throws IllegalArgumentException if the coarse centroids are not a
+     * non-empty sequence of descriptors.
+     */
+    public ProductQuantizedIndex(final ProductQuantizer quantizer,
+            final float[] coarseCentroids) {
+        if (quantizer == null) {
+            throw new NullPointerException("quantizer must not be null");
+        }
+        int lists = checkCoarseCentroids(coarseCentroids);
+        this.quantizer = quantizer;
+        this.codeLength = quantizer.getSubspaceCount();
+        this.coarseCentroids = coarseCentroids.clone();
+        this.listCodes = new byte[lists][];
+        this.listIds = new int[lists][];
+        this.listSizes = new int[lists];
+    }
+
+    /**
+     * Checks coarse centroids.
+     * @param coarseCentroids Coarse centroids, one after the other.
+     * @return Number of centroids.
+     * @throws NullPointerException if {@code coarseCentroids} is
+     * {@code null}.
+     * @throws IllegalArgumentException if the length is not a positive
+     * multiple of {@link DescriptorExtractor#LENGTH}.
+     */
+    static int checkCoarseCentroids(final float[] coarseCentroids) {
+        if (coarseCentroids == null) {
+            throw new NullPointerException(
+                    "coarse centroids must not be null");
+        }
+        if (coarseCentroids.length == 0
+                || coarseCentroids.length % LENGTH != 0) {
+            throw new IllegalArgumentException("coarse centroids must be a "
+                    + "positive multiple of " + LENGTH + " elements");
+        }
+        return coarseCentroids.length / LENGTH;
+    }
+
+    /**
+     * Gets the number of inverted lists.
+     * @return Number of coarse centroids, one if there are none.
+     */
+    public int getListCount() {
+        return listSizes.length;
+    }
+
+    /**
+     * Gets the number of descriptors added.
+     * @return Number of descriptors.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Adds descriptors.
+     * @param descriptors Descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors.
+     * @return Identifier of the first descriptor, the following ones have
+     * consecutive identifiers.
+     * @throws NullPointerException if {@code descriptors} is {@code null}.
+     * @throws IndexOutOfBoundsException if the descriptors exceed the
+     * array.
+     */
+    public int add(final byte[] descriptors, final int offset,
+            final int count) {
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        if (offset < 0 || count < 0
+                || offset + (long) count * LENGTH > descriptors.length) {
+            throw new IndexOutOfBoundsException("range of " + count
+                    + " descriptors exceeds the array");
+        }
+        int first = size;
+        float[] vector = new float[LENGTH];
+        for (int i = 0; i < count; i++) {
+            int base = offset + i * LENGTH;
+            for (int e = 0; e < LENGTH; e++) {
+                vector[e] = descriptors[base + e] & 0xFF;
+            }
+            int list = 0;
+            if (coarseCentroids != null) {
+                list = KMeans.nearest(vector, 0, coarseCentroids, 0,
+                        listSizes.length, LENGTH);
+                for (int e = 0; e < LENGTH; e++) {
+                    vector[e] -= coarseCentroids[list * LENGTH + e];
+                }
+            }
+            int listSize = listSizes[list];
+            if (listCodes[list] == null) {
+                listCodes[list] = new byte[INITIAL_CAPACITY * codeLength];
+            } else if (listSize * codeLength == listCodes[list].length) {
+                listCodes[list] = Arrays.copyOf(listCodes[list],
+                        2 * listSize * codeLength);
+            }
+            quantizer.encode(vector, 0, listCodes[list],
+                    listSize * codeLength);
+            if (listIds != null) {
+                if (listIds[list] == null) {
+                    listIds[list] = new int[INITIAL_CAPACITY];
+                } else if (listSize == listIds[list].length) {
+                    listIds[list] = Arrays.copyOf(listIds[list],
+                            2 * listSize);
+                }
+                listIds[list][listSize] = size;
+            }
+            listSizes[list] = listSize + 1;
+            size++;
+        }
+        return first;
+    }
+
+    /**
+     * Searches the approximate nearest neighbors of a descriptor.
+     * @param query Array containing the descriptor to search for.
+     * @param offset Index of the descriptor's first element.
+     * @param k Number of neighbors to search.
+     * @param probes Number of inverted lists to scan, those with the coarse
+     * centroids closest to the query. Ignored without coarse centroids.
+     * @param indices Array to write the identifiers of the neighbors to,
+     * ordered by increasing estimated distance.
+     * @param distances Array to write the estimated squared distances of
+     * the neighbors to, or {@code null}.
+     * @return Number of neighbors found, at most {@code k}.
+     * @throws NullPointerException if {@code query} or {@code indices} is
+     * {@code null}.
+     * @throws IllegalArgumentException if {@code k} or {@code probes} is
+     * smaller than one.
+     * @throws IndexOutOfBoundsException if the query exceeds its array or
+     * if the neighbors do not fit into the arrays.
+     */
+    public int search(final byte[] query, final int offset, final int k,
+            final int probes, final int[] indices, final float[] distances) {
+        if (query == null) {
+            throw new NullPointerException("query must not be null");
+        }
+        if (indices == null) {
+            throw new NullPointerException("indices must not be null");
+        }
+        if (k < 1) {
+            throw new IllegalArgumentException(
+                    "need to search at least one neighbor");
+        }
+        if (probes < 1) {
+            throw new IllegalArgumentException(
+                    "need to scan at least one list");
+        }
+        if (offset < 0 || offset > query.length - LENGTH) {
+            throw new IndexOutOfBoundsException("query exceeds the array");
+        }
+        if (indices.length < k
+                || (distances != null && distances.length < k)) {
+            throw new IndexOutOfBoundsException(
+                    "neighbors do not fit into the arrays");
+        }
+
+        float[] vector = new float[LENGTH];
+        for (int e = 0; e < LENGTH; e++) {
+            vector[e] = query[offset + e] & 0xFF;
+        }
+        int[] lists = closestLists(vector, probes);
+        float[] residual = vector;
+        if (coarseCentroids != null) {
+            residual = new float[LENGTH];
+        }
+        float[] table = new float[codeLength * quantizer.getCentroidCount()];
+        float[] bestDistances = new float[k];
+        int found = 0;
+        for (int list : lists) {
+            if (listSizes[list] == 0) {
+                continue;
+            }
+            if (coarseCentroids != null) {
+                for (int e = 0; e < LENGTH; e++) {
+                    residual[e] = vector[e]
+                            - coarseCentroids[list * LENGTH + e];
+                }
+            }
+            quantizer.distanceTable(residual, 0, table);
+            byte[] codes = listCodes[list];
+            int[] ids = null;
+            if (listIds != null) {
+                ids = listIds[list];
+            }
+            for (int i = 0; i < listSizes[list]; i++) {
+                float distance = quantizer.distance(table, codes,
+                        i * codeLength);
+                if (found == k && distance >= bestDistances[k - 1]) {
+                    continue;
+                }
+                int j = Math.min(found, k - 1);
+                while (j > 0 && bestDistances[j - 1] > distance) {
+                    bestDistances[j] = bestDistances[j - 1];
+                    indices[j] = indices[j - 1];
+                    j--;
+                }
+                bestDistances[j] = distance;
+                indices[j] = i;
+                if (ids != null) {
+                    indices[j] = ids[i];
+                }
+                found = Math.min(found + 1, k);
+            }
+        }
+        if (distances != null) {
+            System.arraycopy(bestDistances, 0, distances, 0, found);
+        }
+        return found;
+    }
+
+    /**
+     * Finds the lists to scan for a query.
+     * @param vector Query vector.
+     * @param probes Number of lists to scan.
+     * @return Lists whose coarse centroids are closest to the query.
+     */
+    private int[] closestLists(final float[] vector, final int probes) {
+        if (coarseCentroids == null) {
+            return new int[1];
+        }
+        int count = Math.min(probes, listSizes.length);
+        int[] result = new int[count];
+        float[] resultDistances = new float[count];
+        int found = 0;
+        for (int list = 0; list < listSizes.length; list++) {
+            float distance = KMeans.distance(vector, 0, coarseCentroids,
+                    list * LENGTH, LENGTH);
+            if (found == count && distance >= resultDistances[count - 1]) {
+                continue;
+            }
+            int j = Math.min(found, count - 1);
+            while (j > 0 && resultDistances[j - 1] > distance) {
+                resultDistances[j] = resultDistances[j - 1];
+                result[j] = result[j - 1];
+                j--;
+            }
+            resultDistances[j] = distance;
+            result[j] = list;
+            found = Math.min(found + 1, count);
+        }
+        return result;
+    }
+}
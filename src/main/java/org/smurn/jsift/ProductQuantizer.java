@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Compresses descriptors into a few bytes with product quantization.
+ * <p>As proposed by Jégou, Douze and Schmid, a vector of
+ * {@link DescriptorExtractor#LENGTH} elements is split into
+ * {@code subspaces} equally long sub-vectors, and each sub-vector is
+ * replaced by the index of its closest centroid in the codebook of its
+ * subspace. With up to 256 centroids per subspace each index is a byte,
+ * so a descriptor is compressed to {@code subspaces} bytes.</p>
+ * <p>Distances between a query and encoded vectors are estimated
+ * asymmetrically: the query is not encoded. Instead, a table of the
+ * squared distances between each query sub-vector and all centroids of
+ * its subspace is computed once, and the distance to an encoded vector is
+ * the sum of one table entry per subspace.</p>
+ * <p>The codebooks are stored in a flat array, subspace by subspace and
+ * centroid by centroid. Instances are created by
+ * {@link ProductQuantizerTrainer} and are immutable.</p>
+ */
+public final class ProductQuantizer {
+
+    /** Maximal number of centroids per subspace. */
+    static final int MAX_CENTROIDS = 256;
+    /** Number of elements of a vector. */
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+    /** Number of subspaces. */
+    private final int subspaces;
+    /** Number of elements of a sub-vector. */
+    private final int subDimension;
+    /** Number of centroids per subspace. */
+    private final int centroids;
+    /** Centroids of all subspaces. */
+    private final float[] codebooks;
+
+    /**
+     * Creates an instance.
+     * @param subspaces Number of subspaces, which is also the number of
+     * bytes of a code.
+     * @param centroids Number of centroids per subspace.
+     * @param codebooks Centroids of the subspaces, subspace by subspace,
+     * {@code 128 / subspaces} elements each. Copied.
+     * @throws NullPointerException if {@code codebooks} is {@code null}.
+     * @throws IllegalArgumentException if {@code subspaces} does not divide
+     * {@link DescriptorExtractor#LENGTH}, {@code centroids} is not between
+     * 1 and 256, or {@code codebooks} has the wrong length.
+     */
+    public ProductQuantizer(final int subspaces, final int centroids,
+            final float[] codebooks) {
+        if (codebooks == null) {
+            throw new NullPointerException("codebooks must not be null");
+        }
+        checkParameters(subspaces, centroids);
+        if (codebooks.length != centroids * LENGTH) {
+            throw new IllegalArgumentException("codebooks must have "
+                    + centroids * LENGTH + " elements");
+        }
+        this.subspaces = subspaces;
+        this.subDimension = LENGTH / subspaces;
+        this.centroids = centroids;
+        this.codebooks = codebooks.clone();
+    }
+
+    /**
+     * Checks the number of subspaces and centroids.
+     * @param subspaces Number of subspaces.
+     * @param centroids Number of centroids per subspace.
+     * @throws IllegalArgumentException if {@code subspaces} does not divide
+     * the descriptor length or {@code centroids} is not between 1 and 256.
+     */
+    static void checkParameters(final int subspaces, final int centroids) {
+        if (subspaces < 1 || subspaces > LENGTH || LENGTH % subspaces != 0) {
+            throw new IllegalArgumentException("number of subspaces must "
+                    + "divide " + LENGTH);
+        }
+        if (centroids < 1 || centroids > MAX_CENTROIDS) {
+            throw new IllegalArgumentException("number of centroids must be "
+                    + "between 1 and " + MAX_CENTROIDS);
+        }
+    }
+
+    /**
+     * Gets the number of subspaces.
+     * @return Number of bytes of a code.
+     */
+    public int getSubspaceCount() {
+        return subspaces;
+    }
+
+    /**
+     * Gets the number of centroids per subspace.
+     * @return Number of centroids.
+     */
+    public int getCentroidCount() {
+        return centroids;
+    }
+
+    /**
+     * Gets the codebooks.
+     * @return Centroids of the subspaces, subspace by subspace. Copied.
+     */
+    public float[] getCodebooks() {
+        return codebooks.clone();
+    }
+
+    /**
+     * Encodes a vector.
+     * @param vector Array containing the vector.
+     * @param offset Index of the vector's first element.
+     * @param codes Array to write the code to.
+     * @param codesOffset Index to write the code's first byte to.
+     * @throws NullPointerException if {@code vector} or {@code codes} is
+     * {@code null}.
+     * @throws IndexOutOfBoundsException if the vector or the code exceed
+     * their arrays.
+     */
+    public void encode(final float[] vector, final int offset,
+            final byte[] codes, final int codesOffset) {
+        if (vector == null) {
+            throw new NullPointerException("vector must not be null");
+        }
+        if (codes == null) {
+            throw new NullPointerException("codes must not be null");
+        }
+        if (offset < 0 || offset > vector.length - LENGTH
+                || codesOffset < 0 || codesOffset > codes.length - subspaces) {
+            throw new IndexOutOfBoundsException(
+                    "vector or code exceeds the arrays");
+        }
+        for (int s = 0; s < subspaces; s++) {
+            codes[codesOffset + s] = (byte) KMeans.nearest(vector,
+                    offset + s * subDimension, codebooks,
+                    s * centroids * subDimension, centroids, subDimension);
+        }
+    }
+
+    /**
+     * Reconstructs a vector from its code.
+     * @param codes Array containing the code.
+     * @param codesOffset Index of the code's first byte.
+     * @param vector Array to write the centroids of the code to.
+     * @param offset Index to write the vector's first element to.
+     * @throws NullPointerException if {@code codes} or {@code vector} is
+     * {@code null}.
+     * @throws IndexOutOfBoundsException if the code or the vector exceed
+     * their arrays.
+     */
+    public void decode(final byte[] codes, final int codesOffset,
+            final float[] vector, final int offset) {
+        if (codes == null) {
+            throw new NullPointerException("codes must not be null");
+        }
+        if (vector == null) {
+            throw new NullPointerException("vector must not be null");
+        }
+        if (offset < 0 || offset > vector.length - LENGTH
+                || codesOffset < 0 || codesOffset > codes.length - subspaces) {
+            throw new IndexOutOfBoundsException(
+                    "vector or code exceeds the arrays");
+        }
+        for (int s = 0; s < subspaces; s++) {
+            int c = codes[codesOffset + s] & 0xFF;
+            System.arraycopy(codebooks, (s * centroids + c) * subDimension,
+                    vector, offset + s * subDimension, subDimension);
+        }
+    }
+
+    /**
+     * Computes the table of distances between the sub-vectors of a query
+     * and the centroids.
+     * @param query Array containing the query vector.
+     * @param offset Index of the query's first element.
+     * @param table Array of at least {@code subspaces * centroids} elements
+     * to write the squared distance between sub-vector {@code s} and
+     * centroid {@code c} to, at index {@code s * centroids + c}.
+     * @throws NullPointerException if {@code query} or {@code table} is
+     * {@code null}.
+     * @throws IndexOutOfBoundsException if the query or the table exceed
+     * their arrays.
+     */
+    public void distanceTable(final float[] query, final int offset,
+            final float[] table) {
+        if (query == null) {
+            throw new NullPointerException("query must not be null");
+        }
+        if (table == null) {
+            throw new NullPointerException("table must not be null");
+        }
+        if (offset < 0 || offset > query.length - LENGTH
+                || table.length < subspaces * centroids) {
+            throw new IndexOutOfBoundsException(
+                    "query or table exceeds the arrays");
+        }
+        for (int s = 0; s < subspaces; s++) {
+            for (int c = 0; c < centroids; c++) {
+                table[s * centroids + c] = KMeans.distance(query,
+                        offset + s * subDimension, codebooks,
+                        (s * centroids + c) * subDimension, subDimension);
+            }
+        }
+    }
+
+    /**
+     * Estimates the squared distance between a query and an encoded vector.
+     * @param table Distance table of the query as computed by
+     * {@link #distanceTable(float[], int, float[])}.
+     * @param codes Array containing the code.
+     * @param codesOffset Index of the code's first byte.
+     * @return Sum of the table entries selected by the code.
+     */
+    public float distance(final float[] table, final byte[] codes,
+            final int codesOffset) {
+        float result = 0f;
+        for (int s = 0; s < subspaces; s++) {
+            result += table[s * centroids + (codes[codesOffset + s] & 0xFF)];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+
+/**
+ * Learns a {@link ProductQuantizer} from a sample of descriptors.
+ * <p>The codebook of each subspace is learned with k-means on the
+ * sample's sub-vectors. For an inverted file (see
+ * {@link ProductQuantizedIndex}) the sample is first clustered into
+ * coarse centroids, and the product quantizer is learned on the residuals
+ * of the descriptors to their closest coarse centroid, which is what such
+ * an index encodes.</p>
+ */
+public final class ProductQuantizerTrainer {
+
+    /** Number of k-means iterations if not specified otherwise. */
+    private static final int DEFAULT_ITERATIONS = 20;
+    /** Number of elements of a descriptor. */
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+    /** Number of subspaces. */
+    private final int subspaces;
+    /** Number of centroids per subspace. */
+    private final int centroids;
+    /** Maximal number of k-means iterations. */
+    private final int iterations;
+    /** Seed of the k-means seeding. */
+    private final long seed;
+
+    /**
+     * Creates an instance with twenty k-means iterations.
+     * @param subspaces Number of subspaces, which is also the number of
+     * bytes of a code.
+     * @param centroids Number of centroids per subspace.
+     * @throws IllegalArgumentException if {@code subspaces} does not divide
+     * {@link DescriptorExtractor#LENGTH} or {@code centroids} is not
+     * between 1 and 256.
+     */
+    public ProductQuantizerTrainer(final int subspaces, final int centroids) {
+        this(subspaces, centroids, DEFAULT_ITERATIONS, 0L);
+    }
+
+    /**
+     * Creates an instance.
+     * @param subspaces Number of subspaces, which is also the number of
+     * bytes of a code.
+     * @param centroids Number of centroids per subspace.
+     * @param iterations Maximal number of k-means iterations.
+     * @param seed Seed of the k-means seeding, so that training is
+     * reproducible.
+     * @throws IllegalArgumentException if {@code subspaces} does not divide
+     * {@link DescriptorExtractor#LENGTH}, {@code centroids} is not between
+     * 1 and 256 or {@code iterations} is smaller than one.
+     */
+    public ProductQuantizerTrainer(final int subspaces, final int centroids,
+            final int iterations, final long seed) {
+        ProductQuantizer.checkParameters(subspaces, centroids);
+        if (iterations < 1) {
+            throw new IllegalArgumentException(
+                    "need at least one iteration");
+        }
+        this.subspaces = subspaces;
+        this.centroids = centroids;
+        this.iterations = iterations;
+        this.seed = seed;
+    }
+
+    /**
+     * Learns a product quantizer for the descriptors themselves.
+     * @param descriptors Sample of descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors in the sample.
+     * @return Product quantizer for the sample.
+     * @throws NullPointerException if {@code descriptors} is {@code null}.
+     * @throws IllegalArgumentException if the sample is empty.
+     * @throws IndexOutOfBoundsException if the descriptors exceed the
+     * array.
+     */
+    public ProductQuantizer train(final byte[] descriptors, final int offset,
+            final int count) {
+        return trainResiduals(toFloats(descriptors, offset, count), count);
+    }
+
+    /**
+     * Learns a product quantizer for the residuals of descriptors to their
+     * closest coarse centroid.
+     * @param descriptors Sample of descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors in the sample.
+     * @param coarseCentroids Coarse centroids, as learned by
+     * {@link #trainCoarseQuantizer(byte[], int, int, int)}.
+     * @return Product quantizer for the residuals of the sample.
+     * @throws NullPointerException if an array is {@code null}.
+     * @throws IllegalArgumentException if the sample is empty or the
+     * coarse centroids are not a non-empty sequence of descriptors.
+     * @throws IndexOutOfBoundsException if the descriptors exceed the
+     * array.
+     */
+    public ProductQuantizer train(final byte[] descriptors, final int offset,
+            final int count, final float[] coarseCentroids) {
+        int lists = ProductQuantizedIndex.checkCoarseCentroids(
+                coarseCentroids);
+        float[] vectors = toFloats(descriptors, offset, count);
+        for (int i = 0; i < count; i++) {
+            int list = KMeans.nearest(vectors, i * LENGTH, coarseCentroids,
+                    0, lists, LENGTH);
+            for (int e = 0; e < LENGTH; e++) {
+                vectors[i * LENGTH + e] -= coarseCentroids[list * LENGTH + e];
+            }
+        }
+        return trainResiduals(vectors, count);
+    }
+
+    /**
+     * Learns the coarse centroids of an inverted file with k-means.
+     * @param descriptors Sample of descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors in the sample.
+     * @param lists Number of coarse centroids.
+     * @return Coarse centroids, one after the other.
+     * @throws NullPointerException if {@code descriptors} is {@code null}.
+     * @throws IllegalArgumentException if the sample is empty or
+     * {@code lists} is smaller than one.
+     * @throws IndexOutOfBoundsException if the descriptors exceed the
+     * array.
+     */
+    public float[] trainCoarseQuantizer(final byte[] descriptors,
+            final int offset, final int count, final int lists) {
+        if (lists < 1) {
+            throw new IllegalArgumentException("need at least one list");
+        }
+        float[] vectors = toFloats(descriptors, offset, count);
+        return KMeans.cluster(vectors, count, LENGTH, lists, iterations,
+                new Random(seed));
+    }
+
+    /**
+     * Learns the codebooks of the subspaces.
+     * @param vectors Vectors stored one after the other.
+     * @param count Number of vectors.
+     * @return Product quantizer.
+     */
+    private ProductQuantizer trainResiduals(final float[] vectors,
+            final int count) {
+        int subDimension = LENGTH / subspaces;
+        float[] codebooks = new float[centroids * LENGTH];
+        float[] subVectors = new float[count * subDimension];
+        Random random = new Random(seed);
+        for (int s = 0; s < subspaces; s++) {
+            for (int i = 0; i < count; i++) {
+                System.arraycopy(vectors, i * LENGTH + s * subDimension,
+                        subVectors, i * subDimension, subDimension);
+            }
+            float[] codebook = KMeans.cluster(subVectors, count,
+                    subDimension, centroids, iterations, random);
+            System.arraycopy(codebook, 0, codebooks,
+                    s * centroids * subDimension, codebook.length);
+        }
+        return new ProductQuantizer(subspaces, centroids, codebooks);
+    }
+
+    /**
+     * Checks and converts a sample of descriptors.
+     * @param descriptors Descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors.
+     * @return Descriptors as floats, one after the other.
+     */
+    private static float[] toFloats(final byte[] descriptors,
+            final int offset, final int count) {
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException(
+                    "need at least one descriptor");
+        }
+        if (offset < 0
+                || offset + (long) count * LENGTH > descriptors.length) {
+            throw new IndexOutOfBoundsException("range of " + count
+                    + " descriptors exceeds the array");
+        }
+        float[] result = new float[count * LENGTH];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = descriptors[offset + i] & 0xFF;
+        }
+        return result;
+    }
+}
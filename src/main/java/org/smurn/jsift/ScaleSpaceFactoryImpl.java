@@ -38,12 +38,12 @@ public class ScaleSpaceFactoryImpl implements ScaleSpaceFactory {
      */
     @Override
     public ScaleSpace create(final Image image) {
-        return create(
+        return createUpScaled(
                 image,
                 LOWE_SCALES_PER_OCTAVE,
                 LOWE_INITIAL_SIGMA,
-                new LinearUpScaler(),
-                new Subsampler(),
+                new LinearUpScalingGaussianFilter(),
+                new StridedSubsampler(),
                 new GaussianFilter(),
                 new OctaveFactoryImpl());
     }
@@ -102,9 +102,74 @@ public class ScaleSpaceFactoryImpl implements ScaleSpaceFactory {
                     + " or equal the original sigma.");
         }
 
+        return createUpScaled(image, scalesPerOctave, initialSigma,
+                new SequentialUpScalingFilter(upScaler, filter), downScaler,
+                filter, octaveFactory);
+    }
+
+    /**
+     * Creates the scale space for an image using a combined up-scale and
+     * filter operation for the first octave.
+     * <p>Use {@link LinearUpScalingGaussianFilter} to get the same result as
+     * with {@link LinearUpScaler} and {@link GaussianFilter} without
+     * creating the unfiltered, up-scaled image. To start at the native
+     * resolution of the image use
+     * {@link #create(Image, int, double, UpScaler, DownScaler, LowPassFilter,
+     * OctaveFactory)} with an {@link IdentityUpScaler}.</p>
+     * @param image Image to build the scale space for.
+     * @param scalesPerOctave Number of scales per octave. Lowe suggests
+     * to use three.
+     * @param initialSigma Sigma of the first scale in the first octave
+     * in reference to the original image (see
+     * {@link #create(Image, int, double, UpScaler, DownScaler, LowPassFilter,
+     * OctaveFactory)}).
+     * @param upScalingFilter Algorithm to increase the image size and
+     * apply the initial blur.
+     * @param downScaler Algorithm to decrease the image size. Lowe suggests
+     * {@link Subsampler}, {@link StridedSubsampler} selects the same pixels
+     * without copying them.
+     * @param filter Algorithm to filter out high-frequency components. Lowe
+     * suggests {@link GaussianFilter}.
+     * @param octaveFactory Factory to create the octaves with
+     * (typically {@link OctaveFactoryImpl}).
+     * @return Scale space of the given image.
+     * @throws NullPointerException if {@code image} or one of the algorithms is
+     * {@code null}.
+     * @throws IllegalArgumentException if {@code scalesPerOctave} is smaller
+     * than one or {@code initialSigma} is smaller than the image's sigma.
+     */
+    public ScaleSpace createUpScaled(final Image image,
+            final int scalesPerOctave, final double initialSigma,
+            final UpScalingFilter upScalingFilter, final DownScaler downScaler,
+            final LowPassFilter filter, final OctaveFactory octaveFactory) {
+
+        if (image == null) {
+            throw new NullPointerException("image must not be null");
+        }
+        if (upScalingFilter == null) {
+            throw new NullPointerException("upScalingFilter must not be null");
+        }
+        if (downScaler == null) {
+            throw new NullPointerException("downScaler must not be null");
+        }
+        if (filter == null) {
+            throw new NullPointerException("filter must not be null");
+        }
+        if (octaveFactory == null) {
+            throw new NullPointerException("octaveFactory must not be null");
+        }
+        if (scalesPerOctave < 1) {
+            throw new IllegalArgumentException(
+                    "Need at least one scale per octave");
+        }
+        if (initialSigma < image.getSigma()) {
+            throw new IllegalArgumentException("initial sigma must be greater"
+                    + " or equal the original sigma.");
+        }
+
         // upscale the image and apply the blur we need for the initial blur.
-        Image startImage = upScaler.upScale(image);
-        startImage = filter.filter(startImage, initialSigma);
+        Image startImage = upScalingFilter.upScaleAndFilter(image,
+                initialSigma);
 
         List<Octave> octaves = new ArrayList<Octave>();
         while (startImage.getWidth() > 0 && startImage.getHeight() > 0) {
@@ -115,9 +180,44 @@ public class ScaleSpaceFactoryImpl implements ScaleSpaceFactory {
             // get the scale-image which has twice the sigma as the bases for
             // the next octave.
             Image twiceBlurred = octave.getScaleImages().get(scalesPerOctave);
-            startImage = downScaler.downScale(twiceBlurred);
+            Image nextImage = downScaler.downScale(twiceBlurred);
+
+            // stop once the down-scaler cannot reduce the size any further.
+            if (nextImage.getWidth() >= startImage.getWidth()
+                    && nextImage.getHeight() >= startImage.getHeight()) {
+                break;
+            }
+            startImage = nextImage;
         }
 
         return new ScaleSpace(octaves);
     }
+
+    /**
+     * Runs an up-scaler and a filter one after the other.
+     */
+    private static final class SequentialUpScalingFilter
+            implements UpScalingFilter {
+
+        /** Algorithm to increase the image size. */
+        private final UpScaler upScaler;
+        /** Algorithm to filter out high-frequency components. */
+        private final LowPassFilter filter;
+
+        /**
+         * Creates an instance.
+         * @param upScaler Algorithm to increase the image size.
+         * @param filter Algorithm to filter out high-frequency components.
+         */
+        SequentialUpScalingFilter(final UpScaler upScaler,
+                final LowPassFilter filter) {
+            this.upScaler = upScaler;
+            this.filter = filter;
+        }
+
+        @Override
+        public Image upScaleAndFilter(final Image image, final double sigma) {
+            return filter.filter(upScaler.upScale(image), sigma);
+        }
+    }
 }
@@ -15,31 +15,71 @@
  */
 package org.smurn.jsift;
 
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
-
 /**
  * Describes a point in the scale-space.
+ * <p>Points found by a {@link KeypointDetector} also know where they were
+ * found: the octave, the difference-of-gaussian image and the pixel within
+ * the octave's images. This allows later stages to index the octave's images
+ * directly. Equality only considers the scale-space coordinates.</p>
  */
 public final class ScaleSpacePoint {
 
+    /** Initial value of the hash code. */
+    private static final int HASH_SEED = 65;
+    /** Factor of the hash code. */
+    private static final int HASH_FACTOR = 15;
+    /** Number of bits in an {@code int}. */
+    private static final int INT_BITS = 32;
     /** x-coordinate. */
     private final double x;
     /** y-coordinate. */
     private final double y;
     /** scale-coordinate. */
     private final double sigma;
+    /** Index of the octave, -1 if unknown. */
+    private final int octave;
+    /** Index of the DoG image within the octave, -1 if unknown. */
+    private final int scale;
+    /** Row within the octave's images, -1 if unknown. */
+    private final int row;
+    /** Column within the octave's images, -1 if unknown. */
+    private final int col;
+    /** Value of the DoG at this point. */
+    private final float response;
 
     /**
-     * Creates an instance.
+     * Creates an instance that is not associated with an octave.
      * @param x pixel-centric coordinate in the original image.
      * @param y pixel-centric coordinate in the original image.
      * @param sigma Scale coordinate.
      */
     public ScaleSpacePoint(double x, double y, double sigma) {
+        this(x, y, sigma, -1, -1, -1, -1, Float.NaN);
+    }
+
+    /**
+     * Creates an instance for a keypoint found in an octave.
+     * @param x pixel-centric coordinate in the original image.
+     * @param y pixel-centric coordinate in the original image.
+     * @param sigma Scale coordinate.
+     * @param octave Index of the octave.
+     * @param scale Index of the difference-of-gaussian image within the
+     * octave.
+     * @param row Row of the closest pixel in the octave's images.
+     * @param col Column of the closest pixel in the octave's images.
+     * @param response Value of the difference-of-gaussian at the point.
+     */
+    public ScaleSpacePoint(final double x, final double y,
+            final double sigma, final int octave, final int scale,
+            final int row, final int col, final float response) {
         this.x = x;
         this.y = y;
         this.sigma = sigma;
+        this.octave = octave;
+        this.scale = scale;
+        this.row = row;
+        this.col = col;
+        this.response = response;
     }
 
     /**
@@ -66,6 +106,47 @@ public final class ScaleSpacePoint {
         return y;
     }
 
+    /**
+     * Index of the octave this point was found in.
+     * @return Index into {@link ScaleSpace#getOctaves()}, -1 if unknown.
+     */
+    public int getOctave() {
+        return octave;
+    }
+
+    /**
+     * Index of the difference-of-gaussian image this point was found in.
+     * @return Index into {@link Octave#getDifferenceOfGaussians()}, -1 if
+     * unknown.
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Row of the pixel closest to this point in the octave's images.
+     * @return Row within the octave, -1 if unknown.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Column of the pixel closest to this point in the octave's images.
+     * @return Column within the octave, -1 if unknown.
+     */
+    public int getColumn() {
+        return col;
+    }
+
+    /**
+     * Value of the difference-of-gaussian at this point.
+     * @return Response, NaN if unknown.
+     */
+    public float getResponse() {
+        return response;
+    }
+
     @Override
     public String toString() {
         return "(x=" + x + " y=" + y + " s=" + sigma + ")";
@@ -83,19 +164,37 @@ public final class ScaleSpacePoint {
             return false;
         }
         ScaleSpacePoint other = (ScaleSpacePoint) obj;
-        EqualsBuilder builder = new EqualsBuilder();
-        builder.append(x, other.x);
-        builder.append(y, other.y);
-        builder.append(sigma, other.sigma);
-        return builder.build();
+        return same(x, other.x) && same(y, other.y)
+                && same(sigma, other.sigma);
     }
 
     @Override
     public int hashCode() {
-        HashCodeBuilder builder = new HashCodeBuilder(65, 15);
-        builder.append(x);
-        builder.append(y);
-        builder.append(sigma);
-        return builder.toHashCode();
+        // same value as commons-lang's HashCodeBuilder, without allocating.
+        int hash = HASH_SEED;
+        hash = hash * HASH_FACTOR + hash(x);
+        hash = hash * HASH_FACTOR + hash(y);
+        hash = hash * HASH_FACTOR + hash(sigma);
+        return hash;
+    }
+
+    /**
+     * Checks if two doubles are equal the way {@link Double#equals} does.
+     * @param a First value.
+     * @param b Second value.
+     * @return {@code true} if both have the same bit pattern.
+     */
+    private static boolean same(final double a, final double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    /**
+     * Hashes a double the same way {@link Double#hashCode()} does.
+     * @param value Value to hash.
+     * @return Hash of the value.
+     */
+    private static int hash(final double value) {
+        long bits = Double.doubleToLongBits(value);
+        return (int) (bits ^ (bits >>> INT_BITS));
     }
 }
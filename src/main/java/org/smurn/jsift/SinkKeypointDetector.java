@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Detector that can pass the keypoints to a sink as they are found instead
+ * of collecting them first.
+ */
+public interface SinkKeypointDetector extends KeypointDetector {
+
+    /**
+     * Searches for interesting keypoints in the scale-space and passes
+     * them to a sink as they are found.
+     * <p>The sink is only called from the thread calling this method.</p>
+     * @param scaleSpace Scale-space to search.
+     * @param sink Sink to pass the keypoints to.
+     * @throws NullPointerException if {@code scaleSpace} or {@code sink} is
+     * {@code null}.
+     */
+    public void detectKeypoints(ScaleSpace scaleSpace, KeypointSink sink);
+}
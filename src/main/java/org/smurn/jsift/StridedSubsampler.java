@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Reduces the size of an image by half without copying the pixels.
+ * <p>Selects the same pixels as {@link Subsampler}, but the resulting image
+ * is a view that shares the pixels with the given image. Changes to one
+ * of the images are visible in the other. This avoids one copy and
+ * allocation per octave when building a scale-space, since the scale-images
+ * are not modified once an octave is created.</p>
+ */
+public final class StridedSubsampler implements DownScaler {
+
+    /**
+     * Creates an instance.
+     */
+    public StridedSubsampler() {
+        // empty
+    }
+
+    /**
+     * Reduces the size of the image by selecting each second pixel.
+     * <p>The even pixels are taken for the resulting image.</p>
+     * <p>The size of the resulting image is {@code floor((n+1)/2)}.</p>
+     * @param image Image to subsample.
+     * @return View of the even pixels of {@code image} with the same sigma.
+     * @throws NullPointerException if {@code image} is {@code null}.
+     * @throws IllegalArgumentException if the image is not at least one pixel
+     * in width and height.
+     */
+    @Override
+    public Image downScale(final Image image) {
+        if (image == null) {
+            throw new NullPointerException("image must not be null");
+        }
+        if (image.getWidth() < 1 || image.getHeight() < 1) {
+            throw new IllegalArgumentException("image must be at least"
+                    + "one pixel in width and height.");
+        }
+        int width = (image.getWidth() + 1) / 2;
+        int height = (image.getHeight() + 1) / 2;
+
+        float[][] rows = new float[height][];
+        for (int row = 0; row < height; row++) {
+            rows[row] = image.getRowArray(2 * row);
+        }
+
+        return new Image(rows, width, 2 * image.getColumnStride(),
+                image.getSigma(),
+                image.getScale() / 2.0,
+                image.getOffsetX() / 2.0,
+                image.getOffsetY() / 2.0);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Collection;
+
+/**
+ * Detector that limits the keypoints of another detector to the ones with
+ * the largest absolute response.
+ * <p>The keypoints are selected with a {@link StrongestKeypointSink}. If
+ * the wrapped detector is a {@link SinkKeypointDetector} this happens while
+ * the detection runs, so the discarded keypoints are never collected.
+ * Otherwise the keypoints are selected from the detector's collection. The
+ * keypoints are reported strongest first.</p>
+ * <p>Instances are thread-safe if the wrapped detector is.</p>
+ */
+public final class StrongestKeypointDetector implements SinkKeypointDetector {
+
+    /** Detector to find the keypoints. */
+    private final KeypointDetector detector;
+    /** Maximal number of keypoints reported. */
+    private final int maxKeypoints;
+
+    /**
+     * Creates an instance.
+     * @param detector Detector to find the keypoints.
+     * @param maxKeypoints Maximal number of keypoints to report.
+     * @throws NullPointerException if {@code detector} is {@code null}.
+     * @throws IllegalArgumentException if {@code maxKeypoints} is smaller
+     * than one.
+     */
+    public StrongestKeypointDetector(final KeypointDetector detector,
+            final int maxKeypoints) {
+        if (detector == null) {
+            throw new NullPointerException("detector must not be null");
+        }
+        if (maxKeypoints < 1) {
+            throw new IllegalArgumentException(
+                    "need to keep at least one keypoint");
+        }
+        this.detector = detector;
+        this.maxKeypoints = maxKeypoints;
+    }
+
+    @Override
+    public Collection<ScaleSpacePoint> detectKeypoints(
+            final ScaleSpace scaleSpace) {
+        PointListSink sink = new PointListSink();
+        detectKeypoints(scaleSpace, sink);
+        return sink.getPoints();
+    }
+
+    @Override
+    public void detectKeypoints(final ScaleSpace scaleSpace,
+            final KeypointSink sink) {
+        if (scaleSpace == null) {
+            throw new NullPointerException("scale space must not be null");
+        }
+        if (sink == null) {
+            throw new NullPointerException("sink must not be null");
+        }
+        StrongestKeypointSink strongest =
+                new StrongestKeypointSink(maxKeypoints);
+        if (detector instanceof SinkKeypointDetector) {
+            ((SinkKeypointDetector) detector).detectKeypoints(scaleSpace,
+                    strongest);
+        } else {
+            for (ScaleSpacePoint p : detector.detectKeypoints(scaleSpace)) {
+                strongest.keypoint(p.getX(), p.getY(), p.getSigma(),
+                        p.getOctave(), p.getScale(), p.getRow(),
+                        p.getColumn(), p.getResponse());
+            }
+        }
+        strongest.drainTo(sink);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Sink that keeps only the keypoints with the largest absolute response.
+ * <p>The keypoints are kept in a min-heap of bounded size, ordered by the
+ * absolute response. A new keypoint replaces the weakest kept one if it is
+ * stronger, so selecting the {@code n} strongest of {@code m} keypoints
+ * takes {@code O(m log n)} time and the memory for {@code n} keypoints,
+ * which is allocated up-front.</p>
+ * <p>If several keypoints have the same strength, the earlier ones are
+ * preferred.</p>
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class StrongestKeypointSink implements KeypointSink {
+
+    /** Maximal number of keypoints kept. */
+    private final int capacity;
+    /** The kept keypoints, in no particular order. */
+    private final KeypointBuffer keypoints;
+    /** Indices into {@code keypoints}, as a min-heap by strength. */
+    private final int[] heap;
+    /** Arrival number of each kept keypoint, to break ties. */
+    private final long[] arrival;
+    /** Number of keypoints passed to this sink. */
+    private long count;
+
+    /**
+     * Creates an instance.
+     * @param capacity Maximal number of keypoints to keep.
+     * @throws IllegalArgumentException if {@code capacity} is smaller than
+     * one.
+     */
+    public StrongestKeypointSink(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "capacity must be at least one");
+        }
+        this.capacity = capacity;
+        this.keypoints = new KeypointBuffer(capacity);
+        this.heap = new int[capacity];
+        this.arrival = new long[capacity];
+    }
+
+    @Override
+    public void keypoint(final double x, final double y, final double sigma,
+            final int octave, final int scale, final int row, final int col,
+            final float response) {
+        int size = keypoints.size();
+        if (size < capacity) {
+            keypoints.keypoint(x, y, sigma, octave, scale, row, col,
+                    response);
+            arrival[size] = count;
+            heap[size] = size;
+            siftUp(size);
+        } else if (Math.abs(response) > strength(heap[0])) {
+            keypoints.set(heap[0], x, y, sigma, octave, scale, row, col,
+                    response);
+            arrival[heap[0]] = count;
+            siftDown(0, size);
+        }
+        count++;
+    }
+
+    /**
+     * Gets the number of keypoints kept.
+     * @return Number of keypoints, at most the capacity.
+     */
+    public int size() {
+        return keypoints.size();
+    }
+
+    /**
+     * Gets the maximal number of keypoints kept.
+     * @return Capacity given when creating this instance.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Passes the kept keypoints to a sink, strongest first, and removes
+     * them from this instance.
+     * @param sink Sink to pass the keypoints to.
+     * @throws NullPointerException if {@code sink} is {@code null}.
+     */
+    public void drainTo(final KeypointSink sink) {
+        if (sink == null) {
+            throw new NullPointerException("sink must not be null");
+        }
+        // heap sort: moving the weakest to the end leaves the heap sorted
+        // from strongest to weakest.
+        for (int end = keypoints.size() - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        for (int i = 0; i < keypoints.size(); i++) {
+            keypoints.emit(heap[i], sink);
+        }
+        keypoints.clear();
+        count = 0;
+    }
+
+    /**
+     * Moves an element up the heap until its parent is not stronger.
+     * @param index Index of the element in the heap.
+     */
+    private void siftUp(final int index) {
+        int child = index;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (!weaker(child, parent)) {
+                return;
+            }
+            swap(child, parent);
+            child = parent;
+        }
+    }
+
+    /**
+     * Moves an element down the heap until its children are not weaker.
+     * @param index Index of the element in the heap.
+     * @param size Number of elements in the heap.
+     */
+    private void siftDown(final int index, final int size) {
+        int parent = index;
+        while (true) {
+            int weakest = parent;
+            int left = 2 * parent + 1;
+            int right = left + 1;
+            if (left < size && weaker(left, weakest)) {
+                weakest = left;
+            }
+            if (right < size && weaker(right, weakest)) {
+                weakest = right;
+            }
+            if (weakest == parent) {
+                return;
+            }
+            swap(parent, weakest);
+            parent = weakest;
+        }
+    }
+
+    /**
+     * Checks if one heap element is weaker than another. Of two equally
+     * strong keypoints, the later one is weaker so that it is replaced
+     * first.
+     * @param i Index of the first element in the heap.
+     * @param j Index of the second element in the heap.
+     * @return {@code true} if the first element is weaker.
+     */
+    private boolean weaker(final int i, final int j) {
+        float a = strength(heap[i]);
+        float b = strength(heap[j]);
+        if (a != b) {
+            return a < b;
+        }
+        return arrival[heap[i]] > arrival[heap[j]];
+    }
+
+    /**
+     * Swaps two heap elements.
+     * @param i Index of the first element in the heap.
+     * @param j Index of the second element in the heap.
+     */
+    private void swap(final int i, final int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    /**
+     * Gets the strength of a keypoint.
+     * @param keypoint Index of the keypoint in {@code keypoints}.
+     * @return Absolute response of the keypoint.
+     */
+    private float strength(final int keypoint) {
+        return Math.abs(keypoints.getResponse(keypoint));
+    }
+}
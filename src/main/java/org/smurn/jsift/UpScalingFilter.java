@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Increases the size of an image by a factor of two and low-pass filters the
+ * result in one operation.
+ * <p>This is the first step when building a scale-space. Implementations
+ * can avoid to materialize the unfiltered, up-scaled image.</p>
+ */
+public interface UpScalingFilter {
+
+    /**
+     * Creates an up-scaled and filtered copy of the given image.
+     * The size of the resulting image follows the same rules as for
+     * {@link UpScaler#upScale(Image)}.
+     * @param image Image to up-scale and filter.
+     * @param sigma Sigma of the resulting image. THIS IS NOT the 'Radius' of
+     * the filter. The filter size is calculated such that the resulting
+     * image will have the desired sigma.
+     * @return Up-scaled image with the given sigma.
+     * @throws NullPointerException if {@code image} is {@code null}.
+     * @throws IllegalArgumentException if {@code sigma} is smaller then the
+     * input image's sigma.
+     */
+    Image upScaleAndFilter(Image image, double sigma);
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+/**
+ * Quantizes descriptors into visual words with a tree of cluster centers.
+ * <p>The tree is the vocabulary tree of Nistér and Stewénius. Every inner
+ * node has {@code branching} children, and all leaves are at the same
+ * depth. A descriptor is quantized by descending from the root to the
+ * child with the closest center at each level. The leaf it ends up at is
+ * its visual word. Quantizing therefore costs
+ * {@code branching * depth} distance computations, no matter how many
+ * words there are.</p>
+ * <p>The centers are stored as rounded bytes in a flat array, breadth
+ * first. The children of node {@code n} are the nodes
+ * {@code n * branching + 1} to {@code n * branching + branching}, and the
+ * root is node zero, which has no center. Instances are created by
+ * {@link VocabularyTreeTrainer} and are immutable.</p>
+ */
+public final class VocabularyTree {
+
+    /** Number of elements of a descriptor. */
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+    /** Number of children of an inner node. */
+    private final int branching;
+    /** Number of levels below the root. */
+    private final int depth;
+    /** Index of the first leaf node. */
+    private final int firstLeaf;
+    /** Number of leaves. */
+    private final int wordCount;
+    /** Centers of all nodes except the root, breadth first. */
+    private final byte[] centers;
+
+    /**
+     * Creates an instance.
+     * @param branching Number of children of an inner node.
+     * @param depth Number of levels below the root.
+     * @param centers Centers of all nodes except the root, breadth first,
+     * {@link DescriptorExtractor#LENGTH} bytes each. Copied.
+     * @throws NullPointerException if {@code centers} is {@code null}.
+     * @throws IllegalArgumentException if {@code branching} is smaller than
+     * two, {@code depth} is smaller than one, the tree is too large, or
+     * {@code centers} has the wrong length.
+     */
+    public VocabularyTree(final int branching, final int depth,
+            final byte[] centers) {
+        if (centers == null) {
+            throw new NullPointerException("centers must not be null");
+        }
+        long nodes = nodeCount(branching, depth);
+        if (centers.length != (nodes - 1) * LENGTH) {
+            throw new IllegalArgumentException("centers must have "
+                    + (nodes - 1) * LENGTH + " elements");
+        }
+        this.branching = branching;
+        this.depth = depth;
+        this.wordCount = (int) Math.round(Math.pow(branching, depth));
+        this.firstLeaf = (int) nodes - wordCount;
+        this.centers = centers.clone();
+    }
+
+    /**
+     * Calculates the number of nodes of a tree, including the root.
+     * @param branching Number of children of an inner node.
+     * @param depth Number of levels below the root.
+     * @return Number of nodes.
+     * @throws IllegalArgumentException if {@code branching} is smaller than
+     * two, {@code depth} is smaller than one, or the centers of the tree
+     * would not fit into an array.
+     */
+    static long nodeCount(final int branching, final int depth) {
+        if (branching < 2) {
+            throw new IllegalArgumentException(
+                    "need at least two branches per node");
+        }
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be at least one");
+        }
+        long nodes = 1;
+        long level = 1;
+        for (int i = 0; i < depth; i++) {
+            level *= branching;
+            nodes += level;
+            if ((nodes - 1) * LENGTH > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("tree with " + branching
+                        + " branches and depth " + depth + " is too large");
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets the number of children of an inner node.
+     * @return Branching factor.
+     */
+    public int getBranching() {
+        return branching;
+    }
+
+    /**
+     * Gets the number of levels below the root.
+     * @return Depth of the leaves.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gets the number of visual words.
+     * @return Number of leaves.
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Gets the centers of the nodes.
+     * @return Centers of all nodes except the root, breadth first. Copied.
+     */
+    public byte[] getCenters() {
+        return centers.clone();
+    }
+
+    /**
+     * Quantizes a descriptor.
+     * @param descriptors Array containing the descriptor, as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the descriptor's first element.
+     * @return Visual word, between zero and the word count.
+     * @throws NullPointerException if {@code descriptors} is {@code null}.
+     * @throws IndexOutOfBoundsException if the descriptor exceeds the
+     * array.
+     */
+    public int quantize(final byte[] descriptors, final int offset) {
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        if (offset < 0 || offset > descriptors.length - LENGTH) {
+            throw new IndexOutOfBoundsException(
+                    "descriptor exceeds the array");
+        }
+        return word(descriptors, offset);
+    }
+
+    /**
+     * Quantizes several descriptors.
+     * @param descriptors Descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors.
+     * @param words Array to write the visual words to.
+     * @param wordsOffset Index to write the first word to.
+     * @throws NullPointerException if {@code descriptors} or {@code words}
+     * is {@code null}.
+     * @throws IndexOutOfBoundsException if the descriptors or words exceed
+     * their arrays.
+     */
+    public void quantize(final byte[] descriptors, final int offset,
+            final int count, final int[] words, final int wordsOffset) {
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        if (words == null) {
+            throw new NullPointerException("words must not be null");
+        }
+        if (offset < 0 || count < 0 || wordsOffset < 0
+                || offset + (long) count * LENGTH > descriptors.length
+                || wordsOffset + (long) count > words.length) {
+            throw new IndexOutOfBoundsException("range of " + count
+                    + " descriptors exceeds the arrays");
+        }
+        for (int i = 0; i < count; i++) {
+            words[wordsOffset + i] = word(descriptors, offset + i * LENGTH);
+        }
+    }
+
+    /**
+     * Descends the tree.
+     * @param descriptors Array containing the descriptor.
+     * @param offset Index of the descriptor's first element.
+     * @return Visual word.
+     */
+    private int word(final byte[] descriptors, final int offset) {
+        int node = 0;
+        for (int level = 0; level < depth; level++) {
+            int first = node * branching + 1;
+            int best = first;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int child = first; child < first + branching; child++) {
+                int distance = distance(descriptors, offset, centers,
+                        (child - 1) * LENGTH, bestDistance);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = child;
+                }
+            }
+            node = best;
+        }
+        return node - firstLeaf;
+    }
+
+    /**
+     * Calculates the squared distance between two descriptors, stopping
+     * once it reaches a limit.
+     * @param a Array containing the first descriptor.
+     * @param aOffset Index of the first descriptor's first element.
+     * @param b Array containing the second descriptor.
+     * @param bOffset Index of the second descriptor's first element.
+     * @param limit Distance at which the summation may stop.
+     * @return Squared euclidean distance, or a value not smaller than
+     * {@code limit} if the distance is not smaller.
+     */
+    static int distance(final byte[] a, final int aOffset, final byte[] b,
+            final int bOffset, final int limit) {
+        int result = 0;
+        for (int c = 0; c < LENGTH && result < limit; c += LENGTH / 8) {
+            for (int i = c; i < c + LENGTH / 8; i++) {
+                int d = (a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF);
+                result += d * d;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+
+/**
+ * Learns a {@link VocabularyTree} from a sample of descriptors.
+ * <p>The sample is clustered with k-means into {@code branching} clusters,
+ * and each cluster is clustered again, until the tree has the requested
+ * depth (hierarchical k-means). Each k-means run is seeded with the
+ * k-means++ method of Arthur and Vassilvitskii and stops after a fixed
+ * number of iterations or when no assignment changes. Clusters with fewer
+ * distinct descriptors than branches repeat some of them as centers, and
+ * empty clusters inherit the center of their parent, so the tree is
+ * always complete. Such duplicates only waste words, since quantization
+ * chooses the first of equally close centers. The clustering runs in
+ * floats, and the centers are rounded to bytes afterwards.</p>
+ * <p>Training costs about {@code count * branching * depth * iterations}
+ * distance computations.</p>
+ */
+public final class VocabularyTreeTrainer {
+
+    /** Number of k-means iterations if not specified otherwise. */
+    private static final int DEFAULT_ITERATIONS = 10;
+    /** Number of elements of a descriptor. */
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+    /** Number of children of an inner node. */
+    private final int branching;
+    /** Number of levels below the root. */
+    private final int depth;
+    /** Maximal number of k-means iterations per node. */
+    private final int iterations;
+    /** Seed of the random choice of the initial centers. */
+    private final long seed;
+
+    /**
+     * Creates an instance with ten k-means iterations.
+     * @param branching Number of children of an inner node.
+     * @param depth Number of levels below the root. The tree has
+     * {@code branching ^ depth} words.
+     * @throws IllegalArgumentException if {@code branching} is smaller than
+     * two, {@code depth} is smaller than one, or the tree is too large.
+     */
+    public VocabularyTreeTrainer(final int branching, final int depth) {
+        this(branching, depth, DEFAULT_ITERATIONS, 0L);
+    }
+
+    /**
+     * Creates an instance.
+     * @param branching Number of children of an inner node.
+     * @param depth Number of levels below the root. The tree has
+     * {@code branching ^ depth} words.
+     * @param iterations Maximal number of k-means iterations per node.
+     * @param seed Seed of the random choice of the initial centers, so
+     * that training is reproducible.
+     * @throws IllegalArgumentException if {@code branching} is smaller than
+     * two, {@code depth} or {@code iterations} is smaller than one, or the
+     * tree is too large.
+     */
+    public VocabularyTreeTrainer(final int branching, final int depth,
+            final int iterations, final long seed) {
+        VocabularyTree.nodeCount(branching, depth);
+        if (iterations < 1) {
+            throw new IllegalArgumentException(
+                    "need at least one iteration");
+        }
+        this.branching = branching;
+        this.depth = depth;
+        this.iterations = iterations;
+        this.seed = seed;
+    }
+
+    /**
+     * Learns a vocabulary tree.
+     * @param descriptors Sample of descriptors as written by
+     * {@link DescriptorExtractor}.
+     * @param offset Index of the first element of the first descriptor.
+     * @param count Number of descriptors in the sample.
+     * @return Vocabulary tree clustering the sample.
+     * @throws NullPointerException if {@code descriptors} is {@code null}.
+     * @throws IllegalArgumentException if the sample is empty.
+     * @throws IndexOutOfBoundsException if the descriptors exceed the
+     * array.
+     */
+    public VocabularyTree train(final byte[] descriptors, final int offset,
+            final int count) {
+        if (descriptors == null) {
+            throw new NullPointerException("descriptors must not be null");
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException(
+                    "need at least one descriptor");
+        }
+        if (offset < 0
+                || offset + (long) count * LENGTH > descriptors.length) {
+            throw new IndexOutOfBoundsException("range of " + count
+                    + " descriptors exceeds the array");
+        }
+
+        int nodes = (int) VocabularyTree.nodeCount(branching, depth);
+        int innerNodes = (nodes - 1) / branching;
+        byte[] centers = new byte[(nodes - 1) * LENGTH];
+        // offsets of the descriptors, grouped by node. Node n owns the
+        // range [from[n], to[n]).
+        int[] order = new int[count];
+        int[] scratch = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = offset + i * LENGTH;
+        }
+        int[] from = new int[innerNodes];
+        int[] to = new int[innerNodes];
+        to[0] = count;
+        Random random = new Random(seed);
+
+        for (int node = 0; node < innerNodes; node++) {
+            int first = node * branching + 1;
+            int lo = from[node];
+            int hi = to[node];
+            if (lo == hi) {
+                for (int child = first; child < first + branching; child++) {
+                    System.arraycopy(centers, (node - 1) * LENGTH, centers,
+                            (child - 1) * LENGTH, LENGTH);
+                }
+            } else {
+                cluster(descriptors, order, lo, hi, centers,
+                        (first - 1) * LENGTH, random);
+            }
+
+            // group the range by child, the children of the last level
+            // are leaves and need no range.
+            if (first >= innerNodes) {
+                continue;
+            }
+            int[] assignment = new int[hi - lo];
+            int[] counts = new int[branching];
+            for (int i = lo; i < hi; i++) {
+                int a = closest(descriptors, order[i], centers,
+                        (first - 1) * LENGTH);
+                assignment[i - lo] = a;
+                counts[a]++;
+            }
+            int start = lo;
+            for (int c = 0; c < branching; c++) {
+                from[first + c] = start;
+                start += counts[c];
+                to[first + c] = from[first + c];
+            }
+            for (int i = lo; i < hi; i++) {
+                scratch[to[first + assignment[i - lo]]++] = order[i];
+            }
+            System.arraycopy(scratch, lo, order, lo, hi - lo);
+        }
+        return new VocabularyTree(branching, depth, centers);
+    }
+
+    /**
+     * Clusters a range of descriptors with k-means.
+     * @param descriptors Array containing the descriptors.
+     * @param order Offsets of the descriptors.
+     * @param lo First index of the range in {@code order}.
+     * @param hi Index after the last index of the range, larger than
+     * {@code lo}.
+     * @param centers Array to write the {@code branching} centers to,
+     * rounded to bytes.
+     * @param centersOffset Index of the first center's first element.
+     * @param random Source of the seeding.
+     */
+    private void cluster(final byte[] descriptors, final int[] order,
+            final int lo, final int hi, final byte[] centers,
+            final int centersOffset, final Random random) {
+        int n = hi - lo;
+        float[] vectors = new float[n * LENGTH];
+        for (int i = 0; i < n; i++) {
+            int base = order[lo + i];
+            for (int e = 0; e < LENGTH; e++) {
+                vectors[i * LENGTH + e] = descriptors[base + e] & 0xFF;
+            }
+        }
+        float[] result = KMeans.cluster(vectors, n, LENGTH, branching,
+                iterations, random);
+        for (int i = 0; i < result.length; i++) {
+            // means of bytes, so rounding stays within the byte range.
+            centers[centersOffset + i] = (byte) Math.round(result[i]);
+        }
+    }
+
+    /**
+     * Finds the closest of the {@code branching} centers of a node.
+     * @param descriptors Array containing the descriptor.
+     * @param offset Index of the descriptor's first element.
+     * @param centers Array containing the centers.
+     * @param centersOffset Index of the first center's first element.
+     * @return Index of the closest center, the first one of ties.
+     */
+    private int closest(final byte[] descriptors, final int offset,
+            final byte[] centers, final int centersOffset) {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int c = 0; c < branching; c++) {
+            int distance = VocabularyTree.distance(descriptors, offset,
+                    centers, centersOffset + c * LENGTH, bestDistance);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
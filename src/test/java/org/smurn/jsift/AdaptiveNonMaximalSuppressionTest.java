@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link AdaptiveNonMaximalSuppression}.
+ */
+public class AdaptiveNonMaximalSuppressionTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroTarget() {
+        new AdaptiveNonMaximalSuppression(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullKeypoints() {
+        new AdaptiveNonMaximalSuppression(1).suppress(null, new KeypointBuffer());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullSink() {
+        new AdaptiveNonMaximalSuppression(1).suppress(new KeypointBuffer(), null);
+    }
+
+    @Test
+    public void empty() {
+        KeypointSink sink = mock(KeypointSink.class);
+        new AdaptiveNonMaximalSuppression(1).suppress(new KeypointBuffer(), sink);
+        verifyZeroInteractions(sink);
+    }
+
+    /**
+     * A weak keypoint far away from the others is preferred over a strong
+     * one close to an even stronger keypoint.
+     */
+    @Test
+    public void spread() {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        keypoints.keypoint(10, 10, 1, 0, 1, 1, 1, 1.0f);
+        keypoints.keypoint(11, 10, 1, 0, 1, 1, 1, -0.9f);
+        keypoints.keypoint(50, 40, 1, 0, 1, 1, 1, 0.1f);
+        KeypointBuffer actual = new KeypointBuffer();
+        new AdaptiveNonMaximalSuppression(2).suppress(keypoints, actual);
+        assertEquals(2, actual.size());
+        assertEquals(10.0, actual.getX(0), 0.0);
+        assertEquals(50.0, actual.getX(1), 0.0);
+    }
+
+    /**
+     * Of two keypoints with the same radius the stronger one is selected,
+     * even if the weaker one comes first in the buffer.
+     */
+    @Test
+    public void equalRadiiByStrength() {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        keypoints.keypoint(10, 10, 1, 0, 1, 1, 1, 1.0f);
+        keypoints.keypoint(15, 10, 1, 0, 1, 1, 1, 0.1f);
+        keypoints.keypoint(5, 10, 1, 0, 1, 1, 1, -0.2f);
+        KeypointBuffer actual = new KeypointBuffer();
+        new AdaptiveNonMaximalSuppression(2).suppress(keypoints, actual);
+        assertEquals(2, actual.size());
+        assertEquals(10.0, actual.getX(0), 0.0);
+        assertEquals(5.0, actual.getX(1), 0.0);
+    }
+
+    @Test
+    public void collinear() {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        for (int i = 0; i < 100; i++) {
+            keypoints.keypoint(i, 5, 1, 0, 1, 1, 1, i);
+        }
+        KeypointBuffer actual = new KeypointBuffer();
+        new AdaptiveNonMaximalSuppression(1000).suppress(keypoints, actual);
+        assertEquals(100, actual.size());
+        assertEquals(99.0, actual.getX(0), 0.0);
+    }
+
+    @Test
+    public void sameAsNaive() {
+        Random random = new Random(13);
+        KeypointBuffer keypoints = new KeypointBuffer();
+        for (int i = 0; i < 3000; i++) {
+            double x;
+            double y;
+            if (i % 3 == 0) {
+                // clusters
+                x = 100 + 5 * random.nextGaussian() + 200 * (i % 2);
+                y = 80 + 5 * random.nextGaussian();
+            } else {
+                x = 640 * random.nextDouble();
+                y = 480 * random.nextDouble();
+            }
+            keypoints.keypoint(x, y, 1, 0, 1, 1, 1, (float) random.nextGaussian());
+        }
+        KeypointBuffer actual = new KeypointBuffer();
+        new AdaptiveNonMaximalSuppression(500).suppress(keypoints, actual);
+
+        List<Integer> expected = naive(keypoints);
+        assertEquals(500, actual.size());
+        for (int i = 0; i < 500; i++) {
+            int index = expected.get(i);
+            assertEquals(keypoints.getX(index), actual.getX(i), 0.0);
+            assertEquals(keypoints.getY(index), actual.getY(i), 0.0);
+        }
+    }
+
+    /**
+     * Quadratic reference implementation.
+     */
+    private static List<Integer> naive(final KeypointBuffer keypoints) {
+        final int n = keypoints.size();
+        final float[] radii = new float[n];
+        final float[] strength = new float[n];
+        for (int i = 0; i < n; i++) {
+            strength[i] = Math.abs(keypoints.getResponse(i));
+        }
+        for (int i = 0; i < n; i++) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < n; j++) {
+                if (strength[j] > strength[i] || (strength[j] == strength[i] && j < i)) {
+                    double dx = keypoints.getX(j) - keypoints.getX(i);
+                    double dy = keypoints.getY(j) - keypoints.getY(i);
+                    best = Math.min(best, dx * dx + dy * dy);
+                }
+            }
+            radii[i] = (float) best;
+        }
+        List<Integer> indices = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            indices.add(i);
+        }
+        Collections.sort(indices, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = Float.compare(radii[b], radii[a]);
+                if (result == 0) {
+                    result = Float.compare(strength[b], strength[a]);
+                }
+                if (result == 0) {
+                    result = a.compareTo(b);
+                }
+                return result;
+            }
+        });
+        return indices;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link Angles}.
+ */
+public class AnglesTest {
+
+    @Test
+    public void axes() {
+        assertEquals(0.0f, Angles.atan2(0, 1), 0.0f);
+        assertEquals((float) (Math.PI / 2), Angles.atan2(1, 0), 0.0f);
+        assertEquals((float) Math.PI, Angles.atan2(0, -1), 0.0f);
+        assertEquals((float) (-Math.PI / 2), Angles.atan2(-1, 0), 0.0f);
+    }
+
+    @Test
+    public void origin() {
+        assertEquals(0.0f, Angles.atan2(0, 0), 0.0f);
+    }
+
+    @Test
+    public void nan() {
+        assertTrue(Float.isNaN(Angles.atan2(Float.NaN, 1)));
+        assertTrue(Float.isNaN(Angles.atan2(1, Float.NaN)));
+    }
+
+    @Test
+    public void accuracy() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            float y = (float) random.nextGaussian();
+            float x = (float) random.nextGaussian();
+            assertEquals(Math.atan2(y, x), Angles.atan2(y, x), 1E-5);
+        }
+    }
+
+    @Test
+    public void scaleInvariant() {
+        assertEquals(Angles.atan2(3, -4), Angles.atan2(3E-20f, -4E-20f),
+                0.0f);
+        assertEquals(Angles.atan2(3, -4), Angles.atan2(3E20f, -4E20f), 0.0f);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link BinaryDescriptorEncoder}.
+ */
+public class BinaryDescriptorEncoderTest {
+
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+
+    @Test
+    public void words() {
+        assertEquals(2, BinaryDescriptorEncoder.WORDS);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullDescriptors() {
+        new BinaryDescriptorEncoder().encode(null, 0, 0, new long[0], 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullResult() {
+        new BinaryDescriptorEncoder().encode(new byte[0], 0, 0, null, 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void descriptorsExceedArray() {
+        new BinaryDescriptorEncoder().encode(new byte[LENGTH], 1, 1,
+                new long[2], 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void resultExceedsArray() {
+        new BinaryDescriptorEncoder().encode(new byte[LENGTH], 0, 1,
+                new long[2], 1);
+    }
+
+    @Test
+    public void ascending() {
+        byte[] descriptor = new byte[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            descriptor[i] = (byte) (2 * i);
+        }
+        long[] result = new long[2];
+        new BinaryDescriptorEncoder().encode(descriptor, 0, 1, result, 0);
+        // the lower half is not above the median, the upper half is.
+        assertEquals(0L, result[0]);
+        assertEquals(-1L, result[1]);
+    }
+
+    @Test
+    public void ties() {
+        byte[] descriptor = new byte[LENGTH];
+        descriptor[3] = 1;
+        descriptor[70] = (byte) 255;
+        long[] result = new long[2];
+        new BinaryDescriptorEncoder().encode(descriptor, 0, 1, result, 0);
+        assertEquals(1L << 3, result[0]);
+        assertEquals(1L << 6, result[1]);
+    }
+
+    @Test
+    public void offsets() {
+        byte[] descriptors = new byte[5 + 2 * LENGTH];
+        descriptors[5 + LENGTH + 64] = 9;
+        long[] result = new long[7];
+        result[6] = 42;
+        new BinaryDescriptorEncoder().encode(descriptors, 5, 2, result, 2);
+        assertEquals(0L, result[2]);
+        assertEquals(0L, result[3]);
+        assertEquals(0L, result[4]);
+        assertEquals(1L, result[5]);
+        assertEquals(42L, result[6]);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link BruteForceMatcher}.
+ */
+public class BruteForceMatcherTest {
+
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroRatio() {
+        new BruteForceMatcher(0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ratioAboveOne() {
+        new BruteForceMatcher(1.1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullQueries() {
+        new BruteForceMatcher().match((byte[]) null, 0, new byte[0], 0,
+                new int[0]);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullReferences() {
+        new BruteForceMatcher().match(new byte[0], 0, (byte[]) null, 0,
+                new int[0]);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullMatches() {
+        new BruteForceMatcher().match(new byte[0], 0, new byte[0], 0, null);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void queriesExceedArray() {
+        new BruteForceMatcher().match(new byte[LENGTH], 2, new byte[0], 0,
+                new int[2]);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void matchesTooShort() {
+        new BruteForceMatcher().match(new byte[2 * LENGTH], 2, new byte[0],
+                0, new int[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroDimension() {
+        new BruteForceMatcher().match(new float[0], 0, new float[0], 0, 0,
+                new int[0]);
+    }
+
+    @Test
+    public void noReferences() {
+        int[] matches = new int[1];
+        new BruteForceMatcher().match(new byte[LENGTH], 1, new byte[0], 0,
+                matches);
+        assertEquals(-1, matches[0]);
+    }
+
+    @Test
+    public void singleReference() {
+        int[] matches = new int[1];
+        new BruteForceMatcher().match(new float[]{1, 2}, 1,
+                new float[]{5, 5}, 1, 2, matches);
+        assertEquals(0, matches[0]);
+    }
+
+    @Test
+    public void ratioTest() {
+        float[] queries = {0, 0, 10, 0};
+        float[] references = {1, 0, 0, 3, 7, 0, 12.5f, 0};
+        int[] matches = new int[2];
+        new BruteForceMatcher(0.8).match(queries, 2, references, 4, 2,
+                matches);
+        // 1 < 0.8 * 3 passes, 2.5 < 0.8 * 3 fails.
+        assertArrayEquals(new int[]{0, -1}, matches);
+    }
+
+    @Test
+    public void equalReferencesAreAmbiguous() {
+        byte[] queries = new byte[LENGTH];
+        byte[] references = new byte[2 * LENGTH];
+        references[0] = 3;
+        references[LENGTH + 1] = 3;
+        int[] matches = new int[1];
+        new BruteForceMatcher(1.0).match(queries, 1, references, 2, matches);
+        assertEquals(-1, matches[0]);
+    }
+
+    @Test
+    public void bytesSameAsReference() {
+        Random random = new Random(42);
+        int queryCount = 150;
+        int referenceCount = 700;
+        byte[] references = new byte[referenceCount * LENGTH];
+        random.nextBytes(references);
+        byte[] queries = new byte[queryCount * LENGTH];
+        for (int q = 0; q < queryCount; q++) {
+            // perturbed copies, so that many queries pass the ratio test.
+            int source = random.nextInt(referenceCount);
+            for (int i = 0; i < LENGTH; i++) {
+                queries[q * LENGTH + i] = (byte) (references[source * LENGTH
+                        + i] + random.nextInt(3 * (q % 30) + 1));
+            }
+        }
+        int[] matches = new int[queryCount];
+        new BruteForceMatcher(0.9).match(queries, queryCount, references,
+                referenceCount, matches);
+
+        int accepted = 0;
+        for (int q = 0; q < queryCount; q++) {
+            long best = Long.MAX_VALUE;
+            long second = Long.MAX_VALUE;
+            int bestIndex = -1;
+            for (int r = 0; r < referenceCount; r++) {
+                long d = 0;
+                for (int i = 0; i < LENGTH; i++) {
+                    int diff = (queries[q * LENGTH + i] & 0xFF)
+                            - (references[r * LENGTH + i] & 0xFF);
+                    d += diff * diff;
+                }
+                if (d < best) {
+                    second = best;
+                    best = d;
+                    bestIndex = r;
+                } else if (d < second) {
+                    second = d;
+                }
+            }
+            int expected = -1;
+            if (best < 0.81 * second) {
+                expected = bestIndex;
+                accepted++;
+            }
+            assertEquals(expected, matches[q]);
+        }
+        assertTrue(accepted > 0);
+        assertTrue(accepted < queryCount);
+    }
+
+    @Test
+    public void floatsSameAsReference() {
+        Random random = new Random(7);
+        int dimension = 37;
+        int queryCount = 90;
+        int referenceCount = 300;
+        float[] queries = new float[queryCount * dimension];
+        float[] references = new float[referenceCount * dimension];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = (float) random.nextGaussian();
+        }
+        for (int i = 0; i < references.length; i++) {
+            references[i] = (float) random.nextGaussian();
+        }
+        int[] matches = new int[queryCount];
+        new BruteForceMatcher(1.0).match(queries, queryCount, references,
+                referenceCount, dimension, matches);
+
+        for (int q = 0; q < queryCount; q++) {
+            double best = Double.POSITIVE_INFINITY;
+            int bestIndex = -1;
+            for (int r = 0; r < referenceCount; r++) {
+                double d = 0;
+                for (int i = 0; i < dimension; i++) {
+                    double diff = queries[q * dimension + i]
+                            - references[r * dimension + i];
+                    d += diff * diff;
+                }
+                if (d < best) {
+                    best = d;
+                    bestIndex = r;
+                }
+            }
+            assertEquals(bestIndex, matches[q]);
+        }
+    }
+
+    @Test
+    public void parallelSameAsSequential() {
+        Random random = new Random(3);
+        int queryCount = 300;
+        int referenceCount = 400;
+        byte[] queries = new byte[queryCount * LENGTH];
+        byte[] references = new byte[referenceCount * LENGTH];
+        random.nextBytes(queries);
+        random.nextBytes(references);
+        int[] expected = new int[queryCount];
+        new BruteForceMatcher(1.0).match(queries, queryCount, references,
+                referenceCount, expected);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            int[] matches = new int[queryCount];
+            new BruteForceMatcher(1.0, executor).match(queries, queryCount,
+                    references, referenceCount, matches);
+            assertArrayEquals(expected, matches);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
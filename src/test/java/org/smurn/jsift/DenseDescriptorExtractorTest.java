@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DenseDescriptorExtractor}.
+ */
+public class DenseDescriptorExtractorTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCellSize() {
+        new DenseDescriptorExtractor(0, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroStep() {
+        new DenseDescriptorExtractor(4, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullScaleSpace() {
+        new DenseDescriptorExtractor(4, 4).extract(null, 0, 0,
+                new KeypointBuffer());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullKeypoints() {
+        new DenseDescriptorExtractor(4, 4).extract(scaleSpace(random(40, 40)),
+                0, 0, null);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void noSuchOctave() {
+        new DenseDescriptorExtractor(4, 4).extract(scaleSpace(random(40, 40)),
+                1, 0, new KeypointBuffer());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void noSuchScaleImage() {
+        new DenseDescriptorExtractor(4, 4).extract(scaleSpace(random(40, 40)),
+                0, 4, new KeypointBuffer());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void noDoGOfScaleImage() {
+        new DenseDescriptorExtractor(4, 4).extract(scaleSpace(random(40, 40)),
+                0, 3, new KeypointBuffer());
+    }
+
+    @Test
+    public void tooSmall() {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        byte[] descriptors = new DenseDescriptorExtractor(4, 4).extract(
+                scaleSpace(random(15, 40)), 0, 0, keypoints);
+        assertEquals(0, descriptors.length);
+        assertEquals(0, keypoints.size());
+    }
+
+    @Test
+    public void grid() {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        byte[] descriptors = new DenseDescriptorExtractor(4, 5).extract(
+                scaleSpace(random(32, 40)), 0, 1, keypoints);
+        // 16 pixel windows at rows 0 to 15 and columns 0 to 20.
+        assertEquals(20, keypoints.size());
+        assertEquals(20 * DescriptorExtractor.LENGTH, descriptors.length);
+        assertEquals(7.5, keypoints.getX(0), 0.0);
+        assertEquals(7.5, keypoints.getY(0), 0.0);
+        assertEquals(12.5, keypoints.getX(1), 0.0);
+        assertEquals(7.5, keypoints.getY(4), 0.0);
+        assertEquals(12.5, keypoints.getY(5), 0.0);
+        assertEquals(22.5, keypoints.getY(19), 0.0);
+        assertEquals(27.5, keypoints.getX(19), 0.0);
+        assertEquals(4 / 3.0, keypoints.getSigma(0), 1E-12);
+        assertEquals(0, keypoints.getOctave(0));
+        assertEquals(1, keypoints.getScale(0));
+        assertEquals(8, keypoints.getRow(0));
+        assertEquals(13, keypoints.getColumn(1));
+        assertEquals(0.0f, keypoints.getOrientation(0), 0.0f);
+        assertTrue(Float.isNaN(keypoints.getResponse(0)));
+    }
+
+    @Test
+    public void appends() {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        keypoints.keypoint(1, 2, 3, 0, 1, 2, 1, 0.5f);
+        new DenseDescriptorExtractor(4, 5).extract(
+                scaleSpace(random(32, 40)), 0, 1, keypoints);
+        assertEquals(21, keypoints.size());
+        assertEquals(1.0, keypoints.getX(0), 0.0);
+        assertTrue(Float.isNaN(keypoints.getOrientation(0)));
+    }
+
+    @Test
+    public void ramp() {
+        float[][] pixels = new float[20][20];
+        for (int row = 0; row < pixels.length; row++) {
+            for (int col = 0; col < pixels[row].length; col++) {
+                pixels[row][col] = col;
+            }
+        }
+        byte[] descriptors = new DenseDescriptorExtractor(4, 4).extract(
+                scaleSpace(pixels), 0, 0, new KeypointBuffer());
+        for (int i = 0; i < descriptors.length; i++) {
+            if (i % 8 == 0) {
+                assertTrue(descriptors[i] != 0);
+            } else {
+                assertEquals(0, descriptors[i]);
+            }
+        }
+    }
+
+    @Test
+    public void sameAsDirect() {
+        assertSameAsDirect(4, 4);
+    }
+
+    @Test
+    public void overlappingCells() {
+        assertSameAsDirect(4, 3);
+    }
+
+    @Test
+    public void sparseGrid() {
+        assertSameAsDirect(3, 7);
+    }
+
+    @Test
+    public void overlappingCellsSingleStep() {
+        assertSameAsDirect(8, 1);
+    }
+
+    @Test
+    public void reusable() {
+        DenseDescriptorExtractor target = new DenseDescriptorExtractor(4, 3);
+        ScaleSpace scaleSpace = scaleSpace(random(30, 33));
+        byte[] first = target.extract(scaleSpace, 0, 0, new KeypointBuffer());
+        target.extract(scaleSpace(random(50, 60)), 0, 0,
+                new KeypointBuffer());
+        byte[] second = target.extract(scaleSpace, 0, 0,
+                new KeypointBuffer());
+        assertArrayEquals(first, second);
+    }
+
+    /**
+     * Compares the descriptors with descriptors whose cells are summed
+     * directly.
+     * @param cellSize Width of a cell.
+     * @param step Distance between the grid points.
+     */
+    private static void assertSameAsDirect(final int cellSize,
+            final int step) {
+        ScaleSpace scaleSpace = scaleSpace(random(37, 45));
+        KeypointBuffer keypoints = new KeypointBuffer();
+        byte[] actual = new DenseDescriptorExtractor(cellSize, step).extract(
+                scaleSpace, 0, 2, keypoints);
+        GradientMap gradients = scaleSpace.getOctaves().get(0)
+                .getGradients(2);
+        assertTrue(keypoints.size() > 1);
+        for (int k = 0; k < keypoints.size(); k++) {
+            int top = keypoints.getRow(k) - 2 * cellSize;
+            int left = keypoints.getColumn(k) - 2 * cellSize;
+            float[] descriptor = new float[DescriptorExtractor.LENGTH];
+            for (int cell = 0; cell < 16; cell++) {
+                double dr = cell / 4 - 1.5;
+                double dc = cell % 4 - 1.5;
+                float weight = (float) Math.exp(-(dr * dr + dc * dc) / 8);
+                for (int row = 0; row < cellSize; row++) {
+                    for (int col = 0; col < cellSize; col++) {
+                        int r = top + cell / 4 * cellSize + row;
+                        int c = left + cell % 4 * cellSize + col;
+                        double bin = gradients.getOrientation(r, c) * 8
+                                / (2 * Math.PI);
+                        if (bin < 0) {
+                            bin += 8;
+                        }
+                        int b0 = (int) bin % 8;
+                        double fraction = bin - (int) bin;
+                        float m = gradients.getMagnitude(r, c);
+                        descriptor[cell * 8 + b0] += weight * m
+                                * (1 - fraction);
+                        descriptor[cell * 8 + (b0 + 1) % 8] += weight * m
+                                * fraction;
+                    }
+                }
+            }
+            byte[] expected = new byte[DescriptorExtractor.LENGTH];
+            DescriptorExtractor.quantize(descriptor, expected, 0);
+            for (int i = 0; i < DescriptorExtractor.LENGTH; i++) {
+                assertEquals(expected[i] & 0xFF,
+                        actual[k * DescriptorExtractor.LENGTH + i] & 0xFF, 1);
+            }
+        }
+    }
+
+    /**
+     * Creates random pixels.
+     * @param height Number of rows.
+     * @param width Number of columns.
+     * @return Pixels of a test image.
+     */
+    private static float[][] random(final int height, final int width) {
+        Random random = new Random(42);
+        float[][] pixels = new float[height][width];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                pixels[row][col] = random.nextFloat();
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Creates a scale-space with one octave in which all scale-images are
+     * equal.
+     * @param pixels Pixels of the scale-images.
+     * @return Scale-space.
+     */
+    private static ScaleSpace scaleSpace(final float[][] pixels) {
+        List<Image> scaleImages = new ArrayList<Image>();
+        List<Image> doGs = new ArrayList<Image>();
+        for (int i = 0; i < 4; i++) {
+            scaleImages.add(new Image(pixels, Math.pow(2, i / 3.0), 1.0, 0,
+                    0));
+        }
+        for (int i = 0; i < 3; i++) {
+            doGs.add(new Image(pixels.length, pixels[0].length));
+        }
+        return new ScaleSpace(Arrays.asList(new Octave(scaleImages, doGs)));
+    }
+}
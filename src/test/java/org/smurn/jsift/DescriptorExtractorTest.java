@@ -0,0 +1,272 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DescriptorExtractor}.
+ */
+public class DescriptorExtractorTest {
+
+    /** Size of the test images. */
+    private static final int SIZE = 31;
+
+    @Test(expected = NullPointerException.class)
+    public void nullOctave() {
+        new DescriptorExtractor().extract(null, keypoint(0f), 0,
+                new byte[DescriptorExtractor.LENGTH], 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullKeypoints() {
+        new DescriptorExtractor().extract(octave(random()), null, 0,
+                new byte[DescriptorExtractor.LENGTH], 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullDescriptors() {
+        new DescriptorExtractor().extract(octave(random()), keypoint(0f), 0,
+                null, 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void noSuchKeypoint() {
+        new DescriptorExtractor().extract(octave(random()), keypoint(0f), 1,
+                new byte[DescriptorExtractor.LENGTH], 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void doesNotFit() {
+        new DescriptorExtractor().extract(octave(random()), keypoint(0f), 0,
+                new byte[DescriptorExtractor.LENGTH + 1], 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void negativeOffset() {
+        new DescriptorExtractor().extract(octave(random()), keypoint(0f), 0,
+                new byte[DescriptorExtractor.LENGTH + 1], -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noOrientation() {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        keypoints.keypoint(SIZE / 2, SIZE / 2, 1.0, 0, 1, SIZE / 2, SIZE / 2,
+                0.5f);
+        new DescriptorExtractor().extract(octave(random()), keypoints, 0,
+                new byte[DescriptorExtractor.LENGTH], 0);
+    }
+
+    @Test
+    public void writesAtOffset() {
+        byte[] descriptors = new byte[DescriptorExtractor.LENGTH + 10];
+        Arrays.fill(descriptors, (byte) 7);
+        new DescriptorExtractor().extract(octave(random()), keypoint(0f), 0,
+                descriptors, 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(7, descriptors[i]);
+            assertEquals(7, descriptors[descriptors.length - 1 - i]);
+        }
+        int sum = 0;
+        for (int i = 5; i < 5 + DescriptorExtractor.LENGTH; i++) {
+            sum += descriptors[i] & 0xFF;
+        }
+        assertTrue(sum > 0);
+    }
+
+    @Test
+    public void flat() {
+        byte[] descriptor = extract(octave(new float[SIZE][SIZE]),
+                keypoint(0f));
+        assertArrayEquals(new byte[DescriptorExtractor.LENGTH], descriptor);
+    }
+
+    @Test
+    public void ramp() {
+        float[][] pixels = new float[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                pixels[row][col] = row;
+            }
+        }
+        // the gradient points along the keypoint's orientation, so only
+        // the first bin of each cell is filled.
+        byte[] descriptor = extract(octave(pixels),
+                keypoint((float) (Math.PI / 2)));
+        for (int i = 0; i < DescriptorExtractor.LENGTH; i++) {
+            if (i % 8 != 0) {
+                assertEquals(0, descriptor[i]);
+            }
+        }
+        // the inner cells are weighted most and symmetric.
+        int inner = descriptor[5 * 8] & 0xFF;
+        assertEquals(inner, descriptor[6 * 8] & 0xFF, 1);
+        assertEquals(inner, descriptor[9 * 8] & 0xFF, 1);
+        assertEquals(inner, descriptor[10 * 8] & 0xFF, 1);
+        assertTrue(inner > (descriptor[0] & 0xFF));
+    }
+
+    @Test
+    public void normalized() {
+        byte[] descriptor = extract(octave(random()), keypoint(1f));
+        double sum = 0;
+        for (int i = 0; i < DescriptorExtractor.LENGTH; i++) {
+            int value = descriptor[i] & 0xFF;
+            sum += (value / 512.0) * (value / 512.0);
+        }
+        assertEquals(1.0, sum, 0.05);
+    }
+
+    @Test
+    public void rotationInvariant() {
+        float[][] pixels = random();
+        float[][] rotated = new float[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                rotated[row][col] = pixels[SIZE - 1 - col][row];
+            }
+        }
+        byte[] expected = extract(octave(pixels), keypoint(0.3f));
+        byte[] actual = extract(octave(rotated),
+                keypoint((float) (0.3 + Math.PI / 2)));
+        for (int i = 0; i < DescriptorExtractor.LENGTH; i++) {
+            assertEquals(expected[i] & 0xFF, actual[i] & 0xFF, 2);
+        }
+    }
+
+    @Test
+    public void translated() {
+        float[][] pixels = random();
+        float[][] shifted = new float[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 1; col < SIZE; col++) {
+                shifted[row][col] = pixels[row][col - 1];
+            }
+        }
+        byte[] expected = extract(octave(pixels),
+                keypoint(SIZE / 2, SIZE / 2, 0.3f));
+        byte[] actual = extract(octave(shifted),
+                keypoint(SIZE / 2, SIZE / 2 + 1, 0.3f));
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void reusable() {
+        DescriptorExtractor target = new DescriptorExtractor();
+        Octave octave = octave(random());
+        byte[] first = new byte[DescriptorExtractor.LENGTH];
+        byte[] second = new byte[DescriptorExtractor.LENGTH];
+        target.extract(octave, keypoint(0.3f), 0, first, 0);
+        target.extract(octave(new float[SIZE][SIZE]), keypoint(0.3f), 0,
+                second, 0);
+        target.extract(octave, keypoint(0.3f), 0, second, 0);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void quantizeZero() {
+        byte[] result = new byte[DescriptorExtractor.LENGTH];
+        DescriptorExtractor.quantize(new float[DescriptorExtractor.LENGTH],
+                result, 0);
+        assertArrayEquals(new byte[DescriptorExtractor.LENGTH], result);
+    }
+
+    @Test
+    public void quantizeSingle() {
+        float[] descriptor = new float[DescriptorExtractor.LENGTH];
+        descriptor[3] = 5f;
+        byte[] result = new byte[DescriptorExtractor.LENGTH];
+        DescriptorExtractor.quantize(descriptor, result, 0);
+        assertEquals(255, result[3] & 0xFF);
+        assertEquals(0, result[4]);
+    }
+
+    /**
+     * Computes a descriptor with a new extractor.
+     * @param octave Octave of the keypoint.
+     * @param keypoints Buffer with the keypoint at index zero.
+     * @return Descriptor.
+     */
+    private static byte[] extract(final Octave octave,
+            final KeypointBuffer keypoints) {
+        byte[] descriptor = new byte[DescriptorExtractor.LENGTH];
+        new DescriptorExtractor().extract(octave, keypoints, 0, descriptor, 0);
+        return descriptor;
+    }
+
+    /**
+     * Creates a keypoint in the center of the test images.
+     * @param orientation Orientation of the keypoint.
+     * @return Buffer with the keypoint.
+     */
+    private static KeypointBuffer keypoint(final float orientation) {
+        return keypoint(SIZE / 2, SIZE / 2, orientation);
+    }
+
+    /**
+     * Creates a keypoint with sigma one.
+     * @param row Row of the keypoint.
+     * @param col Column of the keypoint.
+     * @param orientation Orientation of the keypoint.
+     * @return Buffer with the keypoint.
+     */
+    private static KeypointBuffer keypoint(final int row, final int col,
+            final float orientation) {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        keypoints.keypoint(col, row, 1.0, 0, 1, row, col, 0.5f);
+        KeypointBuffer result = new KeypointBuffer();
+        result.add(keypoints, 0, orientation);
+        return result;
+    }
+
+    /**
+     * Creates random pixels.
+     * @return Pixels of a test image.
+     */
+    private static float[][] random() {
+        Random random = new Random(42);
+        float[][] pixels = new float[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                pixels[row][col] = random.nextFloat();
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Creates an octave in which all scale-images are equal.
+     * @param pixels Pixels of the scale-images.
+     * @return Octave.
+     */
+    private static Octave octave(final float[][] pixels) {
+        List<Image> scaleImages = new ArrayList<Image>();
+        List<Image> doGs = new ArrayList<Image>();
+        for (int i = 0; i < 4; i++) {
+            scaleImages.add(new Image(pixels, Math.pow(2, i / 3.0), 1.0, 0,
+                    0));
+        }
+        for (int i = 0; i < 3; i++) {
+            doGs.add(new Image(SIZE, SIZE));
+        }
+        return new Octave(scaleImages, doGs);
+    }
+}
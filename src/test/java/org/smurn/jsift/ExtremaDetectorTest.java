@@ -20,8 +20,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Random;
 import org.junit.Before;
+import org.mockito.InOrder;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 /**
  * Unit tests for {@link ExtremaDetector}.
@@ -225,4 +228,284 @@ public class ExtremaDetectorTest {
         Collection<ScaleSpacePoint> actual = target.detectKeypoints(scaleSpace);
         assertEquals(expected, actual);
     }
+
+    /**
+     * A pixel equal to its left neighbor must not stop the search in the
+     * rest of the row.
+     */
+    @Test
+    public void equalLeftNeighbor() {
+        Octave octave = new Octave(Arrays.asList(
+                new Image(3, 5),
+                new Image(3, 5),
+                new Image(3, 5),
+                new Image(3, 5)),
+                Arrays.asList(
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f, 0.0f, 0.0f}}, 0.5, 1, 0, 0),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f, 9.9f, 0.0f}, {0.0f, 0.0f, 0.0f, 0.0f, 0.0f}}, 0.6, 1, 0, 0),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f, 0.0f, 0.0f}}, 0.7, 1, 0, 0)));
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(octave));
+
+        List<ScaleSpacePoint> expected = Arrays.asList(new ScaleSpacePoint(3, 1, 0.6));
+        Collection<ScaleSpacePoint> actual = target.detectKeypoints(scaleSpace);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void transformation() {
+        Octave octave = new Octave(Arrays.asList(
+                new Image(3, 4),
+                new Image(3, 4),
+                new Image(3, 4),
+                new Image(3, 4)),
+                Arrays.asList(
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f, 0.0f}}, 0.5, 2, 1, 0.5),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 9.9f, 0.0f}, {0.0f, 0.0f, 0.0f, 0.0f}}, 0.6, 2, 1, 0.5),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f, 0.0f}}, 0.7, 2, 1, 0.5)));
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(octave));
+
+        List<ScaleSpacePoint> expected = Arrays.asList(new ScaleSpacePoint(0.5, 0.25, 0.6));
+        Collection<ScaleSpacePoint> actual = target.detectKeypoints(scaleSpace);
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Compares against a straight-forward implementation on random data.
+     */
+    @Test
+    public void random() {
+        Random random = new Random(7);
+        List<Image> doGs = new ArrayList<Image>();
+        List<Image> scales = new ArrayList<Image>();
+        for (int i = 0; i < 5; i++) {
+            Image image = new Image(30, 40, 0.5 + i, 1, 0, 0);
+            for (int row = 0; row < 30; row++) {
+                for (int col = 0; col < 40; col++) {
+                    image.setPixel(row, col, random.nextInt(20));
+                }
+            }
+            doGs.add(image);
+            scales.add(new Image(30, 40));
+        }
+        scales.add(new Image(30, 40));
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(new Octave(scales, doGs)));
+
+        List<ScaleSpacePoint> expected = new ArrayList<ScaleSpacePoint>();
+        for (int i = 1; i < 4; i++) {
+            for (int row = 1; row < 29; row++) {
+                for (int col = 1; col < 39; col++) {
+                    float value = doGs.get(i).getPixel(row, col);
+                    boolean max = true;
+                    boolean min = true;
+                    for (int s = i - 1; s <= i + 1; s++) {
+                        for (int r = row - 1; r <= row + 1; r++) {
+                            for (int c = col - 1; c <= col + 1; c++) {
+                                if (s == i && r == row && c == col) {
+                                    continue;
+                                }
+                                float other = doGs.get(s).getPixel(r, c);
+                                max &= value > other;
+                                min &= value < other;
+                            }
+                        }
+                    }
+                    if (max || min) {
+                        expected.add(new ScaleSpacePoint(col, row, doGs.get(i).getSigma()));
+                    }
+                }
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, target.detectKeypoints(scaleSpace));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeContrastThreshold() {
+        new ExtremaDetector(-0.1);
+    }
+
+    @Test
+    public void belowContrastThreshold() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(singlePeak(9.9f)));
+        // one scale per octave, so the pre-threshold is 0.5 * 20 = 10
+        ExtremaDetector detector = new ExtremaDetector(20);
+        assertTrue(detector.detectKeypoints(scaleSpace).isEmpty());
+    }
+
+    @Test
+    public void aboveContrastThreshold() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(singlePeak(-9.9f)));
+        ExtremaDetector detector = new ExtremaDetector(19);
+        List<ScaleSpacePoint> expected = Arrays.asList(new ScaleSpacePoint(1, 1, 0.6));
+        assertEquals(expected, detector.detectKeypoints(scaleSpace));
+    }
+
+    @Test
+    public void refined() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(paraboloid()));
+        ExtremaDetector detector = new ExtremaDetector(0, new KeypointRefiner());
+        List<ScaleSpacePoint> actual = new ArrayList<ScaleSpacePoint>(
+                detector.detectKeypoints(scaleSpace));
+        assertEquals(1, actual.size());
+        assertEquals(6.2, actual.get(0).getX(), 1E-4);
+        assertEquals(5.3, actual.get(0).getY(), 1E-4);
+        assertEquals(3.0 * Math.pow(2.0, 0.1 / 3), actual.get(0).getSigma(), 1E-4);
+        assertEquals(0, actual.get(0).getOctave());
+        assertEquals(2, actual.get(0).getScale());
+        assertEquals(5, actual.get(0).getRow());
+        assertEquals(6, actual.get(0).getColumn());
+        assertEquals(10.0f, actual.get(0).getResponse(), 1E-4f);
+    }
+
+    @Test
+    public void refinedMovesToNeighbor() {
+        Octave octave = paraboloid();
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(octave, octave));
+        // the first iteration moves from (3,6,7) to (2,5,6), so the keypoint
+        // is reported at the pixel the fit converged at.
+        KeypointRefiner refiner = new KeypointRefiner();
+        ExtremaDetector detector = new ExtremaDetector(0, refiner);
+        KeypointBuffer buffer = new KeypointBuffer();
+        IntList hits = new IntList();
+        hits.add(6);
+        hits.add(7);
+        detector.emit(1, octave, 3, hits,
+                new double[KeypointRefiner.RESULT_LENGTH], buffer);
+        assertEquals(1, buffer.size());
+        assertEquals(1, buffer.getOctave(0));
+        assertEquals(2, buffer.getScale(0));
+        assertEquals(5, buffer.getRow(0));
+        assertEquals(6, buffer.getColumn(0));
+        assertEquals(6.2, buffer.getX(0), 1E-4);
+    }
+
+    @Test
+    public void metadata() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(singlePeak(1.0f), singlePeak(-2.0f)));
+        List<ScaleSpacePoint> actual = new ArrayList<ScaleSpacePoint>(target.detectKeypoints(scaleSpace));
+        assertEquals(2, actual.size());
+        assertEquals(1, actual.get(1).getOctave());
+        assertEquals(1, actual.get(1).getScale());
+        assertEquals(1, actual.get(1).getRow());
+        assertEquals(1, actual.get(1).getColumn());
+        assertEquals(-2.0f, actual.get(1).getResponse(), 0.0f);
+    }
+
+    @Test
+    public void refinedBelowContrastThreshold() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(paraboloid()));
+        // the interpolated value is 10, three scales per octave.
+        ExtremaDetector detector = new ExtremaDetector(30.1, new KeypointRefiner());
+        assertTrue(detector.detectKeypoints(scaleSpace).isEmpty());
+    }
+
+    @Test
+    public void refinedAboveContrastThreshold() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(paraboloid()));
+        ExtremaDetector detector = new ExtremaDetector(29.9, new KeypointRefiner());
+        assertEquals(1, detector.detectKeypoints(scaleSpace).size());
+    }
+
+    private static Octave paraboloid() {
+        List<Image> scales = new ArrayList<Image>();
+        for (int i = 0; i < 6; i++) {
+            scales.add(new Image(12, 12));
+        }
+        return new Octave(scales, KeypointRefinerTest.paraboloid(5.3, 6.2, 2.1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void edgeRatioBelowOne() {
+        new ExtremaDetector(0, 0.5, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeEdgeRatio() {
+        new ExtremaDetector(0, -1, null);
+    }
+
+    @Test
+    public void edgeRejected() {
+        // curvatures -0.1 along and -2 across the ridge, the ratio is 20.
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(ridge()));
+        ExtremaDetector detector = new ExtremaDetector(0, 10, null);
+        assertTrue(detector.detectKeypoints(scaleSpace).isEmpty());
+    }
+
+    @Test
+    public void edgeKept() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(ridge()));
+        ExtremaDetector detector = new ExtremaDetector(0, 30, null);
+        List<ScaleSpacePoint> expected = Arrays.asList(new ScaleSpacePoint(1, 1, 0.6));
+        assertEquals(expected, detector.detectKeypoints(scaleSpace));
+    }
+
+    @Test
+    public void edgeSaddleRejected() {
+        Octave octave = new Octave(Arrays.asList(
+                new Image(3, 3),
+                new Image(3, 3),
+                new Image(3, 3),
+                new Image(3, 3)),
+                Arrays.asList(
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}}, 0.5, 1, 0, 0),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.9f, 1.0f, 0.9f}, {0.0f, 0.0f, 0.0f}}, 0.6, 1, 0, 0),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}}, 0.7, 1, 0, 0)));
+        // a strong twist makes the determinant of the hessian negative.
+        octave.getDifferenceOfGaussians().get(1).setPixel(0, 0, -0.9f);
+        octave.getDifferenceOfGaussians().get(1).setPixel(2, 2, -0.9f);
+        octave.getDifferenceOfGaussians().get(1).setPixel(0, 2, 0.9f);
+        octave.getDifferenceOfGaussians().get(1).setPixel(2, 0, 0.9f);
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(octave));
+        assertEquals(1, new ExtremaDetector().detectKeypoints(scaleSpace).size());
+        ExtremaDetector detector = new ExtremaDetector(0, 1000, null);
+        assertTrue(detector.detectKeypoints(scaleSpace).isEmpty());
+    }
+
+    private static Octave ridge() {
+        return new Octave(Arrays.asList(
+                new Image(3, 3),
+                new Image(3, 3),
+                new Image(3, 3),
+                new Image(3, 3)),
+                Arrays.asList(
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}}, 0.5, 1, 0, 0),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.95f, 1.0f, 0.95f}, {0.0f, 0.0f, 0.0f}}, 0.6, 1, 0, 0),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}}, 0.7, 1, 0, 0)));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullSink() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(singlePeak(1.0f)));
+        target.detectKeypoints(scaleSpace, null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullScaleSpaceWithSink() {
+        target.detectKeypoints(null, mock(KeypointSink.class));
+    }
+
+    @Test
+    public void sink() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(
+                singlePeak(1.0f), singlePeak(-9.9f)));
+        KeypointSink sink = mock(KeypointSink.class);
+        target.detectKeypoints(scaleSpace, sink);
+        InOrder inOrder = inOrder(sink);
+        inOrder.verify(sink).keypoint(1, 1, 0.6, 0, 1, 1, 1, 1.0f);
+        inOrder.verify(sink).keypoint(1, 1, 0.6, 1, 1, 1, 1, -9.9f);
+        verifyNoMoreInteractions(sink);
+    }
+
+    private static Octave singlePeak(final float value) {
+        return new Octave(Arrays.asList(
+                new Image(3, 3),
+                new Image(3, 3),
+                new Image(3, 3),
+                new Image(3, 3)),
+                Arrays.asList(
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}}, 0.5, 1, 0, 0),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.0f, value, 0.0f}, {0.0f, 0.0f, 0.0f}}, 0.6, 1, 0, 0),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}}, 0.7, 1, 0, 0)));
+    }
 }
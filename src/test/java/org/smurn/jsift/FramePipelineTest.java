@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.smurn.jsift.TestUtils.*;
+
+/**
+ * Unit tests for {@link FramePipeline}.
+ */
+public class FramePipelineTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroHeight() {
+        new FramePipeline(0, 10, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroScalesPerOctave() {
+        new FramePipeline(10, 10, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullFrame() {
+        new FramePipeline(10, 10, 3).process(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongSize() {
+        new FramePipeline(10, 10, 3).process(new Image(10, 11));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transformedFrame() {
+        new FramePipeline(10, 10, 3).process(
+                new Image(10, 10, 0.5, 2.0, 0.0, 0.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void frameTooBlurry() {
+        new FramePipeline(10, 10, 3).process(
+                new Image(10, 10, 0.9, 1.0, 0.0, 0.0));
+    }
+
+    @Test
+    public void frameAsBlurryAsInitialSigma() {
+        FramePipeline target = new FramePipeline(17, 23, 3);
+        Image frame = frame(17, 23, 0.3, 0.8);
+        ScaleSpace expected = new ScaleSpaceFactoryImpl().create(frame);
+        assertScaleSpace(expected, target.process(frame));
+    }
+
+    @Test
+    public void frameAsBlurryAsInitialSigmaWithoutUpScaling() {
+        FramePipeline target = new FramePipeline(17, 23, 2, 1.6, false);
+        Image frame = frame(17, 23, 0.3, 1.6);
+        ScaleSpace expected = new ScaleSpaceFactoryImpl().create(frame, 2,
+                1.6, new IdentityUpScaler(), new StridedSubsampler(),
+                new GaussianFilter(), new OctaveFactoryImpl());
+        assertScaleSpace(expected, target.process(frame));
+    }
+
+    @Test
+    public void sameAsFactory() {
+        FramePipeline target = new FramePipeline(17, 23, 3);
+        Image frame = frame(17, 23, 0.3);
+        ScaleSpace expected = new ScaleSpaceFactoryImpl().create(frame);
+        assertScaleSpace(expected, target.process(frame));
+    }
+
+    @Test
+    public void sameAsFactoryWithoutUpScaling() {
+        FramePipeline target = new FramePipeline(17, 23, 2, 1.6, false);
+        Image frame = frame(17, 23, 0.3);
+        ScaleSpace expected = new ScaleSpaceFactoryImpl().create(frame, 2,
+                1.6, new IdentityUpScaler(), new StridedSubsampler(),
+                new GaussianFilter(), new OctaveFactoryImpl());
+        assertScaleSpace(expected, target.process(frame));
+    }
+
+    @Test
+    public void reused() {
+        FramePipeline target = new FramePipeline(17, 23, 3);
+        ScaleSpace first = target.process(frame(17, 23, 0.3));
+        Image frame = frame(17, 23, 1.7);
+        ScaleSpace second = target.process(frame);
+        assertSame(first, second);
+        assertSame(second, target.getScaleSpace());
+        assertScaleSpace(new ScaleSpaceFactoryImpl().create(frame), second);
+    }
+
+    @Test
+    public void gradientsFollowFrames() {
+        FramePipeline target = new FramePipeline(17, 23, 3);
+        Octave octave = target.process(frame(17, 23, 0.3)).getOctaves().get(1);
+        GradientMap first = octave.getGradients(2);
+        Image frame = frame(17, 23, 1.7);
+        target.process(frame);
+        GradientMap second = octave.getGradients(2);
+        assertSame(first, second);
+        Octave expected = new ScaleSpaceFactoryImpl().create(frame).getOctaves().get(1);
+        GradientMap expectedGradients = expected.getGradients(2);
+        for (int row = 0; row < octave.getHeight(); row++) {
+            for (int col = 0; col < octave.getWidth(); col++) {
+                assertEquals(expectedGradients.getMagnitude(row, col),
+                        second.getMagnitude(row, col), 1E-5f);
+            }
+        }
+    }
+
+    private static void assertScaleSpace(final ScaleSpace expected,
+            final ScaleSpace actual) {
+        assertEquals(expected.getOctaves().size(), actual.getOctaves().size());
+        for (int o = 0; o < expected.getOctaves().size(); o++) {
+            Octave e = expected.getOctaves().get(o);
+            Octave a = actual.getOctaves().get(o);
+            for (int i = 0; i < e.getScaleImages().size(); i++) {
+                Image ei = e.getScaleImages().get(i);
+                Image ai = a.getScaleImages().get(i);
+                assertThat(ai, equalTo(ei, 1E-6f));
+                assertEquals(ei.getSigma(), ai.getSigma(), 1E-9);
+                assertEquals(ei.getScale(), ai.getScale(), 1E-9);
+            }
+            for (int i = 0; i < e.getDifferenceOfGaussians().size(); i++) {
+                Image ei = e.getDifferenceOfGaussians().get(i);
+                Image ai = a.getDifferenceOfGaussians().get(i);
+                assertThat(ai, equalTo(ei, 1E-6f));
+                assertEquals(ei.getSigma(), ai.getSigma(), 1E-9);
+            }
+        }
+    }
+
+    private static Image frame(final int height, final int width,
+            final double phase) {
+        return frame(height, width, phase, new Image(1, 1).getSigma());
+    }
+
+    private static Image frame(final int height, final int width,
+            final double phase, final double sigma) {
+        Image image = new Image(height, width, sigma, 1.0, 0.0, 0.0);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                image.setPixel(row, col,
+                        (float) Math.sin(phase + row * 0.7 + col * col * 0.1));
+            }
+        }
+        return image;
+    }
+}
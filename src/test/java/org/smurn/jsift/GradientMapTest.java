@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link GradientMap}.
+ */
+public class GradientMapTest {
+
+    @Test(expected = NullPointerException.class)
+    public void nullImage() {
+        new GradientMap(null);
+    }
+
+    @Test
+    public void horizontalRamp() {
+        Image image = new Image(new float[][]{
+                    {0, 1, 2, 3},
+                    {0, 1, 2, 3},
+                    {0, 1, 2, 3}});
+        GradientMap target = new GradientMap(image);
+        assertEquals(4, target.getWidth());
+        assertEquals(3, target.getHeight());
+        assertEquals(2.0f, target.getMagnitude(1, 1), 1E-6f);
+        assertEquals(0.0f, target.getOrientation(1, 1), 1E-5f);
+        // one-sided at the border
+        assertEquals(1.0f, target.getMagnitude(0, 0), 1E-6f);
+        assertEquals(1.0f, target.getMagnitude(2, 3), 1E-6f);
+    }
+
+    @Test
+    public void verticalRamp() {
+        Image image = new Image(new float[][]{
+                    {0, 0, 0},
+                    {1, 1, 1},
+                    {2, 2, 2}});
+        GradientMap target = new GradientMap(image);
+        assertEquals(2.0f, target.getMagnitude(1, 1), 1E-6f);
+        assertEquals((float) (Math.PI / 2), target.getOrientation(1, 1), 1E-5f);
+    }
+
+    @Test
+    public void diagonal() {
+        Image image = new Image(new float[][]{
+                    {0, -1, -2},
+                    {1, 0, -1},
+                    {2, 1, 0}});
+        GradientMap target = new GradientMap(image);
+        assertEquals((float) Math.sqrt(8), target.getMagnitude(1, 1), 1E-6f);
+        assertEquals((float) (3 * Math.PI / 4), target.getOrientation(1, 1), 1E-5f);
+    }
+
+    @Test
+    public void stridedView() {
+        Image image = new Image(new float[][]{
+                    {0, 9, 1, 9, 2, 9},
+                    {9, 9, 9, 9, 9, 9},
+                    {0, 9, 1, 9, 2, 9}});
+        Image view = new StridedSubsampler().downScale(image);
+        GradientMap target = new GradientMap(view);
+        assertEquals(3, target.getWidth());
+        assertEquals(2, target.getHeight());
+        assertEquals(2.0f, target.getMagnitude(0, 1), 1E-6f);
+    }
+
+    @Test
+    public void singlePixel() {
+        GradientMap target = new GradientMap(new Image(1, 1));
+        assertEquals(0.0f, target.getMagnitude(0, 0), 0.0f);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outside() {
+        new GradientMap(new Image(3, 3)).getMagnitude(0, 3);
+    }
+
+    @Test
+    public void update() {
+        Image image = new Image(new float[][]{{0, 1, 2}});
+        GradientMap target = new GradientMap(image);
+        image.setPixel(0, 2, 4);
+        target.update(image);
+        assertEquals(4.0f, target.getMagnitude(0, 1), 1E-6f);
+    }
+}
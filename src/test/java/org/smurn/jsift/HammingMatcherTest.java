@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link HammingMatcher}.
+ */
+public class HammingMatcherTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMaxDistance() {
+        new HammingMatcher(-1);
+    }
+
+    @Test
+    public void distance() {
+        long[] a = {0L, -1L};
+        long[] b = {5L, 0L, 0xF0L, -1L};
+        assertEquals(66, HammingMatcher.distance(a, 0, b, 0));
+        assertEquals(4, HammingMatcher.distance(a, 0, b, 2));
+        assertEquals(0, HammingMatcher.distance(b, 2, b, 2));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullQueries() {
+        new HammingMatcher().match(null, 0, new long[0], 0, new int[0],
+                null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullReferences() {
+        new HammingMatcher().match(new long[0], 0, null, 0, new int[0],
+                null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullMatches() {
+        new HammingMatcher().match(new long[0], 0, new long[0], 0, null,
+                null);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void queriesExceedArray() {
+        new HammingMatcher().match(new long[3], 2, new long[0], 0,
+                new int[2], null);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void matchesTooShort() {
+        new HammingMatcher().match(new long[4], 2, new long[0], 0,
+                new int[1], null);
+    }
+
+    @Test
+    public void noReferences() {
+        int[] matches = new int[1];
+        new HammingMatcher().match(new long[2], 1, new long[0], 0, matches,
+                null);
+        assertEquals(-1, matches[0]);
+    }
+
+    @Test
+    public void nearest() {
+        long[] queries = {0L, 0L, -1L, -1L};
+        long[] references = {7L, 0L, 1L, 1L, -1L, -2L};
+        int[] matches = new int[2];
+        int[] distances = new int[2];
+        new HammingMatcher().match(queries, 2, references, 3, matches,
+                distances);
+        assertArrayEquals(new int[]{1, 2}, matches);
+        assertArrayEquals(new int[]{2, 1}, distances);
+    }
+
+    @Test
+    public void firstOfTies() {
+        long[] queries = {0L, 0L};
+        long[] references = {3L, 0L, 0L, 3L};
+        int[] matches = new int[1];
+        new HammingMatcher().match(queries, 1, references, 2, matches, null);
+        assertEquals(0, matches[0]);
+    }
+
+    @Test
+    public void maxDistance() {
+        long[] queries = {0L, 0L, 0L, 1L};
+        long[] references = {3L, 0L};
+        int[] matches = new int[2];
+        new HammingMatcher(2).match(queries, 2, references, 1, matches,
+                null);
+        assertArrayEquals(new int[]{0, -1}, matches);
+    }
+
+    @Test
+    public void sameAsDistance() {
+        Random random = new Random(42);
+        long[] queries = new long[2 * 20];
+        long[] references = new long[2 * 50];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = random.nextLong();
+        }
+        for (int i = 0; i < references.length; i++) {
+            references[i] = random.nextLong();
+        }
+        int[] matches = new int[20];
+        int[] distances = new int[20];
+        new HammingMatcher().match(queries, 20, references, 50, matches,
+                distances);
+        for (int q = 0; q < 20; q++) {
+            int best = Integer.MAX_VALUE;
+            for (int r = 0; r < 50; r++) {
+                best = Math.min(best, HammingMatcher.distance(queries, 2 * q,
+                        references, 2 * r));
+            }
+            assertEquals(best, distances[q]);
+            assertEquals(best, HammingMatcher.distance(queries, 2 * q,
+                    references, 2 * matches[q]));
+        }
+    }
+}
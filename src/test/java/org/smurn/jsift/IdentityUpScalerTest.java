@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link IdentityUpScaler}.
+ */
+public class IdentityUpScalerTest {
+
+    @Test(expected = NullPointerException.class)
+    public void nullImage() {
+        IdentityUpScaler target = new IdentityUpScaler();
+        target.upScale(null);
+    }
+
+    @Test
+    public void unchanged() {
+        Image image = new Image(10, 12, 3.4, 2, 3, 4);
+        IdentityUpScaler target = new IdentityUpScaler();
+        assertSame(image, target.upScale(image));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link InvertedIndex}.
+ */
+public class InvertedIndexTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noWords() {
+        new InvertedIndex(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullWords() {
+        new InvertedIndex(5).addImage(null, 0, 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void wordsExceedArray() {
+        new InvertedIndex(5).addImage(new int[2], 1, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wordTooLarge() {
+        new InvertedIndex(5).addImage(new int[]{1, 5}, 0, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeWord() {
+        new InvertedIndex(5).addImage(new int[]{-1}, 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroResults() {
+        new InvertedIndex(5).query(new int[1], 0, 1, 0, new int[1], null);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void resultsTooShort() {
+        new InvertedIndex(5).query(new int[1], 0, 1, 2, new int[2],
+                new float[1]);
+    }
+
+    @Test
+    public void addImage() {
+        InvertedIndex index = new InvertedIndex(5);
+        assertEquals(5, index.getWordCount());
+        assertEquals(0, index.addImage(new int[]{1, 2}, 0, 2));
+        assertEquals(1, index.addImage(new int[0], 0, 0));
+        assertEquals(2, index.getImageCount());
+    }
+
+    @Test
+    public void empty() {
+        InvertedIndex index = new InvertedIndex(5);
+        assertEquals(0, index.query(new int[]{1, 2}, 0, 2, 3, new int[3],
+                null));
+    }
+
+    @Test
+    public void identicalImageScoresOne() {
+        InvertedIndex index = new InvertedIndex(10);
+        index.addImage(new int[]{1, 2, 2, 3}, 0, 4);
+        index.addImage(new int[]{4, 5, 6}, 0, 3);
+        index.addImage(new int[]{7, 8}, 0, 2);
+        int[] images = new int[3];
+        float[] scores = new float[3];
+        assertEquals(1, index.query(new int[]{3, 2, 1, 2}, 0, 4, 3, images,
+                scores));
+        assertEquals(0, images[0]);
+        assertEquals(1f, scores[0], 1E-6f);
+    }
+
+    @Test
+    public void cosineOfTfIdf() {
+        InvertedIndex index = new InvertedIndex(4);
+        index.addImage(new int[]{0, 1}, 0, 2);
+        index.addImage(new int[]{0, 0, 2}, 0, 3);
+        index.addImage(new int[]{3}, 0, 1);
+        int[] images = new int[3];
+        float[] scores = new float[3];
+        assertEquals(2, index.query(new int[]{0, 1, 2}, 0, 3, 3, images,
+                scores));
+
+        double idf0 = Math.log(3.0 / 2.0);
+        double idf1 = Math.log(3.0);
+        double idf2 = Math.log(3.0);
+        double[] query = {idf0 / 3, idf1 / 3, idf2 / 3, 0};
+        double[] image0 = {idf0 / 2, idf1 / 2, 0, 0};
+        double[] image1 = {2 * idf0 / 3, 0, idf2 / 3, 0};
+        assertArrayEquals(new int[]{0, 1, 0}, images);
+        assertEquals(cosine(query, image0), scores[0], 1E-6);
+        assertEquals(cosine(query, image1), scores[1], 1E-6);
+    }
+
+    @Test
+    public void limitsResults() {
+        InvertedIndex index = new InvertedIndex(3);
+        index.addImage(new int[]{0, 1}, 0, 2);
+        index.addImage(new int[]{0}, 0, 1);
+        index.addImage(new int[]{2}, 0, 1);
+        index.addImage(new int[]{0, 1, 1}, 0, 3);
+        int[] images = new int[2];
+        assertEquals(2, index.query(new int[]{0, 1}, 0, 2, 2, images, null));
+        assertArrayEquals(new int[]{0, 3}, images);
+    }
+
+    @Test
+    public void tiesByImage() {
+        InvertedIndex index = new InvertedIndex(3);
+        index.addImage(new int[]{2}, 0, 1);
+        index.addImage(new int[]{1}, 0, 1);
+        index.addImage(new int[]{0}, 0, 1);
+        index.addImage(new int[]{1}, 0, 1);
+        index.addImage(new int[]{0}, 0, 1);
+        int[] images = new int[3];
+        assertEquals(3, index.query(new int[]{0, 1}, 0, 2, 3, images, null));
+        assertArrayEquals(new int[]{1, 2, 3}, images);
+    }
+
+    @Test
+    public void normsFollowAdditions() {
+        InvertedIndex index = new InvertedIndex(3);
+        index.addImage(new int[]{0, 1}, 0, 2);
+        index.addImage(new int[]{2}, 0, 1);
+        float[] scores = new float[1];
+        index.query(new int[]{0, 1}, 0, 2, 1, new int[1], scores);
+        assertEquals(1f, scores[0], 1E-6f);
+        // word 1 becomes common, so image 0 is now dominated by word 0.
+        index.addImage(new int[]{1}, 0, 1);
+        index.query(new int[]{0}, 0, 1, 1, new int[1], scores);
+        double idf0 = Math.log(3.0);
+        double idf1 = Math.log(3.0 / 2.0);
+        assertEquals(idf0 / Math.sqrt(idf0 * idf0 + idf1 * idf1), scores[0],
+                1E-6);
+    }
+
+    private static double cosine(final double[] a, final double[] b) {
+        double dot = 0;
+        double na = 0;
+        double nb = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return dot / Math.sqrt(na * nb);
+    }
+}
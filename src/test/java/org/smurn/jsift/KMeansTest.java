@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link KMeans}.
+ */
+public class KMeansTest {
+
+    @Test
+    public void distance() {
+        float[] a = {0, 1, 2, 3};
+        float[] b = {9, 1, 4, 5};
+        assertEquals(8f, KMeans.distance(a, 2, b, 2, 2), 0f);
+        assertEquals(81f, KMeans.distance(a, 0, b, 0, 1), 0f);
+    }
+
+    @Test
+    public void nearestFirstOfTies() {
+        float[] centers = {9, 9, 3, 0, 0, 3, 5, 5};
+        float[] vector = {0, 0};
+        assertEquals(0, KMeans.nearest(vector, 0, centers, 2, 3, 2));
+        assertEquals(2, KMeans.nearest(vector, 0, centers, 0, 4, 2) + 1);
+    }
+
+    @Test
+    public void findsSeparatedClusters() {
+        Random random = new Random(6);
+        int count = 300;
+        float[] vectors = new float[2 * count];
+        for (int i = 0; i < count; i++) {
+            vectors[2 * i] = 100 * (i % 3) + (float) random.nextGaussian();
+            vectors[2 * i + 1] = (float) random.nextGaussian();
+        }
+        float[] centers = KMeans.cluster(vectors, count, 2, 3, 20,
+                new Random(1));
+        float[] xs = {centers[0], centers[2], centers[4]};
+        Arrays.sort(xs);
+        assertEquals(0f, xs[0], 0.5f);
+        assertEquals(100f, xs[1], 0.5f);
+        assertEquals(200f, xs[2], 0.5f);
+    }
+
+    @Test
+    public void moreClustersThanVectors() {
+        float[] vectors = {1, 2, 3, 4};
+        float[] centers = KMeans.cluster(vectors, 2, 2, 3, 5,
+                new Random(2));
+        for (int c = 0; c < 3; c++) {
+            float d = Math.min(KMeans.distance(centers, 2 * c, vectors, 0, 2),
+                    KMeans.distance(centers, 2 * c, vectors, 2, 2));
+            assertEquals(0f, d, 0f);
+        }
+        assertTrue(KMeans.distance(centers, 0, centers, 2, 2) > 0
+                || KMeans.distance(centers, 0, centers, 4, 2) > 0);
+    }
+}
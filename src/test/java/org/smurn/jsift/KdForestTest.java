@@ -0,0 +1,211 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link KdForest}.
+ */
+public class KdForestTest {
+
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+
+    @Test(expected = NullPointerException.class)
+    public void nullDescriptors() {
+        new KdForest(null, 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void countExceedsArray() {
+        new KdForest(new byte[LENGTH], 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noTrees() {
+        new KdForest(new byte[LENGTH], 1, 0, 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroNeighbors() {
+        new KdForest(new byte[LENGTH], 1).search(new byte[LENGTH], 0, 0, 1,
+                new int[1], null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroChecks() {
+        new KdForest(new byte[LENGTH], 1).search(new byte[LENGTH], 0, 1, 0,
+                new int[1], null);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void queryExceedsArray() {
+        new KdForest(new byte[LENGTH], 1).search(new byte[LENGTH], 1, 1, 1,
+                new int[1], null);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indicesTooShort() {
+        new KdForest(new byte[LENGTH], 1).search(new byte[LENGTH], 0, 2, 1,
+                new int[1], null);
+    }
+
+    @Test
+    public void getters() {
+        KdForest forest = new KdForest(new byte[3 * LENGTH], 3, 2, 0L);
+        assertEquals(3, forest.getSize());
+        assertEquals(2, forest.getTreeCount());
+    }
+
+    @Test
+    public void empty() {
+        KdForest forest = new KdForest(new byte[0], 0);
+        assertEquals(0, forest.search(new byte[LENGTH], 0, 2, 10,
+                new int[2], new int[2]));
+    }
+
+    @Test
+    public void fewerThanK() {
+        byte[] descriptors = random(3, new Random(1));
+        KdForest forest = new KdForest(descriptors, 3);
+        int[] indices = new int[5];
+        assertEquals(3, forest.search(descriptors, 0, 5, 100, indices,
+                null));
+    }
+
+    @Test
+    public void identicalDescriptors() {
+        byte[] descriptors = new byte[50 * LENGTH];
+        KdForest forest = new KdForest(descriptors, 50);
+        int[] indices = new int[2];
+        int[] distances = new int[2];
+        assertEquals(2, forest.search(new byte[LENGTH], 0, 2, 10, indices,
+                distances));
+        assertArrayEquals(new int[]{0, 0}, distances);
+    }
+
+    @Test
+    public void findsItself() {
+        Random random = new Random(2);
+        byte[] descriptors = random(500, random);
+        KdForest forest = new KdForest(descriptors, 500, 2, 3L);
+        int[] indices = new int[1];
+        int[] distances = new int[1];
+        for (int i = 0; i < 500; i++) {
+            assertEquals(1, forest.search(descriptors, i * LENGTH, 1, 1,
+                    indices, distances));
+            assertEquals(i, indices[0]);
+            assertEquals(0, distances[0]);
+        }
+    }
+
+    @Test
+    public void forestsShareSearchBuffers() {
+        Random random = new Random(3);
+        byte[] small = random(20, random);
+        byte[] large = random(300, random);
+        KdForest smallForest = new KdForest(small, 20);
+        KdForest largeForest = new KdForest(large, 300);
+        int[] indices = new int[1];
+        for (int i = 0; i < 20; i++) {
+            smallForest.search(small, i * LENGTH, 1, 1, indices, null);
+            assertEquals(i, indices[0]);
+            largeForest.search(large, i * LENGTH, 1, 1, indices, null);
+            assertEquals(i, indices[0]);
+        }
+    }
+
+    @Test
+    public void sortedAndConsistent() {
+        Random random = new Random(4);
+        byte[] descriptors = random(300, random);
+        byte[] query = random(1, random);
+        KdForest forest = new KdForest(descriptors, 300);
+        int[] indices = new int[10];
+        int[] distances = new int[10];
+        assertEquals(10, forest.search(query, 0, 10, 64, indices,
+                distances));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(distance(query, 0, descriptors, indices[i]),
+                    distances[i]);
+            if (i > 0) {
+                assertTrue(distances[i - 1] <= distances[i]);
+                assertTrue(indices[i - 1] != indices[i]);
+            }
+        }
+    }
+
+    @Test
+    public void recall() {
+        Random random = new Random(5);
+        int clusters = 50;
+        int count = 5000;
+        byte[] centers = random(clusters, random);
+        byte[] descriptors = new byte[count * LENGTH];
+        for (int i = 0; i < count; i++) {
+            int c = random.nextInt(clusters);
+            for (int d = 0; d < LENGTH; d++) {
+                descriptors[i * LENGTH + d] = (byte) Math.max(0, Math.min(
+                        255, (centers[c * LENGTH + d] & 0xFF)
+                        + (int) (random.nextGaussian() * 20)));
+            }
+        }
+        KdForest forest = new KdForest(descriptors, count);
+        int queries = 100;
+        int hits = 0;
+        int[] indices = new int[1];
+        for (int q = 0; q < queries; q++) {
+            byte[] query = new byte[LENGTH];
+            int source = random.nextInt(count);
+            for (int d = 0; d < LENGTH; d++) {
+                query[d] = (byte) Math.max(0, Math.min(255,
+                        (descriptors[source * LENGTH + d] & 0xFF)
+                        + random.nextInt(11) - 5));
+            }
+            forest.search(query, 0, 1, 500, indices, null);
+            int best = 0;
+            for (int i = 1; i < count; i++) {
+                if (distance(query, 0, descriptors, i)
+                        < distance(query, 0, descriptors, best)) {
+                    best = i;
+                }
+            }
+            if (indices[0] == best) {
+                hits++;
+            }
+        }
+        assertTrue("recall " + hits + "%", hits >= 90);
+    }
+
+    private static byte[] random(final int count, final Random random) {
+        byte[] result = new byte[count * LENGTH];
+        random.nextBytes(result);
+        return result;
+    }
+
+    private static int distance(final byte[] query, final int offset,
+            final byte[] descriptors, final int index) {
+        int result = 0;
+        for (int d = 0; d < LENGTH; d++) {
+            int diff = (query[offset + d] & 0xFF)
+                    - (descriptors[index * LENGTH + d] & 0xFF);
+            result += diff * diff;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.mockito.InOrder;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link KeypointBuffer}.
+ */
+public class KeypointBufferTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCapacity() {
+        new KeypointBuffer(-1);
+    }
+
+    @Test
+    public void empty() {
+        assertEquals(0, new KeypointBuffer().size());
+    }
+
+    @Test
+    public void keypoint() {
+        KeypointBuffer target = new KeypointBuffer();
+        target.keypoint(1.0, 2.0, 3.0, 4, 5, 7, 8, 6.0f);
+        assertEquals(1, target.size());
+        assertEquals(1.0, target.getX(0), 0.0);
+        assertEquals(2.0, target.getY(0), 0.0);
+        assertEquals(3.0, target.getSigma(0), 0.0);
+        assertEquals(4, target.getOctave(0));
+        assertEquals(5, target.getScale(0));
+        assertEquals(7, target.getRow(0));
+        assertEquals(8, target.getColumn(0));
+        assertEquals(6.0f, target.getResponse(0), 0.0f);
+        ScaleSpacePoint point = target.getPoint(0);
+        assertEquals(new ScaleSpacePoint(1.0, 2.0, 3.0), point);
+        assertEquals(4, point.getOctave());
+        assertEquals(5, point.getScale());
+        assertEquals(7, point.getRow());
+        assertEquals(8, point.getColumn());
+        assertEquals(6.0f, point.getResponse(), 0.0f);
+    }
+
+    @Test
+    public void grows() {
+        KeypointBuffer target = new KeypointBuffer(0);
+        for (int i = 0; i < 1000; i++) {
+            target.keypoint(i, -i, 1.0, 0, i, 1, 1, i);
+        }
+        assertEquals(1000, target.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, target.getX(i), 0.0);
+            assertEquals(-i, target.getY(i), 0.0);
+            assertEquals(i, target.getScale(i));
+        }
+    }
+
+    @Test
+    public void clear() {
+        KeypointBuffer target = new KeypointBuffer();
+        target.keypoint(1.0, 2.0, 3.0, 4, 5, 1, 1, 6.0f);
+        target.clear();
+        assertEquals(0, target.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexTooLarge() {
+        KeypointBuffer target = new KeypointBuffer();
+        target.keypoint(1.0, 2.0, 3.0, 4, 5, 1, 1, 6.0f);
+        target.getX(1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void negativeIndex() {
+        KeypointBuffer target = new KeypointBuffer();
+        target.keypoint(1.0, 2.0, 3.0, 4, 5, 1, 1, 6.0f);
+        target.getResponse(-1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void emitToNull() {
+        new KeypointBuffer().emitTo(null);
+    }
+
+    @Test
+    public void emitTo() {
+        KeypointBuffer target = new KeypointBuffer();
+        target.keypoint(1.0, 2.0, 3.0, 4, 5, 1, 1, 6.0f);
+        target.keypoint(7.0, 8.0, 9.0, 10, 11, 1, 1, 12.0f);
+        KeypointSink sink = mock(KeypointSink.class);
+        target.emitTo(sink);
+        InOrder inOrder = inOrder(sink);
+        inOrder.verify(sink).keypoint(1.0, 2.0, 3.0, 4, 5, 1, 1, 6.0f);
+        inOrder.verify(sink).keypoint(7.0, 8.0, 9.0, 10, 11, 1, 1, 12.0f);
+        verifyNoMoreInteractions(sink);
+    }
+
+    @Test
+    public void sort() {
+        KeypointBuffer target = new KeypointBuffer();
+        target.keypoint(1.0, 1.0, 1.0, 1, 1, 1, 1, 1.0f);
+        target.keypoint(2.0, 1.0, 1.0, 0, 2, 1, 1, 2.0f);
+        target.keypoint(5.0, 0.0, 1.0, 0, 2, 1, 1, 3.0f);
+        target.keypoint(1.0, 3.0, 1.0, 0, 1, 1, 1, 4.0f);
+        target.sort();
+        assertEquals(4.0f, target.getResponse(0), 0.0f);
+        assertEquals(3.0f, target.getResponse(1), 0.0f);
+        assertEquals(2.0f, target.getResponse(2), 0.0f);
+        assertEquals(1.0f, target.getResponse(3), 0.0f);
+    }
+
+    @Test
+    public void sortRandom() {
+        Random random = new Random(7);
+        KeypointBuffer target = new KeypointBuffer();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            int octave = random.nextInt(3);
+            int scale = random.nextInt(3);
+            int y = random.nextInt(100);
+            int x = random.nextInt(100);
+            target.keypoint(x, y, 1.0, octave, scale, 1, 1, i);
+            expected.add(String.format("%d %d %03d %03d", octave, scale, y, x));
+        }
+        Collections.sort(expected);
+        target.sort();
+        assertEquals(5000, target.size());
+        for (int i = 0; i < target.size(); i++) {
+            assertEquals(expected.get(i), String.format("%d %d %03d %03d",
+                    target.getOctave(i), target.getScale(i),
+                    (int) target.getY(i), (int) target.getX(i)));
+        }
+    }
+
+    @Test
+    public void removeDuplicates() {
+        KeypointBuffer target = new KeypointBuffer();
+        target.keypoint(1.0, 1.0, 1.0, 0, 1, 1, 1, 1.0f);
+        target.keypoint(2.0, 1.0, 1.0, 0, 1, 1, 1, 2.0f);
+        target.keypoint(1.0, 1.0, 1.0, 0, 1, 1, 1, 3.0f);
+        target.keypoint(1.0, 1.0, 1.0, 0, 2, 1, 1, 4.0f);
+        target.keypoint(2.0, 1.0, 1.0, 0, 1, 1, 1, 5.0f);
+        target.sort();
+        assertEquals(2, target.removeDuplicates());
+        assertEquals(3, target.size());
+        assertEquals(1.0, target.getX(0), 0.0);
+        assertEquals(2.0, target.getX(1), 0.0);
+        assertEquals(1.0, target.getX(2), 0.0);
+        assertEquals(2, target.getScale(2));
+    }
+
+    @Test
+    public void removeDuplicatesEmpty() {
+        assertEquals(0, new KeypointBuffer().removeDuplicates());
+    }
+
+    @Test
+    public void noOrientation() {
+        KeypointBuffer target = new KeypointBuffer();
+        target.keypoint(1.0, 2.0, 3.0, 0, 1, 4, 5, 0.5f);
+        assertTrue(Float.isNaN(target.getOrientation(0)));
+    }
+
+    @Test
+    public void addWithOrientation() {
+        KeypointBuffer source = new KeypointBuffer();
+        source.keypoint(1.0, 2.0, 3.0, 0, 1, 4, 5, 0.5f);
+        KeypointBuffer target = new KeypointBuffer(0);
+        target.add(source, 0, 1.5f);
+        target.add(source, 0, 0.5f);
+        assertEquals(2, target.size());
+        assertEquals(1.0, target.getX(1), 0.0);
+        assertEquals(2.0, target.getY(1), 0.0);
+        assertEquals(3.0, target.getSigma(1), 0.0);
+        assertEquals(5, target.getColumn(1));
+        assertEquals(0.5f, target.getResponse(1), 0.0f);
+        assertEquals(1.5f, target.getOrientation(0), 0.0f);
+        assertEquals(0.5f, target.getOrientation(1), 0.0f);
+    }
+
+    @Test
+    public void sortByOrientation() {
+        KeypointBuffer source = new KeypointBuffer();
+        source.keypoint(1.0, 2.0, 3.0, 0, 1, 4, 5, 0.5f);
+        KeypointBuffer target = new KeypointBuffer();
+        target.add(source, 0, 1.5f);
+        target.add(source, 0, 0.5f);
+        target.add(source, 0, 1.5f);
+        target.sort();
+        assertEquals(1, target.removeDuplicates());
+        assertEquals(0.5f, target.getOrientation(0), 0.0f);
+        assertEquals(1.5f, target.getOrientation(1), 0.0f);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link KeypointRefiner}.
+ */
+public class KeypointRefinerTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroIterations() {
+        new KeypointRefiner(0);
+    }
+
+    @Test
+    public void atPeak() {
+        List<Image> doGs = paraboloid(5.3, 6.2, 2.1);
+        double[] result = new double[KeypointRefiner.RESULT_LENGTH];
+        assertTrue(new KeypointRefiner().refine(doGs, 2, 5, 6, result));
+        assertEquals(5.3, result[KeypointRefiner.ROW], 1E-4);
+        assertEquals(6.2, result[KeypointRefiner.COLUMN], 1E-4);
+        assertEquals(2.0, result[KeypointRefiner.SCALE], 0.0);
+        assertEquals(0.1, result[KeypointRefiner.SCALE_OFFSET], 1E-4);
+        assertEquals(10.0, result[KeypointRefiner.VALUE], 1E-4);
+    }
+
+    @Test
+    public void movesToNeighbor() {
+        List<Image> doGs = paraboloid(5.3, 6.2, 2.1);
+        double[] result = new double[KeypointRefiner.RESULT_LENGTH];
+        assertTrue(new KeypointRefiner().refine(doGs, 3, 6, 7, result));
+        assertEquals(5.3, result[KeypointRefiner.ROW], 1E-4);
+        assertEquals(6.2, result[KeypointRefiner.COLUMN], 1E-4);
+        assertEquals(2.0, result[KeypointRefiner.SCALE], 0.0);
+        assertEquals(0.1, result[KeypointRefiner.SCALE_OFFSET], 1E-4);
+    }
+
+    @Test
+    public void tooFewIterations() {
+        List<Image> doGs = paraboloid(5.3, 6.2, 2.1);
+        double[] result = new double[KeypointRefiner.RESULT_LENGTH];
+        assertFalse(new KeypointRefiner(1).refine(doGs, 3, 6, 7, result));
+    }
+
+    @Test
+    public void leavesImage() {
+        List<Image> doGs = paraboloid(5.3, 30.0, 2.1);
+        double[] result = new double[KeypointRefiner.RESULT_LENGTH];
+        assertFalse(new KeypointRefiner().refine(doGs, 2, 5, 10, result));
+    }
+
+    @Test
+    public void leavesScales() {
+        List<Image> doGs = paraboloid(5.3, 6.2, -1.0);
+        double[] result = new double[KeypointRefiner.RESULT_LENGTH];
+        assertFalse(new KeypointRefiner().refine(doGs, 1, 5, 6, result));
+    }
+
+    @Test
+    public void singular() {
+        List<Image> doGs = new ArrayList<Image>();
+        for (int i = 0; i < 5; i++) {
+            doGs.add(new Image(12, 12));
+        }
+        double[] result = new double[KeypointRefiner.RESULT_LENGTH];
+        assertFalse(new KeypointRefiner().refine(doGs, 2, 5, 6, result));
+    }
+
+    /**
+     * Creates five 12x12 DoG images sampling a paraboloid with its maximum
+     * of 10 at the given position.
+     */
+    static List<Image> paraboloid(final double row, final double col,
+            final double scale) {
+        List<Image> doGs = new ArrayList<Image>();
+        for (int i = 0; i < 5; i++) {
+            Image image = new Image(12, 12, 1.0 + i, 1.0, 0, 0);
+            for (int r = 0; r < 12; r++) {
+                for (int c = 0; c < 12; c++) {
+                    image.setPixel(r, c, (float) (10.0 - (r - row) * (r - row)
+                            - (c - col) * (c - col)
+                            - (i - scale) * (i - scale)));
+                }
+            }
+            doGs.add(image);
+        }
+        return doGs;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.smurn.jsift.TestUtils.*;
+
+/**
+ * Unit tests for {@link LinearUpScalingGaussianFilter}.
+ */
+public class LinearUpScalingGaussianFilterTest {
+
+    @Test(expected = NullPointerException.class)
+    public void nullImage() {
+        LinearUpScalingGaussianFilter target =
+                new LinearUpScalingGaussianFilter();
+        target.upScaleAndFilter(null, 1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reduceSigma() {
+        LinearUpScalingGaussianFilter target =
+                new LinearUpScalingGaussianFilter();
+        target.upScaleAndFilter(new Image(20, 20, 3.0, 2, 3, 4), 2.9);
+    }
+
+    @Test
+    public void zeroImage() {
+        LinearUpScalingGaussianFilter target =
+                new LinearUpScalingGaussianFilter();
+        Image actual = target.upScaleAndFilter(new Image(0, 10), 0.8);
+        assertEquals(0, actual.getHeight());
+        assertEquals(19, actual.getWidth());
+    }
+
+    @Test
+    public void transformation() {
+        LinearUpScalingGaussianFilter target =
+                new LinearUpScalingGaussianFilter();
+        Image actual = target.upScaleAndFilter(
+                new Image(10, 10, 0.5, 2, 3, 4), 0.8);
+        assertEquals(0.8, actual.getSigma(), 1E-6);
+        assertEquals(4.0, actual.getScale(), 1E-6);
+        assertEquals(6.0, actual.getOffsetX(), 1E-6);
+        assertEquals(8.0, actual.getOffsetY(), 1E-6);
+    }
+
+    @Test
+    public void sameSigma() {
+        Image input = new Image(new float[][]{
+                    {1.0f, 2.0f, 3.0f},
+                    {4.0f, 5.0f, 6.0f}
+                });
+        LinearUpScalingGaussianFilter target =
+                new LinearUpScalingGaussianFilter();
+        Image actual = target.upScaleAndFilter(input, 0.5);
+        Image expected = new LinearUpScaler().upScale(input);
+        assertThat(actual, equalTo(expected, 1E-6f));
+    }
+
+    /**
+     * The fused operation must produce the same result as up-scaling and
+     * filtering one after the other.
+     */
+    @Test
+    public void sameAsSequential() {
+        Image input = new Image(23, 31);
+        for (int row = 0; row < input.getHeight(); row++) {
+            for (int col = 0; col < input.getWidth(); col++) {
+                input.setPixel(row, col, (float) Math.sin(row * col * 0.37));
+            }
+        }
+        Image expected = new GaussianFilter().filter(
+                new LinearUpScaler().upScale(input), 0.8);
+
+        LinearUpScalingGaussianFilter target =
+                new LinearUpScalingGaussianFilter();
+        Image actual = target.upScaleAndFilter(input, 0.8);
+
+        assertThat(actual, equalTo(expected, 1E-5f));
+    }
+}
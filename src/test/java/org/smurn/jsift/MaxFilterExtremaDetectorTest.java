@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link MaxFilterExtremaDetector}.
+ */
+public class MaxFilterExtremaDetectorTest {
+
+    @Test(expected = NullPointerException.class)
+    public void nullScaleSpace() {
+        new MaxFilterExtremaDetector().detectKeypoints(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullSink() {
+        ScaleSpace scaleSpace = randomScaleSpace(new Random(1), 10);
+        new MaxFilterExtremaDetector().detectKeypoints(scaleSpace, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeContrastThreshold() {
+        new MaxFilterExtremaDetector(-1, 0, null);
+    }
+
+    @Test
+    public void singlePeak() {
+        Octave octave = new Octave(Arrays.asList(
+                new Image(3, 3),
+                new Image(3, 3),
+                new Image(3, 3),
+                new Image(3, 3)),
+                Arrays.asList(
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}}, 0.5, 1, 0, 0),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.0f, 1.0f, 0.0f}, {0.0f, 0.0f, 0.0f}}, 0.6, 1, 0, 0),
+                new Image(new float[][]{{0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}, {0.0f, 0.0f, 0.0f}}, 0.7, 1, 0, 0)));
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(octave));
+        List<ScaleSpacePoint> expected = Arrays.asList(new ScaleSpacePoint(1, 1, 0.6));
+        assertEquals(expected, new MaxFilterExtremaDetector().detectKeypoints(scaleSpace));
+    }
+
+    @Test
+    public void nanNeighbor() {
+        Random random = new Random(2);
+        ScaleSpace scaleSpace = randomScaleSpace(random, 40);
+        for (int i = 0; i < 100; i++) {
+            Image doG = scaleSpace.getOctaves().get(0).getDifferenceOfGaussians().get(random.nextInt(5));
+            doG.setPixel(random.nextInt(40), random.nextInt(45), Float.NaN);
+        }
+        assertSame(new ExtremaDetector(), new MaxFilterExtremaDetector(), scaleSpace);
+    }
+
+    /**
+     * Few distinct values, so that there are many ties.
+     */
+    @Test
+    public void sameAsExtremaDetectorWithTies() {
+        ScaleSpace scaleSpace = randomScaleSpace(new Random(3), 40);
+        assertSame(new ExtremaDetector(), new MaxFilterExtremaDetector(), scaleSpace);
+    }
+
+    @Test
+    public void sameAsExtremaDetectorWithOptions() {
+        ScaleSpace scaleSpace = randomScaleSpace(new Random(4), 40);
+        assertSame(new ExtremaDetector(0.5, 10, new KeypointRefiner()),
+                new MaxFilterExtremaDetector(0.5, 10, new KeypointRefiner()), scaleSpace);
+    }
+
+    @Test
+    public void sameAsExtremaDetectorOnImage() {
+        Random random = new Random(5);
+        float[][] pixels = new float[30][37];
+        for (int row = 0; row < 30; row++) {
+            for (int col = 0; col < 37; col++) {
+                pixels[row][col] = random.nextFloat();
+            }
+        }
+        ScaleSpace scaleSpace = new ScaleSpaceFactoryImpl().create(new Image(pixels));
+        assertSame(new ExtremaDetector(), new MaxFilterExtremaDetector(), scaleSpace);
+    }
+
+    private static void assertSame(final ExtremaDetector expected,
+            final MaxFilterExtremaDetector actual, final ScaleSpace scaleSpace) {
+        Collection<ScaleSpacePoint> expectedPoints = expected.detectKeypoints(scaleSpace);
+        assertFalse(expectedPoints.isEmpty());
+        assertEquals(new ArrayList<ScaleSpacePoint>(expectedPoints),
+                new ArrayList<ScaleSpacePoint>(actual.detectKeypoints(scaleSpace)));
+    }
+
+    private static ScaleSpace randomScaleSpace(final Random random, final int size) {
+        List<Octave> octaves = new ArrayList<Octave>();
+        for (int height = size; height >= 3; height /= 2) {
+            int width = height + 5;
+            List<Image> scales = new ArrayList<Image>();
+            List<Image> doGs = new ArrayList<Image>();
+            for (int i = 0; i < 6; i++) {
+                Image image = new Image(height, width, 0.5 + i, 40.0 / height, 0, 0);
+                for (int row = 0; row < height; row++) {
+                    for (int col = 0; col < width; col++) {
+                        image.setPixel(row, col, random.nextInt(5) - 2);
+                    }
+                }
+                doGs.add(image);
+                scales.add(new Image(height, width));
+            }
+            scales.add(new Image(height, width));
+            octaves.add(new Octave(scales, doGs));
+        }
+        return new ScaleSpace(octaves);
+    }
+}
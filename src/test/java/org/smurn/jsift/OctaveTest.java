@@ -180,4 +180,55 @@ public class OctaveTest {
                 new Image(20, 21)));
         assertEquals(20, target.getHeight());
     }
+
+    @Test
+    public void gradientsCached() {
+        Image image = new Image(new float[][]{{0, 1, 2}, {0, 1, 2}});
+        Octave target = new Octave(Arrays.asList(
+                new Image(2, 3),
+                image,
+                new Image(2, 3),
+                new Image(2, 3)),
+                Arrays.asList(
+                new Image(2, 3),
+                new Image(2, 3),
+                new Image(2, 3)));
+        GradientMap gradients = target.getGradients(1);
+        assertSame(gradients, target.getGradients(1));
+        assertEquals(2.0f, gradients.getMagnitude(0, 1), 1E-6f);
+    }
+
+    @Test
+    public void gradientsInvalidated() {
+        Image image = new Image(new float[][]{{0, 1, 2}, {0, 1, 2}});
+        Octave target = new Octave(Arrays.asList(
+                image,
+                new Image(2, 3),
+                new Image(2, 3),
+                new Image(2, 3)),
+                Arrays.asList(
+                new Image(2, 3),
+                new Image(2, 3),
+                new Image(2, 3)));
+        GradientMap gradients = target.getGradients(0);
+        image.setPixel(0, 2, 4);
+        assertEquals(2.0f, target.getGradients(0).getMagnitude(0, 1), 1E-6f);
+        target.invalidateGradients();
+        assertSame(gradients, target.getGradients(0));
+        assertEquals(4.0f, gradients.getMagnitude(0, 1), 1E-6f);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void gradientsOutOfRange() {
+        Octave target = new Octave(Arrays.asList(
+                new Image(2, 3),
+                new Image(2, 3),
+                new Image(2, 3),
+                new Image(2, 3)),
+                Arrays.asList(
+                new Image(2, 3),
+                new Image(2, 3),
+                new Image(2, 3)));
+        target.getGradients(4);
+    }
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link OrientationAssigner}.
+ */
+public class OrientationAssignerTest {
+
+    /** Size of the test images. */
+    private static final int SIZE = 21;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooFewBins() {
+        new OrientationAssigner(2, 1.5, 0.8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroWindow() {
+        new OrientationAssigner(36, 0, 0.8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroPeakRatio() {
+        new OrientationAssigner(36, 1.5, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void peakRatioAboveOne() {
+        new OrientationAssigner(36, 1.5, 1.1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullScaleSpace() {
+        new OrientationAssigner().assign(null, new KeypointBuffer(),
+                new KeypointBuffer());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullKeypoints() {
+        new OrientationAssigner().assign(ramp(0), null, new KeypointBuffer());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullResult() {
+        new OrientationAssigner().assign(ramp(0), new KeypointBuffer(), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sameBuffer() {
+        KeypointBuffer buffer = new KeypointBuffer();
+        new OrientationAssigner().assign(ramp(0), buffer, buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noOctave() {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        keypoints.keypoint(10, 10, 1.0, -1, -1, -1, -1, Float.NaN);
+        new OrientationAssigner().assign(ramp(0), keypoints,
+                new KeypointBuffer());
+    }
+
+    @Test
+    public void binCenter() {
+        double angle = Math.toRadians(30);
+        KeypointBuffer result = assign(ramp(angle), center());
+        assertEquals(1, result.size());
+        assertEquals(angle, result.getOrientation(0), 1E-4);
+        assertEquals(10.0, result.getX(0), 0.0);
+        assertEquals(1.0, result.getSigma(0), 0.0);
+        assertEquals(0.5f, result.getResponse(0), 0.0f);
+    }
+
+    @Test
+    public void betweenBins() {
+        double angle = Math.toRadians(123);
+        KeypointBuffer result = assign(ramp(angle), center());
+        assertEquals(1, result.size());
+        assertEquals(angle, result.getOrientation(0), Math.toRadians(5));
+    }
+
+    @Test
+    public void upwards() {
+        double angle = Math.toRadians(-90);
+        KeypointBuffer result = assign(ramp(angle), center());
+        assertEquals(1, result.size());
+        assertEquals(Math.toRadians(270), result.getOrientation(0), 1E-4);
+    }
+
+    @Test
+    public void secondaryPeak() {
+        KeypointBuffer result = assign(valley(1.0f), center());
+        assertEquals(2, result.size());
+        assertEquals(0.0, result.getOrientation(0), 1E-4);
+        assertEquals(Math.PI, result.getOrientation(1), 1E-4);
+        assertEquals(result.getX(0), result.getX(1), 0.0);
+    }
+
+    @Test
+    public void weakSecondaryPeak() {
+        KeypointBuffer result = assign(valley(0.5f), center());
+        assertEquals(1, result.size());
+        assertEquals(0.0, result.getOrientation(0), 1E-4);
+    }
+
+    @Test
+    public void flat() {
+        KeypointBuffer result = assign(scaleSpace(new float[SIZE][SIZE]),
+                center());
+        assertEquals(0, result.size());
+    }
+
+    @Test
+    public void border() {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        keypoints.keypoint(0, 0, 1.0, 0, 1, 0, 0, 0.5f);
+        KeypointBuffer result = assign(ramp(0), keypoints);
+        assertEquals(1, result.size());
+        assertEquals(0.0, result.getOrientation(0), 1E-4);
+    }
+
+    @Test
+    public void appends() {
+        ScaleSpace scaleSpace = ramp(Math.toRadians(30));
+        KeypointBuffer keypoints = center();
+        KeypointBuffer result = new KeypointBuffer();
+        OrientationAssigner target = new OrientationAssigner();
+        target.assign(scaleSpace, keypoints, result);
+        target.assign(scaleSpace, keypoints, result);
+        assertEquals(2, result.size());
+        assertEquals(result.getOrientation(0), result.getOrientation(1),
+                0.0f);
+    }
+
+    @Test
+    public void largeKeypointDoesNotAffectSmall() {
+        ScaleSpace scaleSpace = ramp(Math.toRadians(30));
+        KeypointBuffer keypoints = new KeypointBuffer();
+        keypoints.keypoint(10, 10, 2.0, 0, 2, 10, 10, 0.5f);
+        keypoints.keypoint(10, 10, 1.0, 0, 1, 10, 10, 0.5f);
+        KeypointBuffer result = assign(scaleSpace, keypoints);
+        assertEquals(2, result.size());
+        assertEquals(Math.toRadians(30), result.getOrientation(1), 1E-4);
+    }
+
+    /**
+     * Runs a default assigner.
+     * @param scaleSpace Scale-space of the keypoints.
+     * @param keypoints Keypoints to assign orientations to.
+     * @return Oriented keypoints.
+     */
+    private static KeypointBuffer assign(final ScaleSpace scaleSpace,
+            final KeypointBuffer keypoints) {
+        KeypointBuffer result = new KeypointBuffer();
+        new OrientationAssigner().assign(scaleSpace, keypoints, result);
+        return result;
+    }
+
+    /**
+     * Creates a keypoint in the center of the test images.
+     * @return Buffer with the keypoint.
+     */
+    private static KeypointBuffer center() {
+        KeypointBuffer keypoints = new KeypointBuffer();
+        keypoints.keypoint(10, 10, 1.0, 0, 1, SIZE / 2, SIZE / 2, 0.5f);
+        return keypoints;
+    }
+
+    /**
+     * Creates a scale-space with a linear ramp.
+     * @param angle Direction in which the ramp ascends.
+     * @return Scale-space with one octave.
+     */
+    private static ScaleSpace ramp(final double angle) {
+        float[][] pixels = new float[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                pixels[row][col] = (float) (col * Math.cos(angle)
+                        + row * Math.sin(angle));
+            }
+        }
+        return scaleSpace(pixels);
+    }
+
+    /**
+     * Creates a scale-space with a valley along the center column.
+     * @param slope Slope of the left half, the right half has slope one.
+     * @return Scale-space with one octave.
+     */
+    private static ScaleSpace valley(final float slope) {
+        float[][] pixels = new float[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                int offset = col - SIZE / 2;
+                if (offset >= 0) {
+                    pixels[row][col] = offset;
+                } else {
+                    pixels[row][col] = -slope * offset;
+                }
+            }
+        }
+        return scaleSpace(pixels);
+    }
+
+    /**
+     * Creates a scale-space in which all scale-images are equal.
+     * @param pixels Pixels of the scale-images.
+     * @return Scale-space with one octave.
+     */
+    private static ScaleSpace scaleSpace(final float[][] pixels) {
+        List<Image> scaleImages = new ArrayList<Image>();
+        List<Image> doGs = new ArrayList<Image>();
+        for (int i = 0; i < 4; i++) {
+            scaleImages.add(new Image(pixels, Math.pow(2, i / 3.0), 1.0, 0,
+                    0));
+        }
+        for (int i = 0; i < 3; i++) {
+            doGs.add(new Image(SIZE, SIZE));
+        }
+        return new ScaleSpace(Arrays.asList(new Octave(scaleImages, doGs)));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ParallelDescriptorExtractor}.
+ */
+public class ParallelDescriptorExtractorTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullExecutor() {
+        new ParallelDescriptorExtractor(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroBatchSize() {
+        new ParallelDescriptorExtractor(executor, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullScaleSpace() {
+        new ParallelDescriptorExtractor(executor).extract(null,
+                new KeypointBuffer(), new byte[0]);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullKeypoints() {
+        new ParallelDescriptorExtractor(executor).extract(scaleSpace(), null,
+                new byte[0]);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullDescriptors() {
+        new ParallelDescriptorExtractor(executor).extract(scaleSpace(),
+                new KeypointBuffer(), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooShort() {
+        ScaleSpace scaleSpace = scaleSpace();
+        KeypointBuffer keypoints = keypoints(scaleSpace);
+        new ParallelDescriptorExtractor(executor).extract(scaleSpace,
+                keypoints, new byte[keypoints.size()
+                * DescriptorExtractor.LENGTH - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noOrientation() {
+        ScaleSpace scaleSpace = scaleSpace();
+        KeypointBuffer keypoints = new KeypointBuffer();
+        new ExtremaDetector().detectKeypoints(scaleSpace, keypoints);
+        new ParallelDescriptorExtractor(executor).extract(scaleSpace,
+                keypoints, new byte[keypoints.size()
+                * DescriptorExtractor.LENGTH]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noOctave() {
+        KeypointBuffer source = new KeypointBuffer();
+        source.keypoint(1, 1, 1, 100, 1, 1, 1, 0.1f);
+        KeypointBuffer keypoints = new KeypointBuffer();
+        keypoints.add(source, 0, 0f);
+        new ParallelDescriptorExtractor(executor).extract(scaleSpace(),
+                keypoints, new byte[DescriptorExtractor.LENGTH]);
+    }
+
+    @Test
+    public void empty() {
+        new ParallelDescriptorExtractor(executor).extract(scaleSpace(),
+                new KeypointBuffer(), new byte[0]);
+    }
+
+    @Test
+    public void sameAsSequential() {
+        assertSameAsSequential(new ParallelDescriptorExtractor(executor));
+    }
+
+    @Test
+    public void singleKeypointBatches() {
+        assertSameAsSequential(new ParallelDescriptorExtractor(executor, 1));
+    }
+
+    @Test
+    public void singleBatch() {
+        assertSameAsSequential(
+                new ParallelDescriptorExtractor(executor, 100000));
+    }
+
+    @Test
+    public void sortsKeypoints() {
+        ScaleSpace scaleSpace = scaleSpace();
+        KeypointBuffer keypoints = keypoints(scaleSpace);
+        KeypointBuffer sorted = keypoints(scaleSpace);
+        sorted.sort();
+        new ParallelDescriptorExtractor(executor).extract(scaleSpace,
+                keypoints, new byte[keypoints.size()
+                * DescriptorExtractor.LENGTH]);
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(sorted.getPoint(i), keypoints.getPoint(i));
+            assertEquals(sorted.getOrientation(i), keypoints.getOrientation(i),
+                    0.0f);
+        }
+    }
+
+    /**
+     * Compares the descriptors with those of a {@link DescriptorExtractor}.
+     * @param target Extractor to test.
+     */
+    private static void assertSameAsSequential(
+            final ParallelDescriptorExtractor target) {
+        ScaleSpace scaleSpace = scaleSpace();
+        KeypointBuffer keypoints = keypoints(scaleSpace);
+        assertTrue(keypoints.size() > 10);
+        byte[] actual = new byte[keypoints.size()
+                * DescriptorExtractor.LENGTH];
+        target.extract(scaleSpace, keypoints, actual);
+
+        byte[] expected = new byte[actual.length];
+        DescriptorExtractor extractor = new DescriptorExtractor();
+        for (int i = 0; i < keypoints.size(); i++) {
+            extractor.extract(scaleSpace.getOctaves().get(
+                    keypoints.getOctave(i)), keypoints, i, expected,
+                    i * DescriptorExtractor.LENGTH);
+        }
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Detects and orients the keypoints of a scale-space.
+     * @param scaleSpace Scale-space to detect keypoints in.
+     * @return Oriented keypoints.
+     */
+    private static KeypointBuffer keypoints(final ScaleSpace scaleSpace) {
+        KeypointBuffer detected = new KeypointBuffer();
+        new ExtremaDetector(0.01, new KeypointRefiner()).detectKeypoints(
+                scaleSpace, detected);
+        KeypointBuffer oriented = new KeypointBuffer();
+        new OrientationAssigner().assign(scaleSpace, detected, oriented);
+        return oriented;
+    }
+
+    /**
+     * Creates the scale-space of an image with random blobs.
+     * @return Scale-space with several octaves.
+     */
+    private static ScaleSpace scaleSpace() {
+        Random random = new Random(42);
+        float[][] pixels = new float[48][64];
+        for (int i = 0; i < 30; i++) {
+            double blobRow = random.nextDouble() * pixels.length;
+            double blobCol = random.nextDouble() * pixels[0].length;
+            double sigma = 1 + random.nextDouble() * 3;
+            double value = random.nextDouble();
+            for (int row = 0; row < pixels.length; row++) {
+                for (int col = 0; col < pixels[row].length; col++) {
+                    double dr = row - blobRow;
+                    double dc = col - blobCol;
+                    pixels[row][col] += (float) (value * Math.exp(
+                            -(dr * dr + dc * dc) / (2 * sigma * sigma)));
+                }
+            }
+        }
+        return new ScaleSpaceFactoryImpl().create(new Image(pixels));
+    }
+}
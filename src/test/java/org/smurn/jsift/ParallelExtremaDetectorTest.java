@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ParallelExtremaDetector}.
+ */
+public class ParallelExtremaDetectorTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullExecutor() {
+        new ParallelExtremaDetector(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullDetector() {
+        new ParallelExtremaDetector(null, executor, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroBandHeight() {
+        new ParallelExtremaDetector(new ExtremaDetector(), executor, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullScaleSpace() {
+        new ParallelExtremaDetector(executor).detectKeypoints(null);
+    }
+
+    /**
+     * The result must be identical to the sequential detector, including
+     * the order.
+     */
+    @Test
+    public void sameAsSequential() {
+        assertSameAsSequential(new ExtremaDetector(0.6));
+    }
+
+    @Test
+    public void sameAsSequentialRefined() {
+        assertSameAsSequential(new ExtremaDetector(0.6, new KeypointRefiner()));
+    }
+
+    private void assertSameAsSequential(final ExtremaDetector detector) {
+        Random random = new Random(3);
+        List<Octave> octaves = new ArrayList<Octave>();
+        for (int size = 40; size >= 5; size /= 2) {
+            List<Image> scales = new ArrayList<Image>();
+            List<Image> doGs = new ArrayList<Image>();
+            for (int i = 0; i < 6; i++) {
+                Image image = new Image(size, size + 3, 0.5 + i, 40.0 / size, 0, 0);
+                for (int row = 0; row < size; row++) {
+                    for (int col = 0; col < size + 3; col++) {
+                        image.setPixel(row, col, random.nextFloat());
+                    }
+                }
+                doGs.add(image);
+                scales.add(new Image(size, size + 3));
+            }
+            scales.add(new Image(size, size + 3));
+            octaves.add(new Octave(scales, doGs));
+        }
+        ScaleSpace scaleSpace = new ScaleSpace(octaves);
+
+        Collection<ScaleSpacePoint> expected = detector.detectKeypoints(scaleSpace);
+        ParallelExtremaDetector target = new ParallelExtremaDetector(detector, executor, 3);
+        Collection<ScaleSpacePoint> actual = target.detectKeypoints(scaleSpace);
+
+        assertFalse(expected.isEmpty());
+        assertEquals(new ArrayList<ScaleSpacePoint>(expected), new ArrayList<ScaleSpacePoint>(actual));
+
+        List<String> expectedCalls = new ArrayList<String>();
+        detector.detectKeypoints(scaleSpace, new RecordingSink(expectedCalls));
+        List<String> actualCalls = new ArrayList<String>();
+        target.detectKeypoints(scaleSpace, new RecordingSink(actualCalls));
+        assertEquals(expectedCalls, actualCalls);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullSink() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(randomOctave(20, 5)));
+        new ParallelExtremaDetector(executor).detectKeypoints(scaleSpace, null);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sinkFails() {
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(randomOctave(20, 5)));
+        new ParallelExtremaDetector(executor).detectKeypoints(scaleSpace, new KeypointSink() {
+
+            @Override
+            public void keypoint(double x, double y, double sigma, int octave, int scale, int row, int col, float response) {
+                throw new IllegalStateException();
+            }
+        });
+    }
+
+    private static Octave randomOctave(final int size, final long seed) {
+        Random random = new Random(seed);
+        List<Image> scales = new ArrayList<Image>();
+        List<Image> doGs = new ArrayList<Image>();
+        for (int i = 0; i < 6; i++) {
+            Image image = new Image(size, size);
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    image.setPixel(row, col, random.nextFloat());
+                }
+            }
+            doGs.add(image);
+            scales.add(new Image(size, size));
+        }
+        scales.add(new Image(size, size));
+        return new Octave(scales, doGs);
+    }
+
+    /**
+     * Records each call as a string.
+     */
+    private static class RecordingSink implements KeypointSink {
+
+        private final List<String> calls;
+
+        RecordingSink(final List<String> calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public void keypoint(double x, double y, double sigma, int octave, int scale, int row, int col, float response) {
+            calls.add(x + " " + y + " " + sigma + " " + octave + " " + scale + " " + row + " " + col + " " + response);
+        }
+    }
+}
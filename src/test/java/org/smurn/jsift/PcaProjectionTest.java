@@ -0,0 +1,209 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link PcaProjection}.
+ */
+public class PcaProjectionTest {
+
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+
+    @Test(expected = NullPointerException.class)
+    public void nullMean() {
+        new PcaProjection(null, new float[LENGTH], 1f);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullBasis() {
+        new PcaProjection(new float[LENGTH], null, 1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongMeanLength() {
+        new PcaProjection(new float[LENGTH - 1], new float[LENGTH], 1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBasis() {
+        new PcaProjection(new float[LENGTH], new float[0], 1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompleteBasis() {
+        new PcaProjection(new float[LENGTH], new float[LENGTH + 1], 1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void basisTooLarge() {
+        new PcaProjection(new float[LENGTH], new float[LENGTH * LENGTH
+                + LENGTH], 1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroScale() {
+        new PcaProjection(new float[LENGTH], new float[LENGTH], 0f);
+    }
+
+    @Test
+    public void copies() {
+        float[] mean = new float[LENGTH];
+        float[] basis = new float[LENGTH];
+        PcaProjection target = new PcaProjection(mean, basis, 1f);
+        mean[0] = 1f;
+        basis[0] = 1f;
+        assertEquals(0f, target.getMean()[0], 0f);
+        assertEquals(0f, target.getBasis()[0], 0f);
+        target.getMean()[1] = 1f;
+        assertEquals(0f, target.getMean()[1], 0f);
+    }
+
+    @Test
+    public void project() {
+        PcaProjection target = projection();
+        byte[] descriptors = descriptors(1);
+        float[] result = new float[3];
+        target.project(descriptors, 0, 1, result, 0);
+        for (int d = 0; d < 3; d++) {
+            assertEquals(reference(target, descriptors, 0, d), result[d],
+                    1E-3f);
+        }
+    }
+
+    @Test
+    public void batch() {
+        PcaProjection target = projection();
+        byte[] descriptors = descriptors(37);
+        float[] result = new float[2 + 37 * 3];
+        target.project(descriptors, LENGTH, 36, result, 2);
+        for (int k = 0; k < 36; k++) {
+            for (int d = 0; d < 3; d++) {
+                assertEquals(reference(target, descriptors, k + 1, d),
+                        result[2 + k * 3 + d], 1E-3f);
+            }
+        }
+    }
+
+    @Test
+    public void quantized() {
+        PcaProjection target = projection();
+        byte[] descriptors = descriptors(20);
+        float[] expected = new float[20 * 3];
+        byte[] actual = new byte[20 * 3];
+        target.project(descriptors, 0, 20, expected, 0);
+        target.project(descriptors, 0, 20, actual, 0);
+        for (int i = 0; i < expected.length; i++) {
+            float scaled = expected[i] * target.getQuantizationScale();
+            int value = Math.max(-128, Math.min(127, Math.round(scaled)));
+            assertEquals(value, actual[i]);
+        }
+    }
+
+    @Test
+    public void saturates() {
+        float[] basis = new float[LENGTH];
+        basis[0] = 1f;
+        PcaProjection target = new PcaProjection(new float[LENGTH], basis,
+                1f);
+        byte[] descriptors = new byte[LENGTH];
+        descriptors[0] = (byte) 200;
+        byte[] result = new byte[1];
+        target.project(descriptors, 0, 1, result, 0);
+        assertEquals(127, result[0]);
+    }
+
+    @Test
+    public void empty() {
+        projection().project(new byte[0], 0, 0, new float[0], 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void descriptorsExceedArray() {
+        projection().project(new byte[LENGTH], 1, 1, new float[3], 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void resultExceedsArray() {
+        projection().project(new byte[LENGTH], 0, 1, new float[3], 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void negativeCount() {
+        projection().project(new byte[LENGTH], 0, -1, new byte[3], 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullDescriptors() {
+        projection().project(null, 0, 1, new float[3], 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullResult() {
+        projection().project(new byte[LENGTH], 0, 1, (float[]) null, 0);
+    }
+
+    /**
+     * Projects a descriptor component by component.
+     * @param projection Projection to use.
+     * @param descriptors Descriptors.
+     * @param index Index of the descriptor.
+     * @param component Index of the component.
+     * @return Component of the projected descriptor.
+     */
+    private static float reference(final PcaProjection projection,
+            final byte[] descriptors, final int index, final int component) {
+        float[] mean = projection.getMean();
+        float[] basis = projection.getBasis();
+        double sum = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            sum += ((descriptors[index * LENGTH + i] & 0xFF) - mean[i])
+                    * basis[component * LENGTH + i];
+        }
+        return (float) sum;
+    }
+
+    /**
+     * Creates a projection with random mean and basis.
+     * @return Projection to three components.
+     */
+    private static PcaProjection projection() {
+        Random random = new Random(7);
+        float[] mean = new float[LENGTH];
+        float[] basis = new float[3 * LENGTH];
+        for (int i = 0; i < mean.length; i++) {
+            mean[i] = random.nextFloat() * 100;
+        }
+        for (int i = 0; i < basis.length; i++) {
+            basis[i] = (float) random.nextGaussian() * 0.1f;
+        }
+        return new PcaProjection(mean, basis, 0.05f);
+    }
+
+    /**
+     * Creates random descriptors.
+     * @param count Number of descriptors.
+     * @return Descriptors.
+     */
+    private static byte[] descriptors(final int count) {
+        byte[] descriptors = new byte[count * LENGTH];
+        new Random(42).nextBytes(descriptors);
+        return descriptors;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link PcaTrainer}.
+ */
+public class PcaTrainerTest {
+
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroDimension() {
+        new PcaTrainer(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dimensionTooLarge() {
+        new PcaTrainer(LENGTH + 1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullDescriptors() {
+        new PcaTrainer(2).train(null, 0, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void singleDescriptor() {
+        new PcaTrainer(2).train(new byte[LENGTH], 0, 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void exceedsArray() {
+        new PcaTrainer(2).train(new byte[3 * LENGTH], 1, 3);
+    }
+
+    @Test
+    public void mean() {
+        byte[] descriptors = new byte[2 * LENGTH];
+        descriptors[0] = 10;
+        descriptors[LENGTH] = (byte) 200;
+        PcaProjection projection = new PcaTrainer(1).train(descriptors, 0,
+                2);
+        assertEquals(105f, projection.getMean()[0], 1E-4f);
+        assertEquals(0f, projection.getMean()[1], 0f);
+    }
+
+    @Test
+    public void principalComponents() {
+        byte[] descriptors = plane(500, 0);
+        PcaProjection projection = new PcaTrainer(2).train(descriptors, 0,
+                500);
+        assertEquals(2, projection.getDimension());
+        float[] basis = projection.getBasis();
+        float h = (float) Math.sqrt(0.5);
+        assertEquals(h, basis[0], 1E-4f);
+        assertEquals(h, basis[1], 1E-4f);
+        assertEquals(1f, basis[LENGTH + 5], 1E-4f);
+        double norm0 = 0;
+        double norm1 = 0;
+        double dot = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            norm0 += basis[i] * basis[i];
+            norm1 += basis[LENGTH + i] * basis[LENGTH + i];
+            dot += basis[i] * basis[LENGTH + i];
+        }
+        assertEquals(1.0, norm0, 1E-5);
+        assertEquals(1.0, norm1, 1E-5);
+        assertEquals(0.0, dot, 1E-5);
+    }
+
+    @Test
+    public void preservesDistances() {
+        byte[] descriptors = plane(200, 0);
+        PcaProjection projection = new PcaTrainer(2).train(descriptors, 0,
+                200);
+        float[] projected = new float[2 * 200];
+        projection.project(descriptors, 0, 200, projected, 0);
+        for (int k = 1; k < 200; k++) {
+            double original = 0;
+            for (int i = 0; i < LENGTH; i++) {
+                double d = (descriptors[i] & 0xFF)
+                        - (descriptors[k * LENGTH + i] & 0xFF);
+                original += d * d;
+            }
+            double dx = projected[0] - projected[2 * k];
+            double dy = projected[1] - projected[2 * k + 1];
+            assertEquals(Math.sqrt(original), Math.sqrt(dx * dx + dy * dy),
+                    1E-3);
+        }
+    }
+
+    @Test
+    public void offset() {
+        byte[] descriptors = plane(100, 3);
+        PcaProjection expected = new PcaTrainer(2).train(plane(100, 0), 0,
+                100);
+        PcaProjection actual = new PcaTrainer(2).train(descriptors, 3, 100);
+        assertArrayEquals(expected.getBasis(), actual.getBasis(), 1E-5f);
+        assertArrayEquals(expected.getMean(), actual.getMean(), 1E-5f);
+    }
+
+    @Test
+    public void quantizationScale() {
+        PcaProjection projection = new PcaTrainer(2).train(plane(1000, 0), 0,
+                1000);
+        // the first component is uniform in [-40, 40] * sqrt(2).
+        double deviation = 40 * Math.sqrt(2) / Math.sqrt(3);
+        assertEquals(127 / (4 * deviation),
+                projection.getQuantizationScale(), 0.05);
+    }
+
+    @Test
+    public void constantSample() {
+        byte[] descriptors = new byte[3 * LENGTH];
+        PcaProjection projection = new PcaTrainer(4).train(descriptors, 0,
+                3);
+        assertEquals(4, projection.getDimension());
+        assertEquals(1f, projection.getQuantizationScale(), 0f);
+    }
+
+    /**
+     * Creates descriptors that lie in a plane. The plane is spanned by
+     * {@code (e0+e1)/sqrt(2)}, with a large variance, and {@code e5}, with
+     * a small variance.
+     * @param count Number of descriptors.
+     * @param offset Number of unused bytes before the first descriptor.
+     * @return Descriptors.
+     */
+    private static byte[] plane(final int count, final int offset) {
+        Random random = new Random(42);
+        byte[] descriptors = new byte[offset + count * LENGTH];
+        for (int k = 0; k < count; k++) {
+            int a = random.nextInt(81) - 40;
+            int b = random.nextInt(21) - 10;
+            int base = offset + k * LENGTH;
+            descriptors[base] = (byte) (100 + a);
+            descriptors[base + 1] = (byte) (100 + a);
+            descriptors[base + 5] = (byte) (50 + b);
+            descriptors[base + 7] = 20;
+        }
+        return descriptors;
+    }
+}
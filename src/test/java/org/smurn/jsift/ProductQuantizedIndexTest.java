@@ -0,0 +1,265 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ProductQuantizedIndex}.
+ */
+public class ProductQuantizedIndexTest {
+
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+
+    @Test(expected = NullPointerException.class)
+    public void nullQuantizer() {
+        new ProductQuantizedIndex(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullCoarseCentroids() {
+        new ProductQuantizedIndex(quantizer(), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyCoarseCentroids() {
+        new ProductQuantizedIndex(quantizer(), new float[0]);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void descriptorsExceedArray() {
+        new ProductQuantizedIndex(quantizer()).add(new byte[LENGTH], 0, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroNeighbors() {
+        new ProductQuantizedIndex(quantizer()).search(new byte[LENGTH], 0,
+                0, 1, new int[1], null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroProbes() {
+        new ProductQuantizedIndex(quantizer()).search(new byte[LENGTH], 0,
+                1, 0, new int[1], null);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indicesTooShort() {
+        new ProductQuantizedIndex(quantizer()).search(new byte[LENGTH], 0,
+                2, 1, new int[1], null);
+    }
+
+    @Test
+    public void empty() {
+        ProductQuantizedIndex index = new ProductQuantizedIndex(quantizer());
+        assertEquals(0, index.getSize());
+        assertEquals(1, index.getListCount());
+        assertEquals(0, index.search(new byte[LENGTH], 0, 3, 1, new int[3],
+                null));
+    }
+
+    @Test
+    public void addAssignsIdentifiers() {
+        ProductQuantizedIndex index = new ProductQuantizedIndex(quantizer());
+        assertEquals(0, index.add(new byte[2 * LENGTH], 0, 2));
+        assertEquals(2, index.add(new byte[40 * LENGTH], LENGTH, 39));
+        assertEquals(41, index.getSize());
+    }
+
+    @Test
+    public void flatIdentifiersArePositions() {
+        ProductQuantizedIndex index = new ProductQuantizedIndex(quantizer());
+        Random random = new Random(14);
+        byte[] descriptors = patterns(50, random);
+        index.add(descriptors, 0, 20);
+        index.add(descriptors, 20 * LENGTH, 30);
+        int[] indices = new int[1];
+        float[] distances = new float[1];
+        for (int i = 0; i < 50; i++) {
+            assertEquals(1, index.search(descriptors, i * LENGTH, 1, 1,
+                    indices, distances));
+            assertEquals(0f, distances[0], 0f);
+            assertEquals(0f, distance(descriptors, i, descriptors,
+                    indices[0]), 0f);
+        }
+    }
+
+    @Test
+    public void flatDistancesAreAsymmetric() {
+        // with codebooks of the four possible sub-vectors the codes are
+        // exact, so the estimated distances are the true ones.
+        ProductQuantizer quantizer = quantizer();
+        ProductQuantizedIndex index = new ProductQuantizedIndex(quantizer);
+        Random random = new Random(11);
+        int count = 30;
+        byte[] descriptors = patterns(count, random);
+        index.add(descriptors, 0, count);
+        byte[] query = new byte[LENGTH];
+        random.nextBytes(query);
+
+        int[] indices = new int[count];
+        float[] distances = new float[count];
+        assertEquals(count, index.search(query, 0, count, 1, indices,
+                distances));
+        boolean[] seen = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            assertFalse(seen[indices[i]]);
+            seen[indices[i]] = true;
+            assertEquals(distance(query, descriptors, indices[i]),
+                    distances[i], 1E-3f * distances[i]);
+            if (i > 0) {
+                assertTrue(distances[i - 1] <= distances[i]);
+            }
+        }
+    }
+
+    @Test
+    public void invertedFileScansProbedLists() {
+        // the coarse centroids are 0 and 200 everywhere, the descriptors
+        // are patterns around them.
+        float[] coarse = new float[2 * LENGTH];
+        for (int e = 0; e < LENGTH; e++) {
+            coarse[LENGTH + e] = 200;
+        }
+        ProductQuantizedIndex index = new ProductQuantizedIndex(quantizer(),
+                coarse);
+        assertEquals(2, index.getListCount());
+        Random random = new Random(12);
+        byte[] low = patterns(10, random);
+        byte[] high = patterns(10, random);
+        for (int i = 0; i < high.length; i++) {
+            high[i] += (byte) 200;
+        }
+        index.add(low, 0, 10);
+        index.add(high, 0, 10);
+
+        int[] indices = new int[20];
+        float[] distances = new float[20];
+        assertEquals(10, index.search(high, 3 * LENGTH, 20, 1, indices,
+                distances));
+        assertEquals(13, indices[0]);
+        assertEquals(0f, distances[0], 1E-3f);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(indices[i] >= 10);
+        }
+        assertEquals(20, index.search(high, 3 * LENGTH, 20, 5, indices,
+                distances));
+    }
+
+    @Test
+    public void recall() {
+        Random random = new Random(13);
+        int count = 2000;
+        byte[] descriptors = new byte[count * LENGTH];
+        byte[] centers = new byte[20 * LENGTH];
+        random.nextBytes(centers);
+        for (int i = 0; i < count; i++) {
+            int c = random.nextInt(20);
+            for (int e = 0; e < LENGTH; e++) {
+                descriptors[i * LENGTH + e] = (byte) Math.max(0, Math.min(
+                        255, (centers[c * LENGTH + e] & 0xFF)
+                        + (int) (random.nextGaussian() * 20)));
+            }
+        }
+        ProductQuantizerTrainer trainer = new ProductQuantizerTrainer(16,
+                64, 10, 0L);
+        float[] coarse = trainer.trainCoarseQuantizer(descriptors, 0, count,
+                8);
+        ProductQuantizedIndex index = new ProductQuantizedIndex(
+                trainer.train(descriptors, 0, count, coarse), coarse);
+        index.add(descriptors, 0, count);
+
+        // the exact nearest neighbor should be among the first ten.
+        int hits = 0;
+        int[] indices = new int[10];
+        for (int q = 0; q < 50; q++) {
+            byte[] query = new byte[LENGTH];
+            int source = random.nextInt(count);
+            for (int e = 0; e < LENGTH; e++) {
+                query[e] = (byte) Math.max(0, Math.min(255,
+                        (descriptors[source * LENGTH + e] & 0xFF)
+                        + random.nextInt(11) - 5));
+            }
+            int best = 0;
+            for (int i = 1; i < count; i++) {
+                if (distance(query, descriptors, i)
+                        < distance(query, descriptors, best)) {
+                    best = i;
+                }
+            }
+            int found = index.search(query, 0, 10, 3, indices, null);
+            for (int i = 0; i < found; i++) {
+                if (indices[i] == best) {
+                    hits++;
+                }
+            }
+        }
+        assertTrue("recall " + hits + " of 50", hits >= 45);
+    }
+
+    /**
+     * Quantizer with 8 subspaces whose two centroids are 0 and 10.
+     */
+    private static ProductQuantizer quantizer() {
+        float[] codebooks = new float[2 * LENGTH];
+        for (int s = 0; s < 8; s++) {
+            for (int e = 0; e < 16; e++) {
+                codebooks[(s * 2 + 1) * 16 + e] = 10;
+            }
+        }
+        return new ProductQuantizer(8, 2, codebooks);
+    }
+
+    /**
+     * Descriptors whose sub-vectors are either 0 or 10.
+     */
+    private static byte[] patterns(final int count, final Random random) {
+        byte[] result = new byte[count * LENGTH];
+        for (int i = 0; i < count; i++) {
+            for (int s = 0; s < 8; s++) {
+                byte value = (byte) (10 * random.nextInt(2));
+                for (int e = 0; e < 16; e++) {
+                    result[i * LENGTH + s * 16 + e] = value;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static float distance(final byte[] query,
+            final byte[] descriptors, final int index) {
+        float result = 0;
+        for (int e = 0; e < LENGTH; e++) {
+            float d = (query[e] & 0xFF)
+                    - (descriptors[index * LENGTH + e] & 0xFF);
+            result += d * d;
+        }
+        return result;
+    }
+
+    private static float distance(final byte[] a, final int aIndex,
+            final byte[] b, final int bIndex) {
+        float result = 0;
+        for (int e = 0; e < LENGTH; e++) {
+            float d = (a[aIndex * LENGTH + e] & 0xFF)
+                    - (b[bIndex * LENGTH + e] & 0xFF);
+            result += d * d;
+        }
+        return result;
+    }
+}
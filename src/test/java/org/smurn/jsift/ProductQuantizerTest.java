@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ProductQuantizer}.
+ */
+public class ProductQuantizerTest {
+
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+
+    @Test(expected = NullPointerException.class)
+    public void nullCodebooks() {
+        new ProductQuantizer(8, 2, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void subspacesNotDividing() {
+        new ProductQuantizer(3, 2, new float[2 * LENGTH]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyCentroids() {
+        new ProductQuantizer(8, 257, new float[257 * LENGTH]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongCodebookLength() {
+        new ProductQuantizer(8, 2, new float[LENGTH]);
+    }
+
+    @Test
+    public void getters() {
+        float[] codebooks = codebooks();
+        ProductQuantizer quantizer = new ProductQuantizer(4, 3, codebooks);
+        assertEquals(4, quantizer.getSubspaceCount());
+        assertEquals(3, quantizer.getCentroidCount());
+        assertArrayEquals(codebooks, quantizer.getCodebooks(), 0f);
+        codebooks[0] = 99;
+        assertEquals(0f, quantizer.getCodebooks()[0], 0f);
+    }
+
+    @Test
+    public void encodeDecode() {
+        ProductQuantizer quantizer = new ProductQuantizer(4, 3, codebooks());
+        float[] vector = new float[LENGTH + 1];
+        for (int e = 0; e < LENGTH; e++) {
+            // subspace s is closest to centroid s % 3.
+            vector[1 + e] = 10 * ((e / 32) % 3) + 1;
+        }
+        byte[] codes = new byte[6];
+        quantizer.encode(vector, 1, codes, 2);
+        assertArrayEquals(new byte[]{0, 0, 0, 1, 2, 0}, codes);
+
+        float[] decoded = new float[LENGTH];
+        quantizer.decode(codes, 2, decoded, 0);
+        for (int e = 0; e < LENGTH; e++) {
+            assertEquals(vector[1 + e] - 1, decoded[e], 0f);
+        }
+    }
+
+    @Test
+    public void asymmetricDistance() {
+        ProductQuantizer quantizer = new ProductQuantizer(4, 3, codebooks());
+        float[] query = new float[LENGTH];
+        for (int e = 0; e < LENGTH; e++) {
+            query[e] = e % 7;
+        }
+        float[] table = new float[12];
+        quantizer.distanceTable(query, 0, table);
+        byte[] codes = {2, 0, 1, 1};
+        float[] decoded = new float[LENGTH];
+        quantizer.decode(codes, 0, decoded, 0);
+        assertEquals(KMeans.distance(query, 0, decoded, 0, LENGTH),
+                quantizer.distance(table, codes, 0), 1E-2f);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void codeExceedsArray() {
+        new ProductQuantizer(4, 3, codebooks()).encode(new float[LENGTH], 0,
+                new byte[4], 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void tableTooShort() {
+        new ProductQuantizer(4, 3, codebooks()).distanceTable(
+                new float[LENGTH], 0, new float[11]);
+    }
+
+    /**
+     * Codebooks of 4 subspaces with 3 centroids, centroid c is constant
+     * 10 * c.
+     */
+    private static float[] codebooks() {
+        float[] result = new float[3 * LENGTH];
+        for (int s = 0; s < 4; s++) {
+            for (int c = 0; c < 3; c++) {
+                for (int e = 0; e < 32; e++) {
+                    result[(s * 3 + c) * 32 + e] = 10 * c;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ProductQuantizerTrainer}.
+ */
+public class ProductQuantizerTrainerTest {
+
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void subspacesNotDividing() {
+        new ProductQuantizerTrainer(5, 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroIterations() {
+        new ProductQuantizerTrainer(8, 16, 0, 0L);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullDescriptors() {
+        new ProductQuantizerTrainer(8, 16).train(null, 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptySample() {
+        new ProductQuantizerTrainer(8, 16).train(new byte[LENGTH], 0, 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void sampleExceedsArray() {
+        new ProductQuantizerTrainer(8, 16).train(new byte[LENGTH], 1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noLists() {
+        new ProductQuantizerTrainer(8, 16).trainCoarseQuantizer(
+                new byte[LENGTH], 0, 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongCoarseCentroids() {
+        new ProductQuantizerTrainer(8, 16).train(new byte[LENGTH], 0, 1,
+                new float[LENGTH + 1]);
+    }
+
+    @Test
+    public void exactForFewPatterns() {
+        // each subspace only takes two values, which the codebooks learn.
+        Random random = new Random(9);
+        int count = 100;
+        byte[] descriptors = new byte[count * LENGTH];
+        for (int i = 0; i < count; i++) {
+            for (int s = 0; s < 8; s++) {
+                byte value = (byte) (50 + 100 * random.nextInt(2) + s);
+                for (int e = 0; e < 16; e++) {
+                    descriptors[i * LENGTH + s * 16 + e] = value;
+                }
+            }
+        }
+        ProductQuantizer quantizer = new ProductQuantizerTrainer(8, 2)
+                .train(descriptors, 0, count);
+        assertEquals(8, quantizer.getSubspaceCount());
+        assertEquals(2, quantizer.getCentroidCount());
+
+        float[] vector = new float[LENGTH];
+        float[] decoded = new float[LENGTH];
+        byte[] code = new byte[8];
+        for (int i = 0; i < count; i++) {
+            for (int e = 0; e < LENGTH; e++) {
+                vector[e] = descriptors[i * LENGTH + e] & 0xFF;
+            }
+            quantizer.encode(vector, 0, code, 0);
+            quantizer.decode(code, 0, decoded, 0);
+            assertArrayEquals(vector, decoded, 1E-3f);
+        }
+    }
+
+    @Test
+    public void residuals() {
+        // two far apart groups with the same small variations of about 5,
+        // so two centroids per subspace approximate the residuals of both
+        // groups well.
+        Random random = new Random(10);
+        int count = 200;
+        byte[] descriptors = new byte[count * LENGTH];
+        for (int i = 0; i < count; i++) {
+            int group = 200 * (i % 2);
+            for (int s = 0; s < 4; s++) {
+                int value = group + 10 * random.nextInt(2);
+                for (int e = 0; e < 32; e++) {
+                    descriptors[i * LENGTH + s * 32 + e] = (byte) value;
+                }
+            }
+        }
+        ProductQuantizerTrainer trainer = new ProductQuantizerTrainer(4, 2);
+        float[] coarse = trainer.trainCoarseQuantizer(descriptors, 0, count,
+                2);
+        assertEquals(2 * LENGTH, coarse.length);
+        ProductQuantizer quantizer = trainer.train(descriptors, 0, count,
+                coarse);
+
+        float[] residual = new float[LENGTH];
+        float[] decoded = new float[LENGTH];
+        byte[] code = new byte[4];
+        for (int i = 0; i < count; i++) {
+            int list = KMeans.nearest(toFloats(descriptors, i), 0, coarse, 0,
+                    2, LENGTH);
+            for (int e = 0; e < LENGTH; e++) {
+                residual[e] = (descriptors[i * LENGTH + e] & 0xFF)
+                        - coarse[list * LENGTH + e];
+            }
+            quantizer.encode(residual, 0, code, 0);
+            quantizer.decode(code, 0, decoded, 0);
+            assertArrayEquals(residual, decoded, 0.5f);
+        }
+    }
+
+    private static float[] toFloats(final byte[] descriptors,
+            final int index) {
+        float[] result = new float[LENGTH];
+        for (int e = 0; e < LENGTH; e++) {
+            result[e] = descriptors[index * LENGTH + e] & 0xFF;
+        }
+        return result;
+    }
+}
@@ -149,4 +149,38 @@ public class ScaleSpaceFactoryImplTest {
         Image firstImage = scaleSpace.getOctaves().get(2).getScaleImages().get(0);
         assertEquals(4 * 1.7, firstImage.getSigma(), 1E-6);
     }
+
+    @Test(expected = NullPointerException.class)
+    public void upScalingFilterNull() {
+        target.createUpScaled(new Image(10, 10), 3, 1.7,
+                null, mock(DownScaler.class), mock(LowPassFilter.class), mock(OctaveFactory.class));
+    }
+
+    @Test
+    public void upScalingFilter() {
+        UpScalingFilter upScalingFilter = mock(UpScalingFilter.class);
+        when(upScalingFilter.upScaleAndFilter(any(Image.class), anyDouble())).thenReturn(
+                new Image(19, 19, 1.7, 2, 0, 0));
+        ScaleSpace scaleSpace = target.createUpScaled(new Image(10, 10), 1, 1.7,
+                upScalingFilter, downScaler, filter, octaveFactory);
+        verify(upScalingFilter).upScaleAndFilter(any(Image.class), eq(1.7));
+        assertEquals(19, scaleSpace.getOctaves().get(0).getWidth());
+    }
+
+    @Test
+    public void defaults() {
+        Image image = new Image(16, 12);
+        ScaleSpace scaleSpace = target.create(image);
+        assertEquals(6, scaleSpace.getOctaves().size());
+        assertEquals(31, scaleSpace.getOctaves().get(0).getHeight());
+        assertEquals(1, scaleSpace.getOctaves().get(5).getWidth());
+    }
+
+    @Test
+    public void noUpScaling() {
+        ScaleSpace scaleSpace = target.create(new Image(16, 12), 3, 0.8,
+                new IdentityUpScaler(), new Subsampler(), new GaussianFilter(), octaveFactory);
+        assertEquals(16, scaleSpace.getOctaves().get(0).getHeight());
+        assertEquals(12, scaleSpace.getOctaves().get(0).getWidth());
+    }
 }
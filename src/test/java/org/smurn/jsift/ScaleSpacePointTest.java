@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ScaleSpacePoint}.
+ */
+public class ScaleSpacePointTest {
+
+    @Test
+    public void equal() {
+        ScaleSpacePoint a = new ScaleSpacePoint(1.5, -2.25, 0.6);
+        ScaleSpacePoint b = new ScaleSpacePoint(1.5, -2.25, 0.6);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+
+    @Test
+    public void notEqual() {
+        ScaleSpacePoint a = new ScaleSpacePoint(1.5, -2.25, 0.6);
+        assertFalse(a.equals(new ScaleSpacePoint(1.6, -2.25, 0.6)));
+        assertFalse(a.equals(new ScaleSpacePoint(1.5, -2.26, 0.6)));
+        assertFalse(a.equals(new ScaleSpacePoint(1.5, -2.25, 0.7)));
+        assertFalse(a.equals(null));
+        assertFalse(a.equals("foo"));
+    }
+
+    @Test
+    public void unknownMetadata() {
+        ScaleSpacePoint target = new ScaleSpacePoint(1.5, -2.25, 0.6);
+        assertEquals(-1, target.getOctave());
+        assertEquals(-1, target.getScale());
+        assertEquals(-1, target.getRow());
+        assertEquals(-1, target.getColumn());
+        assertTrue(Float.isNaN(target.getResponse()));
+    }
+
+    @Test
+    public void metadataIgnoredByEquals() {
+        ScaleSpacePoint a = new ScaleSpacePoint(1.5, -2.25, 0.6, 1, 2, 3, 4, 5.0f);
+        ScaleSpacePoint b = new ScaleSpacePoint(1.5, -2.25, 0.6);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+
+    @Test
+    public void nan() {
+        ScaleSpacePoint a = new ScaleSpacePoint(Double.NaN, 0, 0);
+        assertEquals(a, new ScaleSpacePoint(Double.NaN, 0, 0));
+    }
+
+    @Test
+    public void hashCodeUnchanged() {
+        // value of the commons-lang HashCodeBuilder used previously.
+        assertEquals(-2048304913, new ScaleSpacePoint(1.5, -2.25, 0.6).hashCode());
+    }
+}
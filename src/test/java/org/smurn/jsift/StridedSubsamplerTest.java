@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.smurn.jsift.TestUtils.*;
+
+/**
+ * Unit tests for {@link StridedSubsampler}.
+ */
+public class StridedSubsamplerTest {
+
+    @Test(expected = NullPointerException.class)
+    public void imageNull() {
+        StridedSubsampler target = new StridedSubsampler();
+        target.downScale(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void image0x0() {
+        Image image = new Image(0, 0);
+        StridedSubsampler target = new StridedSubsampler();
+        target.downScale(image);
+    }
+
+    @Test
+    public void image1x1() {
+        Image image = new Image(new float[][]{{0.3f}});
+        StridedSubsampler target = new StridedSubsampler();
+        Image actual = target.downScale(image);
+        assertThat(actual, equalTo(image, 1E-5f));
+    }
+
+    @Test
+    public void image3x3() {
+        Image image = new Image(new float[][]{{0.3f, 0.4f, -0.1f}, {0.5f, 0.6f, -0.2f}, {0.7f, 0.8f, -0.3f}});
+        Image expected = new Image(new float[][]{{0.3f, -0.1f}, {0.7f, -0.3f}});
+        StridedSubsampler target = new StridedSubsampler();
+        Image actual = target.downScale(image);
+        assertThat(actual, equalTo(expected, 1E-5f));
+    }
+
+    @Test
+    public void sigma() {
+        StridedSubsampler target = new StridedSubsampler();
+        Image actual = target.downScale(new Image(10, 10, 3.2, 2, 3, 4));
+        assertEquals(3.2, actual.getSigma(), 1E-6);
+        assertEquals(1.0, actual.getScale(), 1E-6);
+        assertEquals(1.5, actual.getOffsetX(), 1E-6);
+        assertEquals(2.0, actual.getOffsetY(), 1E-6);
+    }
+
+    @Test
+    public void sharesPixels() {
+        Image image = new Image(4, 4);
+        StridedSubsampler target = new StridedSubsampler();
+        Image actual = target.downScale(image);
+        image.setPixel(2, 2, 0.7f);
+        assertEquals(0.7f, actual.getPixel(1, 1), 1E-6f);
+    }
+
+    @Test
+    public void sameAsSubsampler() {
+        Image image = randomImage(13, 10);
+        Image expected = new Subsampler().downScale(
+                new Subsampler().downScale(image));
+        StridedSubsampler target = new StridedSubsampler();
+        Image actual = target.downScale(target.downScale(image));
+        assertThat(actual, equalTo(expected, 0.0f));
+        assertThat(new Image(actual), equalTo(expected, 0.0f));
+        assertArrayEquals(expected.toArray(false), actual.toArray(false));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void columnOutOfBounds() {
+        StridedSubsampler target = new StridedSubsampler();
+        Image actual = target.downScale(new Image(5, 6));
+        actual.getPixel(0, 3);
+    }
+
+    @Test
+    public void filterView() {
+        Image image = randomImage(20, 17);
+        Image view = new StridedSubsampler().downScale(image);
+        Image copy = new Subsampler().downScale(image);
+        GaussianFilter filter = new GaussianFilter();
+        assertThat(filter.filter(view, 1.3),
+                equalTo(filter.filter(copy, 1.3), 0.0f));
+    }
+
+    private static Image randomImage(final int height, final int width) {
+        Image image = new Image(height, width);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                image.setPixel(row, col, (float) Math.sin(row * 7 + col));
+            }
+        }
+        return image;
+    }
+}
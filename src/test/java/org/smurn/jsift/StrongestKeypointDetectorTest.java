@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link StrongestKeypointDetector}.
+ */
+public class StrongestKeypointDetectorTest {
+
+    @Test(expected = NullPointerException.class)
+    public void nullDetector() {
+        new StrongestKeypointDetector(null, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroKeypoints() {
+        new StrongestKeypointDetector(mock(KeypointDetector.class), 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullScaleSpace() {
+        new StrongestKeypointDetector(mock(KeypointDetector.class), 1).detectKeypoints(null);
+    }
+
+    @Test
+    public void strongest() {
+        SinkKeypointDetector detector = mock(SinkKeypointDetector.class);
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(new Octave(
+                Arrays.asList(new Image(3, 3), new Image(3, 3), new Image(3, 3), new Image(3, 3)),
+                Arrays.asList(new Image(3, 3), new Image(3, 3), new Image(3, 3)))));
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                KeypointSink sink = (KeypointSink) invocation.getArguments()[1];
+                sink.keypoint(1, 1, 1, 0, 1, 1, 1, 0.1f);
+                sink.keypoint(2, 2, 2, 0, 1, 1, 1, -0.3f);
+                sink.keypoint(3, 3, 3, 0, 1, 1, 1, 0.2f);
+                return null;
+            }
+        }).when(detector).detectKeypoints(same(scaleSpace), any(KeypointSink.class));
+
+        StrongestKeypointDetector target = new StrongestKeypointDetector(detector, 2);
+        List<ScaleSpacePoint> expected = Arrays.asList(
+                new ScaleSpacePoint(2, 2, 2), new ScaleSpacePoint(3, 3, 3));
+        assertEquals(expected, target.detectKeypoints(scaleSpace));
+    }
+
+    @Test
+    public void strongestOfCollection() {
+        KeypointDetector detector = mock(KeypointDetector.class);
+        ScaleSpace scaleSpace = new ScaleSpace(Arrays.asList(new Octave(
+                Arrays.asList(new Image(3, 3), new Image(3, 3), new Image(3, 3), new Image(3, 3)),
+                Arrays.asList(new Image(3, 3), new Image(3, 3), new Image(3, 3)))));
+        when(detector.detectKeypoints(scaleSpace)).thenReturn(Arrays.asList(
+                new ScaleSpacePoint(1, 1, 1, 0, 1, 1, 1, 0.1f),
+                new ScaleSpacePoint(2, 2, 2, 0, 1, 1, 1, -0.3f),
+                new ScaleSpacePoint(3, 3, 3, 0, 1, 1, 1, 0.2f)));
+
+        StrongestKeypointDetector target = new StrongestKeypointDetector(detector, 2);
+        List<ScaleSpacePoint> expected = Arrays.asList(
+                new ScaleSpacePoint(2, 2, 2), new ScaleSpacePoint(3, 3, 3));
+        assertEquals(expected, target.detectKeypoints(scaleSpace));
+    }
+}
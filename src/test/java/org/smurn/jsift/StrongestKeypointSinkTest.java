@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.mockito.InOrder;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link StrongestKeypointSink}.
+ */
+public class StrongestKeypointSinkTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacity() {
+        new StrongestKeypointSink(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void drainToNull() {
+        new StrongestKeypointSink(1).drainTo(null);
+    }
+
+    @Test
+    public void fewerThanCapacity() {
+        StrongestKeypointSink target = new StrongestKeypointSink(3);
+        target.keypoint(1, 1, 1, 0, 1, 1, 1, 0.5f);
+        target.keypoint(2, 2, 2, 0, 2, 1, 1, -0.7f);
+        assertEquals(2, target.size());
+        KeypointSink sink = mock(KeypointSink.class);
+        target.drainTo(sink);
+        InOrder inOrder = inOrder(sink);
+        inOrder.verify(sink).keypoint(2, 2, 2, 0, 2, 1, 1, -0.7f);
+        inOrder.verify(sink).keypoint(1, 1, 1, 0, 1, 1, 1, 0.5f);
+        verifyNoMoreInteractions(sink);
+        assertEquals(0, target.size());
+    }
+
+    @Test
+    public void keepsStrongest() {
+        StrongestKeypointSink target = new StrongestKeypointSink(2);
+        target.keypoint(1, 1, 1, 0, 1, 1, 1, 0.5f);
+        target.keypoint(2, 2, 2, 0, 1, 1, 1, -0.1f);
+        target.keypoint(3, 3, 3, 0, 1, 1, 1, -0.9f);
+        target.keypoint(4, 4, 4, 0, 1, 1, 1, 0.2f);
+        KeypointSink sink = mock(KeypointSink.class);
+        target.drainTo(sink);
+        InOrder inOrder = inOrder(sink);
+        inOrder.verify(sink).keypoint(3, 3, 3, 0, 1, 1, 1, -0.9f);
+        inOrder.verify(sink).keypoint(1, 1, 1, 0, 1, 1, 1, 0.5f);
+        verifyNoMoreInteractions(sink);
+    }
+
+    @Test
+    public void tiesPreferEarlier() {
+        StrongestKeypointSink target = new StrongestKeypointSink(2);
+        target.keypoint(1, 1, 1, 0, 1, 1, 1, 0.5f);
+        target.keypoint(2, 2, 2, 0, 1, 1, 1, 0.9f);
+        target.keypoint(3, 3, 3, 0, 1, 1, 1, -0.5f);
+        target.keypoint(4, 4, 4, 0, 1, 1, 1, 0.95f);
+        target.keypoint(5, 5, 5, 0, 1, 1, 1, 0.9f);
+        KeypointSink sink = mock(KeypointSink.class);
+        target.drainTo(sink);
+        InOrder inOrder = inOrder(sink);
+        inOrder.verify(sink).keypoint(4, 4, 4, 0, 1, 1, 1, 0.95f);
+        inOrder.verify(sink).keypoint(2, 2, 2, 0, 1, 1, 1, 0.9f);
+        verifyNoMoreInteractions(sink);
+    }
+
+    @Test
+    public void random() {
+        Random random = new Random(11);
+        float[] responses = new float[2000];
+        StrongestKeypointSink target = new StrongestKeypointSink(100);
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = (float) random.nextGaussian();
+            target.keypoint(i, 0, 1, 0, 1, 1, 1, responses[i]);
+        }
+        float[] strengths = new float[responses.length];
+        for (int i = 0; i < responses.length; i++) {
+            strengths[i] = Math.abs(responses[i]);
+        }
+        Arrays.sort(strengths);
+
+        KeypointBuffer actual = new KeypointBuffer();
+        target.drainTo(actual);
+        assertEquals(100, actual.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(strengths[strengths.length - 1 - i],
+                    Math.abs(actual.getResponse(i)), 0.0f);
+            assertEquals(responses[(int) actual.getX(i)], actual.getResponse(i), 0.0f);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link VocabularyTree}.
+ */
+public class VocabularyTreeTest {
+
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+
+    @Test(expected = NullPointerException.class)
+    public void nullCenters() {
+        new VocabularyTree(2, 1, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oneBranch() {
+        new VocabularyTree(1, 1, new byte[LENGTH]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroDepth() {
+        new VocabularyTree(2, 0, new byte[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongCenterCount() {
+        new VocabularyTree(2, 2, new byte[4 * LENGTH]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooLarge() {
+        new VocabularyTree(10, 9, new byte[0]);
+    }
+
+    @Test
+    public void getters() {
+        byte[] centers = new byte[12 * LENGTH];
+        centers[5] = 7;
+        VocabularyTree tree = new VocabularyTree(3, 2, centers);
+        assertEquals(3, tree.getBranching());
+        assertEquals(2, tree.getDepth());
+        assertEquals(9, tree.getWordCount());
+        assertArrayEquals(centers, tree.getCenters());
+    }
+
+    @Test
+    public void centersCopied() {
+        byte[] centers = new byte[2 * LENGTH];
+        VocabularyTree tree = new VocabularyTree(2, 1, centers);
+        centers[0] = 1;
+        tree.getCenters()[1] = 1;
+        assertArrayEquals(new byte[2 * LENGTH], tree.getCenters());
+    }
+
+    @Test
+    public void descendsClosestChildren() {
+        // level one splits on element 0, level two on element 1.
+        byte[] centers = new byte[6 * LENGTH];
+        centers[0] = 10;
+        centers[LENGTH] = (byte) 200;
+        centers[2 * LENGTH] = 10;
+        centers[2 * LENGTH + 1] = 10;
+        centers[3 * LENGTH] = 10;
+        centers[3 * LENGTH + 1] = 100;
+        centers[4 * LENGTH] = (byte) 200;
+        centers[4 * LENGTH + 1] = 10;
+        centers[5 * LENGTH] = (byte) 200;
+        centers[5 * LENGTH + 1] = 100;
+        VocabularyTree tree = new VocabularyTree(2, 2, centers);
+
+        byte[] descriptors = new byte[4 * LENGTH];
+        descriptors[0] = 0;
+        descriptors[1] = 0;
+        descriptors[LENGTH] = 0;
+        descriptors[LENGTH + 1] = (byte) 150;
+        descriptors[2 * LENGTH] = (byte) 255;
+        descriptors[2 * LENGTH + 1] = 20;
+        descriptors[3 * LENGTH] = (byte) 180;
+        descriptors[3 * LENGTH + 1] = 80;
+        assertEquals(1, tree.quantize(descriptors, LENGTH));
+
+        int[] words = new int[5];
+        tree.quantize(descriptors, 0, 4, words, 1);
+        assertArrayEquals(new int[]{0, 0, 1, 2, 3}, words);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void descriptorExceedsArray() {
+        new VocabularyTree(2, 1, new byte[2 * LENGTH]).quantize(
+                new byte[LENGTH], 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void wordsTooShort() {
+        new VocabularyTree(2, 1, new byte[2 * LENGTH]).quantize(
+                new byte[2 * LENGTH], 0, 2, new int[2], 1);
+    }
+}
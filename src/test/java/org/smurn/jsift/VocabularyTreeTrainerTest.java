@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 Stefan C. Mueller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smurn.jsift;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link VocabularyTreeTrainer}.
+ */
+public class VocabularyTreeTrainerTest {
+
+    private static final int LENGTH = DescriptorExtractor.LENGTH;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oneBranch() {
+        new VocabularyTreeTrainer(1, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroIterations() {
+        new VocabularyTreeTrainer(2, 2, 0, 0L);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullDescriptors() {
+        new VocabularyTreeTrainer(2, 2).train(null, 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptySample() {
+        new VocabularyTreeTrainer(2, 2).train(new byte[LENGTH], 0, 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void sampleExceedsArray() {
+        new VocabularyTreeTrainer(2, 2).train(new byte[LENGTH], 1, 1);
+    }
+
+    @Test
+    public void separatesClusters() {
+        // the bits of the label select ever smaller offsets, so the labels
+        // form a binary hierarchy of clusters.
+        Random random = new Random(3);
+        int count = 400;
+        byte[] descriptors = new byte[count * LENGTH];
+        int[] labels = new int[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = random.nextInt(8);
+            for (int e = 0; e < LENGTH; e++) {
+                descriptors[i * LENGTH + e] = (byte) random.nextInt(10);
+            }
+            descriptors[i * LENGTH + (labels[i] >> 2)] = (byte) 250;
+            descriptors[i * LENGTH + 2 + (labels[i] >> 1 & 1)] = (byte) 120;
+            descriptors[i * LENGTH + 4 + (labels[i] & 1)] = (byte) 50;
+        }
+        VocabularyTree tree = new VocabularyTreeTrainer(2, 3, 10, 5L).train(
+                descriptors, 0, count);
+        assertEquals(8, tree.getWordCount());
+
+        int[] words = new int[count];
+        tree.quantize(descriptors, 0, count, words, 0);
+        int[] wordOfLabel = new int[8];
+        Arrays.fill(wordOfLabel, -1);
+        for (int i = 0; i < count; i++) {
+            if (wordOfLabel[labels[i]] < 0) {
+                wordOfLabel[labels[i]] = words[i];
+            }
+            assertEquals(wordOfLabel[labels[i]], words[i]);
+        }
+        for (int a = 0; a < 8; a++) {
+            for (int b = a + 1; b < 8; b++) {
+                assertTrue(wordOfLabel[a] != wordOfLabel[b]);
+            }
+        }
+    }
+
+    @Test
+    public void fewerDescriptorsThanWords() {
+        byte[] descriptors = new byte[3 * LENGTH];
+        descriptors[0] = 100;
+        descriptors[LENGTH + 1] = 100;
+        descriptors[2 * LENGTH + 2] = 100;
+        VocabularyTree tree = new VocabularyTreeTrainer(3, 3).train(
+                descriptors, 0, 3);
+        assertEquals(27, tree.getWordCount());
+        int[] words = new int[3];
+        tree.quantize(descriptors, 0, 3, words, 0);
+        assertTrue(words[0] != words[1]);
+        assertTrue(words[0] != words[2]);
+        assertTrue(words[1] != words[2]);
+    }
+
+    @Test
+    public void reproducible() {
+        Random random = new Random(8);
+        byte[] descriptors = new byte[200 * LENGTH];
+        random.nextBytes(descriptors);
+        byte[] a = new VocabularyTreeTrainer(3, 2, 5, 1L).train(descriptors,
+                LENGTH, 199).getCenters();
+        byte[] b = new VocabularyTreeTrainer(3, 2, 5, 1L).train(descriptors,
+                LENGTH, 199).getCenters();
+        assertArrayEquals(a, b);
+    }
+}